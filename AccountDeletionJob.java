@@ -0,0 +1,79 @@
+import java.time.LocalDateTime;
+
+/**
+ * This class represents the progress of a background account deletion.
+ */
+
+public class AccountDeletionJob {
+
+    private final int userId;
+    private final LocalDateTime requestedAt;
+    private final String currentTable;
+    private final long rowsDeleted;
+    private final LocalDateTime finishedAt;
+
+/**
+     * Constructs an AccountDeletionJob object.
+     *
+     * @param userId The ID of the user being deleted.
+     * @param requestedAt The time the deletion was requested.
+     * @param currentTable The table currently being emptied, or null once the job has finished.
+     * @param rowsDeleted The number of rows deleted so far.
+     * @param finishedAt The time the job finished, or null if it is still running.
+     */
+    public AccountDeletionJob(int userId, LocalDateTime requestedAt, String currentTable, long rowsDeleted, LocalDateTime finishedAt) {
+        this.userId = userId;
+        this.requestedAt = requestedAt;
+        this.currentTable = currentTable;
+        this.rowsDeleted = rowsDeleted;
+        this.finishedAt = finishedAt;
+    }
+/**
+     * Gets the ID of the user being deleted.
+     *
+     * @return The ID of the user.
+     */
+    public int getUserId() {
+        return userId;
+    }
+/**
+     * Gets the time the deletion was requested.
+     *
+     * @return The request time.
+     */
+    public LocalDateTime getRequestedAt() {
+        return requestedAt;
+    }
+/**
+     * Gets the table currently being emptied.
+     *
+     * @return The table name, or null once the job has finished.
+     */
+    public String getCurrentTable() {
+        return currentTable;
+    }
+/**
+     * Gets the number of rows deleted so far.
+     *
+     * @return The number of rows deleted.
+     */
+    public long getRowsDeleted() {
+        return rowsDeleted;
+    }
+/**
+     * Gets the time the job finished.
+     *
+     * @return The finish time, or null if the job is still running.
+     */
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+/**
+     * Checks whether the job has finished.
+     *
+     * @return True if every row of the user has been deleted, false otherwise.
+     */
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.sql.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class deletes the data of deleted accounts in the background.
+ * UserDao.deleteUser only marks the user as deleted and records a job; this class then empties the user's rows
+ * table by table in small batches, pausing between batches so the purge never holds locks for long or floods the
+ * write-ahead log. Each batch is committed together with the job's progress, so after a crash the purge resumes at
+ * the next startup from the last committed batch. The user's archived health data is removed from the archive files
+ * after the tables, and the users row itself is removed last.
+ */
+
+public class AccountPurger {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long PAUSE_MILLIS = 200;
+    private static final AccountPurger INSTANCE = new AccountPurger();
+
+    /** The tables holding a user's rows, in purge order: table, user column, key columns. Panel links go first so the patient leaves doctors' lists at once. */
+    private static final String[][] PURGE_PLAN = {
+            {"doctor_patient", "patient_id", "doctor_id, patient_id"},
+            {"doctor_patient", "doctor_id", "doctor_id, patient_id"},
+            {"doctors", "user_id", "user_id"},
+            {"patient_risk_scores", "user_id", "user_id"},
+            {"anomaly_alerts", "user_id", "alert_id"},
+            {"recommendations", "user_id", "recommendation_id"},
+            {"medicine_reminders", "user_id", "reminder_id"},
+            {"medicine_reminders_history", "user_id", "reminder_id"},
+            {"vitals_blocks", "user_id", "vitals_block_id"},
+            {"health_data_readings", "user_id", "user_id, date"},
+            {"health_data_weekly", "user_id", "user_id, period_start"},
+            {"health_data_monthly", "user_id", "user_id, period_start"},
+            {"health_data", "user_id", "health_data_id, date"},
+    };
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "account-purger");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+
+    private AccountPurger() {
+    }
+/**
+     * Gets the shared AccountPurger instance.
+     *
+     * @return The AccountPurger instance.
+     */
+    public static AccountPurger getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Resumes every unfinished deletion job, oldest first.
+     */
+    public void start() {
+
+        String query = "SELECT user_id FROM public.\"account_deletion_jobs\" WHERE finished_at IS NULL ORDER BY requested_at";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                submit(rs.getInt("user_id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Queues the purge of a user whose account was marked as deleted.
+     *
+     * @param userId The ID of the deleted user.
+     */
+    public void submit(int userId) {
+        if (queued.add(userId)) {
+            worker.execute(() -> {
+                try {
+                    purge(userId);
+                } finally {
+                    queued.remove(userId);
+                }
+            });
+        }
+    }
+/**
+     * Gets the progress of the deletion of a user.
+     *
+     * @param userId The ID of the deleted user.
+     * @return The AccountDeletionJob object, or null if no deletion was requested for the user.
+     */
+    public AccountDeletionJob getJob(int userId) {
+
+        String query = "SELECT * FROM public.\"account_deletion_jobs\" WHERE user_id = ?";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    int step = rs.getInt("step");
+                    Timestamp finishedAt = rs.getTimestamp("finished_at");
+                    return new AccountDeletionJob(userId, rs.getTimestamp("requested_at").toLocalDateTime(),
+                            step < PURGE_PLAN.length ? PURGE_PLAN[step][0] : finishedAt == null ? "users" : null,
+                            rs.getLong("rows_deleted"), finishedAt == null ? null : finishedAt.toLocalDateTime());
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void purge(int userId) {
+
+        String progressQuery = "UPDATE public.\"account_deletion_jobs\" SET rows_deleted = rows_deleted + ?, step = ? WHERE user_id = ?";
+        String finishQuery = "UPDATE public.\"account_deletion_jobs\" SET finished_at = now() WHERE user_id = ?";
+        String userQuery = "DELETE FROM public.\"users\" WHERE user_id = ? AND deleted_at IS NOT NULL";
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            int step = currentStep(con, userId);
+            if (step < 0) {
+                return;
+            }
+            con.setAutoCommit(false);
+            try (PreparedStatement progress = con.prepareStatement(progressQuery)) {
+                while (step < PURGE_PLAN.length) {
+                    int deleted = deleteBatch(con, PURGE_PLAN[step], userId);
+                    int nextStep = deleted < BATCH_SIZE ? step + 1 : step;
+                    progress.setLong(1, deleted);
+                    progress.setInt(2, nextStep);
+                    progress.setInt(3, userId);
+                    progress.executeUpdate();
+                    con.commit();
+                    step = nextStep;
+                    if (deleted > 0) {
+                        Thread.sleep(PAUSE_MILLIS);
+                    }
+                }
+
+                // Archive files still hold the user's old rows, which rollup rebuilds and range summaries read
+                HealthDataArchive.getInstance().removeUser(userId);
+
+                try (PreparedStatement user = con.prepareStatement(userQuery);
+                     PreparedStatement finish = con.prepareStatement(finishQuery)) {
+                    user.setInt(1, userId);
+                    user.executeUpdate();
+                    finish.setInt(1, userId);
+                    finish.executeUpdate();
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        DoctorPatientCache.getInstance().removeUser(userId);
+        ReminderIntervalIndex.getInstance().removeUser(userId);
+        HealthDataDao.notifyUserPurged(userId);
+    }
+
+    private int currentStep(Connection con, int userId) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement("SELECT step FROM public.\"account_deletion_jobs\" WHERE user_id = ? AND finished_at IS NULL")) {
+            statement.setInt(1, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt("step") : -1;
+            }
+        }
+    }
+
+    private static int deleteBatch(Connection con, String[] table, int userId) throws SQLException {
+        String query = "DELETE FROM public.\"" + table[0] + "\" WHERE (" + table[2] + ") IN " +
+                "(SELECT " + table[2] + " FROM public.\"" + table[0] + "\" WHERE " + table[1] + " = ? LIMIT " + BATCH_SIZE + ")";
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            return statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.time.LocalDate;
+
+/**
+ * This class represents an alert raised when a health metric of a user moves suddenly away from the user's own baseline.
+ */
+
+public class AnomalyAlert {
+    private int id;
+    private int userId;
+    private String metric;
+    private double value;
+    private double baseline;
+    private double zScore;
+    private LocalDate date;
+
+/**
+     * Constructs an AnomalyAlert object with the specified attributes.
+     *
+     * @param id The ID of the alert.
+     * @param userId The ID of the user to whom the alert belongs.
+     * @param metric The name of the health metric, for example heart_rate.
+     * @param value The value that raised the alert.
+     * @param baseline The user's baseline for the metric before the value was seen.
+     * @param zScore The number of standard deviations between the value and the baseline.
+     * @param date The date of the health data entry that raised the alert.
+     */
+    public AnomalyAlert(int id, int userId, String metric, double value, double baseline, double zScore, LocalDate date) {
+        this.id = id;
+        this.userId = userId;
+        this.metric = metric;
+        this.value = value;
+        this.baseline = baseline;
+        this.zScore = zScore;
+        this.date = date;
+    }
+/**
+     * Gets the ID of the alert.
+     *
+     * @return The ID of the alert.
+     */
+    public int getId() {
+        return id;
+    }
+/**
+     * Sets the ID of the alert.
+     *
+     * @param id The ID to set.
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+/**
+     * Gets the ID of the user to whom the alert belongs.
+     *
+     * @return The ID of the user.
+     */
+    public int getUserId() {
+        return userId;
+    }
+/**
+     * Gets the name of the health metric that raised the alert.
+     *
+     * @return The name of the metric.
+     */
+    public String getMetric() {
+        return metric;
+    }
+/**
+     * Gets the value that raised the alert.
+     *
+     * @return The value of the metric.
+     */
+    public double getValue() {
+        return value;
+    }
+/**
+     * Gets the user's baseline for the metric before the value was seen.
+     *
+     * @return The baseline of the metric.
+     */
+    public double getBaseline() {
+        return baseline;
+    }
+/**
+     * Gets the number of standard deviations between the value and the baseline.
+     *
+     * @return The z-score of the value.
+     */
+    public double getZScore() {
+        return zScore;
+    }
+/**
+     * Gets the date of the health data entry that raised the alert.
+     *
+     * @return The date of the alert.
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+/**
+     * Returns a string representation of the AnomalyAlert object.
+     *
+     * @return A string containing the alert attributes.
+     */
+    @Override
+    public String toString() {
+        return ("Date: " + date + "\n" +
+                "Metric: " + metric + "\n" +
+                "Value: " + value + "\n" +
+                "Baseline: " + String.format("%.1f", baseline) + "\n" +
+                "Z-Score: " + String.format("%.2f", zScore));
+    }
+}
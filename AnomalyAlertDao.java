@@ -0,0 +1,42 @@
+import java.sql.*;
+
+/**
+ * This class provides data access methods for storing anomaly alerts in the database.
+ */
+
+public class AnomalyAlertDao {
+/**
+     * Creates a new anomaly alert in the database.
+     *
+     * @param alert The AnomalyAlert object containing the alert to be created.
+     * @return The ID of the newly created alert.
+     */
+    public int createAlert(AnomalyAlert alert) {
+
+        int generatedId = 0;
+
+        String query = "INSERT INTO public.\"anomaly_alerts\" (user_id, metric, value, baseline, z_score, date) VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setInt(1, alert.getUserId());
+            statement.setString(2, alert.getMetric());
+            statement.setDouble(3, alert.getValue());
+            statement.setDouble(4, alert.getBaseline());
+            statement.setDouble(5, alert.getZScore());
+            statement.setDate(6, java.sql.Date.valueOf(alert.getDate()));
+            statement.executeUpdate();
+
+            try (ResultSet rs = statement.getGeneratedKeys()) {
+                if (rs.next()) {
+                    generatedId = rs.getInt(1);
+                } else {
+                    throw new SQLException("Oops! An error has occured adding the anomaly alert, no ID was obtained.");
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return generatedId;
+    }
+}
@@ -0,0 +1,169 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class follows every health data entry written through HealthDataDao and runs it through one
+ * EwmaAnomalyDetector per configured metric. Values that move suddenly away from the user's own baseline
+ * are stored as anomaly alerts, which doctors can review in the doctor portal.
+ * Heart rate is monitored by default; other metrics can be enabled with their own configuration.
+ * The baselines are kept in memory only, so start seeds them at startup from each user's most recent entries.
+ */
+
+public class AnomalyMonitor implements HealthDataListener {
+
+    public static final String HEART_RATE = "heart_rate";
+    public static final String STEPS = "steps";
+    public static final String WATER_INTAKE = "water_intake";
+    public static final String HOURS_OF_SLEEP = "hours_of_sleep";
+    public static final String WEIGHT = "weight";
+
+    private static final List<String> METRICS = Arrays.asList(HEART_RATE, STEPS, WATER_INTAKE, HOURS_OF_SLEEP, WEIGHT);
+    private static final int EXPECTED_USERS = 1 << 16;
+    private static final int SEED_ENTRIES = 30;
+    private static final int SEED_DAYS = 90;
+    private static final int SEED_FETCH_SIZE = 1000;
+    private static final AnomalyMonitor INSTANCE = new AnomalyMonitor();
+
+    private final Map<String, EwmaAnomalyDetector> detectors = new ConcurrentHashMap<>();
+    private AnomalyAlertDao alertDao = new AnomalyAlertDao();
+
+/**
+     * Constructs an AnomalyMonitor object with heart rate monitoring enabled.
+     */
+    private AnomalyMonitor() {
+        configure(HEART_RATE, 0.1, 3.0, 7, 3.0);
+    }
+/**
+     * Gets the shared AnomalyMonitor instance.
+     *
+     * @return The AnomalyMonitor instance.
+     */
+    public static AnomalyMonitor getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Seeds the baselines from the most recent health data entries of every user, up to 30 entries from the last
+     * 90 days, so alerts can be raised from the first entry after a restart. The entries are fed to the detectors
+     * oldest first without raising alerts. Call it before the monitor is registered as a listener.
+     */
+    public void start() {
+
+        String query = "SELECT * FROM (SELECT hd.*, ROW_NUMBER() OVER (PARTITION BY hd.user_id ORDER BY hd.date DESC, hd.health_data_id DESC) AS rn " +
+                "FROM public.\"health_data\" hd WHERE hd.date >= ?) recent WHERE rn <= ? ORDER BY user_id, date, health_data_id";
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            // Reads through a cursor, so the entries of all users are never held in memory at once
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query)) {
+                statement.setFetchSize(SEED_FETCH_SIZE);
+                statement.setDate(1, java.sql.Date.valueOf(LocalDate.now().minusDays(SEED_DAYS)));
+                statement.setInt(2, SEED_ENTRIES);
+                try (ResultSet rs = statement.executeQuery()) {
+                    RowMapper<HealthData> mapper = RowMappers.HEALTH_DATA.forResultSet(rs);
+                    while (rs.next()) {
+                        HealthData healthData = mapper.mapRow(rs);
+                        for (EwmaAnomalyDetector detector : detectors.values()) {
+                            double value = valueOf(detector.getMetric(), healthData);
+                            if (!Double.isNaN(value)) {
+                                detector.update(healthData.getUserId(), value);
+                            }
+                        }
+                    }
+                }
+                con.commit();
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Enables monitoring of a metric, or replaces its configuration. Replacing a configuration resets the baselines of that metric.
+     *
+     * @param metric The name of the metric, one of the constants of this class.
+     * @param alpha The smoothing factor of the moving average, between 0 and 1.
+     * @param zThreshold The absolute z-score above which a value raises an alert.
+     * @param warmupSamples The number of values a user must have before alerts are raised.
+     * @param minStdDev The smallest standard deviation used for the z-score.
+     */
+    public void configure(String metric, double alpha, double zThreshold, int warmupSamples, double minStdDev) {
+        if (!METRICS.contains(metric)) {
+            throw new IllegalArgumentException("Unknown health metric: " + metric);
+        }
+        detectors.put(metric, new EwmaAnomalyDetector(metric, alpha, zThreshold, warmupSamples, minStdDev, EXPECTED_USERS));
+    }
+/**
+     * Disables monitoring of a metric and drops its baselines.
+     *
+     * @param metric The name of the metric.
+     */
+    public void disable(String metric) {
+        detectors.remove(metric);
+    }
+/**
+     * Runs a created or updated health data entry through the detectors and stores an alert for each anomaly found.
+     * A correction of an entry that was already counted for the same date, such as an edit or a merge of the daily
+     * aggregator, is not fed to the baselines a second time.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    @Override
+    public void onHealthDataSaved(HealthData previous, HealthData current) {
+
+        if (previous != null && previous.getDate().equals(current.getDate())) {
+            return;
+        }
+        for (EwmaAnomalyDetector detector : detectors.values()) {
+            double value = valueOf(detector.getMetric(), current);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            double baseline;
+            double zScore;
+            synchronized (detector) {
+                baseline = detector.getBaseline(current.getUserId());
+                zScore = detector.update(current.getUserId(), value);
+            }
+            if (!Double.isNaN(zScore)) {
+                AnomalyAlert alert = new AnomalyAlert(0, current.getUserId(), detector.getMetric(), value, baseline, zScore, current.getDate());
+                alert.setId(alertDao.createAlert(alert));
+            }
+        }
+    }
+
+/**
+     * Drops the baselines of a purged user, so a reused ID starts without history.
+     *
+     * @param userId The ID of the purged user.
+     */
+    @Override
+    public void onUserPurged(int userId) {
+        for (EwmaAnomalyDetector detector : detectors.values()) {
+            detector.reset(userId);
+        }
+    }
+
+    // A heart rate or weight that was not recorded is NaN, and is not fed to the baselines
+    private static double valueOf(String metric, HealthData healthData) {
+        switch (metric) {
+            case HEART_RATE:
+                return healthData.getHeartRate() == 0 ? Double.NaN : healthData.getHeartRate();
+            case STEPS:
+                return healthData.getSteps();
+            case WATER_INTAKE:
+                return healthData.getWaterIntake();
+            case HOURS_OF_SLEEP:
+                return healthData.getHoursOfSleep();
+            case WEIGHT:
+                return healthData.getWeight() == 0 ? Double.NaN : healthData.getWeight();
+            default:
+                throw new IllegalArgumentException("Unknown health metric: " + metric);
+        }
+    }
+}
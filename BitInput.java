@@ -0,0 +1,45 @@
+/**
+ * This class reads values of any bit width from a byte array written by BitOutput, most significant bit first.
+ */
+
+public class BitInput {
+
+    private final byte[] buffer;
+    private long bitPosition;
+
+/**
+     * Constructs a BitInput object over a byte array.
+     *
+     * @param buffer The bytes to read.
+     */
+    public BitInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+/**
+     * Reads an unsigned value of the given width.
+     *
+     * @param bits The number of bits to read, from 0 to 64.
+     * @return The value read.
+     */
+    public long readBits(int bits) {
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+/**
+     * Reads a single bit.
+     *
+     * @return The bit read.
+     */
+    public boolean readBit() {
+        int byteIndex = (int) (bitPosition >>> 3);
+        if (byteIndex >= buffer.length) {
+            throw new IllegalStateException("Read past the end of the compressed data.");
+        }
+        boolean bit = (buffer[byteIndex] & (0x80 >>> (bitPosition & 7))) != 0;
+        bitPosition++;
+        return bit;
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/**
+ * This class writes values of any bit width into a growing byte array, most significant bit first.
+ * It is the building block of the compressed health data formats, together with BitInput for reading them back.
+ */
+
+public class BitOutput {
+
+    private byte[] buffer;
+    private long bitPosition;
+
+/**
+     * Constructs an empty BitOutput object.
+     */
+    public BitOutput() {
+        buffer = new byte[64];
+    }
+/**
+     * Writes the lowest bits of a value.
+     *
+     * @param value The value to write.
+     * @param bits The number of low bits of the value to write, from 0 to 64.
+     */
+    public void writeBits(long value, int bits) {
+        for (int i = bits - 1; i >= 0; i--) {
+            writeBit(((value >>> i) & 1) != 0);
+        }
+    }
+/**
+     * Writes a single bit.
+     *
+     * @param bit The bit to write.
+     */
+    public void writeBit(boolean bit) {
+        int byteIndex = (int) (bitPosition >>> 3);
+        if (byteIndex == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        if (bit) {
+            buffer[byteIndex] |= (byte) (0x80 >>> (bitPosition & 7));
+        }
+        bitPosition++;
+    }
+/**
+     * Gets the number of bits written so far.
+     *
+     * @return The number of bits.
+     */
+    public long getBitCount() {
+        return bitPosition;
+    }
+/**
+     * Gets the written bits, padded with zero bits to a whole number of bytes.
+     *
+     * @return A copy of the written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, (int) ((bitPosition + 7) >>> 3));
+    }
+}
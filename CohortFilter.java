@@ -0,0 +1,77 @@
+/**
+ * This interface represents a filter expression over a doctor's patients, such as
+ * "average sleep under 6 h and steps under 5,000". Expressions are built from the static factory methods
+ * and are evaluated against the CohortIndex as AND, OR and AND NOT operations on compressed bitmaps.
+ */
+
+public interface CohortFilter {
+/**
+     * Evaluates the filter.
+     *
+     * @param index The CohortIndex to read the metric bitmaps from.
+     * @param universe The patients the filter applies to; NOT is taken relative to this set.
+     * @return A CompressedBitmap of the matching patient IDs.
+     */
+    CompressedBitmap evaluate(CohortIndex index, CompressedBitmap universe);
+/**
+     * Creates a filter matching patients whose average of a metric over the cohort window is below a threshold.
+     * The threshold must be one of the bucket edges of the metric, see CohortIndex.getBucketEdges.
+     *
+     * @param metric The name of the metric, one of the CohortIndex metric constants.
+     * @param threshold The threshold of the metric.
+     * @return The CohortFilter object.
+     */
+    static CohortFilter below(String metric, double threshold) {
+        return (index, universe) -> index.getBelow(metric, threshold).and(universe);
+    }
+/**
+     * Creates a filter matching patients with data whose average of a metric over the cohort window is at or above a threshold.
+     * The threshold must be one of the bucket edges of the metric, see CohortIndex.getBucketEdges.
+     *
+     * @param metric The name of the metric, one of the CohortIndex metric constants.
+     * @param threshold The threshold of the metric.
+     * @return The CohortFilter object.
+     */
+    static CohortFilter atLeast(String metric, double threshold) {
+        return (index, universe) -> index.getWithData(metric).and(universe).andNot(index.getBelow(metric, threshold));
+    }
+/**
+     * Creates a filter matching patients that match every given filter.
+     *
+     * @param filters The filters to combine.
+     * @return The CohortFilter object.
+     */
+    static CohortFilter and(CohortFilter... filters) {
+        return (index, universe) -> {
+            CompressedBitmap result = universe;
+            for (CohortFilter filter : filters) {
+                result = result.and(filter.evaluate(index, universe));
+            }
+            return result;
+        };
+    }
+/**
+     * Creates a filter matching patients that match at least one of the given filters.
+     *
+     * @param filters The filters to combine.
+     * @return The CohortFilter object.
+     */
+    static CohortFilter or(CohortFilter... filters) {
+        return (index, universe) -> {
+            CompressedBitmap result = new CompressedBitmap();
+            for (CohortFilter filter : filters) {
+                result = result.or(filter.evaluate(index, universe));
+            }
+            return result;
+        };
+    }
+/**
+     * Creates a filter matching the patients that do not match the given filter.
+     *
+     * @param filter The filter to negate.
+     * @return The CohortFilter object.
+     */
+    static CohortFilter not(CohortFilter filter) {
+        return (index, universe) -> universe.andNot(filter.evaluate(index, universe));
+    }
+}
@@ -0,0 +1,292 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is an in-memory index of patients by their average health metrics over the last 14 days.
+ * For every metric and bucket edge it keeps a compressed bitmap of the patients whose average is below that edge,
+ * so cohort filters such as "sleep under 6 h and steps under 5,000" run as bitmap operations instead of
+ * scanning health_data. It is rebuilt from the database at startup and once a day, so patients who stop logging
+ * age out of the window, and refreshed per patient on every write. Refreshes of one patient run one at a time, and
+ * patients refreshed while a rebuild reads the database are refreshed again once it is applied.
+ */
+
+public class CohortIndex implements HealthDataListener {
+
+    public static final String STEPS = "steps";
+    public static final String HEART_RATE = "heart_rate";
+    public static final String WATER_INTAKE = "water_intake";
+    public static final String HOURS_OF_SLEEP = "hours_of_sleep";
+
+    private static final int WINDOW_DAYS = 14;
+    private static final int REFRESH_STRIPES = 64;
+    private static final CohortIndex INSTANCE = new CohortIndex();
+
+    private final Map<String, double[]> bucketEdges = new LinkedHashMap<>();
+    private final Map<String, CompressedBitmap[]> below = new LinkedHashMap<>();
+    private final Map<String, CompressedBitmap> withData = new LinkedHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] refreshLocks = new Object[REFRESH_STRIPES];
+    private final Set<Integer> refreshedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private final String[] metrics;
+    private volatile boolean rebuilding;
+    private ScheduledExecutorService scheduler;
+
+/**
+     * Constructs a CohortIndex object with the bucket edges of every metric.
+     */
+    private CohortIndex() {
+        bucketEdges.put(STEPS, new double[] {2500, 5000, 7500, 10000, 12500});
+        bucketEdges.put(HEART_RATE, new double[] {50, 60, 70, 80, 90, 100, 110});
+        bucketEdges.put(WATER_INTAKE, new double[] {32, 48, 64, 80});
+        bucketEdges.put(HOURS_OF_SLEEP, new double[] {5, 6, 7, 8, 9});
+        for (int i = 0; i < refreshLocks.length; i++) {
+            refreshLocks[i] = new Object();
+        }
+        metrics = bucketEdges.keySet().toArray(new String[0]);
+        clear();
+    }
+/**
+     * Gets the shared CohortIndex instance.
+     *
+     * @return The CohortIndex instance.
+     */
+    public static CohortIndex getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Builds the index now and rebuilds it once a day in the background.
+     */
+    public synchronized void start() {
+        if (scheduler == null) {
+            rebuild();
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cohort-index-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::rebuild, 1, 1, TimeUnit.DAYS);
+        }
+    }
+/**
+     * Gets the bucket edges of a metric, which are the thresholds that filters on the metric can use.
+     *
+     * @param metric The name of the metric.
+     * @return A copy of the bucket edges, in ascending order.
+     */
+    public double[] getBucketEdges(String metric) {
+        return edgesOf(metric).clone();
+    }
+/**
+     * Evaluates a cohort filter against a set of patients while holding the index read lock.
+     *
+     * @param filter The CohortFilter to evaluate.
+     * @param universe The patients the filter applies to.
+     * @return A CompressedBitmap of the matching patient IDs.
+     */
+    public CompressedBitmap evaluate(CohortFilter filter, CompressedBitmap universe) {
+        lock.readLock().lock();
+        try {
+            return filter.evaluate(this, universe).and(universe);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+/**
+     * Gets the bitmap of patients whose average of a metric is below a bucket edge.
+     * The returned bitmap is owned by the index and must only be read from within evaluate.
+     *
+     * @param metric The name of the metric.
+     * @param threshold The bucket edge.
+     * @return The CompressedBitmap of matching patient IDs.
+     */
+    CompressedBitmap getBelow(String metric, double threshold) {
+        double[] edges = edgesOf(metric);
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] == threshold) {
+                return below.get(metric)[i];
+            }
+        }
+        throw new IllegalArgumentException("Threshold " + threshold + " is not a bucket edge of " + metric + ".");
+    }
+/**
+     * Gets the bitmap of patients with a recorded value of a metric in the cohort window.
+     * The returned bitmap is owned by the index and must only be read from within evaluate.
+     *
+     * @param metric The name of the metric.
+     * @return The CompressedBitmap of patient IDs with data.
+     */
+    CompressedBitmap getWithData(String metric) {
+        edgesOf(metric);
+        return withData.get(metric);
+    }
+/**
+     * Rebuilds the whole index from the health data of the last 14 days in a single grouped query.
+     */
+    public synchronized void rebuild() {
+
+        String query = averagesQuery(false);
+
+        refreshedDuringRebuild.clear();
+        rebuilding = true;
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setDate(1, java.sql.Date.valueOf(LocalDate.now().minusDays(WINDOW_DAYS)));
+            try (ResultSet rs = statement.executeQuery()) {
+                lock.writeLock().lock();
+                try {
+                    clear();
+                    RowMappers.MetricColumns columns = new RowMappers.MetricColumns(rs, "user_id", metrics);
+                    double[] averages = new double[metrics.length];
+                    while (rs.next()) {
+                        columns.read(rs, averages);
+                        index(columns.getId(rs), averages);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            rebuilding = false;
+        }
+        for (int userId : refreshedDuringRebuild.toArray(new Integer[0])) {
+            refresh(userId);
+        }
+        refreshedDuringRebuild.clear();
+    }
+/**
+     * Recomputes the averages of one patient and moves the patient to the matching buckets.
+     *
+     * @param userId The ID of the patient.
+     */
+    public void refresh(int userId) {
+
+        String query = averagesQuery(true);
+
+        synchronized (refreshLocks[Math.floorMod(userId, REFRESH_STRIPES)]) {
+            refreshNow(userId, query);
+        }
+    }
+
+    private void refreshNow(int userId, String query) {
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setDate(1, java.sql.Date.valueOf(LocalDate.now().minusDays(WINDOW_DAYS)));
+            statement.setInt(2, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                lock.writeLock().lock();
+                try {
+                    remove(userId);
+                    if (rs.next()) {
+                        RowMappers.MetricColumns columns = new RowMappers.MetricColumns(rs, "user_id", metrics);
+                        double[] averages = new double[metrics.length];
+                        columns.read(rs, averages);
+                        index(userId, averages);
+                    }
+                    // A rebuild that has not applied its rows yet may have read them before this refresh
+                    if (rebuilding) {
+                        refreshedDuringRebuild.add(userId);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Refreshes the patient of a created or updated health data entry.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    @Override
+    public void onHealthDataSaved(HealthData previous, HealthData current) {
+        refresh(current.getUserId());
+    }
+/**
+     * Refreshes the patient of a deleted health data entry.
+     *
+     * @param previous The HealthData object as it was stored before the deletion.
+     */
+    @Override
+    public void onHealthDataDeleted(HealthData previous) {
+        refresh(previous.getUserId());
+    }
+/**
+     * Removes a purged patient from the index.
+     *
+     * @param userId The ID of the purged user.
+     */
+    @Override
+    public void onUserPurged(int userId) {
+        refresh(userId);
+    }
+
+    private String averagesQuery(boolean singleUser) {
+        return "SELECT user_id, AVG(steps) AS steps, AVG(heart_rate) AS heart_rate, AVG(water_intake) AS water_intake, " +
+                "AVG(hours_of_sleep) AS hours_of_sleep FROM public.\"health_data\" WHERE date > ?" +
+                (singleUser ? " AND user_id = ?" : "") + " GROUP BY user_id";
+    }
+
+    // The averages are in the order of metrics, which is the order of bucketEdges
+    private void index(int userId, double[] averages) {
+        int m = 0;
+        for (Map.Entry<String, double[]> entry : bucketEdges.entrySet()) {
+            double average = averages[m++];
+            // AVG skips NULLs, so a metric without a single recorded value in the window averages to NULL
+            if (Double.isNaN(average)) {
+                continue;
+            }
+            withData.get(entry.getKey()).add(userId);
+            double[] edges = entry.getValue();
+            CompressedBitmap[] bitmaps = below.get(entry.getKey());
+            for (int i = 0; i < edges.length; i++) {
+                if (average < edges[i]) {
+                    bitmaps[i].add(userId);
+                }
+            }
+        }
+    }
+
+    private void remove(int userId) {
+        for (CompressedBitmap bitmap : withData.values()) {
+            bitmap.remove(userId);
+        }
+        for (CompressedBitmap[] bitmaps : below.values()) {
+            for (CompressedBitmap bitmap : bitmaps) {
+                bitmap.remove(userId);
+            }
+        }
+    }
+
+    private void clear() {
+        for (Map.Entry<String, double[]> entry : bucketEdges.entrySet()) {
+            withData.put(entry.getKey(), new CompressedBitmap());
+            CompressedBitmap[] bitmaps = new CompressedBitmap[entry.getValue().length];
+            for (int i = 0; i < bitmaps.length; i++) {
+                bitmaps[i] = new CompressedBitmap();
+            }
+            below.put(entry.getKey(), bitmaps);
+        }
+    }
+
+    private double[] edgesOf(String metric) {
+        double[] edges = bucketEdges.get(metric);
+        if (edges == null) {
+            throw new IllegalArgumentException("Unknown health metric: " + metric);
+        }
+        return edges;
+    }
+}
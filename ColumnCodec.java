@@ -0,0 +1,189 @@
+/**
+ * This class holds the column encodings used by the compressed health data formats:
+ * frame-of-reference bit packing for ints, delta encoding for sorted ints such as dates,
+ * and XOR compression for doubles, where a value equal to the previous one costs a single bit.
+ */
+
+public final class ColumnCodec {
+
+    private ColumnCodec() {
+    }
+/**
+     * Writes ints bit-packed relative to their minimum, using only as many bits per value as the range needs.
+     *
+     * @param out The BitOutput to write to.
+     * @param values The values to write.
+     * @param count The number of values to write from the start of the array.
+     */
+    public static void writePackedInts(BitOutput out, int[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        int width = 64 - Long.numberOfLeadingZeros(max - min);
+        out.writeBits(min, 32);
+        out.writeBits(width, 6);
+        for (int i = 0; i < count; i++) {
+            out.writeBits(values[i] - min, width);
+        }
+    }
+/**
+     * Reads ints written by writePackedInts.
+     *
+     * @param in The BitInput to read from.
+     * @param count The number of values to read.
+     * @return The values read.
+     */
+    public static int[] readPackedInts(BitInput in, int count) {
+        int[] values = new int[count];
+        if (count == 0) {
+            return values;
+        }
+        long min = (int) in.readBits(32);
+        int width = (int) in.readBits(6);
+        for (int i = 0; i < count; i++) {
+            values[i] = (int) (min + in.readBits(width));
+        }
+        return values;
+    }
+/**
+     * Writes ints as the first value followed by the bit-packed differences between neighbours.
+     * This suits ascending values such as epoch days, where the differences are small.
+     *
+     * @param out The BitOutput to write to.
+     * @param values The values to write.
+     * @param count The number of values to write from the start of the array.
+     */
+    public static void writeDeltaInts(BitOutput out, int[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        int[] deltas = new int[count - 1];
+        for (int i = 1; i < count; i++) {
+            deltas[i - 1] = values[i] - values[i - 1];
+        }
+        out.writeBits(values[0], 32);
+        writePackedInts(out, deltas, deltas.length);
+    }
+/**
+     * Reads ints written by writeDeltaInts.
+     *
+     * @param in The BitInput to read from.
+     * @param count The number of values to read.
+     * @return The values read.
+     */
+    public static int[] readDeltaInts(BitInput in, int count) {
+        int[] values = new int[count];
+        if (count == 0) {
+            return values;
+        }
+        values[0] = (int) in.readBits(32);
+        int[] deltas = readPackedInts(in, count - 1);
+        for (int i = 1; i < count; i++) {
+            values[i] = values[i - 1] + deltas[i - 1];
+        }
+        return values;
+    }
+/**
+     * Writes doubles XOR-compressed against the previous value.
+     *
+     * @param out The BitOutput to write to.
+     * @param values The values to write.
+     * @param count The number of values to write from the start of the array.
+     */
+    public static void writeXorDoubles(BitOutput out, double[] values, int count) {
+        XorState state = new XorState();
+        for (int i = 0; i < count; i++) {
+            writeXorDouble(out, state, values[i]);
+        }
+    }
+/**
+     * Reads doubles written by writeXorDoubles.
+     *
+     * @param in The BitInput to read from.
+     * @param count The number of values to read.
+     * @return The values read.
+     */
+    public static double[] readXorDoubles(BitInput in, int count) {
+        double[] values = new double[count];
+        XorState state = new XorState();
+        for (int i = 0; i < count; i++) {
+            values[i] = readXorDouble(in, state);
+        }
+        return values;
+    }
+/**
+     * Writes one double XOR-compressed against the previous value of the same stream.
+     * A repeated value costs one bit; a value whose changed bits fit the previous window costs two bits plus those bits.
+     *
+     * @param out The BitOutput to write to.
+     * @param state The state of the stream, updated by this call.
+     * @param value The value to write.
+     */
+    public static void writeXorDouble(BitOutput out, XorState state, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (state.first) {
+            out.writeBits(bits, 64);
+            state.first = false;
+            state.previous = bits;
+            return;
+        }
+        long xor = bits ^ state.previous;
+        state.previous = bits;
+        if (xor == 0) {
+            out.writeBit(false);
+            return;
+        }
+        out.writeBit(true);
+        int leading = Long.numberOfLeadingZeros(xor);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (state.leading >= 0 && leading >= state.leading && trailing >= state.trailing) {
+            out.writeBit(false);
+            out.writeBits(xor >>> state.trailing, 64 - state.leading - state.trailing);
+        } else {
+            out.writeBit(true);
+            out.writeBits(leading, 6);
+            out.writeBits(63 - leading - trailing, 6);
+            out.writeBits(xor >>> trailing, 64 - leading - trailing);
+            state.leading = leading;
+            state.trailing = trailing;
+        }
+    }
+/**
+     * Reads one double written by writeXorDouble.
+     *
+     * @param in The BitInput to read from.
+     * @param state The state of the stream, updated by this call.
+     * @return The value read.
+     */
+    public static double readXorDouble(BitInput in, XorState state) {
+        if (state.first) {
+            state.first = false;
+            state.previous = in.readBits(64);
+            return Double.longBitsToDouble(state.previous);
+        }
+        if (in.readBit()) {
+            if (in.readBit()) {
+                state.leading = (int) in.readBits(6);
+                int meaningful = (int) in.readBits(6) + 1;
+                state.trailing = 64 - state.leading - meaningful;
+            }
+            long xor = in.readBits(64 - state.leading - state.trailing) << state.trailing;
+            state.previous ^= xor;
+        }
+        return Double.longBitsToDouble(state.previous);
+    }
+
+    /** The running state of one XOR-compressed double stream. */
+    public static final class XorState {
+        private boolean first = true;
+        private long previous;
+        private int leading = -1;
+        private int trailing;
+    }
+}
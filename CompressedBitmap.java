@@ -0,0 +1,434 @@
+import java.util.Arrays;
+
+/**
+ * This class is a compressed set of non-negative int values, such as patient IDs, in the style of a Roaring bitmap.
+ * Values are grouped by their upper 16 bits; each group is stored either as a sorted array of the lower 16 bits
+ * when it is sparse, or as a 65536-bit bitmap when it is dense. AND, OR and AND NOT work group by group,
+ * mostly on whole 64-bit words. It is not thread safe; callers synchronize around it.
+ */
+
+public class CompressedBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+/**
+     * Constructs an empty CompressedBitmap object.
+     */
+    public CompressedBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+/**
+     * Creates a bitmap holding the given values.
+     *
+     * @param values The values to add.
+     * @return A new CompressedBitmap object.
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+/**
+     * Adds a value to the bitmap.
+     *
+     * @param value The value to add.
+     */
+    public void add(int value) {
+        char high = (char) (value >>> 16);
+        int index = indexOf(high);
+        if (index >= 0) {
+            containers[index] = containers[index].add((char) value);
+        } else {
+            insertAt(-index - 1, high, new ArrayContainer().add((char) value));
+        }
+    }
+/**
+     * Removes a value from the bitmap.
+     *
+     * @param value The value to remove.
+     */
+    public void remove(int value) {
+        int index = indexOf((char) (value >>> 16));
+        if (index >= 0) {
+            Container container = containers[index].remove((char) value);
+            if (container.cardinality() == 0) {
+                removeAt(index);
+            } else {
+                containers[index] = container;
+            }
+        }
+    }
+/**
+     * Checks whether the bitmap holds a value.
+     *
+     * @param value The value to look up.
+     * @return True if the value is present, false otherwise.
+     */
+    public boolean contains(int value) {
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+/**
+     * Gets the number of values in the bitmap.
+     *
+     * @return The number of values.
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+/**
+     * Checks whether the bitmap holds no values.
+     *
+     * @return True if the bitmap is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+/**
+     * Computes the values present in both this bitmap and another one.
+     *
+     * @param other The other bitmap.
+     * @return A new CompressedBitmap object with the intersection.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] == other.keys[j]) {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            } else if (keys[i] < other.keys[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+/**
+     * Computes the values present in this bitmap, another one, or both.
+     *
+     * @param other The other bitmap.
+     * @return A new CompressedBitmap object with the union.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+/**
+     * Computes the values present in this bitmap but not in another one.
+     *
+     * @param other The other bitmap.
+     * @return A new CompressedBitmap object with the difference.
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j])
+                    : containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+/**
+     * Gets the values of the bitmap in ascending order.
+     *
+     * @return An array of the values.
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            position = containers[i].copyTo(values, position, keys[i] << 16);
+        }
+        return values;
+    }
+
+    private int indexOf(char key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else if (keys[middle] > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertAt(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private void append(char key, Container container) {
+        insertAt(size, key, container);
+    }
+
+    /** A group of values sharing the same upper 16 bits. */
+    private abstract static class Container {
+        abstract Container add(char value);
+        abstract Container remove(char value);
+        abstract boolean contains(char value);
+        abstract int cardinality();
+        abstract Container copy();
+        abstract int copyTo(int[] values, int position, int high);
+        abstract BitmapContainer toBitmap();
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, true);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).filter(this, true);
+            }
+            return toBitmap().combine(other.toBitmap(), 0);
+        }
+
+        Container or(Container other) {
+            return toBitmap().combine(other.toBitmap(), 1);
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, false);
+            }
+            return toBitmap().combine(other.toBitmap(), 2);
+        }
+    }
+
+    /** A sparse group stored as a sorted array of the lower 16 bits. */
+    private static final class ArrayContainer extends Container {
+        private char[] content = new char[4];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(content, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(content, index, content, index + 1, cardinality - index);
+            content[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(content, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer copy = new ArrayContainer();
+            copy.content = Arrays.copyOf(content, Math.max(4, cardinality));
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        int copyTo(int[] values, int position, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                values[position++] = high | content[i];
+            }
+            return position;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[content[i] >>> 6] |= 1L << content[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+
+        /** Keeps the values that are (or, when keep is false, are not) present in the other container. */
+        Container filter(Container other, boolean keep) {
+            ArrayContainer result = new ArrayContainer();
+            result.content = new char[Math.max(4, cardinality)];
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(content[i]) == keep) {
+                    result.content[result.cardinality++] = content[i];
+                }
+            }
+            return result;
+        }
+    }
+
+    /** A dense group stored as a 65536-bit bitmap. */
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[1024];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            long after = before | (1L << value);
+            words[value >>> 6] = after;
+            if (before != after) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long before = words[value >>> 6];
+            long after = before & ~(1L << value);
+            words[value >>> 6] = after;
+            if (before != after) {
+                cardinality--;
+            }
+            return cardinality <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        int copyTo(int[] values, int position, int high) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[position++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        /** Combines two bitmaps word by word: 0 for AND, 1 for OR, 2 for AND NOT. */
+        Container combine(BitmapContainer other, int operation) {
+            BitmapContainer result = new BitmapContainer();
+            int cardinality = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word;
+                if (operation == 0) {
+                    word = words[i] & other.words[i];
+                } else if (operation == 1) {
+                    word = words[i] | other.words[i];
+                } else {
+                    word = words[i] & ~other.words[i];
+                }
+                result.words[i] = word;
+                cardinality += Long.bitCount(word);
+            }
+            result.cardinality = cardinality;
+            return cardinality <= ARRAY_LIMIT ? result.toArray() : result;
+        }
+
+        private ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.content = new char[Math.max(4, cardinality)];
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    array.content[array.cardinality++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+    }
+}
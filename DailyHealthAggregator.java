@@ -0,0 +1,363 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class turns the partial readings that devices send during the day, such as step increments, water logs
+ * and sleep segments, into daily health_data entries. Readings are buffered per user and day in primitive arrays
+ * and merged commutatively: amounts are summed, heart rates are averaged and weight and height keep the latest
+ * measurement, so readings may arrive in any order. Days that have ended are flushed every few minutes in one
+ * batch through HealthDataDao, and their buffer entries are dropped, so memory grows with the number of users
+ * sending readings rather than with the number of readings. HealthDataDao keeps the heart rate sums and measurement
+ * times of flushed days, so readings that arrive after their day was flushed are merged the same way.
+ * Readings reach the aggregator through importReadings, which reads the activity log export of a device, or the add
+ * and record methods.
+ */
+
+public class DailyHealthAggregator {
+
+    private static final long FLUSH_INTERVAL_MINUTES = 5;
+    private static final DailyHealthAggregator INSTANCE = new DailyHealthAggregator();
+
+    private final HealthDataDao healthDataDao = new HealthDataDao();
+    private Buffer buffer = new Buffer(64);
+    private ScheduledExecutorService flusher;
+
+    private DailyHealthAggregator() {
+    }
+/**
+     * Gets the shared DailyHealthAggregator instance.
+     *
+     * @return The DailyHealthAggregator instance.
+     */
+    public static DailyHealthAggregator getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Starts flushing ended days every few minutes in the background, and flushes every buffered day when the application exits.
+     */
+    public synchronized void start() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "daily-health-aggregator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::flushEndedDays, FLUSH_INTERVAL_MINUTES, FLUSH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> flushBefore(LocalDate.MAX), "daily-health-aggregator-flush"));
+        }
+    }
+/**
+     * Adds the readings of a device activity log to the buffer and merges them into the daily entries straight away.
+     * The file is a CSV file with a header line and one "time,type,value" line per reading, where time is an ISO-8601
+     * instant such as 2024-03-01T08:15:00Z and type is steps, water, sleep, heart_rate, weight or height. Sleep lines
+     * give the end of the segment and its length in hours. Readings of today may be merged again later as more arrive,
+     * which adds to the entry the same way.
+     *
+     * @param userId The ID of the user.
+     * @param file The path of the CSV file.
+     * @return The number of readings imported.
+     * @throws IOException If the file could not be read, a line could not be parsed, or the readings could not be stored.
+     */
+    public int importReadings(int userId, Path file) throws IOException {
+        int imported = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                try {
+                    addReading(userId, Instant.parse(fields[0].trim()), fields[1].trim(), Double.parseDouble(fields[2].trim()));
+                } catch (RuntimeException e) {
+                    throw new IOException("Line " + lineNumber + " of " + file + " is not a valid reading: " + line, e);
+                }
+                imported++;
+            }
+        }
+        if (!flushBefore(LocalDate.MAX)) {
+            throw new IOException("The readings could not be stored; they stay buffered and are stored with the next flush.");
+        }
+        return imported;
+    }
+
+    private void addReading(int userId, Instant time, String type, double value) {
+        switch (type) {
+            case "steps":
+                addSteps(userId, time, (int) value);
+                break;
+            case "water":
+                addWaterIntake(userId, time, value);
+                break;
+            case "sleep":
+                addSleep(userId, time, value);
+                break;
+            case "heart_rate":
+                addHeartRate(userId, time, (int) Math.round(value));
+                break;
+            case "weight":
+                recordWeight(userId, time, value);
+                break;
+            case "height":
+                recordHeight(userId, time, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown reading type: " + type);
+        }
+    }
+/**
+     * Adds a step increment to the day it was counted on.
+     *
+     * @param userId The ID of the user.
+     * @param time The time of the reading.
+     * @param steps The number of steps since the previous reading.
+     */
+    public synchronized void addSteps(int userId, Instant time, int steps) {
+        int slot = buffer.slotOf(key(userId, time));
+        buffer.steps[slot] += steps;
+    }
+/**
+     * Adds a logged amount of water to the day it was drunk on.
+     *
+     * @param userId The ID of the user.
+     * @param time The time of the reading.
+     * @param ounces The amount of water in ounces.
+     */
+    public synchronized void addWaterIntake(int userId, Instant time, double ounces) {
+        int slot = buffer.slotOf(key(userId, time));
+        buffer.waterIntake[slot] += ounces;
+    }
+/**
+     * Adds a sleep segment to the day it ended on, so a night's sleep counts towards the morning the user woke up.
+     *
+     * @param userId The ID of the user.
+     * @param end The time the segment ended.
+     * @param hours The length of the segment in hours.
+     */
+    public synchronized void addSleep(int userId, Instant end, double hours) {
+        int slot = buffer.slotOf(key(userId, end));
+        buffer.hoursOfSleep[slot] += hours;
+    }
+/**
+     * Adds a heart rate reading; the day's heart rate is the average of its readings.
+     *
+     * @param userId The ID of the user.
+     * @param time The time of the reading.
+     * @param heartRate The heart rate in beats per minute.
+     */
+    public synchronized void addHeartRate(int userId, Instant time, int heartRate) {
+        int slot = buffer.slotOf(key(userId, time));
+        buffer.heartRateSum[slot] += heartRate;
+        buffer.heartRateCount[slot]++;
+    }
+/**
+     * Records a weight measurement; the day keeps its latest measurement.
+     *
+     * @param userId The ID of the user.
+     * @param time The time of the measurement.
+     * @param weight The weight.
+     */
+    public synchronized void recordWeight(int userId, Instant time, double weight) {
+        int slot = buffer.slotOf(key(userId, time));
+        buffer.mergeWeight(slot, time.getEpochSecond(), weight);
+    }
+/**
+     * Records a height measurement; the day keeps its latest measurement.
+     *
+     * @param userId The ID of the user.
+     * @param time The time of the measurement.
+     * @param height The height.
+     */
+    public synchronized void recordHeight(int userId, Instant time, double height) {
+        int slot = buffer.slotOf(key(userId, time));
+        buffer.mergeHeight(slot, time.getEpochSecond(), height);
+    }
+/**
+     * Gets the number of user and day pairs currently buffered.
+     *
+     * @return The number of buffered days.
+     */
+    public synchronized int getBufferedDays() {
+        return buffer.size;
+    }
+/**
+     * Flushes every buffered day before today.
+     *
+     * @return A boolean indicating whether the flush succeeded; on failure the readings stay buffered.
+     */
+    public boolean flushEndedDays() {
+        return flushBefore(LocalDate.now());
+    }
+
+    private boolean flushBefore(LocalDate date) {
+        Buffer drained;
+        synchronized (this) {
+            Buffer kept = new Buffer(buffer.size);
+            drained = new Buffer(buffer.size);
+            for (int slot = 0; slot < buffer.keys.length; slot++) {
+                long key = buffer.keys[slot];
+                if (key != Buffer.EMPTY) {
+                    (dateOf(key).isBefore(date) ? drained : kept).mergeFrom(buffer, slot);
+                }
+            }
+            if (drained.size == 0) {
+                return true;
+            }
+            buffer = kept;
+        }
+
+        List<DailyReadings> partials = new ArrayList<>(drained.size);
+        for (int slot = 0; slot < drained.keys.length; slot++) {
+            if (drained.keys[slot] != Buffer.EMPTY) {
+                partials.add(drained.toReadings(slot));
+            }
+        }
+        if (healthDataDao.mergeDailyHealthData(partials)) {
+            return true;
+        }
+
+        // Merges are commutative, so the failed days can simply be merged back into whatever arrived meanwhile
+        synchronized (this) {
+            for (int slot = 0; slot < drained.keys.length; slot++) {
+                if (drained.keys[slot] != Buffer.EMPTY) {
+                    buffer.mergeFrom(drained, slot);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long key(int userId, Instant time) {
+        long epochDay = time.atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+        return ((long) userId << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+
+    private static int userIdOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static LocalDate dateOf(long key) {
+        return LocalDate.ofEpochDay((int) key);
+    }
+
+    /** The buffered readings, one slot per user and day, in parallel primitive arrays indexed by an open addressing table. */
+    private static final class Buffer {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private static final long NO_TIME = DailyReadings.NO_TIME;
+
+        private long[] keys;
+        private long[] steps;
+        private double[] waterIntake;
+        private double[] hoursOfSleep;
+        private double[] heartRateSum;
+        private int[] heartRateCount;
+        private double[] weight;
+        private long[] weightTime;
+        private double[] height;
+        private long[] heightTime;
+        private int size;
+
+        private Buffer(int expectedKeys) {
+            allocate(Integer.highestOneBit(Math.max(16, expectedKeys * 2) - 1) << 1);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            steps = new long[capacity];
+            waterIntake = new double[capacity];
+            hoursOfSleep = new double[capacity];
+            heartRateSum = new double[capacity];
+            heartRateCount = new int[capacity];
+            weight = new double[capacity];
+            weightTime = new long[capacity];
+            Arrays.fill(weightTime, NO_TIME);
+            height = new double[capacity];
+            heightTime = new long[capacity];
+            Arrays.fill(heightTime, NO_TIME);
+            size = 0;
+        }
+
+        private int slotOf(long key) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            Buffer old = new Buffer(0);
+            old.keys = keys;
+            old.steps = steps;
+            old.waterIntake = waterIntake;
+            old.hoursOfSleep = hoursOfSleep;
+            old.heartRateSum = heartRateSum;
+            old.heartRateCount = heartRateCount;
+            old.weight = weight;
+            old.weightTime = weightTime;
+            old.height = height;
+            old.heightTime = heightTime;
+            allocate(keys.length * 2);
+            for (int slot = 0; slot < old.keys.length; slot++) {
+                if (old.keys[slot] != EMPTY) {
+                    mergeFrom(old, slot);
+                }
+            }
+        }
+
+        private void mergeFrom(Buffer other, int otherSlot) {
+            int slot = slotOf(other.keys[otherSlot]);
+            steps[slot] += other.steps[otherSlot];
+            waterIntake[slot] += other.waterIntake[otherSlot];
+            hoursOfSleep[slot] += other.hoursOfSleep[otherSlot];
+            heartRateSum[slot] += other.heartRateSum[otherSlot];
+            heartRateCount[slot] += other.heartRateCount[otherSlot];
+            mergeWeight(slot, other.weightTime[otherSlot], other.weight[otherSlot]);
+            mergeHeight(slot, other.heightTime[otherSlot], other.height[otherSlot]);
+        }
+
+        // Latest measurement wins, with the larger value breaking ties, so the result does not depend on arrival order
+        private void mergeWeight(int slot, long time, double value) {
+            if (time > weightTime[slot] || (time == weightTime[slot] && value > weight[slot])) {
+                weightTime[slot] = time;
+                weight[slot] = value;
+            }
+        }
+
+        private void mergeHeight(int slot, long time, double value) {
+            if (time > heightTime[slot] || (time == heightTime[slot] && value > height[slot])) {
+                heightTime[slot] = time;
+                height[slot] = value;
+            }
+        }
+
+        private DailyReadings toReadings(int slot) {
+            return new DailyReadings(userIdOf(keys[slot]), dateOf(keys[slot]), steps[slot], waterIntake[slot], hoursOfSleep[slot],
+                    heartRateSum[slot], heartRateCount[slot], weight[slot], weightTime[slot], height[slot], heightTime[slot]);
+        }
+    }
+}
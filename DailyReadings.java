@@ -0,0 +1,167 @@
+import java.time.LocalDate;
+
+/**
+ * This class holds the partial readings of one user and day in a form that merges commutatively: amounts are summed,
+ * the heart rate is kept as a sum and a count of readings, and weight and height keep the latest measurement with the
+ * time it was taken. Merging the same readings in any order or grouping gives the same result, which lets
+ * HealthDataDao keep the state of a day in health_data_readings and fold later readings into it.
+ */
+
+public class DailyReadings {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private final int userId;
+    private final LocalDate date;
+    private final long steps;
+    private final double waterIntake;
+    private final double hoursOfSleep;
+    private final double heartRateSum;
+    private final int heartRateCount;
+    private final double weight;
+    private final long weightTime;
+    private final double height;
+    private final long heightTime;
+
+/**
+     * Constructs a DailyReadings object with the specified attributes.
+     *
+     * @param userId The ID of the user.
+     * @param date The day of the readings.
+     * @param steps The number of steps.
+     * @param waterIntake The water intake.
+     * @param hoursOfSleep The hours of sleep.
+     * @param heartRateSum The sum of the heart rate readings.
+     * @param heartRateCount The number of heart rate readings.
+     * @param weight The latest weight measurement.
+     * @param weightTime The time of the latest weight measurement in seconds since the epoch, or NO_TIME if there is none.
+     * @param height The latest height measurement.
+     * @param heightTime The time of the latest height measurement in seconds since the epoch, or NO_TIME if there is none.
+     */
+    public DailyReadings(int userId, LocalDate date, long steps, double waterIntake, double hoursOfSleep, double heartRateSum,
+                         int heartRateCount, double weight, long weightTime, double height, long heightTime) {
+        this.userId = userId;
+        this.date = date;
+        this.steps = steps;
+        this.waterIntake = waterIntake;
+        this.hoursOfSleep = hoursOfSleep;
+        this.heartRateSum = heartRateSum;
+        this.heartRateCount = heartRateCount;
+        this.weight = weight;
+        this.weightTime = weightTime;
+        this.height = height;
+        this.heightTime = heightTime;
+    }
+/**
+     * Gets the ID of the user.
+     *
+     * @return The ID of the user.
+     */
+    public int getUserId() {
+        return userId;
+    }
+/**
+     * Gets the day of the readings.
+     *
+     * @return The day of the readings.
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+/**
+     * Gets the number of steps.
+     *
+     * @return The number of steps.
+     */
+    public long getSteps() {
+        return steps;
+    }
+/**
+     * Gets the water intake.
+     *
+     * @return The water intake.
+     */
+    public double getWaterIntake() {
+        return waterIntake;
+    }
+/**
+     * Gets the hours of sleep.
+     *
+     * @return The hours of sleep.
+     */
+    public double getHoursOfSleep() {
+        return hoursOfSleep;
+    }
+/**
+     * Gets the sum of the heart rate readings.
+     *
+     * @return The sum of the heart rate readings.
+     */
+    public double getHeartRateSum() {
+        return heartRateSum;
+    }
+/**
+     * Gets the number of heart rate readings.
+     *
+     * @return The number of heart rate readings.
+     */
+    public int getHeartRateCount() {
+        return heartRateCount;
+    }
+/**
+     * Gets the average of the heart rate readings.
+     *
+     * @return The rounded average heart rate, or 0 if there are no heart rate readings.
+     */
+    public int getHeartRate() {
+        return heartRateCount == 0 ? 0 : (int) Math.round(heartRateSum / heartRateCount);
+    }
+/**
+     * Gets the latest weight measurement.
+     *
+     * @return The weight, or 0 if there is no weight measurement.
+     */
+    public double getWeight() {
+        return weightTime == NO_TIME ? 0 : weight;
+    }
+/**
+     * Gets the time of the latest weight measurement.
+     *
+     * @return The time in seconds since the epoch, or NO_TIME if there is no weight measurement.
+     */
+    public long getWeightTime() {
+        return weightTime;
+    }
+/**
+     * Gets the latest height measurement.
+     *
+     * @return The height, or 0 if there is no height measurement.
+     */
+    public double getHeight() {
+        return heightTime == NO_TIME ? 0 : height;
+    }
+/**
+     * Gets the time of the latest height measurement.
+     *
+     * @return The time in seconds since the epoch, or NO_TIME if there is no height measurement.
+     */
+    public long getHeightTime() {
+        return heightTime;
+    }
+/**
+     * Merges these readings with other readings of the same user and day.
+     * The latest weight and height measurements win, with the larger value breaking ties, so the result does not
+     * depend on which readings are merged into which.
+     *
+     * @param other The other readings.
+     * @return A new DailyReadings object holding both sets of readings.
+     */
+    public DailyReadings merge(DailyReadings other) {
+        boolean otherWeight = other.weightTime > weightTime || (other.weightTime == weightTime && other.weight > weight);
+        boolean otherHeight = other.heightTime > heightTime || (other.heightTime == heightTime && other.height > height);
+        return new DailyReadings(userId, date, steps + other.steps, waterIntake + other.waterIntake, hoursOfSleep + other.hoursOfSleep,
+                heartRateSum + other.heartRateSum, heartRateCount + other.heartRateCount,
+                otherWeight ? other.weight : weight, otherWeight ? other.weightTime : weightTime,
+                otherHeight ? other.height : height, otherHeight ? other.heightTime : heightTime);
+    }
+}
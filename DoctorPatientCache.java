@@ -0,0 +1,138 @@
+import java.sql.*;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class caches the doctor_patient relationships in both directions, the patients of every doctor and the
+ * doctors of every patient, so access checks, notifications and per-doctor cohorts resolve relationships without
+ * a query. It is loaded from the database at startup and updated by the assignment methods of DoctorPortalDao;
+ * invalidate reloads it when the table was changed outside the application.
+ */
+
+public class DoctorPatientCache {
+
+    private static final DoctorPatientCache INSTANCE = new DoctorPatientCache();
+
+    private volatile Map<Integer, Set<Integer>> patientsByDoctor = new ConcurrentHashMap<>();
+    private volatile Map<Integer, Set<Integer>> doctorsByPatient = new ConcurrentHashMap<>();
+
+    private DoctorPatientCache() {
+    }
+/**
+     * Gets the shared DoctorPatientCache instance.
+     *
+     * @return The DoctorPatientCache instance.
+     */
+    public static DoctorPatientCache getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Loads every relationship from the database, replacing the cached ones.
+     * The relationships are read into new maps that replace the old ones when complete, so readers keep seeing
+     * the old relationships during the load instead of empty or partial ones. If the load fails the old ones are kept.
+     */
+    public synchronized void load() {
+
+        String query = "SELECT doctor_id, patient_id FROM public.\"doctor_patient\"";
+
+        Map<Integer, Set<Integer>> patients = new ConcurrentHashMap<>();
+        Map<Integer, Set<Integer>> doctors = new ConcurrentHashMap<>();
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                int doctorId = rs.getInt("doctor_id");
+                int patientId = rs.getInt("patient_id");
+                patients.computeIfAbsent(doctorId, k -> ConcurrentHashMap.newKeySet()).add(patientId);
+                doctors.computeIfAbsent(patientId, k -> ConcurrentHashMap.newKeySet()).add(doctorId);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        patientsByDoctor = patients;
+        doctorsByPatient = doctors;
+    }
+/**
+     * Drops the cached relationships and loads them again, after doctor_patient was changed outside the application.
+     */
+    public void invalidate() {
+        load();
+    }
+/**
+     * Gets the patients of a doctor.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return A read-only view of the patient IDs, empty if the doctor has no patients.
+     */
+    public Set<Integer> getPatients(int doctorId) {
+        return Collections.unmodifiableSet(patientsByDoctor.getOrDefault(doctorId, Collections.emptySet()));
+    }
+/**
+     * Gets the doctors of a patient.
+     *
+     * @param patientId The ID of the patient.
+     * @return A read-only view of the doctor IDs, empty if the patient has no doctor.
+     */
+    public Set<Integer> getDoctors(int patientId) {
+        return Collections.unmodifiableSet(doctorsByPatient.getOrDefault(patientId, Collections.emptySet()));
+    }
+/**
+     * Checks whether a patient is assigned to a doctor.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param patientId The ID of the patient.
+     * @return True if the patient is assigned to the doctor, false otherwise.
+     */
+    public boolean isAssigned(int doctorId, int patientId) {
+        return getPatients(doctorId).contains(patientId);
+    }
+/**
+     * Records a stored assignment.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param patientId The ID of the patient.
+     */
+    public synchronized void add(int doctorId, int patientId) {
+        patientsByDoctor.computeIfAbsent(doctorId, k -> ConcurrentHashMap.newKeySet()).add(patientId);
+        doctorsByPatient.computeIfAbsent(patientId, k -> ConcurrentHashMap.newKeySet()).add(doctorId);
+    }
+/**
+     * Records a deleted assignment.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param patientId The ID of the patient.
+     */
+    public synchronized void remove(int doctorId, int patientId) {
+        removeFrom(patientsByDoctor, doctorId, patientId);
+        removeFrom(doctorsByPatient, patientId, doctorId);
+    }
+/**
+     * Drops every relationship of a purged user, as a doctor and as a patient.
+     *
+     * @param userId The ID of the user.
+     */
+    public synchronized void removeUser(int userId) {
+        for (int patientId : patientsByDoctor.getOrDefault(userId, Collections.emptySet())) {
+            removeFrom(doctorsByPatient, patientId, userId);
+        }
+        for (int doctorId : doctorsByPatient.getOrDefault(userId, Collections.emptySet())) {
+            removeFrom(patientsByDoctor, doctorId, userId);
+        }
+        patientsByDoctor.remove(userId);
+        doctorsByPatient.remove(userId);
+    }
+
+    private static void removeFrom(Map<Integer, Set<Integer>> map, int key, int value) {
+        Set<Integer> values = map.get(key);
+        if (values != null) {
+            values.remove(value);
+            if (values.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+}
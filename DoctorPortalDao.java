@@ -1,6 +1,13 @@
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * This class provides data access methods for interacting with the database
@@ -10,16 +17,19 @@ import java.util.List;
 
 public class DoctorPortalDao {
     
-    private UserDao userDao;
+    private static final int PANEL_LOOKBACK_DAYS = 30;
+    private static final int ASSIGN_BATCH_SIZE = 1000;
+
     private HealthDataDao healthDataDao;
+    private RecommendationSystem recommendationSystem;
 
 /**
      * Constructs a DoctorPortalDao object.
-     * Initializes UserDao and HealthDataDao objects.
+     * Initializes HealthDataDao and RecommendationSystem objects.
      */
     public DoctorPortalDao() {
-        userDao = new UserDao();
         healthDataDao = new HealthDataDao();
+        recommendationSystem = new RecommendationSystem();
     }
 /**
      * Retrieves a Doctor object by its associated user ID.
@@ -28,52 +38,42 @@ public class DoctorPortalDao {
      * @return A Doctor object corresponding to the provided user ID, or null if not found.
      */
     public Doctor getDoctorById(int userId) {
-        Doctor doctor = null;
 
-        String query = "SELECT * FROM public.\"doctors\" WHERE user_id = ?";
+        String query = "SELECT u.*, d.medical_license_number, d.specialization FROM public.\"doctors\" d " +
+                "JOIN public.\"users\" u ON u.user_id = d.user_id WHERE d.user_id = ? AND u.deleted_at IS NULL";
 
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
             statement.setInt(1, userId);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                // Retrieve doctor-specific details from the result set
-                String medicalLicenseNumber = rs.getString("medical_license_number");
-                String specialization = rs.getString("specialization");
-                             
-                User user = userDao.getUserById(userId); 
-                
-                doctor = new Doctor(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getPassword(), user.isDoctor(), medicalLicenseNumber, specialization);
+            try (ResultSet rs = statement.executeQuery()) {
+                return RowMappers.DOCTOR.mapFirst(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return doctor;
+        return null;
     }
     /**
      * Retrieves a list of patients associated with a doctor by the doctor's ID.
+     * Only the ID, name and email are loaded, in one query; deleted patients are left out.
      *
      * @param doctorId The ID of the doctor.
-     * @return A list of User objects representing the patients of the doctor.
+     * @return A list of UserSummary objects representing the patients of the doctor, ordered by patient name.
      */   
-    public List<User> getPatientsByDoctorId(int doctorId) {
+    public List<UserSummary> getPatientsByDoctorId(int doctorId) {
 
-        List<User> patients = new ArrayList<>();
+        List<UserSummary> patients = new ArrayList<>();
 
-        String query = "SELECT * FROM public.\"doctor_patient\" WHERE doctor_id = ?";
+        String query = "SELECT u.user_id, u.first_name, u.last_name, u.email FROM public.\"doctor_patient\" dp " +
+                "JOIN public.\"users\" u ON u.user_id = dp.patient_id " +
+                "WHERE dp.doctor_id = ? AND u.deleted_at IS NULL " +
+                "ORDER BY u.last_name, u.first_name";
 
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
             statement.setInt(1, doctorId);
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                int patientId = rs.getInt("patient_id");
-                User patient = userDao.getUserById(patientId);
-                if (patient != null) {
-                    patients.add(patient);
-                }
+            try (ResultSet rs = statement.executeQuery()) {
+                patients.addAll(RowMappers.USER_SUMMARY.mapAll(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -81,14 +81,242 @@ public class DoctorPortalDao {
         return patients;
     }
 /**
-     * Retrieves health data associated with a patient by the patient's ID.
+     * Retrieves the patients of a doctor who have a reminder for a medicine that has not ended yet.
      *
+     * @param doctorId The ID of the doctor.
+     * @param medicineId The ID of the medicine in the medicines dictionary.
+     * @return A list of UserSummary objects, ordered by patient name.
+     */
+    public List<UserSummary> getPatientsOnMedicine(int doctorId, int medicineId) {
+
+        List<UserSummary> patients = new ArrayList<>();
+
+        String query = "SELECT u.user_id, u.first_name, u.last_name, u.email FROM public.\"users\" u " +
+                "JOIN public.\"doctor_patient\" dp ON dp.patient_id = u.user_id " +
+                "WHERE dp.doctor_id = ? AND u.deleted_at IS NULL AND EXISTS (" +
+                "SELECT 1 FROM public.\"medicine_reminders\" r WHERE r.user_id = u.user_id AND r.medicine_id = ? AND r.end_date >= ?) " +
+                "ORDER BY u.last_name, u.first_name";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, doctorId);
+            statement.setInt(2, medicineId);
+            statement.setDate(3, java.sql.Date.valueOf(LocalDate.now()));
+            try (ResultSet rs = statement.executeQuery()) {
+                patients.addAll(RowMappers.USER_SUMMARY.mapAll(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return patients;
+    }
+/**
+     * Retrieves the IDs of the doctors a patient is assigned to, from the relationship cache.
+     *
+     * @param patientId The ID of the patient.
+     * @return A set of doctor IDs, empty if the patient has no doctor.
+     */
+    public Set<Integer> getDoctorIdsByPatientId(int patientId) {
+        return DoctorPatientCache.getInstance().getDoctors(patientId);
+    }
+/**
+     * Checks whether a patient is assigned to a doctor, from the relationship cache.
+     *
+     * @param doctorId The ID of the doctor.
      * @param patientId The ID of the patient.
-     * @return A list of HealthData objects representing the health data of the patient.
+     * @return True if the patient is assigned to the doctor, false otherwise.
+     */
+    public boolean isPatientOfDoctor(int doctorId, int patientId) {
+        return DoctorPatientCache.getInstance().isAssigned(doctorId, patientId);
+    }
+/**
+     * Assigns several patients to a doctor. The IDs are inserted in batches of ASSIGN_BATCH_SIZE in one transaction;
+     * patients who are already assigned, deleted or unknown are skipped.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param patientIds The IDs of the patients.
+     * @return The IDs of the patients that were newly assigned.
      */
-    public List<HealthData> getHealthDataByPatientId(int patientId) {
+    public List<Integer> assignPatients(int doctorId, List<Integer> patientIds) {
 
-        return healthDataDao.getHealthDataByUserId(patientId);
+        List<Integer> assigned = new ArrayList<>();
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try {
+                assigned = insertAssignments(con, doctorId, patientIds);
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+
+        for (int patientId : assigned) {
+            DoctorPatientCache.getInstance().add(doctorId, patientId);
+        }
+        if (!assigned.isEmpty()) {
+            PatientSearchIndex.getInstance().invalidate(doctorId);
+            PercentileSketches.getInstance().rebuildDoctorCohorts(Collections.singletonList(doctorId));
+        }
+        return assigned;
+    }
+/**
+     * Unassigns several patients from a doctor. The IDs are deleted in batches of ASSIGN_BATCH_SIZE in one transaction,
+     * so either every listed assignment is removed or none is.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param patientIds The IDs of the patients.
+     * @return The IDs of the patients that were unassigned.
+     */
+    public List<Integer> unassignPatients(int doctorId, List<Integer> patientIds) {
+
+        List<Integer> unassigned = new ArrayList<>();
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try {
+                unassigned = deleteAssignments(con, doctorId, patientIds);
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+
+        for (int patientId : unassigned) {
+            DoctorPatientCache.getInstance().remove(doctorId, patientId);
+        }
+        PatientSearchIndex.getInstance().removePatients(doctorId, unassigned);
+        if (!unassigned.isEmpty()) {
+            PercentileSketches.getInstance().rebuildDoctorCohorts(Collections.singletonList(doctorId));
+        }
+        return unassigned;
+    }
+/**
+     * Moves several patients from one doctor to another in one transaction, for example to rebalance panels.
+     * Only patients assigned to the first doctor are moved.
+     *
+     * @param fromDoctorId The ID of the doctor the patients leave.
+     * @param toDoctorId The ID of the doctor the patients join.
+     * @param patientIds The IDs of the patients.
+     * @return The IDs of the patients that were moved.
+     */
+    public List<Integer> reassignPatients(int fromDoctorId, int toDoctorId, List<Integer> patientIds) {
+
+        List<Integer> moved = new ArrayList<>();
+        List<Integer> assigned = new ArrayList<>();
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try {
+                moved = deleteAssignments(con, fromDoctorId, patientIds);
+                assigned = insertAssignments(con, toDoctorId, moved);
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+
+        for (int patientId : moved) {
+            DoctorPatientCache.getInstance().remove(fromDoctorId, patientId);
+        }
+        PatientSearchIndex.getInstance().removePatients(fromDoctorId, moved);
+        for (int patientId : assigned) {
+            DoctorPatientCache.getInstance().add(toDoctorId, patientId);
+        }
+        PatientSearchIndex.getInstance().invalidate(toDoctorId);
+        if (!moved.isEmpty()) {
+            PercentileSketches.getInstance().rebuildDoctorCohorts(Arrays.asList(fromDoctorId, toDoctorId));
+        }
+        return moved;
+    }
+
+    private List<Integer> insertAssignments(Connection con, int doctorId, List<Integer> patientIds) throws SQLException {
+
+        String query = "INSERT INTO public.\"doctor_patient\" (doctor_id, patient_id) " +
+                "SELECT ?, u.user_id FROM unnest(?::integer[]) AS ids(patient_id) " +
+                "JOIN public.\"users\" u ON u.user_id = ids.patient_id AND u.deleted_at IS NULL AND u.user_id <> ? " +
+                "ON CONFLICT (doctor_id, patient_id) DO NOTHING RETURNING patient_id";
+
+        List<Integer> assigned = new ArrayList<>();
+
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            for (int from = 0; from < patientIds.size(); from += ASSIGN_BATCH_SIZE) {
+                List<Integer> batch = patientIds.subList(from, Math.min(from + ASSIGN_BATCH_SIZE, patientIds.size()));
+                statement.setInt(1, doctorId);
+                statement.setArray(2, con.createArrayOf("integer", batch.toArray()));
+                statement.setInt(3, doctorId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        assigned.add(rs.getInt("patient_id"));
+                    }
+                }
+            }
+        }
+        return assigned;
+    }
+
+    private List<Integer> deleteAssignments(Connection con, int doctorId, List<Integer> patientIds) throws SQLException {
+
+        String query = "DELETE FROM public.\"doctor_patient\" WHERE doctor_id = ? AND patient_id = ANY(?::integer[]) RETURNING patient_id";
+
+        List<Integer> deleted = new ArrayList<>();
+
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            for (int from = 0; from < patientIds.size(); from += ASSIGN_BATCH_SIZE) {
+                List<Integer> batch = patientIds.subList(from, Math.min(from + ASSIGN_BATCH_SIZE, patientIds.size()));
+                statement.setInt(1, doctorId);
+                statement.setArray(2, con.createArrayOf("integer", batch.toArray()));
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        deleted.add(rs.getInt("patient_id"));
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+/**
+     * Retrieves the recent health data of a patient as a columnar HealthSeries, for trend summaries.
+     * Periods within the panel snapshot window are served from the snapshot when it holds the patient.
+     *
+     * @param patientId The ID of the patient.
+     * @param days The number of days up to and including today to retrieve.
+     * @return The HealthSeries of the patient over the period.
+     */
+    public HealthSeries getHealthSeriesByPatientId(int patientId, int days) {
+
+        LocalDate today = LocalDate.now();
+        HealthSeries series = PanelSnapshot.getInstance().getSeries(patientId, today.minusDays(days - 1), today);
+        return series != null ? series : healthDataDao.getHealthSeries(patientId, today.minusDays(days - 1), today);
+    }
+/**
+     * Passes the health data history of a patient to an action, oldest first, without loading the whole history into memory.
+     *
+     * @param patientId The ID of the patient.
+     * @param action The action to run for each HealthData object.
+     * @return The number of health data entries passed to the action.
+     */
+    public long forEachHealthDataOfPatient(int patientId, Consumer<? super HealthData> action) {
+
+        return healthDataDao.forEachHealthData(patientId, action);
     }
 /**
      * Adds a medicine reminder for a patient.
@@ -98,12 +326,12 @@ public class DoctorPortalDao {
      */
     public void addMedicineReminderForPatient(int patientId, MedicineReminder reminder) {
 
-        String query = "INSERT INTO public.\"medicine_reminders\" (user_id, medicine_name, dosage, schedule, start_date, end_date) " + "VALUES (?, ?, ?, ?, ?, ?)";
+        String query = "INSERT INTO public.\"medicine_reminders\" (user_id, medicine_id, dosage, schedule, start_date, end_date) " + "VALUES (?, ?, ?, ?, ?, ?)";
 
         try (Connection con = DatabaseConnection.getCon()) {
-            try (PreparedStatement statement = con.prepareStatement(query)) {
+            try (PreparedStatement statement = con.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
                 statement.setInt(1, patientId);
-                statement.setString(2, reminder.getMedicineName());
+                statement.setInt(2, MedicineDictionary.getInstance().idFor(reminder.getMedicineName()));
                 statement.setString(3, reminder.getDosage());
                 statement.setString(4, reminder.getSchedule());
                 statement.setDate(5, java.sql.Date.valueOf(reminder.getStartDate()));
@@ -111,6 +339,14 @@ public class DoctorPortalDao {
     
                 int rowsAffected = statement.executeUpdate();
                 if (rowsAffected > 0) {
+                    try (ResultSet rs = statement.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            reminder.setId(rs.getInt(1));
+                        }
+                    }
+                    reminder.setUserId(patientId);
+                    reminder.clearDirtyFields();
+                    ReminderIntervalIndex.getInstance().put(reminder);
                     System.out.println("Reminder added successfully.");
                 } else {
                     System.out.println("Opps, Something went wrong.Failed to add the medicine reminder. Please try again.");
@@ -120,6 +356,302 @@ public class DoctorPortalDao {
             e.printStackTrace();
         }
     }
-}    
+/**
+     * Adds the same medicine reminder for several patients in one statement, for example when a doctor prescribes to a group.
+     *
+     * @param patientIds The IDs of the patients.
+     * @param reminder The MedicineReminder object representing the medicine reminder to be added.
+     * @return The number of reminders added.
+     */
+    public int addMedicineReminderForPatients(List<Integer> patientIds, MedicineReminder reminder) {
 
+        int added = 0;
 
+        String query = "INSERT INTO public.\"medicine_reminders\" (user_id, medicine_id, dosage, schedule, start_date, end_date) " +
+                "SELECT patient_id, ?, ?, ?, ?, ? FROM unnest(?::integer[]) AS patient_id RETURNING reminder_id, user_id";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, MedicineDictionary.getInstance().idFor(reminder.getMedicineName()));
+            statement.setString(2, reminder.getDosage());
+            statement.setString(3, reminder.getSchedule());
+            statement.setDate(4, java.sql.Date.valueOf(reminder.getStartDate()));
+            statement.setDate(5, java.sql.Date.valueOf(reminder.getEndDate()));
+            statement.setArray(6, con.createArrayOf("integer", patientIds.toArray()));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    MedicineReminder saved = new MedicineReminder(rs.getInt("reminder_id"), rs.getInt("user_id"), reminder.getMedicineName(),
+                            reminder.getDosage(), reminder.getSchedule(), reminder.getStartDate(), reminder.getEndDate());
+                    ReminderIntervalIndex.getInstance().put(saved);
+                    added++;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return added;
+    }
+/**
+     * Checks a new medicine reminder against the patient's reminders that overlap it, using the interaction matrix.
+     *
+     * @param patientId The ID of the patient.
+     * @param reminder The MedicineReminder object about to be prescribed.
+     * @return A list of DrugInteraction objects, empty if there are no known interactions.
+     */
+    public List<DrugInteraction> checkInteractions(int patientId, MedicineReminder reminder) {
+
+        List<String> medicineNames = new ArrayList<>();
+        for (MedicineReminder active : ReminderIntervalIndex.getInstance().getOverlapping(patientId, reminder.getStartDate(), reminder.getEndDate())) {
+            medicineNames.add(active.getMedicineName());
+        }
+        return DrugInteractionMatrix.getInstance().check(reminder.getMedicineName(), medicineNames);
+    }
+/**
+     * Checks a new medicine reminder for several patients at once.
+     *
+     * @param patientIds The IDs of the patients.
+     * @param reminder The MedicineReminder object about to be prescribed.
+     * @return A map from patient ID to the interactions found, holding only the patients with at least one interaction.
+     */
+    public Map<Integer, List<DrugInteraction>> checkInteractions(List<Integer> patientIds, MedicineReminder reminder) {
+
+        Map<Integer, List<DrugInteraction>> interactions = new HashMap<>();
+        for (int patientId : patientIds) {
+            List<DrugInteraction> found = checkInteractions(patientId, reminder);
+            if (!found.isEmpty()) {
+                interactions.put(patientId, found);
+            }
+        }
+        return interactions;
+    }
+/**
+     * Retrieves the anomaly alerts raised for the patients of a doctor since a given date, newest first.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param since The earliest date of the alerts to retrieve.
+     * @return A list of AnomalyAlert objects for the doctor's patients.
+     */
+    public List<AnomalyAlert> getAnomalyAlertsForDoctor(int doctorId, LocalDate since) {
+
+        List<AnomalyAlert> alerts = new ArrayList<>();
+
+        String query = "SELECT a.* FROM public.\"anomaly_alerts\" a " +
+                "JOIN public.\"doctor_patient\" dp ON dp.patient_id = a.user_id " +
+                "JOIN public.\"users\" u ON u.user_id = a.user_id " +
+                "WHERE dp.doctor_id = ? AND u.deleted_at IS NULL AND a.date >= ? ORDER BY a.date DESC, a.alert_id DESC";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, doctorId);
+            statement.setDate(2, java.sql.Date.valueOf(since));
+            try (ResultSet rs = statement.executeQuery()) {
+                alerts.addAll(RowMappers.ANOMALY_ALERT.mapAll(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return alerts;
+    }
+/**
+     * Retrieves the panel dashboard of a doctor: for every patient, the latest vitals, the 7-day averages,
+     * the number of recent anomaly alerts and the active flags.
+     * When the panel snapshot is mapped, the vitals and averages come from it and only the patients and alert
+     * counts are read from the database. Otherwise everything is computed in one set-based query, using window
+     * functions over the doctor's patients' health data instead of loading each patient's history separately.
+     * Only the last 30 days are considered, so a patient with no data in that period is listed without vitals.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return A list of PatientPanelSummary objects, one per patient, ordered by patient name.
+     */
+    public List<PatientPanelSummary> getPanelSummary(int doctorId) {
+
+        LocalDate today = LocalDate.now();
+        Map<Integer, Integer> endingSoon = new HashMap<>();
+        for (MedicineReminder reminder : ReminderIntervalIndex.getInstance().getEndingWithin(today, 7)) {
+            endingSoon.merge(reminder.getUserId(), 1, Integer::sum);
+        }
+
+        if (PanelSnapshot.getInstance().isReady()) {
+            List<PatientPanelSummary> panel = getPanelSummaryFromSnapshot(doctorId, today, endingSoon);
+            if (panel != null) {
+                return panel;
+            }
+        }
+
+        List<PatientPanelSummary> panel = new ArrayList<>();
+
+        String query = "SELECT u.user_id, u.first_name, u.last_name, h.health_data_id, h.weight, h.height, h.steps, h.heart_rate, " +
+                "h.water_intake, h.hours_of_sleep, h.date, h.records_7d, h.avg_steps_7d, h.avg_heart_rate_7d, " +
+                "h.avg_water_intake_7d, h.avg_hours_of_sleep_7d, COALESCE(a.alert_count, 0) AS alert_count " +
+                "FROM public.\"doctor_patient\" dp " +
+                "JOIN public.\"users\" u ON u.user_id = dp.patient_id " +
+                "LEFT JOIN (" +
+                "SELECT hd.*, ROW_NUMBER() OVER latest AS rn, " +
+                "COUNT(*) FILTER (WHERE hd.date > ? AND hd.date <= ?) OVER patient AS records_7d, " +
+                "AVG(hd.steps) FILTER (WHERE hd.date > ? AND hd.date <= ?) OVER patient AS avg_steps_7d, " +
+                "AVG(hd.heart_rate) FILTER (WHERE hd.date > ? AND hd.date <= ?) OVER patient AS avg_heart_rate_7d, " +
+                "AVG(hd.water_intake) FILTER (WHERE hd.date > ? AND hd.date <= ?) OVER patient AS avg_water_intake_7d, " +
+                "AVG(hd.hours_of_sleep) FILTER (WHERE hd.date > ? AND hd.date <= ?) OVER patient AS avg_hours_of_sleep_7d " +
+                "FROM public.\"health_data\" hd " +
+                "JOIN public.\"doctor_patient\" p ON p.patient_id = hd.user_id " +
+                "WHERE p.doctor_id = ? AND hd.date > ? " +
+                "WINDOW patient AS (PARTITION BY hd.user_id), latest AS (PARTITION BY hd.user_id ORDER BY hd.date DESC, hd.health_data_id DESC)" +
+                ") h ON h.user_id = dp.patient_id AND h.rn = 1 " +
+                "LEFT JOIN (" +
+                "SELECT al.user_id, COUNT(*) AS alert_count FROM public.\"anomaly_alerts\" al " +
+                "JOIN public.\"doctor_patient\" p ON p.patient_id = al.user_id " +
+                "WHERE p.doctor_id = ? AND al.date > ? GROUP BY al.user_id" +
+                ") a ON a.user_id = dp.patient_id " +
+                "WHERE dp.doctor_id = ? AND u.deleted_at IS NULL " +
+                "ORDER BY u.last_name, u.first_name";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            // The 7-day window is today.minusDays(6) to today, the same days the snapshot averages over
+            java.sql.Date weekStart = java.sql.Date.valueOf(today.minusDays(7));
+            java.sql.Date weekEnd = java.sql.Date.valueOf(today);
+            for (int i = 1; i <= 10; i += 2) {
+                statement.setDate(i, weekStart);
+                statement.setDate(i + 1, weekEnd);
+            }
+            statement.setInt(11, doctorId);
+            statement.setDate(12, java.sql.Date.valueOf(today.minusDays(PANEL_LOOKBACK_DAYS)));
+            statement.setInt(13, doctorId);
+            statement.setDate(14, weekStart);
+            statement.setInt(15, doctorId);
+            try (ResultSet rs = statement.executeQuery()) {
+                for (PatientPanelSummary summary : RowMappers.PATIENT_PANEL_SUMMARY.mapAll(rs)) {
+                    setFlags(summary, endingSoon);
+                    panel.add(summary);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return panel;
+    }
+
+    // Builds the panel from the snapshot, or returns null if a patient's window could not be served from it
+    private List<PatientPanelSummary> getPanelSummaryFromSnapshot(int doctorId, LocalDate today, Map<Integer, Integer> endingSoon) {
+
+        String query = "SELECT al.user_id, COUNT(*) AS alert_count FROM public.\"anomaly_alerts\" al " +
+                "JOIN public.\"doctor_patient\" p ON p.patient_id = al.user_id " +
+                "WHERE p.doctor_id = ? AND al.date > ? GROUP BY al.user_id";
+
+        List<UserSummary> patients = getPatientsByDoctorId(doctorId);
+        Map<Integer, Integer> alertCounts = new HashMap<>();
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, doctorId);
+            statement.setDate(2, java.sql.Date.valueOf(today.minusDays(7)));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    alertCounts.put(rs.getInt("user_id"), rs.getInt("alert_count"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        PanelSnapshot snapshot = PanelSnapshot.getInstance();
+        List<Integer> patientIds = new ArrayList<>();
+        for (UserSummary patient : patients) {
+            patientIds.add(patient.getId());
+        }
+        snapshot.load(patientIds);
+
+        List<PatientPanelSummary> panel = new ArrayList<>();
+        LocalDate weekStart = today.minusDays(6);
+        for (UserSummary patient : patients) {
+            HealthSeries series = snapshot.getSeries(patient.getId(), today.minusDays(PANEL_LOOKBACK_DAYS - 1));
+            if (series == null) {
+                return null;
+            }
+            HealthData latest = series.isEmpty() ? null : series.get(series.size() - 1);
+            int records = series.count(weekStart, today);
+            // Like AVG in the SQL path, a week without a recorded heart rate shows 0
+            double heartRate = series.mean(HealthSeries.HEART_RATE, weekStart, today);
+            PatientPanelSummary summary = new PatientPanelSummary(patient.getId(), patient.getFirstName(), patient.getLastName(), latest, records,
+                    records == 0 ? 0 : series.mean(HealthSeries.STEPS, weekStart, today),
+                    Double.isNaN(heartRate) ? 0 : heartRate,
+                    records == 0 ? 0 : series.mean(HealthSeries.WATER_INTAKE, weekStart, today),
+                    records == 0 ? 0 : series.mean(HealthSeries.HOURS_OF_SLEEP, weekStart, today),
+                    alertCounts.getOrDefault(patient.getId(), 0));
+            setFlags(summary, endingSoon);
+            panel.add(summary);
+        }
+        return panel;
+    }
+
+    private void setFlags(PatientPanelSummary summary, Map<Integer, Integer> endingSoon) {
+        HealthData latest = summary.getLatest();
+        List<String> flags = latest == null ? new ArrayList<>() : recommendationSystem.getActiveFlags(latest);
+        if (summary.getRecentAlerts() > 0) {
+            flags.add(summary.getRecentAlerts() + " anomaly alert(s)");
+        }
+        int ending = endingSoon.getOrDefault(summary.getPatientId(), 0);
+        if (ending > 0) {
+            flags.add(ending + " prescription(s) ending within 7 days");
+        }
+        summary.setFlags(flags);
+    }
+/**
+     * Retrieves the patients of a doctor with the highest composite risk scores, highest first.
+     * The query orders by the indexed score column with a LIMIT, which PostgreSQL answers with a
+     * bounded top-N heap over the doctor's patients instead of sorting the whole panel.
+     * Patients without any scored health data are not included.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param limit The maximum number of patients to return.
+     * @return A list of PatientRisk objects ordered by descending risk score.
+     */
+    public List<PatientRisk> getTopRiskPatients(int doctorId, int limit) {
+
+        List<PatientRisk> patients = new ArrayList<>();
+
+        String query = "SELECT u.user_id, u.first_name, u.last_name, r.score, r.date " +
+                "FROM public.\"doctor_patient\" dp " +
+                "JOIN public.\"patient_risk_scores\" r ON r.user_id = dp.patient_id " +
+                "JOIN public.\"users\" u ON u.user_id = dp.patient_id " +
+                "WHERE dp.doctor_id = ? AND u.deleted_at IS NULL ORDER BY r.score DESC LIMIT ?";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, doctorId);
+            statement.setInt(2, limit);
+            try (ResultSet rs = statement.executeQuery()) {
+                patients.addAll(RowMappers.PATIENT_RISK.mapAll(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return patients;
+    }
+/**
+     * Retrieves the patients of a doctor that match a cohort filter, for example
+     * {@code CohortFilter.and(CohortFilter.below(CohortIndex.HOURS_OF_SLEEP, 6), CohortFilter.below(CohortIndex.STEPS, 5000))}.
+     * The filter runs on the in-memory CohortIndex bitmaps; the database is only read for the doctor's patient list.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param filter The CohortFilter to apply.
+     * @return A list of UserSummary objects representing the matching patients.
+     */
+    public List<UserSummary> filterPatients(int doctorId, CohortFilter filter) {
+
+        List<UserSummary> patients = getPatientsByDoctorId(doctorId);
+        CompressedBitmap panel = new CompressedBitmap();
+        for (UserSummary patient : patients) {
+            panel.add(patient.getId());
+        }
+
+        CompressedBitmap matches = CohortIndex.getInstance().evaluate(filter, panel);
+
+        List<UserSummary> result = new ArrayList<>();
+        for (UserSummary patient : patients) {
+            if (matches.contains(patient.getId())) {
+                result.add(patient);
+            }
+        }
+        return result;
+    }
+}    
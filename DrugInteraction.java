@@ -0,0 +1,66 @@
+/**
+ * This class represents a known interaction between two medicines, as found when checking a prescription.
+ */
+
+public class DrugInteraction {
+    private String medicineName;
+    private String interactingMedicineName;
+    private String severity;
+    private String description;
+
+/**
+     * Constructs a DrugInteraction object with the specified attributes.
+     *
+     * @param medicineName The name of the medicine being checked.
+     * @param interactingMedicineName The name of the medicine it interacts with.
+     * @param severity The severity of the interaction: major, moderate or minor.
+     * @param description A short description of the interaction.
+     */
+    public DrugInteraction(String medicineName, String interactingMedicineName, String severity, String description) {
+        this.medicineName = medicineName;
+        this.interactingMedicineName = interactingMedicineName;
+        this.severity = severity;
+        this.description = description;
+    }
+/**
+     * Gets the name of the medicine being checked.
+     *
+     * @return The name of the medicine.
+     */
+    public String getMedicineName() {
+        return medicineName;
+    }
+/**
+     * Gets the name of the medicine it interacts with.
+     *
+     * @return The name of the interacting medicine.
+     */
+    public String getInteractingMedicineName() {
+        return interactingMedicineName;
+    }
+/**
+     * Gets the severity of the interaction.
+     *
+     * @return The severity: major, moderate or minor.
+     */
+    public String getSeverity() {
+        return severity;
+    }
+/**
+     * Gets a short description of the interaction.
+     *
+     * @return The description.
+     */
+    public String getDescription() {
+        return description;
+    }
+/**
+     * Returns a string representation of the DrugInteraction object.
+     *
+     * @return A string containing the interaction attributes.
+     */
+    @Override
+    public String toString() {
+        return medicineName + " + " + interactingMedicineName + " (" + severity + "): " + description;
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the known interactions between medicines, loaded once from a CSV file with the columns
+ * medicine_a, medicine_b, severity and description. Medicine names are normalized and given dense integer IDs,
+ * and the interactions are stored as a symmetric bit matrix with one row of longs per medicine. Checking a new
+ * medicine against everything a patient takes is then a word-wise AND of its row with the patient's medicine set,
+ * regardless of how many interactions are known. Medicines missing from the file have no known interactions.
+ */
+
+public class DrugInteractionMatrix {
+
+    private static final DrugInteractionMatrix INSTANCE = new DrugInteractionMatrix(Paths.get(System.getProperty("drug.interactions.file", "data/drug_interactions.csv")));
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<Long, String[]> details = new HashMap<>();
+    private final long[][] rows;
+
+/**
+     * Constructs a DrugInteractionMatrix object from a CSV file. If the file cannot be read, no interactions are known.
+     *
+     * @param file The CSV file of interactions.
+     */
+    public DrugInteractionMatrix(Path file) {
+        List<String[]> pairs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",", 4);
+                if (columns.length == 4) {
+                    pairs.add(columns);
+                    idFor(columns[0]);
+                    idFor(columns[1]);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        int words = (names.size() + 63) >>> 6;
+        rows = new long[names.size()][words];
+        for (String[] pair : pairs) {
+            int a = ids.get(normalize(pair[0]));
+            int b = ids.get(normalize(pair[1]));
+            rows[a][b >>> 6] |= 1L << b;
+            rows[b][a >>> 6] |= 1L << a;
+            details.put(pairKey(a, b), new String[] {pair[2].trim(), pair[3].trim()});
+        }
+    }
+/**
+     * Gets the shared DrugInteractionMatrix instance, loaded from the file named by the drug.interactions.file system property.
+     *
+     * @return The DrugInteractionMatrix instance.
+     */
+    public static DrugInteractionMatrix getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Normalizes a medicine name for lookups, the same way as MedicineDictionary.
+     *
+     * @param medicineName The medicine name as entered.
+     * @return The normalized name.
+     */
+    public static String normalize(String medicineName) {
+        return MedicineDictionary.normalize(medicineName);
+    }
+/**
+     * Gets the dense ID of a medicine.
+     *
+     * @param medicineName The name of the medicine, in any case or spacing.
+     * @return The ID of the medicine, or -1 if it has no known interactions.
+     */
+    public int idOf(String medicineName) {
+        Integer id = ids.get(normalize(medicineName));
+        return id == null ? -1 : id;
+    }
+/**
+     * Gets the number of medicines with known interactions.
+     *
+     * @return The number of medicines.
+     */
+    public int size() {
+        return names.size();
+    }
+/**
+     * Builds the set of medicines a patient takes, to check new medicines against.
+     *
+     * @param medicineNames The names of the medicines.
+     * @return A bit set indexed by medicine ID; medicines without known interactions are left out.
+     */
+    public long[] medicineSet(Collection<String> medicineNames) {
+        long[] set = new long[(names.size() + 63) >>> 6];
+        for (String medicineName : medicineNames) {
+            int id = idOf(medicineName);
+            if (id >= 0) {
+                set[id >>> 6] |= 1L << id;
+            }
+        }
+        return set;
+    }
+/**
+     * Checks whether two medicines interact.
+     *
+     * @param medicineName The name of the first medicine.
+     * @param otherMedicineName The name of the second medicine.
+     * @return True if a known interaction exists, false otherwise.
+     */
+    public boolean interacts(String medicineName, String otherMedicineName) {
+        int a = idOf(medicineName);
+        int b = idOf(otherMedicineName);
+        return a >= 0 && b >= 0 && (rows[a][b >>> 6] & (1L << b)) != 0;
+    }
+/**
+     * Checks a medicine against a set of medicines built with medicineSet.
+     *
+     * @param medicineName The name of the medicine to check.
+     * @param medicineSet The set of medicines the patient takes.
+     * @return A list of DrugInteraction objects, empty if there are no known interactions.
+     */
+    public List<DrugInteraction> check(String medicineName, long[] medicineSet) {
+        List<DrugInteraction> interactions = new ArrayList<>();
+        int id = idOf(medicineName);
+        if (id < 0) {
+            return interactions;
+        }
+        long[] row = rows[id];
+        for (int word = 0; word < row.length; word++) {
+            long hits = row[word] & medicineSet[word];
+            while (hits != 0) {
+                int other = (word << 6) + Long.numberOfTrailingZeros(hits);
+                hits &= hits - 1;
+                String[] detail = details.get(pairKey(id, other));
+                interactions.add(new DrugInteraction(names.get(id), names.get(other), detail[0], detail[1]));
+            }
+        }
+        return interactions;
+    }
+/**
+     * Checks a medicine against the medicines a patient takes.
+     *
+     * @param medicineName The name of the medicine to check.
+     * @param medicineNames The names of the medicines the patient takes.
+     * @return A list of DrugInteraction objects, empty if there are no known interactions.
+     */
+    public List<DrugInteraction> check(String medicineName, Collection<String> medicineNames) {
+        return check(medicineName, medicineSet(medicineNames));
+    }
+
+    private int idFor(String medicineName) {
+        String name = normalize(medicineName);
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+}
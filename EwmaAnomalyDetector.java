@@ -0,0 +1,99 @@
+/**
+ * This class detects sudden changes in one health metric against each user's own baseline.
+ * It keeps an exponentially weighted moving average and variance per user and flags a value whose
+ * z-score against that baseline exceeds a configured threshold. The state is three doubles per user,
+ * held in an IntDoubleStateMap, so it stays small for millions of users and needs no history to update.
+ */
+
+public class EwmaAnomalyDetector {
+
+    private static final int MEAN = 0;
+    private static final int VARIANCE = 1;
+    private static final int COUNT = 2;
+
+    private final String metric;
+    private final double alpha;
+    private final double zThreshold;
+    private final int warmupSamples;
+    private final double minStdDev;
+    private final IntDoubleStateMap state;
+
+/**
+     * Constructs an EwmaAnomalyDetector object.
+     *
+     * @param metric The name of the health metric the detector follows, for example heart_rate.
+     * @param alpha The smoothing factor of the moving average, between 0 and 1; larger values follow changes faster.
+     * @param zThreshold The absolute z-score above which a value is reported as an anomaly.
+     * @param warmupSamples The number of values a user must have before anomalies are reported.
+     * @param minStdDev The smallest standard deviation used for the z-score, so a very steady baseline does not flag tiny changes.
+     * @param expectedUsers The number of users the detector is expected to follow.
+     */
+    public EwmaAnomalyDetector(String metric, double alpha, double zThreshold, int warmupSamples, double minStdDev, int expectedUsers) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("Alpha must be between 0 and 1.");
+        }
+        this.metric = metric;
+        this.alpha = alpha;
+        this.zThreshold = zThreshold;
+        this.warmupSamples = warmupSamples;
+        this.minStdDev = minStdDev;
+        this.state = new IntDoubleStateMap(3, expectedUsers);
+    }
+/**
+     * Gets the name of the health metric the detector follows.
+     *
+     * @return The name of the metric.
+     */
+    public String getMetric() {
+        return metric;
+    }
+/**
+     * Adds a new value for a user to the baseline and checks it against the baseline as it was before.
+     *
+     * @param userId The ID of the user.
+     * @param value The new value of the metric.
+     * @return The z-score of the value if it is an anomaly, or NaN if it is not or the user is still warming up.
+     */
+    public synchronized double update(int userId, double value) {
+
+        int offset = state.offsetOf(userId);
+        double[] values = state.values();
+        double mean = values[offset + MEAN];
+        double variance = values[offset + VARIANCE];
+        double count = values[offset + COUNT];
+
+        double result = Double.NaN;
+        if (count == 0) {
+            values[offset + MEAN] = value;
+        } else {
+            double stdDev = Math.max(Math.sqrt(variance), minStdDev);
+            double zScore = (value - mean) / stdDev;
+            if (count >= warmupSamples && Math.abs(zScore) > zThreshold) {
+                result = zScore;
+            }
+            double diff = value - mean;
+            double increment = alpha * diff;
+            values[offset + MEAN] = mean + increment;
+            values[offset + VARIANCE] = (1 - alpha) * (variance + diff * increment);
+        }
+        values[offset + COUNT] = count + 1;
+        return result;
+    }
+/**
+     * Gets the current baseline of a user.
+     *
+     * @param userId The ID of the user.
+     * @return The moving average of the metric, or NaN if the user has no values yet.
+     */
+    public synchronized double getBaseline(int userId) {
+        return state.get(userId, MEAN, Double.NaN);
+    }
+/**
+     * Forgets the baseline of a user.
+     *
+     * @param userId The ID of the user.
+     */
+    public synchronized void reset(int userId) {
+        state.remove(userId);
+    }
+}
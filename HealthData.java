@@ -2,9 +2,22 @@ import java.time.LocalDate;
 
 /**
  * This class represents health data of a user, such as weight, height, steps, heart rate, water intake and hours of sleepn on a given date.
+ * The setters record which fields were changed, so HealthDataDao can update only those columns.
+ * A weight, height or heart rate of 0 means the value was not recorded that day; it is stored as NULL.
  */
 
 public class HealthData {
+
+    public static final int FIELD_USER_ID = 1;
+    public static final int FIELD_WEIGHT = 1 << 1;
+    public static final int FIELD_HEIGHT = 1 << 2;
+    public static final int FIELD_STEPS = 1 << 3;
+    public static final int FIELD_HEART_RATE = 1 << 4;
+    public static final int FIELD_WATER_INTAKE = 1 << 5;
+    public static final int FIELD_HOURS_OF_SLEEP = 1 << 6;
+
+    private static final int ALL_FIELDS = FIELD_HOURS_OF_SLEEP * 2 - 1;
+
     private int id;
     private int userId;
     private double weight;
@@ -14,6 +27,9 @@ public class HealthData {
     private double waterIntake;
     private double hoursOfSleep;
     private LocalDate date;
+    private int version;
+    private int dirtyFields = ALL_FIELDS;
+    private boolean archived;
 
 /**
      * Constructs a HealthData object with the specified attributes.
@@ -69,12 +85,15 @@ public class HealthData {
      * @param userId The ID of the user.
      */
     public void setUserId(int userId){
-        this.userId = userId;
+        if (this.userId != userId) {
+            this.userId = userId;
+            dirtyFields |= FIELD_USER_ID;
+        }
     }
 /**
      * Gets the weight of the user.
      *
-     * @return The weight of the user.
+     * @return The weight of the user, or 0 if it was not recorded.
      */
     public double getWeight(){
         return weight;
@@ -85,12 +104,15 @@ public class HealthData {
      * @param weight The weight to set.
      */
     public void setWeight(double weight){
-       this.weight = weight;
+        if (this.weight != weight) {
+            this.weight = weight;
+            dirtyFields |= FIELD_WEIGHT;
+        }
     }
 /**
      * Gets the height of the user.
      *
-     * @return The height of the user.
+     * @return The height of the user, or 0 if it was not recorded.
      */
     public double getHeight(){
         return height;
@@ -101,7 +123,10 @@ public class HealthData {
      * @param height The height to set.
      */
     public void setHeight(double height){
-        this.height = height;
+        if (this.height != height) {
+            this.height = height;
+            dirtyFields |= FIELD_HEIGHT;
+        }
     }
 /**
      * Gets the number of steps taken by the user.
@@ -117,12 +142,15 @@ public class HealthData {
      * @param steps The number of steps to set.
      */
     public void setSteps(int steps){
-        this.steps = steps;
+        if (this.steps != steps) {
+            this.steps = steps;
+            dirtyFields |= FIELD_STEPS;
+        }
     }
 /**
      * Gets the heart rate of the user.
      *
-     * @return The heart rate of the user.
+     * @return The heart rate of the user, or 0 if it was not recorded.
      */
     public int getHeartRate(){
         return heartRate;
@@ -133,7 +161,10 @@ public class HealthData {
      * @param heartRate The heart rate to set.
      */
     public void setHeartRate(int heartRate){
-        this.heartRate = heartRate;
+        if (this.heartRate != heartRate) {
+            this.heartRate = heartRate;
+            dirtyFields |= FIELD_HEART_RATE;
+        }
     }
 /**
      * Gets the water intake of the user.
@@ -149,7 +180,10 @@ public class HealthData {
      * @param waterIntake The water intake to set.
      */
     public void setWaterIntake(double waterIntake){
-        this.waterIntake = waterIntake;
+        if (this.waterIntake != waterIntake) {
+            this.waterIntake = waterIntake;
+            dirtyFields |= FIELD_WATER_INTAKE;
+        }
     }
 /**
      * Gets the hours of sleep of the user.
@@ -165,7 +199,10 @@ public class HealthData {
      * @param hoursOfSleep The hours of sleep to set.
      */
     public void setHoursOfSleep(double hoursOfSleep){
-        this.hoursOfSleep = hoursOfSleep;
+        if (this.hoursOfSleep != hoursOfSleep) {
+            this.hoursOfSleep = hoursOfSleep;
+            dirtyFields |= FIELD_HOURS_OF_SLEEP;
+        }
     }
  /**
      * Gets the date of the health data entry.
@@ -183,6 +220,53 @@ public class HealthData {
     public void setDate(LocalDate date){
         this.date = date;
     }
+/**
+     * Gets the version of the entry as it was loaded, which updates compare against to detect concurrent edits.
+     *
+     * @return The version of the entry.
+     */
+    public int getVersion(){
+        return version;
+    }
+/**
+     * Sets the version of the entry.
+     *
+     * @param version The version to set.
+     */
+    public void setVersion(int version){
+        this.version = version;
+    }
+/**
+     * Gets the fields changed through the setters since the entry was loaded or last saved.
+     * A newly constructed entry counts as changed in every field.
+     * The ID and date identify the entry and are not tracked.
+     *
+     * @return A bit mask of the FIELD_ constants, 0 if nothing was changed.
+     */
+    public int getDirtyFields(){
+        return dirtyFields;
+    }
+/**
+     * Marks all fields as unchanged, after the entry was saved.
+     */
+    public void clearDirtyFields(){
+        dirtyFields = 0;
+    }
+/**
+     * Checks whether the entry was read from the health data archive. Archived entries are read-only.
+     *
+     * @return true if the entry is archived, false otherwise.
+     */
+    public boolean isArchived(){
+        return archived;
+    }
+/**
+     * Marks the entry as read from the health data archive, with no changed fields.
+     */
+    public void markArchived(){
+        archived = true;
+        dirtyFields = 0;
+    }
 /**
      * Returns a string representation of the HealthData object.
      *
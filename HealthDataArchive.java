@@ -0,0 +1,302 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * This class stores archived health data as compressed columnar files on local disk, one file per month.
+ * Inside a file the rows are grouped into one block per user, and each block stores its columns separately:
+ * dates are delta-encoded, IDs, steps and heart rates are bit-packed and the decimal values are XOR-compressed.
+ * An index at the end of the file maps every user to their block, so reading one user's month touches only that block.
+ *
+ * File layout: magic, blocks, then the index (entry count and per user: user ID, offset, length, row count, CRC32),
+ * the index offset and the magic again.
+ */
+
+public class HealthDataArchive {
+
+    private static final int MAGIC = 0x48444331;
+    private static final String EXTENSION = ".hdc";
+    private static final HealthDataArchive INSTANCE = new HealthDataArchive(Paths.get(System.getProperty("health.archive.dir", "archive/health_data")));
+
+    private final Path directory;
+    private final Map<YearMonth, Map<Integer, long[]>> indexes = new ConcurrentHashMap<>();
+
+/**
+     * Constructs a HealthDataArchive object over a directory.
+     *
+     * @param directory The directory holding the archive files.
+     */
+    public HealthDataArchive(Path directory) {
+        this.directory = directory;
+    }
+/**
+     * Gets the shared HealthDataArchive instance, stored in the directory named by the health.archive.dir system property.
+     *
+     * @return The HealthDataArchive instance.
+     */
+    public static HealthDataArchive getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Gets the months that have been archived.
+     *
+     * @return A sorted set of the archived months.
+     */
+    public SortedSet<YearMonth> getArchivedMonths() {
+        SortedSet<YearMonth> months = new TreeSet<>();
+        if (!Files.isDirectory(directory)) {
+            return months;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "health_data_y*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                months.add(YearMonth.of(Integer.parseInt(name.substring(13, 17)), Integer.parseInt(name.substring(18, 20))));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return months;
+    }
+/**
+     * Writes the health data of a month to its archive file, merged with any rows already archived for that month.
+     * The file is written to a temporary name, synced to disk and then renamed, so a crash never leaves a partial file.
+     *
+     * @param month The month of the rows.
+     * @param rows The HealthData objects to archive, all dated within the month.
+     * @throws IOException If the file could not be written.
+     */
+    public void writeMonth(YearMonth month, List<HealthData> rows) throws IOException {
+        writeMonth(month, rows, Collections.emptySet());
+    }
+/**
+     * Writes the health data of a month to its archive file, merged with any rows already archived for that month
+     * except the removed ones.
+     *
+     * @param month The month of the rows.
+     * @param rows The HealthData objects to archive, all dated within the month.
+     * @param removedIds The IDs of archived rows that were deleted and must be left out.
+     * @throws IOException If the file could not be written.
+     */
+    public synchronized void writeMonth(YearMonth month, List<HealthData> rows, Set<Integer> removedIds) throws IOException {
+
+        Map<Integer, HealthData> byId = new HashMap<>();
+        Path file = fileOf(month);
+        if (Files.exists(file)) {
+            for (int userId : readIndex(month).keySet()) {
+                for (HealthData healthData : readBlock(month, userId)) {
+                    byId.put(healthData.getId(), healthData);
+                }
+            }
+        }
+        byId.keySet().removeAll(removedIds);
+        for (HealthData healthData : rows) {
+            byId.put(healthData.getId(), healthData);
+        }
+
+        Map<Integer, List<HealthData>> byUser = new TreeMap<>();
+        for (HealthData healthData : byId.values()) {
+            byUser.computeIfAbsent(healthData.getUserId(), k -> new ArrayList<>()).add(healthData);
+        }
+
+        Files.createDirectories(directory);
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            long offset = 4;
+            List<long[]> index = new ArrayList<>();
+            for (Map.Entry<Integer, List<HealthData>> entry : byUser.entrySet()) {
+                List<HealthData> userRows = entry.getValue();
+                userRows.sort(Comparator.comparing(HealthData::getDate).thenComparingInt(HealthData::getId));
+                byte[] block = encodeBlock(userRows);
+                CRC32 crc = new CRC32();
+                crc.update(block);
+                out.write(block);
+                index.add(new long[] {entry.getKey(), offset, block.length, userRows.size(), crc.getValue()});
+                offset += block.length;
+            }
+            out.writeInt(index.size());
+            for (long[] entry : index) {
+                out.writeInt((int) entry[0]);
+                out.writeLong(entry[1]);
+                out.writeInt((int) entry[2]);
+                out.writeInt((int) entry[3]);
+                out.writeInt((int) entry[4]);
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexes.remove(month);
+    }
+/**
+     * Removes every archived row of a user, rewriting only the month files that hold a block of the user.
+     * Removing a user who has nothing archived does nothing, so the removal can be repeated after a failure.
+     *
+     * @param userId The ID of the user.
+     * @return The number of archived rows removed.
+     * @throws IOException If an archive file could not be read or written.
+     */
+    public synchronized int removeUser(int userId) throws IOException {
+        int removed = 0;
+        for (YearMonth month : getArchivedMonths()) {
+            List<HealthData> rows = readBlock(month, userId);
+            if (rows.isEmpty()) {
+                continue;
+            }
+            Set<Integer> ids = new HashSet<>();
+            for (HealthData healthData : rows) {
+                ids.add(healthData.getId());
+            }
+            writeMonth(month, Collections.emptyList(), ids);
+            removed += ids.size();
+        }
+        return removed;
+    }
+/**
+     * Reads the archived health data of a user within a date range.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return A list of HealthData objects ordered by date, empty if nothing in the range is archived.
+     */
+    public List<HealthData> read(int userId, LocalDate startDate, LocalDate endDate) {
+        List<HealthData> result = new ArrayList<>();
+        for (YearMonth month : getArchivedMonths().subSet(YearMonth.from(startDate), YearMonth.from(endDate).plusMonths(1))) {
+            try {
+                for (HealthData healthData : readBlock(month, userId)) {
+                    if (!healthData.getDate().isBefore(startDate) && !healthData.getDate().isAfter(endDate)) {
+                        result.add(healthData);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+/**
+     * Reads every archived health data record of a month.
+     *
+     * @param month The month to read.
+     * @return A list of HealthData objects ordered by user and date, empty if the month is not archived.
+     * @throws IOException If the archive file could not be read.
+     */
+    public List<HealthData> readMonth(YearMonth month) throws IOException {
+        List<HealthData> result = new ArrayList<>();
+        if (!Files.exists(fileOf(month))) {
+            return result;
+        }
+        for (int userId : new TreeSet<>(readIndex(month).keySet())) {
+            result.addAll(readBlock(month, userId));
+        }
+        return result;
+    }
+
+    private List<HealthData> readBlock(YearMonth month, int userId) throws IOException {
+
+        long[] entry = readIndex(month).get(userId);
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+
+        byte[] block = new byte[(int) entry[1]];
+        try (RandomAccessFile file = new RandomAccessFile(fileOf(month).toFile(), "r")) {
+            file.seek(entry[0]);
+            file.readFully(block);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block);
+        if ((int) crc.getValue() != (int) entry[3]) {
+            throw new IOException("Archive block of user " + userId + " in " + fileOf(month) + " is corrupt.");
+        }
+        return decodeBlock(userId, block, (int) entry[2]);
+    }
+
+    private Map<Integer, long[]> readIndex(YearMonth month) throws IOException {
+        Map<Integer, long[]> index = indexes.get(month);
+        if (index != null) {
+            return index;
+        }
+        index = new HashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(fileOf(month).toFile(), "r")) {
+            file.seek(file.length() - 12);
+            long indexOffset = file.readLong();
+            if (file.readInt() != MAGIC) {
+                throw new IOException(fileOf(month) + " is not a health data archive file.");
+            }
+            file.seek(indexOffset);
+            int entries = file.readInt();
+            for (int i = 0; i < entries; i++) {
+                int userId = file.readInt();
+                index.put(userId, new long[] {file.readLong(), file.readInt(), file.readInt(), file.readInt()});
+            }
+        }
+        indexes.put(month, index);
+        return index;
+    }
+
+    private static byte[] encodeBlock(List<HealthData> rows) {
+        int count = rows.size();
+        int[] ids = new int[count];
+        int[] dates = new int[count];
+        int[] steps = new int[count];
+        int[] heartRates = new int[count];
+        double[] weights = new double[count];
+        double[] heights = new double[count];
+        double[] waterIntakes = new double[count];
+        double[] hoursOfSleep = new double[count];
+        for (int i = 0; i < count; i++) {
+            HealthData healthData = rows.get(i);
+            ids[i] = healthData.getId();
+            dates[i] = (int) healthData.getDate().toEpochDay();
+            steps[i] = healthData.getSteps();
+            heartRates[i] = healthData.getHeartRate();
+            weights[i] = healthData.getWeight();
+            heights[i] = healthData.getHeight();
+            waterIntakes[i] = healthData.getWaterIntake();
+            hoursOfSleep[i] = healthData.getHoursOfSleep();
+        }
+        BitOutput out = new BitOutput();
+        ColumnCodec.writeDeltaInts(out, dates, count);
+        ColumnCodec.writePackedInts(out, ids, count);
+        ColumnCodec.writePackedInts(out, steps, count);
+        ColumnCodec.writePackedInts(out, heartRates, count);
+        ColumnCodec.writeXorDoubles(out, weights, count);
+        ColumnCodec.writeXorDoubles(out, heights, count);
+        ColumnCodec.writeXorDoubles(out, waterIntakes, count);
+        ColumnCodec.writeXorDoubles(out, hoursOfSleep, count);
+        return out.toByteArray();
+    }
+
+    private static List<HealthData> decodeBlock(int userId, byte[] block, int count) {
+        BitInput in = new BitInput(block);
+        int[] dates = ColumnCodec.readDeltaInts(in, count);
+        int[] ids = ColumnCodec.readPackedInts(in, count);
+        int[] steps = ColumnCodec.readPackedInts(in, count);
+        int[] heartRates = ColumnCodec.readPackedInts(in, count);
+        double[] weights = ColumnCodec.readXorDoubles(in, count);
+        double[] heights = ColumnCodec.readXorDoubles(in, count);
+        double[] waterIntakes = ColumnCodec.readXorDoubles(in, count);
+        double[] hoursOfSleep = ColumnCodec.readXorDoubles(in, count);
+        List<HealthData> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            HealthData healthData = new HealthData(ids[i], userId, weights[i], heights[i], steps[i], heartRates[i], waterIntakes[i], hoursOfSleep[i], LocalDate.ofEpochDay(dates[i]));
+            healthData.markArchived();
+            rows.add(healthData);
+        }
+        return rows;
+    }
+
+    private Path fileOf(YearMonth month) {
+        return directory.resolve(HealthDataPartitionManager.partitionName(month) + EXTENSION);
+    }
+}
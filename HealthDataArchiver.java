@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class moves health data partitions older than two years out of the database into the HealthDataArchive.
+ * For each month the rows are first copied to the archive file while the partition is locked against writes, then
+ * the partition is detached from health_data concurrently and dropped once the file is safely on disk, so archiving
+ * never locks the whole health_data table. The rollup tables are left untouched, so weekly and monthly summaries
+ * still cover the archived months.
+ */
+
+public class HealthDataArchiver {
+
+    private static final int RETENTION_YEARS = 2;
+    private static final String ATTACHED = "attached";
+    private static final String DETACH_PENDING = "detach_pending";
+    private static final String DETACHED = "detached";
+
+    private final HealthDataArchive archive;
+    private final HealthDataPartitionManager partitionManager = HealthDataPartitionManager.getInstance();
+
+/**
+     * Constructs a HealthDataArchiver object that writes to the shared archive.
+     */
+    public HealthDataArchiver() {
+        this(HealthDataArchive.getInstance());
+    }
+/**
+     * Constructs a HealthDataArchiver object that writes to a given archive.
+     *
+     * @param archive The HealthDataArchive to write to.
+     */
+    public HealthDataArchiver(HealthDataArchive archive) {
+        this.archive = archive;
+    }
+/**
+     * Gets the first date that is never archived; all archived health data is dated before it.
+     *
+     * @return The first day of the month two years ago.
+     */
+    public static LocalDate getCutoff() {
+        return YearMonth.now().minusYears(RETENTION_YEARS).atDay(1);
+    }
+/**
+     * Archives every health data partition whose month ended more than two years ago, and finishes the archiving
+     * of months whose partition was detached but not yet dropped when a previous run stopped.
+     *
+     * @return The number of months archived.
+     */
+    public int archiveExpiredPartitions() {
+        YearMonth cutoff = YearMonth.from(getCutoff());
+        int archived = 0;
+        for (Map.Entry<YearMonth, String> partition : getPartitions().entrySet()) {
+            YearMonth month = partition.getKey();
+            if (month.isBefore(cutoff) && archiveMonth(month, partition.getValue())) {
+                archived++;
+            }
+        }
+        return archived;
+    }
+/**
+     * Moves one month of health data from its partition into the archive and drops the partition.
+     * The rows are copied to the archive first, while the partition is locked against writes, so they stay
+     * readable throughout. The partition is then detached concurrently, which never takes more than a
+     * SHARE UPDATE EXCLUSIVE lock on health_data, so readers and writers of other months are not blocked.
+     * Rows written to the month between the copy and the detach are merged into the archive before the
+     * detached table is dropped.
+     *
+     * @param month The month to archive.
+     * @return true if the month was archived, false otherwise.
+     */
+    public boolean archiveMonth(YearMonth month) {
+        return archiveMonth(month, ATTACHED);
+    }
+
+    private boolean archiveMonth(YearMonth month, String state) {
+
+        String partition = HealthDataPartitionManager.partitionName(month);
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            Map<Integer, Integer> copied = null;
+            if (ATTACHED.equals(state)) {
+                copied = copyToArchive(con, month, partition);
+            }
+            if (!DETACHED.equals(state)) {
+                try (Statement statement = con.createStatement()) {
+                    statement.execute("ALTER TABLE public.\"health_data\" DETACH PARTITION public.\"" + partition + "\" " +
+                            (ATTACHED.equals(state) ? "CONCURRENTLY" : "FINALIZE"));
+                }
+            }
+            dropDetached(con, month, partition, copied);
+            partitionManager.forgetPartition(month);
+            return true;
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    // Copies the partition to the archive and returns the version of every copied row by ID
+    private Map<Integer, Integer> copyToArchive(Connection con, YearMonth month, String partition) throws SQLException, IOException {
+
+        String query = archiveQuery(partition);
+
+        con.setAutoCommit(false);
+        try {
+            try (Statement statement = con.createStatement()) {
+                statement.execute("LOCK TABLE ONLY public.\"" + partition + "\" IN SHARE MODE");
+            }
+            List<HealthData> rows = new ArrayList<>();
+            try (Statement statement = con.createStatement();
+                 ResultSet rs = statement.executeQuery(query)) {
+                rows.addAll(RowMappers.HEALTH_DATA.mapAll(rs));
+            }
+            if (!rows.isEmpty()) {
+                archive.writeMonth(month, rows);
+            }
+            con.commit();
+            Map<Integer, Integer> versions = new HashMap<>();
+            for (HealthData healthData : rows) {
+                versions.put(healthData.getId(), healthData.getVersion());
+            }
+            return versions;
+        } catch (SQLException | IOException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    // Merges the rows that changed since the copy into the archive, then drops the detached table
+    private void dropDetached(Connection con, YearMonth month, String partition, Map<Integer, Integer> copied) throws SQLException, IOException {
+
+        String query = archiveQuery(partition);
+
+        con.setAutoCommit(false);
+        try {
+            List<HealthData> rows = new ArrayList<>();
+            try (Statement statement = con.createStatement();
+                 ResultSet rs = statement.executeQuery(query)) {
+                rows.addAll(RowMappers.HEALTH_DATA.mapAll(rs));
+            }
+            Set<Integer> removed = new HashSet<>();
+            boolean changed = copied == null;
+            if (copied != null) {
+                removed.addAll(copied.keySet());
+                for (HealthData healthData : rows) {
+                    removed.remove(healthData.getId());
+                    Integer version = copied.get(healthData.getId());
+                    changed |= version == null || version != healthData.getVersion();
+                }
+            }
+            if (changed || !removed.isEmpty()) {
+                archive.writeMonth(month, rows, removed);
+            }
+            try (Statement statement = con.createStatement()) {
+                statement.execute("DROP TABLE public.\"" + partition + "\"");
+            }
+            con.commit();
+        } catch (SQLException | IOException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    // Rows of deleted accounts are left out, so a purge that ran while the partition was detached is not undone
+    private static String archiveQuery(String partition) {
+        return "SELECT h.* FROM public.\"" + partition + "\" h " +
+                "WHERE EXISTS (SELECT 1 FROM public.\"users\" u WHERE u.user_id = h.user_id AND u.deleted_at IS NULL) " +
+                "ORDER BY h.user_id, h.date, h.health_data_id";
+    }
+
+    // Every monthly partition, attached, waiting for a concurrent detach to finish, or detached but not dropped
+    private Map<YearMonth, String> getPartitions() {
+
+        Map<YearMonth, String> partitions = new TreeMap<>();
+
+        String query = "SELECT c.relname, i.inhdetachpending FROM pg_class c " +
+                "JOIN pg_namespace n ON n.oid = c.relnamespace AND n.nspname = 'public' " +
+                "LEFT JOIN pg_inherits i ON i.inhrelid = c.oid " +
+                "WHERE c.relkind = 'r' AND c.relname ~ '^health_data_y[0-9]{4}m[0-9]{2}$' ORDER BY c.relname";
+
+        try (Connection con = DatabaseConnection.getCon();
+             Statement statement = con.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            while (rs.next()) {
+                String name = rs.getString("relname");
+                boolean pending = rs.getBoolean("inhdetachpending");
+                String state = rs.wasNull() ? DETACHED : pending ? DETACH_PENDING : ATTACHED;
+                partitions.put(YearMonth.of(Integer.parseInt(name.substring(13, 17)), Integer.parseInt(name.substring(18, 20))), state);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return partitions;
+    }
+/**
+     * Archives all expired health data partitions; meant to be run from a scheduled job.
+     *
+     * @param args The command line arguments, which are not used.
+     */
+    public static void main(String[] args) {
+        int archived = new HealthDataArchiver().archiveExpiredPartitions();
+        System.out.println("Archived " + archived + " month(s) of health data dated before " + getCutoff() + ".");
+    }
+}
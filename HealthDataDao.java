@@ -1,7 +1,20 @@
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class provides data access methods for interacting with health data in the database.
@@ -9,6 +22,76 @@ import java.util.List;
 
 public class HealthDataDao {
 
+    private static final List<HealthDataListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** The earliest date a full-history read covers; health_data is partitioned by month on date, so every read carries date bounds. */
+    private static final LocalDate HISTORY_START = LocalDate.of(1900, 1, 1);
+    private static final int MAX_UPSERT_ATTEMPTS = 3;
+    private static final int ALL_UPDATABLE_FIELDS = HealthData.FIELD_HOURS_OF_SLEEP * 2 - 1;
+
+    /** Rows fetched per round trip by streaming reads, read from the health.data.fetch.size system property. */
+    private static final int FETCH_SIZE = Integer.getInteger("health.data.fetch.size", 500);
+    private static final Comparator<HealthData> HISTORY_ORDER = Comparator.comparing(HealthData::getDate).thenComparingInt(HealthData::getId);
+
+    /** UPDATE statements by the bit mask of the columns they set; reusing the exact SQL text lets the driver reuse its server-side prepared statement. */
+    private static final Map<Integer, String> updateQueries = new ConcurrentHashMap<>();
+
+    private HealthDataRollupDao rollupDao = new HealthDataRollupDao();
+    private HealthDataPartitionManager partitionManager = HealthDataPartitionManager.getInstance();
+    private HealthDataArchive archive = HealthDataArchive.getInstance();
+
+/**
+     * Registers a listener that is notified after every health data write made through any HealthDataDao.
+     *
+     * @param listener The HealthDataListener to register.
+     */
+    public static void addListener(HealthDataListener listener) {
+        listeners.add(listener);
+    }
+/**
+     * Unregisters a previously registered listener.
+     *
+     * @param listener The HealthDataListener to unregister.
+     */
+    public static void removeListener(HealthDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void fireSaved(HealthData previous, HealthData current) {
+        for (HealthDataListener listener : listeners) {
+            try {
+                listener.onHealthDataSaved(previous, current);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+/**
+     * Notifies the listeners that all rows of a deleted user were purged, so they can drop their state for the user.
+     *
+     * @param userId The ID of the purged user.
+     */
+    public static void notifyUserPurged(int userId) {
+        for (HealthDataListener listener : listeners) {
+            try {
+                listener.onUserPurged(userId);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void fireDeleted(HealthData previous) {
+        for (HealthDataListener listener : listeners) {
+            try {
+                listener.onHealthDataDeleted(previous);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
 /**
      * Creates a new health data entry in the database.
      *
@@ -22,174 +105,907 @@ public class HealthDataDao {
  
         String query = "INSERT INTO public.\"health_data\" (user_id, weight, height, steps, heart_rate, water_intake, hours_of_sleep, date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            statement.setInt(1, healthData.getUserId());
-            statement.setDouble(2, healthData.getWeight());
-            statement.setDouble(3, healthData.getHeight());
-            statement.setInt(4, healthData.getSteps());
-            statement.setInt(5, healthData.getHeartRate());
-            statement.setDouble(6, healthData.getWaterIntake());
-            statement.setDouble(7, healthData.getHoursOfSleep());
-            statement.setDate(8, java.sql.Date.valueOf(healthData.getDate()));
-            statement.executeUpdate();
-
-            try (ResultSet rs = statement.getGeneratedKeys()) {
-                if (rs.next()) {
-                    generatedId = rs.getInt(1); 
-                } else {
-                    throw new SQLException("Oops! An error has occured adding your health data, no ID was obtained.");
+        try (Connection con = DatabaseConnection.getCon()) {
+            partitionManager.ensurePartition(healthData.getDate());
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                statement.setInt(1, healthData.getUserId());
+                setVital(statement, 2, healthData.getWeight());
+                setVital(statement, 3, healthData.getHeight());
+                statement.setInt(4, healthData.getSteps());
+                setVital(statement, 5, healthData.getHeartRate());
+                statement.setDouble(6, healthData.getWaterIntake());
+                statement.setDouble(7, healthData.getHoursOfSleep());
+                statement.setDate(8, java.sql.Date.valueOf(healthData.getDate()));
+                statement.executeUpdate();
+
+                try (ResultSet rs = statement.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        generatedId = rs.getInt(1); 
+                    } else {
+                        throw new SQLException("Oops! An error has occured adding your health data, no ID was obtained.");
+                    }
                 }
+
+                rollupDao.addToRollups(con, healthData);
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                generatedId = 0;
+                throw e;
             }
-          
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        if (generatedId != 0) {
+            healthData.setId(generatedId);
+            fireSaved(null, healthData);
+        }
         return generatedId;
     }
 /**
-     * Retrieves health data from the database by its ID.
+     * Retrieves health data from the database by its ID and date.
+     * The date lets the query read only the monthly partition that holds the entry.
      *
      * @param id The ID of the health data entry to retrieve.
-     * @return The HealthData object corresponding to the provided ID.
-     */
-    public HealthData getHealthDataById(int id) { 
-
-        int health_data_id = 0;
-        int user_id = 0;
-        Double weight = null;
-        Double height = null;
-        int steps = 0;
-        int heartRate = 0;
-        Double water_intake = null;
-        Double hours_of_sleep = null;
-        LocalDate date = null;
-    
-        String query = "SELECT * FROM public.\"health_data\" WHERE health_data_id = ?";
+     * @param entryDate The date of the health data entry to retrieve.
+     * @return The HealthData object corresponding to the provided ID, or null if not found.
+     */
+    public HealthData getHealthDataById(int id, LocalDate entryDate) { 
+
+        String query = "SELECT * FROM public.\"health_data\" WHERE health_data_id = ? AND date = ?";
     
         try (Connection con = DatabaseConnection.getCon();
              PreparedStatement statement = con.prepareStatement(query)) {
             statement.setInt(1, id);
+            statement.setDate(2, java.sql.Date.valueOf(entryDate));
             try (ResultSet rs = statement.executeQuery()) {
-                if (rs.next()) {
-                    health_data_id = rs.getInt("health_data_id");
-                    user_id = rs.getInt("user_id");
-                    weight = rs.getDouble("weight");
-                    height = rs.getDouble("height");
-                    steps = rs.getInt("steps");
-                    heartRate = rs.getInt("heart_rate");
-                    water_intake = rs.getDouble("water_intake");
-                    hours_of_sleep = rs.getDouble("hours_of_sleep");
-                    Date sqlDate = rs.getDate("date");
-                    if (sqlDate != null) {
-                        date = sqlDate.toLocalDate();
-                    }
-                }
+                return RowMappers.HEALTH_DATA.mapFirst(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return new HealthData(health_data_id, user_id, weight, height, steps, heartRate, water_intake, hours_of_sleep, date);
+        return null;
     }
 /**
-     * Retrieves health data from the database associated with a specific user.
+     * Retrieves the full health data history of a specific user, ordered by date.
+     * Callers that only need part of the history should use the date range variant, which reads fewer partitions.
      *
      * @param userId The ID of the user whose health data is to be retrieved.
      * @return A list of HealthData objects representing the health data of the specified user.
      */ 
     public List<HealthData> getHealthDataByUserId(int userId) {
+        return getHealthDataByUserId(userId, HISTORY_START, LocalDate.now().plusYears(1));
+    }
+/**
+     * Retrieves the health data of a specific user within a date range, ordered by date.
+     * Only the monthly partitions overlapping the range are read. If the range starts before the archive cutoff,
+     * the archived months in the range are read from the HealthDataArchive as well.
+     *
+     * @param userId The ID of the user whose health data is to be retrieved.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return A list of HealthData objects representing the health data of the specified user.
+     */ 
+    public List<HealthData> getHealthDataByUserId(int userId, LocalDate startDate, LocalDate endDate) {
+        try (Stream<HealthData> healthData = streamHealthDataByUserId(userId, startDate, endDate)) {
+            return healthData.collect(Collectors.toList());
+        }
+    }
+/**
+     * Streams the full health data history of a specific user, ordered by date.
+     *
+     * @param userId The ID of the user whose health data is to be streamed.
+     * @return A Stream of HealthData objects, which must be closed to release its connection.
+     */
+    public Stream<HealthData> streamHealthDataByUserId(int userId) {
+        return streamHealthDataByUserId(userId, HISTORY_START, LocalDate.now().plusYears(1));
+    }
+/**
+     * Streams the health data of a specific user within a date range, ordered by date.
+     * The rows are read through a server-side cursor, FETCH_SIZE rows per round trip, so only one batch is held in
+     * memory however long the history is. The cursor keeps a connection and a read transaction open until the stream
+     * is closed or fully consumed, so use the stream in a try-with-resources block. Archived months in the range are
+     * merged in date order, and an entry found in both places is returned once, from health_data.
+     *
+     * @param userId The ID of the user whose health data is to be streamed.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return A Stream of HealthData objects, which must be closed to release its connection.
+     */
+    public Stream<HealthData> streamHealthDataByUserId(int userId, LocalDate startDate, LocalDate endDate) {
 
-    List<HealthData> healthDataList = new ArrayList<>();
-    
-    String query = "SELECT * FROM public.\"health_data\" WHERE user_id = ?";
-    
-    try (Connection con = DatabaseConnection.getCon();
-         PreparedStatement statement = con.prepareStatement(query)) {
-        statement.setInt(1, userId);
-        try (ResultSet rs = statement.executeQuery()) {
-            while (rs.next()) {
-                int health_data_id = rs.getInt("health_data_id");
-                Double weight = rs.getDouble("weight");
-                Double height = rs.getDouble("height");
-                int steps = rs.getInt("steps");
-                int heartRate = rs.getInt("heart_rate");
-                Double water_intake = rs.getDouble("water_intake");
-                Double hours_of_sleep = rs.getDouble("hours_of_sleep");
-                Date sqlDate = rs.getDate("date");
-                LocalDate date = null;
-                if (sqlDate != null) {
-                    date = sqlDate.toLocalDate();
+        String query = "SELECT * FROM public.\"health_data\" WHERE user_id = ? AND date BETWEEN ? AND ? ORDER BY date, health_data_id";
+
+        List<HealthData> archived = startDate.isBefore(HealthDataArchiver.getCutoff())
+                ? archive.read(userId, startDate, endDate) : new ArrayList<>();
+        HealthDataCursor cursor = new HealthDataCursor(archived);
+
+        try {
+            PreparedStatement statement = cursor.open(DatabaseConnection.getCon(), query);
+            statement.setInt(1, userId);
+            statement.setDate(2, java.sql.Date.valueOf(startDate));
+            statement.setDate(3, java.sql.Date.valueOf(endDate));
+            cursor.start(statement.executeQuery());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            cursor.close();
+        }
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+/**
+     * Passes the full health data history of a user to an action, in date order.
+     *
+     * @param userId The ID of the user.
+     * @param action The action to run for each HealthData object.
+     * @return The number of entries passed to the action.
+     */
+    public long forEachHealthData(int userId, Consumer<? super HealthData> action) {
+        return forEachHealthData(userId, HISTORY_START, LocalDate.now().plusYears(1), action);
+    }
+/**
+     * Passes every health data entry of a user within a date range to an action, in date order, through the same
+     * server-side cursor as streamHealthDataByUserId. The connection is released when the method returns.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @param action The action to run for each HealthData object.
+     * @return The number of entries passed to the action.
+     */
+    public long forEachHealthData(int userId, LocalDate startDate, LocalDate endDate, Consumer<? super HealthData> action) {
+        long count = 0;
+        try (Stream<HealthData> healthData = streamHealthDataByUserId(userId, startDate, endDate)) {
+            Iterator<HealthData> entries = healthData.iterator();
+            while (entries.hasNext()) {
+                action.accept(entries.next());
+                count++;
+            }
+        }
+        return count;
+    }
+/**
+     * Retrieves the health data of a specific user within a date range as a columnar HealthSeries, for aggregates.
+     * Rows are read straight from the ResultSet into the columns, without a HealthData object per row; ranges that
+     * reach archived months are read through streamHealthDataByUserId instead, so the archive is merged in.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The HealthSeries of the range, empty if no data was found.
+     */
+    public HealthSeries getHealthSeries(int userId, LocalDate startDate, LocalDate endDate) {
+
+        if (startDate.isBefore(HealthDataArchiver.getCutoff())) {
+            HealthSeries.Builder builder = new HealthSeries.Builder(userId);
+            forEachHealthData(userId, startDate, endDate, builder::add);
+            return builder.build();
+        }
+
+        String query = "SELECT * FROM public.\"health_data\" WHERE user_id = ? AND date BETWEEN ? AND ? ORDER BY date, health_data_id";
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query)) {
+                statement.setFetchSize(FETCH_SIZE);
+                statement.setInt(1, userId);
+                statement.setDate(2, java.sql.Date.valueOf(startDate));
+                statement.setDate(3, java.sql.Date.valueOf(endDate));
+                HealthSeries series;
+                try (ResultSet rs = statement.executeQuery()) {
+                    series = HealthSeries.read(userId, rs);
                 }
-                
-                HealthData healthData = new HealthData(health_data_id, userId, weight, height, steps, heartRate, water_intake, hours_of_sleep, date);
-                healthDataList.add(healthData);
+                con.commit();
+                return series;
+            } finally {
+                con.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new HealthSeries.Builder(userId).build();
+    }
+/**
+     * Retrieves the most recent health data entry of a user up to today.
+     * The newest partitions are read first, so the query normally stops after the current month.
+     *
+     * @param userId The ID of the user.
+     * @return The latest HealthData object, or null if the user has no health data.
+     */
+    public HealthData getLatestHealthData(int userId) {
+
+        String query = "SELECT * FROM public.\"health_data\" WHERE user_id = ? AND date BETWEEN ? AND ? ORDER BY date DESC, health_data_id DESC LIMIT 1";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            statement.setDate(2, java.sql.Date.valueOf(HISTORY_START));
+            statement.setDate(3, java.sql.Date.valueOf(LocalDate.now()));
+            try (ResultSet rs = statement.executeQuery()) {
+                return RowMappers.HEALTH_DATA.mapFirst(rs);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
-    } catch (SQLException e) {
-        e.printStackTrace();
-    }    
-    return healthDataList;
+        return null;
     }
 /**
-     * Updates an existing health data entry in the database.
+     * Updates an existing health data entry in the database if nobody else changed it since it was loaded.
+     * The entry is located by its ID and date, so the date of an entry cannot be changed through this method.
+     * Only the columns changed through the setters since the entry was loaded are written, and an unchanged
+     * entry is not written at all. An object built with the constructor counts as changed in every column.
+     * No row lock is taken up front: the update only applies while the stored version still equals the version
+     * of the object, and on success the object takes the new version.
      *
      * @param healthData The HealthData object containing the updated health data.
-     * @return A boolean indicating whether the update was successful.
+     * @return UPDATED if the entry was updated, CONFLICT if it was changed concurrently, NOT_FOUND if it no longer exists,
+     *         READ_ONLY if it was read from the archive, or FAILED if the update could not be written.
      */    
-    public boolean updateHealthData(HealthData healthData) {
+    public UpdateResult updateHealthData(HealthData healthData) {
 
-        boolean bool = false;
-  
-        String query = "UPDATE public.\"health_data\" " +
-                "SET user_id = ?, weight = ?, height = ?, steps = ?, heart_rate = ?, water_intake = ?, hours_of_sleep = ?, date = ? " +
-                "WHERE health_data_id = ?";
+        UpdateResult result = UpdateResult.NOT_FOUND;
+
+        if (healthData.isArchived()) {
+            return UpdateResult.READ_ONLY;
+        }
+
+        int fields = healthData.getDirtyFields();
+        if (fields == 0) {
+            return UpdateResult.UPDATED;
+        }
+        String query = updateQuery(fields);
        
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
-            statement.setInt(1, healthData.getUserId());
-            statement.setDouble(2, healthData.getWeight());
-            statement.setDouble(3, healthData.getHeight());
-            statement.setInt(4, healthData.getSteps());
-            statement.setInt(5, healthData.getHeartRate());
-            statement.setDouble(6, healthData.getWaterIntake());
-            statement.setDouble(7, healthData.getHoursOfSleep());
-            statement.setDate(8, java.sql.Date.valueOf(healthData.getDate()));
-            statement.setInt(9, healthData.getId());
-            int updatedRows = statement.executeUpdate();
-            if (updatedRows != 0) {
-                bool = true;
+        HealthData previous = null;
+        HealthData current = healthData;
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query)) {
+                int index = 1;
+                for (int field = 1; field <= ALL_UPDATABLE_FIELDS; field <<= 1) {
+                    if ((fields & field) != 0) {
+                        bindField(statement, index++, healthData, field);
+                    }
+                }
+                statement.setInt(index++, healthData.getId());
+                statement.setDate(index++, java.sql.Date.valueOf(healthData.getDate()));
+                statement.setInt(index, healthData.getVersion());
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        previous = RowMappers.HEALTH_DATA.forResultSet(rs).mapRow(rs);
+                        current = withFields(previous, healthData, fields);
+                        rollupDao.removeFromRollups(con, previous);
+                        rollupDao.addToRollups(con, current);
+                        result = UpdateResult.UPDATED;
+                    } else if (exists(con, healthData.getId(), healthData.getDate())) {
+                        result = UpdateResult.CONFLICT;
+                    }
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            return UpdateResult.FAILED;
+        }
+        if (result == UpdateResult.UPDATED) {
+            healthData.setVersion(current.getVersion());
+            healthData.clearDirtyFields();
+            fireSaved(previous, current);
+        }
+        return result;
+    }
+
+    private boolean exists(Connection con, int id, LocalDate entryDate) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement("SELECT 1 FROM public.\"health_data\" WHERE health_data_id = ? AND date = ?")) {
+            statement.setInt(1, id);
+            statement.setDate(2, java.sql.Date.valueOf(entryDate));
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static HealthData withFields(HealthData stored, HealthData changes, int fields) {
+        HealthData merged = new HealthData(stored.getId(), stored.getUserId(), stored.getWeight(), stored.getHeight(), stored.getSteps(),
+                stored.getHeartRate(), stored.getWaterIntake(), stored.getHoursOfSleep(), stored.getDate());
+        merged.setVersion(stored.getVersion() + 1);
+        if ((fields & HealthData.FIELD_USER_ID) != 0) {
+            merged.setUserId(changes.getUserId());
+        }
+        if ((fields & HealthData.FIELD_WEIGHT) != 0) {
+            merged.setWeight(changes.getWeight());
+        }
+        if ((fields & HealthData.FIELD_HEIGHT) != 0) {
+            merged.setHeight(changes.getHeight());
+        }
+        if ((fields & HealthData.FIELD_STEPS) != 0) {
+            merged.setSteps(changes.getSteps());
+        }
+        if ((fields & HealthData.FIELD_HEART_RATE) != 0) {
+            merged.setHeartRate(changes.getHeartRate());
+        }
+        if ((fields & HealthData.FIELD_WATER_INTAKE) != 0) {
+            merged.setWaterIntake(changes.getWaterIntake());
+        }
+        if ((fields & HealthData.FIELD_HOURS_OF_SLEEP) != 0) {
+            merged.setHoursOfSleep(changes.getHoursOfSleep());
+        }
+        merged.clearDirtyFields();
+        return merged;
+    }
+
+    private static String updateQuery(int fields) {
+        return updateQueries.computeIfAbsent(fields, f -> {
+            // The self-join returns the row as it was before the update, for the rollups and listeners
+            StringBuilder query = new StringBuilder("UPDATE public.\"health_data\" AS updated SET ");
+            for (int field = 1; field <= ALL_UPDATABLE_FIELDS; field <<= 1) {
+                if ((f & field) != 0) {
+                    query.append(columnOf(field)).append(" = ?, ");
+                }
+            }
+            return query.append("version = updated.version + 1 FROM public.\"health_data\" AS stored ")
+                    .append("WHERE updated.health_data_id = stored.health_data_id AND updated.date = stored.date ")
+                    .append("AND updated.health_data_id = ? AND updated.date = ? AND updated.version = ? RETURNING stored.*").toString();
+        });
+    }
+
+    // A weight, height or heart rate of 0 was not recorded, and is stored as NULL so aggregates skip it
+    private static void setVital(PreparedStatement statement, int index, double value) throws SQLException {
+        if (value == 0) {
+            statement.setNull(index, Types.NUMERIC);
+        } else {
+            statement.setDouble(index, value);
         }
-        return bool;
     }
- /**
-     * Deletes a health data entry from the database by its ID.
+
+    private static Object vitalOrNull(double value) {
+        return value == 0 ? null : value;
+    }
+
+    private static String columnOf(int field) {
+        switch (field) {
+            case HealthData.FIELD_USER_ID: return "user_id";
+            case HealthData.FIELD_WEIGHT: return "weight";
+            case HealthData.FIELD_HEIGHT: return "height";
+            case HealthData.FIELD_STEPS: return "steps";
+            case HealthData.FIELD_HEART_RATE: return "heart_rate";
+            case HealthData.FIELD_WATER_INTAKE: return "water_intake";
+            case HealthData.FIELD_HOURS_OF_SLEEP: return "hours_of_sleep";
+            default: throw new IllegalArgumentException("Unknown health data field: " + field);
+        }
+    }
+
+    private static void bindField(PreparedStatement statement, int index, HealthData healthData, int field) throws SQLException {
+        switch (field) {
+            case HealthData.FIELD_USER_ID:
+                statement.setInt(index, healthData.getUserId());
+                break;
+            case HealthData.FIELD_WEIGHT:
+                setVital(statement, index, healthData.getWeight());
+                break;
+            case HealthData.FIELD_HEIGHT:
+                setVital(statement, index, healthData.getHeight());
+                break;
+            case HealthData.FIELD_STEPS:
+                statement.setInt(index, healthData.getSteps());
+                break;
+            case HealthData.FIELD_HEART_RATE:
+                setVital(statement, index, healthData.getHeartRate());
+                break;
+            case HealthData.FIELD_WATER_INTAKE:
+                statement.setDouble(index, healthData.getWaterIntake());
+                break;
+            case HealthData.FIELD_HOURS_OF_SLEEP:
+                statement.setDouble(index, healthData.getHoursOfSleep());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown health data field: " + field);
+        }
+    }
+/**
+     * Deletes a health data entry from the database by its ID and date.
      *
      * @param id The ID of the health data entry to delete.
+     * @param entryDate The date of the health data entry to delete.
      * @return A boolean indicating whether the deletion was successful.
      */
-    public boolean deleteHealthData(int id) { 
+    public boolean deleteHealthData(int id, LocalDate entryDate) { 
         
         boolean bool = false;
       
-        String query = "DELETE FROM public.\"health_data\" WHERE health_data_id = ?";
+        String query = "DELETE FROM public.\"health_data\" WHERE health_data_id = ? AND date = ?";
     
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
-            statement.setInt(1, id);
-            int rowsUpdated = statement.executeUpdate();
-            if (rowsUpdated != 0){
-                bool = true;
+        HealthData previous = null;
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query)) {
+                previous = lockHealthData(con, id, entryDate);
+                statement.setInt(1, id);
+                statement.setDate(2, java.sql.Date.valueOf(entryDate));
+                int rowsUpdated = statement.executeUpdate();
+                if (rowsUpdated != 0){
+                    rollupDao.removeFromRollups(con, previous);
+                    bool = true;
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                bool = false;
+                throw e;
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        if (bool) {
+            fireDeleted(previous);
+        }
         return bool;
     }
+/**
+     * Creates or replaces the health data entry of a user for a date.
+     * Writing the same values again is a no-op, so retried or repeated imports do not create rows or dead tuples.
+     *
+     * @param healthData The HealthData object to store; its ID is set to the ID of the stored entry.
+     * @return The ID of the stored entry, or 0 if the write failed.
+     */
+    public int upsertHealthData(HealthData healthData) {
+        List<HealthData> batch = new ArrayList<>();
+        batch.add(healthData);
+        return upsertHealthData(batch) ? healthData.getId() : 0;
+    }
+/**
+     * Creates or replaces the health data entries of a batch of users and dates in one transaction.
+     * When the batch holds several entries for one user and date, the last one wins.
+     *
+     * @param healthDataList The HealthData objects to store; their IDs are set to the IDs of the stored entries.
+     * @return A boolean indicating whether the batch was stored.
+     */
+    public boolean upsertHealthData(List<HealthData> healthDataList) {
+        return writeDaily(healthDataList, (previous, incoming) -> new HealthData(previous.getId(), incoming.getUserId(), incoming.getWeight(),
+                incoming.getHeight(), incoming.getSteps(), incoming.getHeartRate(), incoming.getWaterIntake(), incoming.getHoursOfSleep(), incoming.getDate()), null);
+    }
+/**
+     * Merges a batch of partial daily readings into health_data in one transaction.
+     * Steps, water intake and hours of sleep are added to the user's entry for the date. The heart rate sums and the
+     * latest weight and height measurements of each day are kept in health_data_readings, and the entry gets the
+     * average heart rate and latest measurements of every reading merged so far, so the result does not depend on the
+     * order in which readings are merged. A value without readings keeps the stored value, or stays NULL in a new entry.
+     *
+     * @param readings The DailyReadings objects holding the partial readings.
+     * @return A boolean indicating whether the batch was merged.
+     */
+    public boolean mergeDailyHealthData(List<DailyReadings> readings) {
+
+        // Readings for the same user and date are folded first, so each day is read and written once
+        Map<String, DailyReadings> folded = new LinkedHashMap<>();
+        for (DailyReadings reading : readings) {
+            folded.merge(reading.getUserId() + "|" + reading.getDate(), reading, DailyReadings::merge);
+        }
+        List<HealthData> partials = new ArrayList<>();
+        for (DailyReadings reading : folded.values()) {
+            partials.add(toPartial(reading, reading));
+        }
+        return writeDaily(partials, HealthDataDao::mergeDaily, (con, incoming) -> mergeReadings(con, folded, incoming));
+    }
+/**
+     * Sets the heart rate of a user's entry for a date, creating the entry if the user has none for that date.
+     * The other values of an existing entry are kept, and a new entry has no other values recorded. Setting the same
+     * heart rate again is a no-op, so the daily heart rate of the wearable samples can be applied more than once.
+     *
+     * @param userId The ID of the user.
+     * @param date The date of the entry.
+     * @param heartRate The heart rate.
+     * @return A boolean indicating whether the heart rate was stored.
+     */
+    public boolean upsertHeartRate(int userId, LocalDate date, int heartRate) {
+        List<HealthData> batch = new ArrayList<>();
+        batch.add(new HealthData(0, userId, 0, 0, 0, heartRate, 0, 0, date));
+        return writeDaily(batch, HealthDataDao::mergeDaily, null);
+    }
+/**
+     * Builds the partial health data entry of newly merged readings: the amounts of the new readings, and the vitals
+     * of every reading of the day merged so far.
+     *
+     * @param added The readings being merged.
+     * @param combined The stored readings of the day merged with the added ones.
+     * @return A HealthData object to merge into the stored entry with mergeDaily.
+     */
+    static HealthData toPartial(DailyReadings added, DailyReadings combined) {
+        return new HealthData(0, added.getUserId(), combined.getWeight(), combined.getHeight(), (int) added.getSteps(), combined.getHeartRate(),
+                added.getWaterIntake(), added.getHoursOfSleep(), added.getDate());
+    }
+/**
+     * Merges a partial health data entry built by toPartial into a stored entry.
+     *
+     * @param previous The stored HealthData object.
+     * @param partial The partial HealthData object.
+     * @return The HealthData object to store.
+     */
+    static HealthData mergeDaily(HealthData previous, HealthData partial) {
+        return new HealthData(previous.getId(), previous.getUserId(),
+                partial.getWeight() > 0 ? partial.getWeight() : previous.getWeight(),
+                partial.getHeight() > 0 ? partial.getHeight() : previous.getHeight(),
+                previous.getSteps() + partial.getSteps(),
+                partial.getHeartRate() > 0 ? partial.getHeartRate() : previous.getHeartRate(),
+                previous.getWaterIntake() + partial.getWaterIntake(),
+                previous.getHoursOfSleep() + partial.getHoursOfSleep(),
+                previous.getDate());
+    }
+
+    // Locks the stored readings of the days, folds the new readings into them and rebuilds the partial entries from the result
+    private void mergeReadings(Connection con, Map<String, DailyReadings> folded, Map<String, HealthData> incoming) throws SQLException {
+
+        String selectQuery = "SELECT r.* FROM public.\"health_data_readings\" r " +
+                "JOIN unnest(?::integer[], ?::date[]) AS k(user_id, date) ON r.user_id = k.user_id AND r.date = k.date FOR UPDATE OF r";
+        String upsertQuery = "INSERT INTO public.\"health_data_readings\" (user_id, date, heart_rate_sum, heart_rate_count, weight, weight_time, height, height_time) " +
+                "SELECT * FROM unnest(?::integer[], ?::date[], ?::float8[], ?::integer[], ?::float8[], ?::bigint[], ?::float8[], ?::bigint[]) " +
+                "ON CONFLICT (user_id, date) DO UPDATE SET heart_rate_sum = EXCLUDED.heart_rate_sum, heart_rate_count = EXCLUDED.heart_rate_count, " +
+                "weight = EXCLUDED.weight, weight_time = EXCLUDED.weight_time, height = EXCLUDED.height, height_time = EXCLUDED.height_time";
+
+        Map<String, DailyReadings> combined = new LinkedHashMap<>();
+        for (Map.Entry<String, DailyReadings> entry : folded.entrySet()) {
+            DailyReadings reading = entry.getValue();
+            if (reading.getHeartRateCount() > 0 || reading.getWeightTime() != DailyReadings.NO_TIME || reading.getHeightTime() != DailyReadings.NO_TIME) {
+                combined.put(entry.getKey(), reading);
+            }
+        }
+        if (combined.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement select = con.prepareStatement(selectQuery)) {
+            Object[] userIds = new Object[combined.size()];
+            Object[] dates = new Object[combined.size()];
+            int i = 0;
+            for (DailyReadings reading : combined.values()) {
+                userIds[i] = reading.getUserId();
+                dates[i] = java.sql.Date.valueOf(reading.getDate());
+                i++;
+            }
+            select.setArray(1, con.createArrayOf("integer", userIds));
+            select.setArray(2, con.createArrayOf("date", dates));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    int userId = rs.getInt("user_id");
+                    LocalDate date = rs.getDate("date").toLocalDate();
+                    long weightTime = rs.getLong("weight_time");
+                    weightTime = rs.wasNull() ? DailyReadings.NO_TIME : weightTime;
+                    long heightTime = rs.getLong("height_time");
+                    heightTime = rs.wasNull() ? DailyReadings.NO_TIME : heightTime;
+                    DailyReadings stored = new DailyReadings(userId, date, 0, 0, 0, rs.getDouble("heart_rate_sum"), rs.getInt("heart_rate_count"),
+                            rs.getDouble("weight"), weightTime, rs.getDouble("height"), heightTime);
+                    combined.merge(userId + "|" + date, stored, DailyReadings::merge);
+                }
+            }
+        }
+
+        int size = combined.size();
+        Object[] userIds = new Object[size];
+        Object[] dates = new Object[size];
+        Object[] heartRateSums = new Object[size];
+        Object[] heartRateCounts = new Object[size];
+        Object[] weights = new Object[size];
+        Object[] weightTimes = new Object[size];
+        Object[] heights = new Object[size];
+        Object[] heightTimes = new Object[size];
+        int i = 0;
+        for (Map.Entry<String, DailyReadings> entry : combined.entrySet()) {
+            DailyReadings reading = entry.getValue();
+            incoming.put(entry.getKey(), toPartial(folded.get(entry.getKey()), reading));
+            userIds[i] = reading.getUserId();
+            dates[i] = java.sql.Date.valueOf(reading.getDate());
+            heartRateSums[i] = reading.getHeartRateSum();
+            heartRateCounts[i] = reading.getHeartRateCount();
+            weights[i] = reading.getWeight();
+            weightTimes[i] = reading.getWeightTime() == DailyReadings.NO_TIME ? null : reading.getWeightTime();
+            heights[i] = reading.getHeight();
+            heightTimes[i] = reading.getHeightTime() == DailyReadings.NO_TIME ? null : reading.getHeightTime();
+            i++;
+        }
+        try (PreparedStatement upsert = con.prepareStatement(upsertQuery)) {
+            upsert.setArray(1, con.createArrayOf("integer", userIds));
+            upsert.setArray(2, con.createArrayOf("date", dates));
+            upsert.setArray(3, con.createArrayOf("float8", heartRateSums));
+            upsert.setArray(4, con.createArrayOf("integer", heartRateCounts));
+            upsert.setArray(5, con.createArrayOf("float8", weights));
+            upsert.setArray(6, con.createArrayOf("bigint", weightTimes));
+            upsert.setArray(7, con.createArrayOf("float8", heights));
+            upsert.setArray(8, con.createArrayOf("bigint", heightTimes));
+            upsert.executeUpdate();
+        }
+    }
+
+/**
+     * Writes one entry per user and date with a single INSERT ... ON CONFLICT (user_id, date) over unnested arrays.
+     * The existing entries are locked and read first so the rollups and listeners get the previous values. If an entry
+     * appears between that read and the upsert, the upsert reports an update of a row that was not read, and the
+     * transaction is retried so the merge is computed from the row that won. The optional step runs in the same
+     * transaction after the entries are locked, and may replace the incoming entries before they are merged.
+     */
+    private boolean writeDaily(List<HealthData> healthDataList, BinaryOperator<HealthData> merge, DailyStep step) {
+
+        if (healthDataList.isEmpty()) {
+            return true;
+        }
+
+        // Only the exact (user_id, date) keys are locked; the date range lets the planner skip the other partitions
+        String selectQuery = "SELECT h.* FROM public.\"health_data\" h " +
+                "JOIN unnest(?::integer[], ?::date[]) AS k(user_id, date) ON h.user_id = k.user_id AND h.date = k.date " +
+                "WHERE h.date BETWEEN ? AND ? FOR UPDATE OF h";
+        String upsertQuery = "INSERT INTO public.\"health_data\" (user_id, weight, height, steps, heart_rate, water_intake, hours_of_sleep, date) " +
+                "SELECT * FROM unnest(?::integer[], ?::float8[], ?::float8[], ?::integer[], ?::integer[], ?::float8[], ?::float8[], ?::date[]) " +
+                "ON CONFLICT (user_id, date) DO UPDATE SET weight = EXCLUDED.weight, height = EXCLUDED.height, steps = EXCLUDED.steps, " +
+                "heart_rate = EXCLUDED.heart_rate, water_intake = EXCLUDED.water_intake, hours_of_sleep = EXCLUDED.hours_of_sleep, " +
+                "version = public.\"health_data\".version + 1 " +
+                "RETURNING health_data_id, user_id, date, version, (xmax = 0) AS inserted";
+
+        // Entries for the same user and date are folded together first; ON CONFLICT cannot touch one row twice
+        Map<String, HealthData> incoming = new LinkedHashMap<>();
+        Map<String, List<HealthData>> callers = new HashMap<>();
+        LocalDate minDate = healthDataList.get(0).getDate();
+        LocalDate maxDate = minDate;
+        for (HealthData healthData : healthDataList) {
+            String key = healthData.getUserId() + "|" + healthData.getDate();
+            incoming.merge(key, healthData, merge);
+            callers.computeIfAbsent(key, k -> new ArrayList<>()).add(healthData);
+            minDate = healthData.getDate().isBefore(minDate) ? healthData.getDate() : minDate;
+            maxDate = healthData.getDate().isAfter(maxDate) ? healthData.getDate() : maxDate;
+        }
+        Object[] keyUserIds = new Object[incoming.size()];
+        Object[] keyDates = new Object[incoming.size()];
+        int k = 0;
+        for (HealthData healthData : incoming.values()) {
+            keyUserIds[k] = healthData.getUserId();
+            keyDates[k] = java.sql.Date.valueOf(healthData.getDate());
+            k++;
+        }
+
+        for (int attempt = 0; attempt < MAX_UPSERT_ATTEMPTS; attempt++) {
+
+            Map<String, HealthData> previousByKey = new HashMap<>();
+            Map<String, HealthData> written = new LinkedHashMap<>();
+            boolean retry = false;
+
+            try (Connection con = DatabaseConnection.getCon()) {
+                for (HealthData healthData : incoming.values()) {
+                    partitionManager.ensurePartition(healthData.getDate());
+                }
+                con.setAutoCommit(false);
+                try (PreparedStatement select = con.prepareStatement(selectQuery);
+                     PreparedStatement upsert = con.prepareStatement(upsertQuery)) {
+
+                    select.setArray(1, con.createArrayOf("integer", keyUserIds));
+                    select.setArray(2, con.createArrayOf("date", keyDates));
+                    select.setDate(3, java.sql.Date.valueOf(minDate));
+                    select.setDate(4, java.sql.Date.valueOf(maxDate));
+                    try (ResultSet rs = select.executeQuery()) {
+                        for (HealthData row : RowMappers.HEALTH_DATA.mapAll(rs)) {
+                            previousByKey.put(row.getUserId() + "|" + row.getDate(), row);
+                        }
+                    }
+                    if (step != null) {
+                        step.apply(con, incoming);
+                    }
+
+                    for (Map.Entry<String, HealthData> entry : incoming.entrySet()) {
+                        HealthData previous = previousByKey.get(entry.getKey());
+                        HealthData target = previous == null ? entry.getValue() : merge.apply(previous, entry.getValue());
+                        if (previous == null || !sameValues(previous, target)) {
+                            written.put(entry.getKey(), target);
+                        } else {
+                            setIds(callers.get(entry.getKey()), previous.getId(), previous.getVersion());
+                        }
+                    }
+
+                    if (!written.isEmpty()) {
+                        int size = written.size();
+                        Object[] userIdColumn = new Object[size];
+                        Object[] weights = new Object[size];
+                        Object[] heights = new Object[size];
+                        Object[] steps = new Object[size];
+                        Object[] heartRates = new Object[size];
+                        Object[] waterIntakes = new Object[size];
+                        Object[] hoursOfSleep = new Object[size];
+                        Object[] dates = new Object[size];
+                        int i = 0;
+                        for (HealthData target : written.values()) {
+                            userIdColumn[i] = target.getUserId();
+                            weights[i] = vitalOrNull(target.getWeight());
+                            heights[i] = vitalOrNull(target.getHeight());
+                            steps[i] = target.getSteps();
+                            heartRates[i] = target.getHeartRate() == 0 ? null : target.getHeartRate();
+                            waterIntakes[i] = target.getWaterIntake();
+                            hoursOfSleep[i] = target.getHoursOfSleep();
+                            dates[i] = java.sql.Date.valueOf(target.getDate());
+                            i++;
+                        }
+                        upsert.setArray(1, con.createArrayOf("integer", userIdColumn));
+                        upsert.setArray(2, con.createArrayOf("float8", weights));
+                        upsert.setArray(3, con.createArrayOf("float8", heights));
+                        upsert.setArray(4, con.createArrayOf("integer", steps));
+                        upsert.setArray(5, con.createArrayOf("integer", heartRates));
+                        upsert.setArray(6, con.createArrayOf("float8", waterIntakes));
+                        upsert.setArray(7, con.createArrayOf("float8", hoursOfSleep));
+                        upsert.setArray(8, con.createArrayOf("date", dates));
+                        try (ResultSet rs = upsert.executeQuery()) {
+                            while (rs.next()) {
+                                String key = rs.getInt("user_id") + "|" + rs.getDate("date").toLocalDate();
+                                if (!rs.getBoolean("inserted") && !previousByKey.containsKey(key)) {
+                                    retry = true;
+                                    break;
+                                }
+                                written.get(key).setId(rs.getInt("health_data_id"));
+                                written.get(key).setVersion(rs.getInt("version"));
+                            }
+                        }
+                    }
+
+                    if (retry) {
+                        con.rollback();
+                    } else {
+                        for (Map.Entry<String, HealthData> entry : written.entrySet()) {
+                            HealthData previous = previousByKey.get(entry.getKey());
+                            if (previous != null) {
+                                rollupDao.removeFromRollups(con, previous);
+                            }
+                            rollupDao.addToRollups(con, entry.getValue());
+                        }
+                        con.commit();
+                    }
+                } catch (SQLException e) {
+                    con.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return false;
+            }
+
+            if (!retry) {
+                for (Map.Entry<String, HealthData> entry : written.entrySet()) {
+                    setIds(callers.get(entry.getKey()), entry.getValue().getId(), entry.getValue().getVersion());
+                    fireSaved(previousByKey.get(entry.getKey()), entry.getValue());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameValues(HealthData a, HealthData b) {
+        return a.getWeight() == b.getWeight() && a.getHeight() == b.getHeight() && a.getSteps() == b.getSteps()
+                && a.getHeartRate() == b.getHeartRate() && a.getWaterIntake() == b.getWaterIntake() && a.getHoursOfSleep() == b.getHoursOfSleep();
+    }
+
+    private static void setIds(List<HealthData> healthDataList, int id, int version) {
+        for (HealthData healthData : healthDataList) {
+            healthData.setId(id);
+            healthData.setVersion(version);
+        }
+    }
+/**
+     * Reads and locks a health data entry inside the caller's transaction, so the rollups can be
+     * corrected with the values that are actually being replaced or removed.
+     *
+     * @param con The connection of the current transaction.
+     * @param id The ID of the health data entry.
+     * @param entryDate The date of the health data entry.
+     * @return The stored HealthData object, or null if no entry exists with the given ID and date.
+     * @throws SQLException If the entry could not be read.
+     */
+    private HealthData lockHealthData(Connection con, int id, LocalDate entryDate) throws SQLException {
+
+        String query = "SELECT * FROM public.\"health_data\" WHERE health_data_id = ? AND date = ? FOR UPDATE";
 
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, id);
+            statement.setDate(2, java.sql.Date.valueOf(entryDate));
+            try (ResultSet rs = statement.executeQuery()) {
+                return RowMappers.HEALTH_DATA.mapFirst(rs);
+            }
+        }
+    }
+
+
+    /**
+     * Runs extra work inside the transaction of writeDaily.
+     */
+    private interface DailyStep {
+        void apply(Connection con, Map<String, HealthData> incoming) throws SQLException;
+    }
+
+    /**
+     * Merges the rows of a health_data cursor with the archived entries of the same range, both ordered by date and ID.
+     * The connection is committed and closed at the end of the rows, on a read error, or when the stream is closed.
+     */
+    private static final class HealthDataCursor extends Spliterators.AbstractSpliterator<HealthData> {
+        private final List<HealthData> archived;
+        private int archivedIndex;
+        private Connection con;
+        private PreparedStatement statement;
+        private ResultSet rs;
+        private RowMapper<HealthData> mapper;
+        private HealthData live;
+
+        private HealthDataCursor(List<HealthData> archived) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+            this.archived = archived;
+        }
+
+        // The driver only fetches in batches inside a transaction; with autocommit on it reads the whole result at once
+        private PreparedStatement open(Connection con, String query) throws SQLException {
+            this.con = con;
+            con.setAutoCommit(false);
+            statement = con.prepareStatement(query);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }
+
+        private void start(ResultSet rs) throws SQLException {
+            this.rs = rs;
+            this.mapper = RowMappers.HEALTH_DATA.forResultSet(rs);
+            advanceLive();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super HealthData> action) {
+            HealthData next = archivedIndex < archived.size() ? archived.get(archivedIndex) : null;
+            if (live != null && (next == null || HISTORY_ORDER.compare(live, next) <= 0)) {
+                // A month written to again after archiving is in both places until the next archiver run
+                if (next != null && HISTORY_ORDER.compare(live, next) == 0) {
+                    archivedIndex++;
+                }
+                next = live;
+                advanceLive();
+            } else if (next != null) {
+                archivedIndex++;
+            } else {
+                return false;
+            }
+            action.accept(next);
+            return true;
+        }
+
+        private void advanceLive() {
+            live = null;
+            if (rs == null) {
+                return;
+            }
+            try {
+                if (rs.next()) {
+                    live = mapper.mapRow(rs);
+                    return;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            close();
+        }
+
+        private void close() {
+            if (con == null) {
+                return;
+            }
+            try (Connection connection = con) {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+                connection.commit();
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                con = null;
+                statement = null;
+                rs = null;
+            }
+        }
+    }
 }
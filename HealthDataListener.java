@@ -0,0 +1,28 @@
+/**
+ * This interface is implemented by components that need to follow the health data written through HealthDataDao,
+ * such as in-memory indexes and detectors. Listeners are called after the write has been committed.
+ */
+
+public interface HealthDataListener {
+/**
+     * Called after a health data entry was created or updated.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    void onHealthDataSaved(HealthData previous, HealthData current);
+/**
+     * Called after a health data entry was deleted.
+     *
+     * @param previous The HealthData object as it was stored before the deletion.
+     */
+    default void onHealthDataDeleted(HealthData previous) {
+    }
+/**
+     * Called after the account of a user was deleted and all of the user's rows were purged.
+     *
+     * @param userId The ID of the purged user.
+     */
+    default void onUserPurged(int userId) {
+    }
+}
@@ -0,0 +1,100 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class manages the monthly partitions of the health_data table.
+ * A background job creates the partitions for the current month and the next few months once a day,
+ * and HealthDataDao asks for the partition of any other month before writing to it, for example when
+ * older data is imported. Months already known to exist are remembered, so the check is usually free.
+ */
+
+public class HealthDataPartitionManager {
+
+    private static final int MONTHS_AHEAD = 3;
+    private static final HealthDataPartitionManager INSTANCE = new HealthDataPartitionManager();
+
+    private final Set<YearMonth> knownPartitions = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    private HealthDataPartitionManager() {
+    }
+/**
+     * Gets the shared HealthDataPartitionManager instance.
+     *
+     * @return The HealthDataPartitionManager instance.
+     */
+    public static HealthDataPartitionManager getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Gets the name of the partition holding a month, as created by public.create_health_data_partition.
+     *
+     * @param month The month of the partition.
+     * @return The partition table name, for example health_data_y2024m03.
+     */
+    public static String partitionName(YearMonth month) {
+        return String.format("health_data_y%04dm%02d", month.getYear(), month.getMonthValue());
+    }
+/**
+     * Creates the upcoming partitions now and then once a day in the background.
+     */
+    public synchronized void start() {
+        createUpcomingPartitions();
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "health-data-partition-creator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::createUpcomingPartitions, 1, 1, TimeUnit.DAYS);
+        }
+    }
+/**
+     * Creates the partitions of the current month and the next few months if they do not exist yet.
+     */
+    public void createUpcomingPartitions() {
+        YearMonth current = YearMonth.now();
+        try {
+            for (int i = 0; i <= MONTHS_AHEAD; i++) {
+                ensurePartition(current.plusMonths(i).atDay(1));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Makes sure the partition holding a date exists, creating it if needed.
+     *
+     * @param date The date that is about to be written.
+     * @throws SQLException If the partition could not be created.
+     */
+    public void ensurePartition(LocalDate date) throws SQLException {
+        YearMonth month = YearMonth.from(date);
+        if (knownPartitions.contains(month)) {
+            return;
+        }
+
+        String query = "SELECT public.create_health_data_partition(?)";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setDate(1, java.sql.Date.valueOf(month.atDay(1)));
+            statement.execute();
+        }
+        knownPartitions.add(month);
+    }
+/**
+     * Forgets that the partition of a month exists, after it was dropped, for example by the archiver.
+     *
+     * @param month The month of the dropped partition.
+     */
+    public void forgetPartition(YearMonth month) {
+        knownPartitions.remove(month);
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.IOException;
+import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * This class provides data access methods for the weekly and monthly health data rollup tables.
+ * The rollups hold per user totals and record counts, are kept up to date incrementally by HealthDataDao
+ * and let summary views answer a date range without scanning the raw health_data table.
+ */
+
+public class HealthDataRollupDao {
+
+    private static final String WEEKLY_TABLE = "health_data_weekly";
+    private static final String MONTHLY_TABLE = "health_data_monthly";
+
+/**
+     * Adds a health data record to the weekly and monthly rollups it falls into.
+     *
+     * @param con The connection of the transaction that wrote the health data record.
+     * @param healthData The HealthData object that was added.
+     * @throws SQLException If the rollups could not be updated.
+     */
+    public void addToRollups(Connection con, HealthData healthData) throws SQLException {
+        applyDelta(con, healthData, 1);
+    }
+/**
+     * Removes a health data record from the weekly and monthly rollups it falls into.
+     *
+     * @param con The connection of the transaction that changed the health data record.
+     * @param healthData The HealthData object as it was stored before the change.
+     * @throws SQLException If the rollups could not be updated.
+     */
+    public void removeFromRollups(Connection con, HealthData healthData) throws SQLException {
+        applyDelta(con, healthData, -1);
+    }
+
+    private void applyDelta(Connection con, HealthData healthData, int sign) throws SQLException {
+        applyDelta(con, WEEKLY_TABLE, weekStart(healthData.getDate()), healthData, sign);
+        applyDelta(con, MONTHLY_TABLE, monthStart(healthData.getDate()), healthData, sign);
+    }
+
+    private void applyDelta(Connection con, String table, LocalDate periodStart, HealthData healthData, int sign) throws SQLException {
+
+        String query = upsertQuery(table);
+
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, healthData.getUserId());
+            statement.setDate(2, java.sql.Date.valueOf(periodStart));
+            statement.setInt(3, sign);
+            statement.setLong(4, (long) sign * healthData.getSteps());
+            statement.setLong(5, (long) sign * healthData.getHeartRate());
+            statement.setInt(6, healthData.getHeartRate() == 0 ? 0 : sign);
+            statement.setDouble(7, sign * healthData.getWaterIntake());
+            statement.setDouble(8, sign * healthData.getHoursOfSleep());
+            statement.setDouble(9, sign * healthData.getWeight());
+            statement.setInt(10, healthData.getWeight() == 0 ? 0 : sign);
+            statement.executeUpdate();
+        }
+
+        if (sign < 0) {
+            // A period whose last record was removed should not show up as an empty summary
+            String cleanup = "DELETE FROM public.\"" + table + "\" WHERE user_id = ? AND period_start = ? AND record_count <= 0";
+            try (PreparedStatement statement = con.prepareStatement(cleanup)) {
+                statement.setInt(1, healthData.getUserId());
+                statement.setDate(2, java.sql.Date.valueOf(periodStart));
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    // Adds the given totals to a period's rollup row, creating the row if needed
+    private static String upsertQuery(String table) {
+        return "INSERT INTO public.\"" + table + "\" (user_id, period_start, record_count, steps_total, heart_rate_total, heart_rate_count, " +
+                "water_intake_total, hours_of_sleep_total, weight_total, weight_count) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (user_id, period_start) DO UPDATE SET " +
+                "record_count = " + table + ".record_count + EXCLUDED.record_count, " +
+                "steps_total = " + table + ".steps_total + EXCLUDED.steps_total, " +
+                "heart_rate_total = " + table + ".heart_rate_total + EXCLUDED.heart_rate_total, " +
+                "heart_rate_count = " + table + ".heart_rate_count + EXCLUDED.heart_rate_count, " +
+                "water_intake_total = " + table + ".water_intake_total + EXCLUDED.water_intake_total, " +
+                "hours_of_sleep_total = " + table + ".hours_of_sleep_total + EXCLUDED.hours_of_sleep_total, " +
+                "weight_total = " + table + ".weight_total + EXCLUDED.weight_total, " +
+                "weight_count = " + table + ".weight_count + EXCLUDED.weight_count";
+    }
+/**
+     * Retrieves the weekly summaries of a user for the weeks overlapping a date range.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return A list of HealthDataSummary objects, one per week with data, ordered by date.
+     */
+    public List<HealthDataSummary> getWeeklySummaries(int userId, LocalDate startDate, LocalDate endDate) {
+        return getSummaries(WEEKLY_TABLE, userId, weekStart(startDate), endDate);
+    }
+/**
+     * Retrieves the monthly summaries of a user for the months overlapping a date range.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return A list of HealthDataSummary objects, one per month with data, ordered by date.
+     */
+    public List<HealthDataSummary> getMonthlySummaries(int userId, LocalDate startDate, LocalDate endDate) {
+        return getSummaries(MONTHLY_TABLE, userId, monthStart(startDate), endDate);
+    }
+
+    private List<HealthDataSummary> getSummaries(String table, int userId, LocalDate firstPeriod, LocalDate endDate) {
+
+        List<HealthDataSummary> summaries = new ArrayList<>();
+
+        String query = "SELECT * FROM public.\"" + table + "\" WHERE user_id = ? AND period_start BETWEEN ? AND ? ORDER BY period_start";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            statement.setDate(2, java.sql.Date.valueOf(firstPeriod));
+            statement.setDate(3, java.sql.Date.valueOf(endDate));
+            try (ResultSet rs = statement.executeQuery()) {
+                summaries.addAll(RowMappers.healthDataSummary(userId, periodStart -> table.equals(WEEKLY_TABLE)
+                        ? periodStart.plusDays(6) : periodStart.with(TemporalAdjusters.lastDayOfMonth())).mapAll(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return summaries;
+    }
+/**
+     * Retrieves a single summary of a user's health data over an arbitrary date range.
+     * Whole months are read from the monthly rollup, whole weeks of the remainder from the weekly rollup,
+     * and only the leftover days at the edges of the range are read from the raw health_data table.
+     * All the pieces are combined in a single query. Leftover days that have been archived are no longer in
+     * health_data, so they are read through HealthDataDao and added to the result of the query.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return A HealthDataSummary object covering the range, with a record count of 0 if no data was found.
+     */
+    public HealthDataSummary getRangeSummary(int userId, LocalDate startDate, LocalDate endDate) {
+
+        if (startDate.isAfter(endDate)) {
+            return new HealthDataSummary(userId, startDate, endDate, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        List<String> parts = new ArrayList<>();
+        List<LocalDate> bounds = new ArrayList<>();
+        List<LocalDate> archivedBounds = new ArrayList<>();
+
+        LocalDate firstMonth = startDate.getDayOfMonth() == 1 ? startDate : monthStart(startDate).plusMonths(1);
+        LocalDate lastMonthEnd = endDate.equals(endDate.with(TemporalAdjusters.lastDayOfMonth())) ? endDate : monthStart(endDate).minusDays(1);
+
+        if (firstMonth.isBefore(lastMonthEnd)) {
+            addRollupPart(parts, bounds, MONTHLY_TABLE, firstMonth, lastMonthEnd);
+            addWeeksAndDays(parts, bounds, archivedBounds, startDate, firstMonth.minusDays(1));
+            addWeeksAndDays(parts, bounds, archivedBounds, lastMonthEnd.plusDays(1), endDate);
+        } else {
+            addWeeksAndDays(parts, bounds, archivedBounds, startDate, endDate);
+        }
+
+        HealthDataSummary summary = new HealthDataSummary(userId, startDate, endDate, 0, 0, 0, 0, 0, 0, 0, 0);
+        if (!parts.isEmpty()) {
+            summary = querySummary(userId, startDate, endDate, parts, bounds);
+        }
+        for (int i = 0; i < archivedBounds.size(); i += 2) {
+            summary = addArchivedDays(summary, archivedBounds.get(i), archivedBounds.get(i + 1));
+        }
+        return summary;
+    }
+
+    private HealthDataSummary querySummary(int userId, LocalDate startDate, LocalDate endDate, List<String> parts, List<LocalDate> bounds) {
+
+        String query = "SELECT COALESCE(SUM(record_count), 0) AS record_count, COALESCE(SUM(steps_total), 0) AS steps_total, " +
+                "COALESCE(SUM(heart_rate_total), 0) AS heart_rate_total, COALESCE(SUM(heart_rate_count), 0) AS heart_rate_count, " +
+                "COALESCE(SUM(water_intake_total), 0) AS water_intake_total, COALESCE(SUM(hours_of_sleep_total), 0) AS hours_of_sleep_total, " +
+                "COALESCE(SUM(weight_total), 0) AS weight_total, COALESCE(SUM(weight_count), 0) AS weight_count " +
+                "FROM (" + String.join(" UNION ALL ", parts) + ") AS pieces";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            int index = 1;
+            for (int i = 0; i < bounds.size(); i += 2) {
+                statement.setInt(index++, userId);
+                statement.setDate(index++, java.sql.Date.valueOf(bounds.get(i)));
+                statement.setDate(index++, java.sql.Date.valueOf(bounds.get(i + 1)));
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                HealthDataSummary summary = RowMappers.healthDataSummary(userId, startDate, endDate).mapFirst(rs);
+                if (summary != null) {
+                    return summary;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new HealthDataSummary(userId, startDate, endDate, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    private HealthDataSummary addArchivedDays(HealthDataSummary summary, LocalDate startDate, LocalDate endDate) {
+        try (Stream<HealthData> healthData = new HealthDataDao().streamHealthDataByUserId(summary.getUserId(), startDate, endDate)) {
+            Iterator<HealthData> entries = healthData.iterator();
+            while (entries.hasNext()) {
+                summary = plus(summary, entries.next());
+            }
+        }
+        return summary;
+    }
+
+    private static HealthDataSummary plus(HealthDataSummary summary, HealthData healthData) {
+        return new HealthDataSummary(summary.getUserId(), summary.getStartDate(), summary.getEndDate(), summary.getRecordCount() + 1,
+                summary.getStepsTotal() + healthData.getSteps(), summary.getHeartRateTotal() + healthData.getHeartRate(),
+                summary.getHeartRateCount() + (healthData.getHeartRate() == 0 ? 0 : 1),
+                summary.getWaterIntakeTotal() + healthData.getWaterIntake(), summary.getHoursOfSleepTotal() + healthData.getHoursOfSleep(),
+                summary.getWeightTotal() + healthData.getWeight(), summary.getWeightCount() + (healthData.getWeight() == 0 ? 0 : 1));
+    }
+
+    private void addWeeksAndDays(List<String> parts, List<LocalDate> bounds, List<LocalDate> archivedBounds, LocalDate startDate, LocalDate endDate) {
+
+        if (startDate.isAfter(endDate)) {
+            return;
+        }
+
+        LocalDate firstWeek = startDate.getDayOfWeek() == DayOfWeek.MONDAY ? startDate : weekStart(startDate).plusWeeks(1);
+        LocalDate lastWeekEnd = endDate.getDayOfWeek() == DayOfWeek.SUNDAY ? endDate : weekStart(endDate).minusDays(1);
+
+        if (firstWeek.isBefore(lastWeekEnd)) {
+            addRollupPart(parts, bounds, WEEKLY_TABLE, firstWeek, lastWeekEnd);
+            addDaysPart(parts, bounds, archivedBounds, startDate, firstWeek.minusDays(1));
+            addDaysPart(parts, bounds, archivedBounds, lastWeekEnd.plusDays(1), endDate);
+        } else {
+            addDaysPart(parts, bounds, archivedBounds, startDate, endDate);
+        }
+    }
+
+    private void addRollupPart(List<String> parts, List<LocalDate> bounds, String table, LocalDate startDate, LocalDate endDate) {
+        parts.add("SELECT record_count, steps_total, heart_rate_total, heart_rate_count, water_intake_total, hours_of_sleep_total, weight_total, weight_count " +
+                "FROM public.\"" + table + "\" WHERE user_id = ? AND period_start BETWEEN ? AND ?");
+        bounds.add(startDate);
+        bounds.add(endDate);
+    }
+
+    private void addDaysPart(List<String> parts, List<LocalDate> bounds, List<LocalDate> archivedBounds, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            return;
+        }
+        LocalDate cutoff = HealthDataArchiver.getCutoff();
+        if (startDate.isBefore(cutoff)) {
+            LocalDate archivedEnd = endDate.isBefore(cutoff) ? endDate : cutoff.minusDays(1);
+            archivedBounds.add(startDate);
+            archivedBounds.add(archivedEnd);
+            if (archivedEnd.equals(endDate)) {
+                return;
+            }
+            startDate = cutoff;
+        }
+        // Named like the rollup columns, since the names of a UNION come from its first part, which may be this one
+        parts.add("SELECT 1 AS record_count, steps AS steps_total, COALESCE(heart_rate, 0) AS heart_rate_total, " +
+                "(heart_rate IS NOT NULL)::int AS heart_rate_count, water_intake AS water_intake_total, hours_of_sleep AS hours_of_sleep_total, " +
+                "COALESCE(weight, 0) AS weight_total, (weight IS NOT NULL)::int AS weight_count " +
+                "FROM public.\"health_data\" WHERE user_id = ? AND date BETWEEN ? AND ?");
+        bounds.add(startDate);
+        bounds.add(endDate);
+    }
+/**
+     * Rebuilds both rollup tables from the raw health_data table and the health data archive in a single transaction.
+     * This is used to initialise the rollups and to repair them after data was changed outside of HealthDataDao.
+     *
+     * @return A boolean indicating whether the rebuild was successful.
+     */
+    public boolean rebuildRollups() {
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try (Statement statement = con.createStatement()) {
+                statement.executeUpdate("DELETE FROM public.\"" + WEEKLY_TABLE + "\"");
+                statement.executeUpdate("DELETE FROM public.\"" + MONTHLY_TABLE + "\"");
+                statement.executeUpdate(rebuildQuery(WEEKLY_TABLE, "week"));
+                statement.executeUpdate(rebuildQuery(MONTHLY_TABLE, "month"));
+                for (YearMonth month : HealthDataArchive.getInstance().getArchivedMonths()) {
+                    addArchivedMonth(con, month);
+                }
+                con.commit();
+                return true;
+            } catch (SQLException | IOException e) {
+                con.rollback();
+                throw e;
+            }
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    // Adds the rows of an archived month to the rollups, except those still in a partition that is being archived
+    private void addArchivedMonth(Connection con, YearMonth month) throws SQLException, IOException {
+
+        Set<Integer> liveIds = new HashSet<>();
+        String query = "SELECT health_data_id FROM public.\"health_data\" WHERE date BETWEEN ? AND ?";
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setDate(1, java.sql.Date.valueOf(month.atDay(1)));
+            statement.setDate(2, java.sql.Date.valueOf(month.atEndOfMonth()));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    liveIds.add(rs.getInt("health_data_id"));
+                }
+            }
+        }
+
+        Map<Integer, Map<LocalDate, HealthDataSummary>> weeks = new HashMap<>();
+        Map<Integer, Map<LocalDate, HealthDataSummary>> months = new HashMap<>();
+        for (HealthData healthData : HealthDataArchive.getInstance().readMonth(month)) {
+            if (liveIds.contains(healthData.getId())) {
+                continue;
+            }
+            addToPeriod(weeks, weekStart(healthData.getDate()), healthData);
+            addToPeriod(months, monthStart(healthData.getDate()), healthData);
+        }
+        upsertSummaries(con, WEEKLY_TABLE, weeks);
+        upsertSummaries(con, MONTHLY_TABLE, months);
+    }
+
+    private static void addToPeriod(Map<Integer, Map<LocalDate, HealthDataSummary>> periods, LocalDate periodStart, HealthData healthData) {
+        periods.computeIfAbsent(healthData.getUserId(), k -> new HashMap<>()).merge(periodStart,
+                plus(new HealthDataSummary(healthData.getUserId(), periodStart, periodStart, 0, 0, 0, 0, 0, 0, 0, 0), healthData),
+                (summary, added) -> plus(summary, healthData));
+    }
+
+    private void upsertSummaries(Connection con, String table, Map<Integer, Map<LocalDate, HealthDataSummary>> periods) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(upsertQuery(table))) {
+            for (Map<LocalDate, HealthDataSummary> userPeriods : periods.values()) {
+                for (HealthDataSummary summary : userPeriods.values()) {
+                    statement.setInt(1, summary.getUserId());
+                    statement.setDate(2, java.sql.Date.valueOf(summary.getStartDate()));
+                    statement.setInt(3, summary.getRecordCount());
+                    statement.setLong(4, summary.getStepsTotal());
+                    statement.setLong(5, summary.getHeartRateTotal());
+                    statement.setInt(6, summary.getHeartRateCount());
+                    statement.setDouble(7, summary.getWaterIntakeTotal());
+                    statement.setDouble(8, summary.getHoursOfSleepTotal());
+                    statement.setDouble(9, summary.getWeightTotal());
+                    statement.setInt(10, summary.getWeightCount());
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private String rebuildQuery(String table, String unit) {
+        return "INSERT INTO public.\"" + table + "\" (user_id, period_start, record_count, steps_total, heart_rate_total, heart_rate_count, " +
+                "water_intake_total, hours_of_sleep_total, weight_total, weight_count) " +
+                "SELECT user_id, date_trunc('" + unit + "', date)::date, COUNT(*), SUM(steps), COALESCE(SUM(heart_rate), 0), COUNT(heart_rate), " +
+                "SUM(water_intake), SUM(hours_of_sleep), COALESCE(SUM(weight), 0), COUNT(weight) " +
+                "FROM public.\"health_data\" GROUP BY 1, 2";
+    }
+
+    private static LocalDate weekStart(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private static LocalDate monthStart(LocalDate date) {
+        return date.withDayOfMonth(1);
+    }
+/**
+     * Command line entry point that rebuilds the health data rollups.
+     *
+     * @param args Command-line arguments (not used).
+     */
+    public static void main(String[] args) {
+        if (new HealthDataRollupDao().rebuildRollups()) {
+            System.out.println("Health data rollups rebuilt successfully.");
+        } else {
+            System.out.println("Oops! The health data rollups could not be rebuilt.");
+        }
+    }
+}
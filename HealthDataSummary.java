@@ -0,0 +1,199 @@
+import java.time.LocalDate;
+
+/**
+ * This class represents aggregated health data of a user over a date range, such as a week or a month.
+ * It holds the totals and the number of records so that averages can be derived without rescanning the raw data.
+ */
+
+public class HealthDataSummary {
+    private int userId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private int recordCount;
+    private long stepsTotal;
+    private long heartRateTotal;
+    private int heartRateCount;
+    private double waterIntakeTotal;
+    private double hoursOfSleepTotal;
+    private double weightTotal;
+    private int weightCount;
+
+/**
+     * Constructs a HealthDataSummary object with the specified attributes.
+     *
+     * @param userId The ID of the user to whom the summary belongs.
+     * @param startDate The first date covered by the summary.
+     * @param endDate The last date covered by the summary.
+     * @param recordCount The number of health data records included in the summary.
+     * @param stepsTotal The total number of steps.
+     * @param heartRateTotal The sum of the recorded heart rates.
+     * @param heartRateCount The number of records with a recorded heart rate.
+     * @param waterIntakeTotal The total water intake.
+     * @param hoursOfSleepTotal The total hours of sleep.
+     * @param weightTotal The sum of the recorded weights.
+     * @param weightCount The number of records with a recorded weight.
+     */
+    public HealthDataSummary(int userId, LocalDate startDate, LocalDate endDate, int recordCount, long stepsTotal, long heartRateTotal, int heartRateCount,
+                             double waterIntakeTotal, double hoursOfSleepTotal, double weightTotal, int weightCount) {
+        this.userId = userId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.recordCount = recordCount;
+        this.stepsTotal = stepsTotal;
+        this.heartRateTotal = heartRateTotal;
+        this.heartRateCount = heartRateCount;
+        this.waterIntakeTotal = waterIntakeTotal;
+        this.hoursOfSleepTotal = hoursOfSleepTotal;
+        this.weightTotal = weightTotal;
+        this.weightCount = weightCount;
+    }
+/**
+     * Gets the ID of the user to whom the summary belongs.
+     *
+     * @return The ID of the user.
+     */
+    public int getUserId() {
+        return userId;
+    }
+/**
+     * Gets the first date covered by the summary.
+     *
+     * @return The start date of the summary.
+     */
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+/**
+     * Gets the last date covered by the summary.
+     *
+     * @return The end date of the summary.
+     */
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+/**
+     * Gets the number of health data records included in the summary.
+     *
+     * @return The number of records.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+/**
+     * Gets the total number of steps.
+     *
+     * @return The total number of steps.
+     */
+    public long getStepsTotal() {
+        return stepsTotal;
+    }
+/**
+     * Gets the sum of the recorded heart rates.
+     *
+     * @return The sum of the recorded heart rates.
+     */
+    public long getHeartRateTotal() {
+        return heartRateTotal;
+    }
+/**
+     * Gets the number of records with a recorded heart rate.
+     *
+     * @return The number of records with a recorded heart rate.
+     */
+    public int getHeartRateCount() {
+        return heartRateCount;
+    }
+/**
+     * Gets the total water intake.
+     *
+     * @return The total water intake.
+     */
+    public double getWaterIntakeTotal() {
+        return waterIntakeTotal;
+    }
+/**
+     * Gets the total hours of sleep.
+     *
+     * @return The total hours of sleep.
+     */
+    public double getHoursOfSleepTotal() {
+        return hoursOfSleepTotal;
+    }
+/**
+     * Gets the sum of the recorded weights.
+     *
+     * @return The sum of the recorded weights.
+     */
+    public double getWeightTotal() {
+        return weightTotal;
+    }
+/**
+     * Gets the number of records with a recorded weight.
+     *
+     * @return The number of records with a recorded weight.
+     */
+    public int getWeightCount() {
+        return weightCount;
+    }
+/**
+     * Gets the average number of steps per record.
+     *
+     * @return The average steps, or 0 if the summary has no records.
+     */
+    public double getAverageSteps() {
+        return average(stepsTotal);
+    }
+/**
+     * Gets the average heart rate of the records with a recorded heart rate.
+     *
+     * @return The average heart rate, or 0 if no heart rate was recorded.
+     */
+    public double getAverageHeartRate() {
+        return heartRateCount == 0 ? 0 : (double) heartRateTotal / heartRateCount;
+    }
+/**
+     * Gets the average water intake per record.
+     *
+     * @return The average water intake, or 0 if the summary has no records.
+     */
+    public double getAverageWaterIntake() {
+        return average(waterIntakeTotal);
+    }
+/**
+     * Gets the average hours of sleep per record.
+     *
+     * @return The average hours of sleep, or 0 if the summary has no records.
+     */
+    public double getAverageHoursOfSleep() {
+        return average(hoursOfSleepTotal);
+    }
+/**
+     * Gets the average weight of the records with a recorded weight.
+     *
+     * @return The average weight, or 0 if no weight was recorded.
+     */
+    public double getAverageWeight() {
+        return weightCount == 0 ? 0 : weightTotal / weightCount;
+    }
+
+    private double average(double total) {
+        return recordCount == 0 ? 0 : total / recordCount;
+    }
+/**
+     * Returns a string representation of the HealthDataSummary object.
+     *
+     * @return A string containing the summary attributes.
+     */
+    @Override
+    public String toString() {
+        return (
+               "Period: " + startDate + " to " + endDate + "\n" +
+               "Records: " + recordCount + "\n" +
+               "Total Steps: " + stepsTotal + "\n" +
+               "Average Steps: " + String.format("%.0f", getAverageSteps()) + "\n" +
+               "Average Heart Rate: " + String.format("%.1f", getAverageHeartRate()) + "\n" +
+               "Average Water Intake: " + String.format("%.1f", getAverageWaterIntake()) + "\n" +
+               "Average Hours of Sleep: " + String.format("%.1f", getAverageHoursOfSleep()) + "\n" +
+               "Average Weight: " + String.format("%.1f", getAverageWeight()));
+    }
+}
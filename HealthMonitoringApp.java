@@ -1,7 +1,13 @@
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import org.mindrot.jbcrypt.BCrypt;
 
@@ -52,6 +58,8 @@ public class HealthMonitoringApp {
 
     public static void main(String[] args) {
 
+        startServices();
+
         int selection;
 
         do {
@@ -60,7 +68,7 @@ public class HealthMonitoringApp {
                     displayLoggedInMenu();
                     selection = in.nextInt();
                     loggedInMenuOption(selection);
-                } while (isLoggedIn && selection != 12); 
+                } while (isLoggedIn && selection != 15); 
             } else {
                 welcomeMessage();
                 displayMenu();
@@ -69,6 +77,29 @@ public class HealthMonitoringApp {
             }
         } while (selection != 3);
     }
+/**
+     * Builds the in-memory indexes and registers the components that follow health data writes.
+     */
+    private static void startServices() {
+        HealthDataPartitionManager.getInstance().start();
+        AnomalyMonitor.getInstance().start();
+        HealthDataDao.addListener(AnomalyMonitor.getInstance());
+        HealthDataDao.addListener(RiskScoreMonitor.getInstance());
+        CohortIndex.getInstance().start();
+        HealthDataDao.addListener(CohortIndex.getInstance());
+        DoctorPatientCache.getInstance().load();
+        PanelSnapshot.getInstance().start();
+        HealthDataDao.addListener(PanelSnapshot.getInstance());
+        PercentileSketches.getInstance().start();
+        HealthDataDao.addListener(PercentileSketches.getInstance());
+        VitalsStore.getInstance().start();
+        HealthDataDao.addListener(VitalsStore.getInstance());
+        DailyHealthAggregator.getInstance().start();
+        AccountPurger.getInstance().start();
+        MedicineDictionary.getInstance().load();
+        ReminderIntervalIndex.getInstance().rebuild();
+        OverdueReminderSweeper.getInstance().start();
+    }
 /**
      * Handles the options available in the main menu before login.
      * @param selection The user's menu choice.
@@ -135,6 +166,15 @@ public class HealthMonitoringApp {
                 }
                 break;
             case 12:
+                compareHealthData();
+                break;
+            case 13:
+                importHeartRateSamples();
+                break;
+            case 14:
+                importActivityLog();
+                break;
+            case 15:
                 isLoggedIn = false; 
                 return;
             default:
@@ -162,6 +202,27 @@ public class HealthMonitoringApp {
                 prescribeMedication();
                 break;
             case 5:
+                viewPanelSummary();
+                break;
+            case 6:
+                viewTopRiskPatients();
+                break;
+            case 7:
+                viewPatientAlerts();
+                break;
+            case 8:
+                prescribeMedicationToPatients();
+                break;
+            case 9:
+                viewPatientsOnMedication();
+                break;
+            case 10:
+                assignPatients();
+                break;
+            case 11:
+                filterPatientsByAverages();
+                break;
+            case 12:
                 isLoggedIn = false;
                 return;
             default:
@@ -209,7 +270,10 @@ public class HealthMonitoringApp {
         System.out.println("9.  Retrieve Overdue Medication Reminders");
         System.out.println("10. Update Medication Reminder");
         System.out.println("11. Access Doctor Portal");
-        System.out.println("12. Logout");
+        System.out.println("12. Compare My Health Data");
+        System.out.println("13. Import Wearable Heart Rate Samples");
+        System.out.println("14. Import Device Activity Log");
+        System.out.println("15. Logout");
         System.out.println();
         System.out.print("Please enter the number of your choice: ");
     }
@@ -227,13 +291,20 @@ public class HealthMonitoringApp {
             System.out.println("2. View Patient Medication List");
             System.out.println("3. View Patient Health Data");
             System.out.println("4. Prescribe Patient Medication");
-            System.out.println("5. Logout");
+            System.out.println("5. View Patient Panel Summary");
+            System.out.println("6. View Highest-Risk Patients");
+            System.out.println("7. View Patient Alerts");
+            System.out.println("8. Prescribe Medication to Multiple Patients");
+            System.out.println("9. View Patients on a Medication");
+            System.out.println("10. Assign Patients");
+            System.out.println("11. Filter Patients by 14-Day Averages");
+            System.out.println("12. Logout");
             System.out.println();
             System.out.print("Please enter the number of your choice: ");
        
             selection = in.nextInt();
             doctorMenuOption(selection);
-        } while (selection != 5);
+        } while (selection != 12);
     }
 /**
      * Registers a new user by collecting their details and storing them in the database.
@@ -416,6 +487,7 @@ public class HealthMonitoringApp {
                 isLoggedIn = false; 
                 System.out.println();
                 System.out.println("Your account has been successfully deleted. We're sad to see you go.");
+                System.out.println("Your data will be removed from our records shortly.");
                 System.out.println();
             } else {
                 System.out.println("Unable to delete your account. Please try again.");
@@ -456,9 +528,12 @@ public class HealthMonitoringApp {
               
         HealthData healthData = new HealthData(0, userId, weight, height, steps, heartRate, waterIntake, hoursOfSleep, date);
 
-        int id = healthDataDao.createHealthData(healthData);
-      
-        healthData.setId(id);
+        // One entry per day: entering a date again replaces that day's values instead of adding a duplicate
+        int id = healthDataDao.upsertHealthData(healthData);
+        if (id == 0) {
+            System.out.println("Oops! Your health data could not be saved. Please try again.");
+            return;
+        }
 
         System.out.println();
         System.out.println("Your health data has been updated sucessfully.");
@@ -498,6 +573,10 @@ public class HealthMonitoringApp {
     }
     
     HealthData selectedHealthData = healthDataList.get(selectedNumber - 1);
+    if (selectedHealthData.isArchived()) {
+        System.out.println("Opps! This record has been archived and can no longer be changed.");
+        return;
+    }
     
     System.out.println();
     System.out.println("Current Health Data");
@@ -565,10 +644,16 @@ public class HealthMonitoringApp {
             return;
     }
   
-    boolean updateSuccess = healthDataDao.updateHealthData(selectedHealthData);
-    if (updateSuccess) {
+    UpdateResult updateResult = healthDataDao.updateHealthData(selectedHealthData);
+    if (updateResult == UpdateResult.UPDATED) {
         System.out.println();
         System.out.println("Your Health Data record has been updated successfully.");
+    } else if (updateResult == UpdateResult.CONFLICT) {
+        System.out.println("Opps! This record was changed somewhere else while you were editing it. Please open it again and redo your change.");
+    } else if (updateResult == UpdateResult.NOT_FOUND) {
+        System.out.println("Opps! This record no longer exists.");
+    } else if (updateResult == UpdateResult.READ_ONLY) {
+        System.out.println("Opps! This record has been archived and can no longer be changed.");
     } else {
         System.out.println("Opps! Something went wrong. Please try again.");
     }
@@ -610,12 +695,16 @@ public class HealthMonitoringApp {
             return;
         }
     
-        int recordToDelete = healthDataList.get(idToDelete - 1).getId();
+        HealthData recordToDelete = healthDataList.get(idToDelete - 1);
+        if (recordToDelete.isArchived()) {
+            System.out.println("Oops! This health record has been archived and can no longer be deleted.");
+            return;
+        }
     
         System.out.print("Delete Health Data Record (Y/N): ");
         String confirmation = in.next();
         if (confirmation.equalsIgnoreCase("Y")) {
-            boolean isDeleted = healthDataDao.deleteHealthData(recordToDelete);
+            boolean isDeleted = healthDataDao.deleteHealthData(recordToDelete.getId(), recordToDelete.getDate());
             if (isDeleted) {
                 System.out.println();
                 System.out.println("Your health record has been successfully deleted.");
@@ -634,14 +723,12 @@ public class HealthMonitoringApp {
      */ 
     private static void retrieveHealthRecommendations() {
        
-        List<HealthData> healthDataList = healthDataDao.getHealthDataByUserId(userId);
+        HealthData latestHealthData = healthDataDao.getLatestHealthData(userId);
         
-        if (healthDataList.isEmpty()) {
+        if (latestHealthData == null) {
             System.out.println("No health data found for the current user. Please add health data first.");
             return;
         }
-               
-        HealthData latestHealthData = healthDataList.get(healthDataList.size() - 1);
                   
         List<String> recommendations = recommendationSystem.generateRecommendations(latestHealthData);
     
@@ -653,6 +740,86 @@ public class HealthMonitoringApp {
             System.out.println("* " + recommendation);
             System.out.println(); 
         }
+
+        LocalDate today = LocalDate.now();
+        HealthSeries lastWeek = healthDataDao.getHealthSeries(userId, today.minusDays(6), today);
+        List<String> trends = recommendationSystem.generateTrendRecommendations(lastWeek, today.minusDays(6), today);
+        if (!trends.isEmpty()) {
+            System.out.println("Over the Last 7 Days");
+            System.out.println("--------------------");
+            System.out.println();
+            for (String trend : trends) {
+                System.out.println("* " + trend);
+                System.out.println();
+            }
+        }
+    }
+/**
+     * Shows where the latest steps, sleep and heart rate of the current user fall among all users.
+     */
+    private static void compareHealthData() {
+
+        HealthData latestHealthData = healthDataDao.getLatestHealthData(userId);
+
+        if (latestHealthData == null) {
+            System.out.println("No health data found for the current user. Please add health data first.");
+            return;
+        }
+        PercentileSketches sketches = PercentileSketches.getInstance();
+
+        System.out.println();
+        System.out.println("How Do I Compare?");
+        System.out.println("-----------------");
+        System.out.println();
+        System.out.println("Steps: " + latestHealthData.getSteps() + " (at or above " +
+                String.format("%.0f", sketches.getPercentileRank(PercentileSketches.POPULATION, PercentileSketches.STEPS, latestHealthData.getSteps())) + "% of entries)");
+        System.out.println("Hours of Sleep: " + latestHealthData.getHoursOfSleep() + " (at or above " +
+                String.format("%.0f", sketches.getPercentileRank(PercentileSketches.POPULATION, PercentileSketches.HOURS_OF_SLEEP, latestHealthData.getHoursOfSleep())) + "% of entries)");
+        System.out.println("Heart Rate: " + latestHealthData.getHeartRate() + " (at or above " +
+                String.format("%.0f", sketches.getPercentileRank(PercentileSketches.POPULATION, PercentileSketches.HEART_RATE, latestHealthData.getHeartRate())) + "% of entries)");
+        System.out.println("Median Steps: " + String.format("%.0f", sketches.getPercentile(PercentileSketches.POPULATION, PercentileSketches.STEPS, 50)));
+    }
+/**
+     * Imports the heart rate samples of a wearable export file into the vitals store for the current user.
+     */
+    private static void importHeartRateSamples() {
+
+        System.out.println();
+        System.out.println("Import Wearable Heart Rate Samples");
+        System.out.println("----------------------------------");
+        System.out.println();
+
+        in.nextLine();
+        System.out.print("Path of the CSV export (time,heart rate per line): ");
+        String path = in.nextLine().trim();
+
+        try {
+            int stored = VitalsStore.getInstance().importSamples(userId, VitalsStore.HEART_RATE, Paths.get(path));
+            System.out.println(stored + " heart rate sample(s) imported. Your daily heart rate is updated from them once each day ends.");
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Oops! The samples could not be imported: " + e.getMessage());
+        }
+    }
+/**
+     * Imports the readings of a device activity log export file into the current user's daily health data.
+     */
+    private static void importActivityLog() {
+
+        System.out.println();
+        System.out.println("Import Device Activity Log");
+        System.out.println("--------------------------");
+        System.out.println();
+
+        in.nextLine();
+        System.out.print("Path of the CSV export (time,type,value per line): ");
+        String path = in.nextLine().trim();
+
+        try {
+            int imported = DailyHealthAggregator.getInstance().importReadings(userId, Paths.get(path));
+            System.out.println(imported + " reading(s) imported into your daily health data.");
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Oops! The readings could not be imported: " + e.getMessage());
+        }
     }
 /**
      * Allows the user to add a new medication reminder by specifying details such as medication name, dosage, schedule, start date, and end date.
@@ -665,9 +832,8 @@ public class HealthMonitoringApp {
         System.out.println("-----------------------");
         System.out.println();
         
-        System.out.print("Medicine Name: ");
-        String medicineName = in.next();
         in.nextLine();
+        String medicineName = readMedicineName("Medicine Name: ");
         
         System.out.print("Dosage: ");
         String dosage = in.nextLine();
@@ -784,14 +950,14 @@ public class HealthMonitoringApp {
     private static void viewPatientsForDoctor() {
 
         int doctorId = userId;
-        User doctor = userDao.getUserById(doctorId);
-        List<User> patients = doctorPortalDao.getPatientsByDoctorId(doctorId);
+        UserSummary doctor = userDao.getUserSummaryById(doctorId);
+        List<UserSummary> patients = doctorPortalDao.getPatientsByDoctorId(doctorId);
         if (!patients.isEmpty()) {
             System.out.println();
             System.out.println("Detailed Patient List for Doctor " + doctor.getFirstName() + " " + doctor.getLastName());
             System.out.println("----------------------------------------------");
             System.out.println();
-            for (User patient : patients) {
+            for (UserSummary patient : patients) {
                 System.out.println("Patient ID: " + patient.getId());
                 System.out.println("Name: " + patient.getFirstName() + " " + patient.getLastName());
                 System.out.println("Email: " + patient.getEmail());
@@ -805,200 +971,516 @@ public class HealthMonitoringApp {
     }
 /**
      * Allows the doctor to view health data records for a selected patient.
-     * Prompts the doctor to select a patient and then displays the health data records for that patient.
+     * Prompts the doctor to find a patient and then displays the health data records for that patient.
      */       
     private static void viewHealthDataForPatient() {
 
-        
-        int doctorId = userId;
-        Doctor doctor = doctorPortalDao.getDoctorById(userId);
-        List<User> patients = doctorPortalDao.getPatientsByDoctorId(doctorId);
-    
-        if (!patients.isEmpty()) {
+        in.nextLine();
+        UserSummary patient = selectPatient();
+        if (patient == null) {
+            return;
+        }
+
+        System.out.println();
+        long shown = doctorPortalDao.forEachHealthDataOfPatient(patient.getId(), healthData ->
+                System.out.println("Health Data for " + patient.getFirstName() + " " + patient.getLastName() + "\n" +
+               "------------------------------\n" + healthData));
+        if (shown == 0) {
             System.out.println();
-            System.out.println("Patient List for Doctor " + doctor.getFirstName() + " " + doctor.getLastName());
-            System.out.println("---------------------------------");
+            System.out.println("No health data found for Patient " + patient.getFirstName() + " " + patient.getLastName() + ".");
+            return;
+        }
+
+        HealthSeries series = doctorPortalDao.getHealthSeriesByPatientId(patient.getId(), 30);
+        if (series.isEmpty()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate start = today.minusDays(29);
+        System.out.println("30-Day Summary (" + series.size() + " entries)");
+        System.out.println("------------------------------");
+        printSeriesLine("Steps", series, HealthSeries.STEPS, start, today, "%.0f");
+        printSeriesLine("Heart Rate", series, HealthSeries.HEART_RATE, start, today, "%.0f");
+        printSeriesLine("Hours of Sleep", series, HealthSeries.HOURS_OF_SLEEP, start, today, "%.1f");
+        printSeriesLine("Water Intake", series, HealthSeries.WATER_INTAKE, start, today, "%.1f");
+        printSeriesLine("Weight", series, HealthSeries.WEIGHT, start, today, "%.1f");
+    }
+/**
+     * Prints the average, minimum and maximum of one metric of a HealthSeries over a period.
+     */
+    private static void printSeriesLine(String label, HealthSeries series, String metric, LocalDate start, LocalDate end, String format) {
+        System.out.println(label + ": average " + String.format(format, series.mean(metric, start, end)) +
+                ", min " + String.format(format, series.min(metric, start, end)) +
+                ", max " + String.format(format, series.max(metric, start, end)));
+    }
+/**
+     * Allows the doctor to prescribe medication for a selected patient.
+     * Prompts the doctor to find a patient and then enters details of the medication reminder.
+     */
+    public static void prescribeMedication() {
 
-            int index = 1;
+        in.nextLine();
+        UserSummary selectedPatient = selectPatient();
+        if (selectedPatient == null) {
+            return;
+        }
+
+        MedicineReminder reminder = readPrescription();
+        if (reminder == null) {
+            return;
+        }
+
+        List<DrugInteraction> interactions = doctorPortalDao.checkInteractions(selectedPatient.getId(), reminder);
+        if (!interactions.isEmpty()) {
             System.out.println();
-            for (User patient : patients) {
-                System.out.println(index++ + ". " +  patient.getFirstName() + " " + patient.getLastName());
+            System.out.println("Warning! " + reminder.getMedicineName() + " interacts with medication this patient takes:");
+            for (DrugInteraction interaction : interactions) {
+                System.out.println("  " + interaction);
+            }
+            System.out.print("Prescribe anyway? (Y/N): ");
+            if (!in.nextLine().trim().equalsIgnoreCase("Y")) {
+                System.out.println("The prescription was not added.");
+                return;
             }
+        }
 
-            System.out.println();
-    
-            System.out.print("Select a patient by entering the number of your choice: ");
-            int selectedPatient = in.nextInt();
-            in.nextLine(); 
-    
-            if (selectedPatient >= 1 && selectedPatient <= patients.size()) {
-                int selectedPatientId = patients.get(selectedPatient - 1).getId();
-    
-                List<HealthData> healthDataList = doctorPortalDao.getHealthDataByPatientId(selectedPatientId);
-                if (!healthDataList.isEmpty()) {
-                    System.out.println();
-                    for (HealthData healthData : healthDataList) {
-                        User patient = patients.get(selectedPatient - 1);
-                        System.out.println("Health Data for " + patient.getFirstName() + " " + patient.getLastName() + "\n" +
-                       "------------------------------\n" + healthData); 
-                        
+        doctorPortalDao.addMedicineReminderForPatient(selectedPatient.getId(), reminder);
+    }
+/**
+     * Lets the doctor find one of their patients, either by searching names and emails or from the full list.
+     *
+     * @return The selected UserSummary object, or null if no patient was selected.
+     */
+    private static UserSummary selectPatient() {
+
+        System.out.print("Search patients by name or email, or press Enter to list them all: ");
+        String query = in.nextLine().trim();
+
+        List<UserSummary> patients = query.isEmpty() ? doctorPortalDao.getPatientsByDoctorId(userId)
+                : PatientSearchIndex.getInstance().search(userId, query, 10);
+        if (patients.isEmpty()) {
+            System.out.println(query.isEmpty() ? "No patients found for this doctor." : "Oops! No patients match \"" + query + "\".");
+            return null;
+        }
+
+        System.out.println();
+        int index = 1;
+        for (UserSummary patient : patients) {
+            System.out.println(index++ + ". " +  patient.getFirstName() + " " + patient.getLastName() + " (" + patient.getEmail() + ")");
+        }
+        System.out.println();
+
+        System.out.print("Select a patient by entering the number of your choice: ");
+        int choice = in.nextInt();
+        in.nextLine();
+
+        if (choice < 1 || choice > patients.size()) {
+            System.out.println("Invalid choice. Please select a valid patient.");
+            return null;
+        }
+        return patients.get(choice - 1);
+    }
+/**
+     * Prompts for a medicine name, suggesting known medicines that start with what was typed.
+     *
+     * @param prompt The prompt to show.
+     * @return The medicine name, either a picked suggestion or the name as typed.
+     */
+    private static String readMedicineName(String prompt) {
+
+        System.out.print(prompt);
+        String medicineName = in.nextLine().trim();
+
+        MedicineDictionary dictionary = MedicineDictionary.getInstance();
+        if (dictionary.idOf(medicineName) == -1) {
+            List<String> suggestions = dictionary.complete(medicineName, 5);
+            if (!suggestions.isEmpty()) {
+                System.out.println("Did you mean:");
+                for (int i = 0; i < suggestions.size(); i++) {
+                    System.out.println((i + 1) + ". " + suggestions.get(i));
+                }
+                System.out.print("Enter a number to pick a medicine, or press Enter to keep \"" + medicineName + "\": ");
+                String pick = in.nextLine().trim();
+                try {
+                    int choice = Integer.parseInt(pick);
+                    if (choice >= 1 && choice <= suggestions.size()) {
+                        medicineName = suggestions.get(choice - 1);
                     }
-                } else {
-                    System.out.println();
-                    User patient = patients.get(selectedPatient - 1);
-                    System.out.println("No health data found for Patient " + patient.getFirstName() + " " + patient.getLastName() + ".");
+                } catch (NumberFormatException e) {
+                    // Keeps the name as typed
                 }
-            } else {
-                System.out.println();
-                System.out.println("Opps! It appears that choice is invalid. Please choose again.");
             }
+        }
+        return medicineName;
+    }
+/**
+     * Prompts the doctor for the details of a new prescription.
+     *
+     * @return The MedicineReminder object to prescribe, or null if a date was invalid.
+     */
+    private static MedicineReminder readPrescription() {
+
+        System.out.println();
+        System.out.println("New Medication Reminder");
+        System.out.println("-----------------------");
+        System.out.println();
+
+        String medicineName = readMedicineName("Medicine Name: ");
+
+        System.out.print("Dosage: ");
+        String dosage = in.nextLine();
+
+        System.out.println();
+        System.out.println("Please Choose Your Medication Schedule");
+        System.out.println();
+
+        System.out.println("1. Every 24 hours");
+        System.out.println("2. Every 12 hours");
+        System.out.println("3. Every 8 hours");
+        System.out.println();
+        System.out.print("Please enter the number of your choice: ");
+        int choice = in.nextInt();
+        in.nextLine(); 
+
+        String schedule;
+        switch (choice) {
+            case 1:
+                schedule = "Every 24 hours";
+                break;
+            case 2:
+                schedule = "Every 12 hours";
+                break;
+            case 3:
+                schedule = "Every 8 hours";
+                break;
+            default:
+                System.out.println("Invalid choice. Defaulting to every 24 hours.");
+                schedule = "Every 24 hours";
+                break;
+        }
+
+        System.out.print("Start Date (MM-DD-YYYY): ");
+        String startDateString = in.next();
+        LocalDate startDate = parseDate(startDateString);
+        if (startDate == null) {
+            return null;
+        }
+
+        System.out.print("End Date (MM-DD-YYYY): ");
+        String endDateString = in.next();
+        LocalDate endDate = parseDate(endDateString);
+        if (endDate == null) {
+            return null;
+        }
+
+        in.nextLine();
+
+        return new MedicineReminder(0, userId, medicineName, dosage, schedule, startDate, endDate);
+    }
+/**
+     * Prescribes the same medication to several of the doctor's patients at once.
+     * Patients for whom the medication interacts with their current medication are listed first and can be skipped.
+     */
+    private static void prescribeMedicationToPatients() {
+
+        List<UserSummary> patients = doctorPortalDao.getPatientsByDoctorId(userId);
+
+        if (patients.isEmpty()) {
+            System.out.println("No patients found for this doctor.");
+            return;
+        }
+
+        System.out.println();
+        int index = 1;
+        for (UserSummary patient : patients) {
+            System.out.println(index++ + ". " +  patient.getFirstName() + " " + patient.getLastName());
+        }
+        System.out.println();
+        System.out.print("Enter the numbers of the patients separated by commas, or ALL: ");
+        in.nextLine();
+        String selection = in.nextLine().trim();
+
+        List<Integer> patientIds = new ArrayList<>();
+        Map<Integer, UserSummary> patientsById = new HashMap<>();
+        for (UserSummary patient : patients) {
+            patientsById.put(patient.getId(), patient);
+        }
+        if (selection.equalsIgnoreCase("ALL")) {
+            patientIds.addAll(patientsById.keySet());
         } else {
+            for (String number : selection.split(",")) {
+                try {
+                    int choice = Integer.parseInt(number.trim());
+                    if (choice >= 1 && choice <= patients.size() && !patientIds.contains(patients.get(choice - 1).getId())) {
+                        patientIds.add(patients.get(choice - 1).getId());
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Oops! " + number.trim() + " is not a patient number and was skipped.");
+                }
+            }
+        }
+        if (patientIds.isEmpty()) {
+            System.out.println("Invalid choice. Please select a valid patient.");
+            return;
+        }
+
+        MedicineReminder reminder = readPrescription();
+        if (reminder == null) {
+            return;
+        }
+
+        Map<Integer, List<DrugInteraction>> interactions = doctorPortalDao.checkInteractions(patientIds, reminder);
+        if (!interactions.isEmpty()) {
             System.out.println();
-            System.out.println("No patients found for Doctor with ID " + doctor.getFirstName() + " " +  doctor.getLastName());
+            System.out.println("Warning! " + reminder.getMedicineName() + " interacts with the medication of " + interactions.size() + " patient(s):");
+            for (Map.Entry<Integer, List<DrugInteraction>> entry : interactions.entrySet()) {
+                UserSummary patient = patientsById.get(entry.getKey());
+                System.out.println(patient.getFirstName() + " " + patient.getLastName());
+                for (DrugInteraction interaction : entry.getValue()) {
+                    System.out.println("  " + interaction);
+                }
+            }
+            System.out.print("Skip these patients? (Y/N): ");
+            if (in.nextLine().trim().equalsIgnoreCase("Y")) {
+                patientIds.removeAll(interactions.keySet());
+            }
+        }
+
+        if (patientIds.isEmpty()) {
+            System.out.println("The prescription was not added.");
+            return;
         }
+        int added = doctorPortalDao.addMedicineReminderForPatients(patientIds, reminder);
+        System.out.println("Reminder added for " + added + " patient(s).");
     }
 /**
-     * Allows the doctor to prescribe medication for a selected patient.
-     * Prompts the doctor to select a patient and then enters details of the medication reminder.
+     * Displays the doctor's patients with an active reminder for a medicine.
      */
-    public static void prescribeMedication() {
+    private static void viewPatientsOnMedication() {
 
-        int doctorId = userId;
-        Doctor doctor = doctorPortalDao.getDoctorById(userId);
-        List<User> patients = doctorPortalDao.getPatientsByDoctorId(doctorId);
-    
-        if (!patients.isEmpty()) {
-            System.out.println();
-            System.out.println("Patient List for Doctor " + doctor.getFirstName() + " " + doctor.getLastName());
-            System.out.println("-----------------------------------");
-    
-            int index = 1;
-            System.out.println();
-            for (User patient : patients) {
-                System.out.println(index++ + ". " +  patient.getFirstName() + " " + patient.getLastName());
+        in.nextLine();
+        String medicineName = readMedicineName("Medicine Name: ");
+        int medicineId = MedicineDictionary.getInstance().idOf(medicineName);
+        if (medicineId == -1) {
+            System.out.println("Oops! No patient has ever been prescribed " + medicineName + ".");
+            return;
+        }
+
+        List<UserSummary> patients = doctorPortalDao.getPatientsOnMedicine(userId, medicineId);
+        if (patients.isEmpty()) {
+            System.out.println("None of your patients currently take " + medicineName + ".");
+            return;
+        }
+
+        System.out.println();
+        System.out.println("Patients on " + MedicineDictionary.getInstance().nameOf(medicineId));
+        System.out.println("-----------------------------------");
+        System.out.println();
+        for (UserSummary patient : patients) {
+            System.out.println(patient.getFirstName() + " " + patient.getLastName() + " (" + patient.getEmail() + ")");
+        }
+    }
+/**
+     * Assigns patients to the logged-in doctor by email.
+     * Prompts the doctor for a comma-separated list of patient emails.
+     */
+    private static void assignPatients() {
+
+        in.nextLine();
+        System.out.print("Patient Emails (comma-separated): ");
+        String[] emails = in.nextLine().split(",");
+
+        List<Integer> patientIds = new ArrayList<>();
+        for (String email : emails) {
+            if (email.trim().isEmpty()) {
+                continue;
             }
+            UserSummary patient = userDao.getUserSummaryByEmail(email.trim());
+            if (patient == null) {
+                System.out.println("Oops! No user was found with the email " + email.trim() + ".");
+            } else if (patient.getId() != userId && !patientIds.contains(patient.getId())) {
+                patientIds.add(patient.getId());
+            }
+        }
+
+        if (patientIds.isEmpty()) {
+            System.out.println("No patients were assigned.");
+            return;
+        }
+        List<Integer> assigned = doctorPortalDao.assignPatients(userId, patientIds);
+        System.out.println(assigned.size() + " patient(s) assigned, " + (patientIds.size() - assigned.size()) + " already on your panel.");
+    }
+/**
+     * Lists the doctor's patients whose 14-day averages match every condition entered.
+     * Each condition compares one metric against one of its bucket edges in the cohort index.
+     */
+    private static void filterPatientsByAverages() {
+
+        String[] metrics = {CohortIndex.STEPS, CohortIndex.HEART_RATE, CohortIndex.WATER_INTAKE, CohortIndex.HOURS_OF_SLEEP};
+        String[] labels = {"Steps", "Heart Rate", "Water Intake", "Hours of Sleep"};
+        List<CohortFilter> filters = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+
+        while (true) {
             System.out.println();
-    
-            System.out.print("Select a patient by entering the number of your choice: ");
-            int selectedPatientIndex = in.nextInt();
-            in.nextLine(); 
-    
-            if (selectedPatientIndex >= 1 && selectedPatientIndex <= patients.size()) {
-                User selectedPatient = patients.get(selectedPatientIndex - 1);
-    
-                System.out.println();
-                System.out.println("New Medication Reminder");
-                System.out.println("-----------------------");
-                System.out.println();
-    
-                System.out.print("Medicine Name: ");
-                String medicineName = in.nextLine();
-    
-                System.out.print("Dosage: ");
-                String dosage = in.nextLine();
-    
-                System.out.println();
-                System.out.println("Please Choose Your Medication Schedule");
-                System.out.println();
-    
-                System.out.println("1. Every 24 hours");
-                System.out.println("2. Every 12 hours");
-                System.out.println("3. Every 8 hours");
-                System.out.println();
-                System.out.print("Please enter the number of your choice: ");
-                int choice = in.nextInt();
-                in.nextLine(); 
-    
-                String schedule;
-                switch (choice) {
-                    case 1:
-                        schedule = "Every 24 hours";
-                        break;
-                    case 2:
-                        schedule = "Every 12 hours";
-                        break;
-                    case 3:
-                        schedule = "Every 8 hours";
-                        break;
-                    default:
-                        System.out.println("Invalid choice. Defaulting to every 24 hours.");
-                        schedule = "Every 24 hours";
-                        break;
-                }
-    
-                System.out.print("Start Date (MM-DD-YYYY): ");
-                String startDateString = in.next();
-                LocalDate startDate = parseDate(startDateString);
-                if (startDate == null) {
-                    return;
-                }
-    
-                System.out.print("End Date (MM-DD-YYYY): ");
-                String endDateString = in.next();
-                LocalDate endDate = parseDate(endDateString);
-                if (endDate == null) {
-                    return;
-                }
-    
-                MedicineReminder reminder = new MedicineReminder(0, userId, medicineName, dosage, schedule, startDate, endDate);
-    
-                doctorPortalDao.addMedicineReminderForPatient(selectedPatient.getId(), reminder);
-            } else {
-                System.out.println("Invalid choice. Please select a valid patient.");
+            System.out.println("Add a condition (all conditions must match):");
+            for (int i = 0; i < metrics.length; i++) {
+                System.out.println((i + 1) + ". " + labels[i]);
             }
-        } else {
-            System.out.println("No patients found for this doctor.");
+            System.out.println("0. Done");
+            System.out.print("Please enter the number of your choice: ");
+            int choice = in.nextInt();
+            if (choice == 0) {
+                break;
+            }
+            if (choice < 1 || choice > metrics.length) {
+                System.out.println("Opps! It appears that choice is not available. Please choose again.");
+                continue;
+            }
+            String metric = metrics[choice - 1];
+            double[] edges = CohortIndex.getInstance().getBucketEdges(metric);
+            StringBuilder available = new StringBuilder();
+            for (double edge : edges) {
+                available.append(available.length() == 0 ? "" : ", ").append(formatEdge(edge));
+            }
+            System.out.print("Threshold (" + available + "): ");
+            double threshold = in.nextDouble();
+            boolean known = false;
+            for (double edge : edges) {
+                known |= edge == threshold;
+            }
+            if (!known) {
+                System.out.println("Oops! " + formatEdge(threshold) + " is not one of the available thresholds.");
+                continue;
+            }
+            System.out.print("1. Below or 2. At or above the threshold: ");
+            boolean below = in.nextInt() == 1;
+            filters.add(below ? CohortFilter.below(metric, threshold) : CohortFilter.atLeast(metric, threshold));
+            conditions.add(labels[choice - 1] + (below ? " below " : " at or above ") + formatEdge(threshold));
+        }
+
+        if (filters.isEmpty()) {
+            System.out.println("No conditions were entered.");
+            return;
+        }
+        List<UserSummary> patients = doctorPortalDao.filterPatients(userId, CohortFilter.and(filters.toArray(new CohortFilter[0])));
+
+        System.out.println();
+        System.out.println("Patients with " + String.join(" and ", conditions));
+        System.out.println();
+        if (patients.isEmpty()) {
+            System.out.println("No patients match these conditions.");
+            return;
+        }
+        for (UserSummary patient : patients) {
+            System.out.println(patient);
         }
     }
- /**
+
+    private static String formatEdge(double edge) {
+        return edge == Math.rint(edge) ? String.valueOf((long) edge) : String.valueOf(edge);
+    }
+  /**
      * Displays the list of medication reminders for a selected patient.
-     * Prompts the doctor to select a patient and then displays their medication reminders.
+     * Prompts the doctor to find a patient and then displays their medication reminders.
      */   
     private static void viewPatientMedicineReminders() {
 
-        int doctorId = userId;
-        Doctor doctor = doctorPortalDao.getDoctorById(userId);
+        in.nextLine();
+        UserSummary selectedPatient = selectPatient();
+        if (selectedPatient == null) {
+            return;
+        }
 
-        List<User> patients = doctorPortalDao.getPatientsByDoctorId(doctorId);
-    
-        if (!patients.isEmpty()) {
-            System.out.println();
-            System.out.println("Patient List for Doctor " + doctor.getFirstName() + " " + doctor.getLastName());
-            System.out.println("-----------------------------------");
-    
-            int index = 1;
+        List<MedicineReminder> reminders = medicineManager.getAllReminders(selectedPatient.getId());
+
+        if (reminders.isEmpty()) {
+            System.out.println("No medicine reminders found for " + selectedPatient.getFirstName() + " " + selectedPatient.getLastName());
+        } else {
             System.out.println();
-            for (User patient : patients) {
-                System.out.println(index++ + ". " +  patient.getFirstName() + " " + patient.getLastName());
+            System.out.println("Medicine reminders for " + selectedPatient.getFirstName() + " " + selectedPatient.getLastName());
+            System.out.println("------------------------------------");
+            for (MedicineReminder reminder : reminders) {
+                System.out.println(reminder);
+                System.out.println();
             }
+        }
+    }
+/**
+     * Displays the doctor's panel dashboard: the latest vitals, 7-day averages and active flags of every patient.
+     */
+    private static void viewPanelSummary() {
+
+        List<PatientPanelSummary> panel = doctorPortalDao.getPanelSummary(userId);
+
+        if (panel.isEmpty()) {
+            System.out.println("No patients found for this doctor.");
+            return;
+        }
+
+        System.out.println();
+        System.out.println("Patient Panel Summary");
+        System.out.println("---------------------");
+        System.out.println();
+        for (PatientPanelSummary summary : panel) {
+            System.out.println(summary);
             System.out.println();
+        }
+    }
+/**
+     * Displays the doctor's patients with the highest composite risk scores, highest first.
+     */
+    private static void viewTopRiskPatients() {
 
-            System.out.println("Select a patient to view their medicine reminders:");
-           
-            int choice = in.nextInt();
-    
-            if (choice < 1 || choice > patients.size()) {
-                System.out.println("Invalid choice. Please select a valid patient.");
-                return;
-            }
-    
-            User selectedPatient = patients.get(choice - 1);
-    
-            List<MedicineReminder> reminders = medicineManager.getAllReminders(selectedPatient.getId());
-    
-            if (reminders.isEmpty()) {
-                System.out.println("No medicine reminders found for " + selectedPatient.getFirstName() + " " + selectedPatient.getLastName());
-            } else {
-                System.out.println();
-                System.out.println("Medicine reminders for " + selectedPatient.getFirstName() + " " + selectedPatient.getLastName());
-                System.out.println("------------------------------------");
-                for (MedicineReminder reminder : reminders) {
-                    System.out.println(reminder);
-                    System.out.println();
-                }
+        System.out.print("How many patients would you like to see? ");
+        int limit = in.nextInt();
+        in.nextLine();
+
+        List<PatientRisk> patients = doctorPortalDao.getTopRiskPatients(userId, Math.max(1, limit));
+
+        if (patients.isEmpty()) {
+            System.out.println("No risk scores are available for your patients yet.");
+            return;
+        }
+
+        System.out.println();
+        System.out.println("Highest-Risk Patients");
+        System.out.println("---------------------");
+        System.out.println();
+        int index = 1;
+        for (PatientRisk patient : patients) {
+            System.out.println(index++ + ". " + patient);
+        }
+    }
+/**
+     * Displays the anomaly alerts raised for the doctor's patients over the last 30 days.
+     * An alert means a patient's value moved suddenly away from their own baseline.
+     */
+    private static void viewPatientAlerts() {
+
+        int doctorId = userId;
+        Map<Integer, UserSummary> patients = new HashMap<>();
+        for (UserSummary patient : doctorPortalDao.getPatientsByDoctorId(doctorId)) {
+            patients.put(patient.getId(), patient);
+        }
+        List<AnomalyAlert> alerts = doctorPortalDao.getAnomalyAlertsForDoctor(doctorId, LocalDate.now().minusDays(30));
+
+        if (alerts.isEmpty()) {
+            System.out.println("No patient alerts in the last 30 days.");
+            return;
+        }
+
+        System.out.println();
+        System.out.println("Patient Alerts (Last 30 Days)");
+        System.out.println("-----------------------------");
+        System.out.println();
+        for (AnomalyAlert alert : alerts) {
+            UserSummary patient = patients.get(alert.getUserId());
+            if (patient != null) {
+                System.out.println("Patient: " + patient.getFirstName() + " " + patient.getLastName());
             }
-        } else {
-            System.out.println("No patients found for this doctor.");
+            System.out.println(alert);
+            System.out.println();
         }
     }
 /**
@@ -1087,8 +1569,7 @@ public class HealthMonitoringApp {
         
         switch (choice) {
             case 1:
-                System.out.print("Enter new medicine name: ");
-                String newMedicineName = in.nextLine();
+                String newMedicineName = readMedicineName("Enter new medicine name: ");
                 selectedReminder.setMedicineName(newMedicineName);
                 break;
             case 2:
@@ -1137,10 +1618,14 @@ public class HealthMonitoringApp {
                 return;
         }
 
-        boolean updateSuccess = medicineManager.updateMedicationReminder(selectedReminder);
-        if (updateSuccess) {
+        UpdateResult updateResult = medicineManager.updateMedicationReminder(selectedReminder);
+        if (updateResult == UpdateResult.UPDATED) {
             System.out.println();
             System.out.println("Medication Reminder updated successfully.");
+        } else if (updateResult == UpdateResult.CONFLICT) {
+            System.out.println("Opps! This reminder was changed somewhere else while you were editing it. Please open it again and redo your change.");
+        } else if (updateResult == UpdateResult.NOT_FOUND) {
+            System.out.println("Opps! This reminder no longer exists.");
         } else {
             System.out.println("Opps! Something went wrong. Please try again.");
         }
@@ -0,0 +1,473 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * This class holds a user's health data history in columns: one primitive array per value, indexed by entry and
+ * ordered by date. Aggregates over a date range are plain loops over a slice of one array, found by binary search
+ * on the epoch days, so they touch no objects and no dates. A series is read straight from a health_data
+ * ResultSet, or built from HealthData objects for ranges that include archived months. Heart rate, weight and height
+ * are 0 on days they were not recorded; those days are left out of the means, minimums, maximums and counts of the metric.
+ */
+
+public class HealthSeries {
+
+    public static final String STEPS = "steps";
+    public static final String HEART_RATE = "heart_rate";
+    public static final String WEIGHT = "weight";
+    public static final String HEIGHT = "height";
+    public static final String WATER_INTAKE = "water_intake";
+    public static final String HOURS_OF_SLEEP = "hours_of_sleep";
+
+    private final int userId;
+    private final int size;
+    private final int[] ids;
+    private final int[] epochDays;
+    private final int[] steps;
+    private final int[] heartRates;
+    private final double[] weights;
+    private final double[] heights;
+    private final double[] waterIntakes;
+    private final double[] hoursOfSleep;
+
+    private HealthSeries(Builder builder) {
+        userId = builder.userId;
+        size = builder.size;
+        ids = Arrays.copyOf(builder.ids, size);
+        epochDays = Arrays.copyOf(builder.epochDays, size);
+        steps = Arrays.copyOf(builder.steps, size);
+        heartRates = Arrays.copyOf(builder.heartRates, size);
+        weights = Arrays.copyOf(builder.weights, size);
+        heights = Arrays.copyOf(builder.heights, size);
+        waterIntakes = Arrays.copyOf(builder.waterIntakes, size);
+        hoursOfSleep = Arrays.copyOf(builder.hoursOfSleep, size);
+    }
+/**
+     * Reads a series from the remaining rows of a health_data ResultSet ordered by date, through the RowMapper of
+     * RowMappers.healthSeries, which resolves the column indexes once.
+     *
+     * @param userId The ID of the user the rows belong to.
+     * @param rs The ResultSet to read.
+     * @return The HealthSeries holding every row.
+     * @throws SQLException If a column is missing or a row cannot be read.
+     */
+    public static HealthSeries read(int userId, ResultSet rs) throws SQLException {
+        Builder builder = new Builder(userId);
+        RowMapper<Builder> mapper = RowMappers.healthSeries(builder).forResultSet(rs);
+        while (rs.next()) {
+            mapper.mapRow(rs);
+        }
+        return builder.build();
+    }
+/**
+     * Gets the ID of the user.
+     *
+     * @return The ID of the user.
+     */
+    public int getUserId() {
+        return userId;
+    }
+/**
+     * Gets the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+/**
+     * Checks whether the series has no entries.
+     *
+     * @return True if there are no entries, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+/**
+     * Gets the date of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The date of the entry.
+     */
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+/**
+     * Gets the value of a metric for an entry.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param index The index of the entry.
+     * @return The value of the metric.
+     */
+    public double getValue(String metric, int index) {
+        int[] ints = intColumn(metric);
+        return ints != null ? ints[index] : doubleColumn(metric)[index];
+    }
+/**
+     * Builds a HealthData object for one entry, for code that works on single entries.
+     *
+     * @param index The index of the entry.
+     * @return The HealthData object of the entry.
+     */
+    public HealthData get(int index) {
+        return new HealthData(ids[index], userId, weights[index], heights[index], steps[index], heartRates[index],
+                waterIntakes[index], hoursOfSleep[index], getDate(index));
+    }
+/**
+     * Gets the sum of a metric over every entry.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @return The sum, 0 if the series is empty.
+     */
+    public double sum(String metric) {
+        return sum(metric, 0, size);
+    }
+/**
+     * Gets the sum of a metric over the entries within a date range.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The sum, 0 if no entry is in the range.
+     */
+    public double sum(String metric, LocalDate startDate, LocalDate endDate) {
+        return sum(metric, lowerBound(startDate.toEpochDay()), lowerBound(endDate.toEpochDay() + 1));
+    }
+/**
+     * Gets the number of entries within a date range.
+     *
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The number of entries.
+     */
+    public int count(LocalDate startDate, LocalDate endDate) {
+        return Math.max(0, lowerBound(endDate.toEpochDay() + 1) - lowerBound(startDate.toEpochDay()));
+    }
+/**
+     * Gets the mean of a metric over every entry.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @return The mean, or NaN if the series is empty.
+     */
+    public double mean(String metric) {
+        int count = recorded(metric, 0, size);
+        return count == 0 ? Double.NaN : sum(metric) / count;
+    }
+/**
+     * Gets the mean of a metric over the entries within a date range.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The mean, or NaN if no entry is in the range.
+     */
+    public double mean(String metric, LocalDate startDate, LocalDate endDate) {
+        int count = recorded(metric, lowerBound(startDate.toEpochDay()), lowerBound(endDate.toEpochDay() + 1));
+        return count == 0 ? Double.NaN : sum(metric, startDate, endDate) / count;
+    }
+/**
+     * Gets the smallest value of a metric within a date range.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The minimum, or NaN if no entry is in the range.
+     */
+    public double min(String metric, LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(startDate.toEpochDay());
+        int to = lowerBound(endDate.toEpochDay() + 1);
+        if (from >= to) {
+            return Double.NaN;
+        }
+        boolean optional = isOptional(metric);
+        double min = Double.POSITIVE_INFINITY;
+        int[] ints = intColumn(metric);
+        if (ints != null) {
+            for (int i = from; i < to; i++) {
+                if (!optional || ints[i] != 0) {
+                    min = Math.min(min, ints[i]);
+                }
+            }
+        } else {
+            double[] doubles = doubleColumn(metric);
+            for (int i = from; i < to; i++) {
+                if (!optional || doubles[i] != 0) {
+                    min = Math.min(min, doubles[i]);
+                }
+            }
+        }
+        return min == Double.POSITIVE_INFINITY ? Double.NaN : min;
+    }
+/**
+     * Gets the largest value of a metric within a date range.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The maximum, or NaN if no entry is in the range.
+     */
+    public double max(String metric, LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(startDate.toEpochDay());
+        int to = lowerBound(endDate.toEpochDay() + 1);
+        if (from >= to) {
+            return Double.NaN;
+        }
+        boolean optional = isOptional(metric);
+        double max = Double.NEGATIVE_INFINITY;
+        int[] ints = intColumn(metric);
+        if (ints != null) {
+            for (int i = from; i < to; i++) {
+                if (!optional || ints[i] != 0) {
+                    max = Math.max(max, ints[i]);
+                }
+            }
+        } else {
+            double[] doubles = doubleColumn(metric);
+            for (int i = from; i < to; i++) {
+                if (!optional || doubles[i] != 0) {
+                    max = Math.max(max, doubles[i]);
+                }
+            }
+        }
+        return max == Double.NEGATIVE_INFINITY ? Double.NaN : max;
+    }
+/**
+     * Counts the entries within a date range where a metric is below a threshold, such as days under the step target.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param threshold The threshold.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The number of entries below the threshold.
+     */
+    public int countBelow(String metric, double threshold, LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(startDate.toEpochDay());
+        int to = lowerBound(endDate.toEpochDay() + 1);
+        boolean optional = isOptional(metric);
+        int count = 0;
+        int[] ints = intColumn(metric);
+        if (ints != null) {
+            for (int i = from; i < to; i++) {
+                count += ints[i] < threshold && (!optional || ints[i] != 0) ? 1 : 0;
+            }
+            return count;
+        }
+        double[] doubles = doubleColumn(metric);
+        for (int i = from; i < to; i++) {
+            count += doubles[i] < threshold && (!optional || doubles[i] != 0) ? 1 : 0;
+        }
+        return count;
+    }
+/**
+     * Gets the trailing mean of a metric at every entry: the mean of the entries dated within the given number of days
+     * up to and including the entry's date. Days without an entry, or without a recorded value, do not count towards
+     * the mean; a window without any recorded value has a mean of NaN.
+     *
+     * @param metric One of STEPS, HEART_RATE, WEIGHT, HEIGHT, WATER_INTAKE or HOURS_OF_SLEEP.
+     * @param days The length of the window in days.
+     * @return An array with one mean per entry, in the order of the entries.
+     */
+    public double[] rollingMean(String metric, int days) {
+        boolean optional = isOptional(metric);
+        int[] ints = intColumn(metric);
+        return ints != null ? rollingMean(ints, days, optional) : rollingMean(doubleColumn(metric), days, optional);
+    }
+
+    private double[] rollingMean(int[] values, int days, boolean optional) {
+        double[] means = new double[size];
+        long windowSum = 0;
+        int windowCount = 0;
+        int first = 0;
+        for (int i = 0; i < size; i++) {
+            windowSum += values[i];
+            windowCount += !optional || values[i] != 0 ? 1 : 0;
+            while (epochDays[first] <= epochDays[i] - days) {
+                windowSum -= values[first];
+                windowCount -= !optional || values[first] != 0 ? 1 : 0;
+                first++;
+            }
+            means[i] = windowCount == 0 ? Double.NaN : (double) windowSum / windowCount;
+        }
+        return means;
+    }
+
+    private double[] rollingMean(double[] values, int days, boolean optional) {
+        double[] means = new double[size];
+        double windowSum = 0;
+        int windowCount = 0;
+        int first = 0;
+        for (int i = 0; i < size; i++) {
+            windowSum += values[i];
+            windowCount += !optional || values[i] != 0 ? 1 : 0;
+            while (epochDays[first] <= epochDays[i] - days) {
+                windowSum -= values[first];
+                windowCount -= !optional || values[first] != 0 ? 1 : 0;
+                first++;
+            }
+            means[i] = windowCount == 0 ? Double.NaN : windowSum / windowCount;
+        }
+        return means;
+    }
+
+    private double sum(String metric, int from, int to) {
+        int[] ints = intColumn(metric);
+        if (ints != null) {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += ints[i];
+            }
+            return sum;
+        }
+        double[] doubles = doubleColumn(metric);
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += doubles[i];
+        }
+        return sum;
+    }
+
+    // The number of entries in the slice with a recorded value of the metric
+    private int recorded(String metric, int from, int to) {
+        if (!isOptional(metric)) {
+            return Math.max(0, to - from);
+        }
+        int count = 0;
+        int[] ints = intColumn(metric);
+        if (ints != null) {
+            for (int i = from; i < to; i++) {
+                count += ints[i] != 0 ? 1 : 0;
+            }
+            return count;
+        }
+        double[] doubles = doubleColumn(metric);
+        for (int i = from; i < to; i++) {
+            count += doubles[i] != 0 ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static boolean isOptional(String metric) {
+        return HEART_RATE.equals(metric) || WEIGHT.equals(metric) || HEIGHT.equals(metric);
+    }
+
+    // The index of the first entry dated on or after the day
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int[] intColumn(String metric) {
+        switch (metric) {
+            case STEPS:
+                return steps;
+            case HEART_RATE:
+                return heartRates;
+            default:
+                return null;
+        }
+    }
+
+    private double[] doubleColumn(String metric) {
+        switch (metric) {
+            case WEIGHT:
+                return weights;
+            case HEIGHT:
+                return heights;
+            case WATER_INTAKE:
+                return waterIntakes;
+            case HOURS_OF_SLEEP:
+                return hoursOfSleep;
+            default:
+                throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+    }
+
+    /**
+     * Collects entries in date order into growing column arrays.
+     */
+    public static final class Builder {
+        private final int userId;
+        private int size;
+        private int[] ids = new int[64];
+        private int[] epochDays = new int[64];
+        private int[] steps = new int[64];
+        private int[] heartRates = new int[64];
+        private double[] weights = new double[64];
+        private double[] heights = new double[64];
+        private double[] waterIntakes = new double[64];
+        private double[] hoursOfSleep = new double[64];
+
+/**
+         * Constructs an empty Builder.
+         *
+         * @param userId The ID of the user the entries belong to.
+         */
+        public Builder(int userId) {
+            this.userId = userId;
+        }
+/**
+         * Appends an entry; entries must be added in date order.
+         *
+         * @param healthData The HealthData object to append.
+         * @return This Builder.
+         */
+        public Builder add(HealthData healthData) {
+            return add(healthData.getId(), (int) healthData.getDate().toEpochDay(), healthData.getSteps(), healthData.getHeartRate(),
+                    healthData.getWeight(), healthData.getHeight(), healthData.getWaterIntake(), healthData.getHoursOfSleep());
+        }
+
+/**
+         * Appends an entry from its column values; entries must be added in date order.
+         *
+         * @param id The ID of the entry.
+         * @param epochDay The date of the entry as a day count from the epoch.
+         * @param stepCount The steps.
+         * @param heartRate The heart rate, 0 if not recorded.
+         * @param weight The weight, 0 if not recorded.
+         * @param height The height, 0 if not recorded.
+         * @param waterIntake The water intake.
+         * @param sleep The hours of sleep.
+         * @return This Builder.
+         */
+        public Builder add(int id, int epochDay, int stepCount, int heartRate, double weight, double height, double waterIntake, double sleep) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                steps = Arrays.copyOf(steps, capacity);
+                heartRates = Arrays.copyOf(heartRates, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                waterIntakes = Arrays.copyOf(waterIntakes, capacity);
+                hoursOfSleep = Arrays.copyOf(hoursOfSleep, capacity);
+            }
+            ids[size] = id;
+            epochDays[size] = epochDay;
+            steps[size] = stepCount;
+            heartRates[size] = heartRate;
+            weights[size] = weight;
+            heights[size] = height;
+            waterIntakes[size] = waterIntake;
+            hoursOfSleep[size] = sleep;
+            size++;
+            return this;
+        }
+/**
+         * Builds the HealthSeries, trimming the columns to the number of entries.
+         *
+         * @return The HealthSeries.
+         */
+        public HealthSeries build() {
+            return new HealthSeries(this);
+        }
+    }
+}
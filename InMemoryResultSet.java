@@ -0,0 +1,353 @@
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class is a forward-only ResultSet over columns held in memory, for benchmarks that measure row mapping
+ * without a database. Integer and decimal columns are primitive arrays, so reading a value allocates nothing and
+ * the allocations a benchmark sees are those of the code under test. Labels are resolved the way the PostgreSQL
+ * driver resolves them: a hash lookup of the label, then of its lower-case form. Only next, wasNull, findColumn,
+ * getInt, getDouble, getDate and the column names of the metadata are supported; the other methods throw.
+ */
+
+public final class InMemoryResultSet implements ResultSet {
+
+    private final String[] labels;
+    private final Object[] columns;
+    private final boolean[][] nulls;
+    private final int rowCount;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int row = -1;
+    private boolean wasNull;
+    private boolean closed;
+
+/**
+     * Constructs an InMemoryResultSet object over columns of equal length.
+     *
+     * @param labels The column labels.
+     * @param columns One int[], double[] or Date[] array per label.
+     * @param nulls One array per label flagging the NULL rows, or null where the column has no NULLs.
+     */
+    public InMemoryResultSet(String[] labels, Object[] columns, boolean[][] nulls) {
+        this.labels = labels;
+        this.columns = columns;
+        this.nulls = nulls;
+        this.rowCount = java.lang.reflect.Array.getLength(columns[0]);
+        for (int i = 0; i < labels.length; i++) {
+            indexes.put(labels[i], i + 1);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        return ++row < rowCount;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        Integer index = indexes.get(columnLabel);
+        if (index == null) {
+            index = indexes.get(columnLabel.toLowerCase(Locale.US));
+        }
+        if (index == null) {
+            throw new SQLException("The column name " + columnLabel + " was not found in this ResultSet.");
+        }
+        return index;
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        Object column = columns[columnIndex - 1];
+        int value = column instanceof int[] ? ((int[]) column)[row] : (int) ((double[]) column)[row];
+        return checkNull(columnIndex) ? 0 : value;
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        Object column = columns[columnIndex - 1];
+        double value = column instanceof double[] ? ((double[]) column)[row] : ((int[]) column)[row];
+        return checkNull(columnIndex) ? 0 : value;
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(int columnIndex) {
+        Date value = ((Date[]) columns[columnIndex - 1])[row];
+        wasNull = value == null;
+        return value;
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() {
+        return new MetaData();
+    }
+
+    private boolean checkNull(int columnIndex) {
+        boolean[] columnNulls = nulls[columnIndex - 1];
+        wasNull = columnNulls != null && columnNulls[row];
+        return wasNull;
+    }
+
+    // Everything below is unsupported
+    @Override public <T> T getObject(String a, Class<T> b) throws SQLException { throw new SQLFeatureNotSupportedException("getObject"); }
+    @Override public <T> T getObject(int a, Class<T> b) throws SQLException { throw new SQLFeatureNotSupportedException("getObject"); }
+    @Override public <T> T unwrap(Class<T> a) throws SQLException { throw new SQLFeatureNotSupportedException("unwrap"); }
+    @Override public Array getArray(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getArray"); }
+    @Override public Array getArray(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getArray"); }
+    @Override public BigDecimal getBigDecimal(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getBigDecimal"); }
+    @Deprecated @Override public BigDecimal getBigDecimal(String a, int b) throws SQLException { throw new SQLFeatureNotSupportedException("getBigDecimal"); }
+    @Override public BigDecimal getBigDecimal(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getBigDecimal"); }
+    @Deprecated @Override public BigDecimal getBigDecimal(int a, int b) throws SQLException { throw new SQLFeatureNotSupportedException("getBigDecimal"); }
+    @Override public Blob getBlob(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getBlob"); }
+    @Override public Blob getBlob(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getBlob"); }
+    @Override public Clob getClob(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getClob"); }
+    @Override public Clob getClob(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getClob"); }
+    @Override public Date getDate(String a, Calendar b) throws SQLException { throw new SQLFeatureNotSupportedException("getDate"); }
+    @Override public Date getDate(int a, Calendar b) throws SQLException { throw new SQLFeatureNotSupportedException("getDate"); }
+    @Override public InputStream getAsciiStream(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getAsciiStream"); }
+    @Override public InputStream getAsciiStream(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getAsciiStream"); }
+    @Override public InputStream getBinaryStream(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getBinaryStream"); }
+    @Override public InputStream getBinaryStream(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getBinaryStream"); }
+    @Deprecated @Override public InputStream getUnicodeStream(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getUnicodeStream"); }
+    @Deprecated @Override public InputStream getUnicodeStream(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getUnicodeStream"); }
+    @Override public NClob getNClob(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getNClob"); }
+    @Override public NClob getNClob(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getNClob"); }
+    @Override public Object getObject(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getObject"); }
+    @Override public Object getObject(String a, Map<String, Class<?>> b) throws SQLException { throw new SQLFeatureNotSupportedException("getObject"); }
+    @Override public Object getObject(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getObject"); }
+    @Override public Object getObject(int a, Map<String, Class<?>> b) throws SQLException { throw new SQLFeatureNotSupportedException("getObject"); }
+    @Override public Reader getCharacterStream(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getCharacterStream"); }
+    @Override public Reader getCharacterStream(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getCharacterStream"); }
+    @Override public Reader getNCharacterStream(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getNCharacterStream"); }
+    @Override public Reader getNCharacterStream(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getNCharacterStream"); }
+    @Override public Ref getRef(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getRef"); }
+    @Override public Ref getRef(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getRef"); }
+    @Override public RowId getRowId(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getRowId"); }
+    @Override public RowId getRowId(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getRowId"); }
+    @Override public SQLWarning getWarnings() throws SQLException { throw new SQLFeatureNotSupportedException("getWarnings"); }
+    @Override public SQLXML getSQLXML(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getSQLXML"); }
+    @Override public SQLXML getSQLXML(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getSQLXML"); }
+    @Override public Statement getStatement() throws SQLException { throw new SQLFeatureNotSupportedException("getStatement"); }
+    @Override public String getCursorName() throws SQLException { throw new SQLFeatureNotSupportedException("getCursorName"); }
+    @Override public String getNString(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getNString"); }
+    @Override public String getNString(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getNString"); }
+    @Override public String getString(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getString"); }
+    @Override public String getString(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getString"); }
+    @Override public Time getTime(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getTime"); }
+    @Override public Time getTime(String a, Calendar b) throws SQLException { throw new SQLFeatureNotSupportedException("getTime"); }
+    @Override public Time getTime(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getTime"); }
+    @Override public Time getTime(int a, Calendar b) throws SQLException { throw new SQLFeatureNotSupportedException("getTime"); }
+    @Override public Timestamp getTimestamp(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getTimestamp"); }
+    @Override public Timestamp getTimestamp(String a, Calendar b) throws SQLException { throw new SQLFeatureNotSupportedException("getTimestamp"); }
+    @Override public Timestamp getTimestamp(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getTimestamp"); }
+    @Override public Timestamp getTimestamp(int a, Calendar b) throws SQLException { throw new SQLFeatureNotSupportedException("getTimestamp"); }
+    @Override public boolean absolute(int a) throws SQLException { throw new SQLFeatureNotSupportedException("absolute"); }
+    @Override public boolean first() throws SQLException { throw new SQLFeatureNotSupportedException("first"); }
+    @Override public boolean getBoolean(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getBoolean"); }
+    @Override public boolean getBoolean(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getBoolean"); }
+    @Override public boolean isAfterLast() throws SQLException { throw new SQLFeatureNotSupportedException("isAfterLast"); }
+    @Override public boolean isBeforeFirst() throws SQLException { throw new SQLFeatureNotSupportedException("isBeforeFirst"); }
+    @Override public boolean isFirst() throws SQLException { throw new SQLFeatureNotSupportedException("isFirst"); }
+    @Override public boolean isLast() throws SQLException { throw new SQLFeatureNotSupportedException("isLast"); }
+    @Override public boolean isWrapperFor(Class<?> a) throws SQLException { throw new SQLFeatureNotSupportedException("isWrapperFor"); }
+    @Override public boolean last() throws SQLException { throw new SQLFeatureNotSupportedException("last"); }
+    @Override public boolean previous() throws SQLException { throw new SQLFeatureNotSupportedException("previous"); }
+    @Override public boolean relative(int a) throws SQLException { throw new SQLFeatureNotSupportedException("relative"); }
+    @Override public boolean rowDeleted() throws SQLException { throw new SQLFeatureNotSupportedException("rowDeleted"); }
+    @Override public boolean rowInserted() throws SQLException { throw new SQLFeatureNotSupportedException("rowInserted"); }
+    @Override public boolean rowUpdated() throws SQLException { throw new SQLFeatureNotSupportedException("rowUpdated"); }
+    @Override public byte getByte(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getByte"); }
+    @Override public byte getByte(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getByte"); }
+    @Override public byte[] getBytes(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getBytes"); }
+    @Override public byte[] getBytes(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getBytes"); }
+    @Override public float getFloat(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getFloat"); }
+    @Override public float getFloat(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getFloat"); }
+    @Override public int getConcurrency() throws SQLException { throw new SQLFeatureNotSupportedException("getConcurrency"); }
+    @Override public int getFetchDirection() throws SQLException { throw new SQLFeatureNotSupportedException("getFetchDirection"); }
+    @Override public int getFetchSize() throws SQLException { throw new SQLFeatureNotSupportedException("getFetchSize"); }
+    @Override public int getHoldability() throws SQLException { throw new SQLFeatureNotSupportedException("getHoldability"); }
+    @Override public int getRow() throws SQLException { throw new SQLFeatureNotSupportedException("getRow"); }
+    @Override public int getType() throws SQLException { throw new SQLFeatureNotSupportedException("getType"); }
+    @Override public java.net.URL getURL(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getURL"); }
+    @Override public java.net.URL getURL(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getURL"); }
+    @Override public long getLong(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getLong"); }
+    @Override public long getLong(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getLong"); }
+    @Override public short getShort(String a) throws SQLException { throw new SQLFeatureNotSupportedException("getShort"); }
+    @Override public short getShort(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getShort"); }
+    @Override public void afterLast() throws SQLException { throw new SQLFeatureNotSupportedException("afterLast"); }
+    @Override public void beforeFirst() throws SQLException { throw new SQLFeatureNotSupportedException("beforeFirst"); }
+    @Override public void cancelRowUpdates() throws SQLException { throw new SQLFeatureNotSupportedException("cancelRowUpdates"); }
+    @Override public void clearWarnings() throws SQLException { throw new SQLFeatureNotSupportedException("clearWarnings"); }
+    @Override public void deleteRow() throws SQLException { throw new SQLFeatureNotSupportedException("deleteRow"); }
+    @Override public void insertRow() throws SQLException { throw new SQLFeatureNotSupportedException("insertRow"); }
+    @Override public void moveToCurrentRow() throws SQLException { throw new SQLFeatureNotSupportedException("moveToCurrentRow"); }
+    @Override public void moveToInsertRow() throws SQLException { throw new SQLFeatureNotSupportedException("moveToInsertRow"); }
+    @Override public void refreshRow() throws SQLException { throw new SQLFeatureNotSupportedException("refreshRow"); }
+    @Override public void setFetchDirection(int a) throws SQLException { throw new SQLFeatureNotSupportedException("setFetchDirection"); }
+    @Override public void setFetchSize(int a) throws SQLException { throw new SQLFeatureNotSupportedException("setFetchSize"); }
+    @Override public void updateArray(String a, Array b) throws SQLException { throw new SQLFeatureNotSupportedException("updateArray"); }
+    @Override public void updateArray(int a, Array b) throws SQLException { throw new SQLFeatureNotSupportedException("updateArray"); }
+    @Override public void updateAsciiStream(String a, InputStream b) throws SQLException { throw new SQLFeatureNotSupportedException("updateAsciiStream"); }
+    @Override public void updateAsciiStream(String a, InputStream b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateAsciiStream"); }
+    @Override public void updateAsciiStream(String a, InputStream b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateAsciiStream"); }
+    @Override public void updateAsciiStream(int a, InputStream b) throws SQLException { throw new SQLFeatureNotSupportedException("updateAsciiStream"); }
+    @Override public void updateAsciiStream(int a, InputStream b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateAsciiStream"); }
+    @Override public void updateAsciiStream(int a, InputStream b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateAsciiStream"); }
+    @Override public void updateBigDecimal(String a, BigDecimal b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBigDecimal"); }
+    @Override public void updateBigDecimal(int a, BigDecimal b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBigDecimal"); }
+    @Override public void updateBinaryStream(String a, InputStream b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBinaryStream"); }
+    @Override public void updateBinaryStream(String a, InputStream b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateBinaryStream"); }
+    @Override public void updateBinaryStream(String a, InputStream b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateBinaryStream"); }
+    @Override public void updateBinaryStream(int a, InputStream b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBinaryStream"); }
+    @Override public void updateBinaryStream(int a, InputStream b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateBinaryStream"); }
+    @Override public void updateBinaryStream(int a, InputStream b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateBinaryStream"); }
+    @Override public void updateBlob(String a, Blob b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBlob"); }
+    @Override public void updateBlob(String a, InputStream b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBlob"); }
+    @Override public void updateBlob(String a, InputStream b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateBlob"); }
+    @Override public void updateBlob(int a, Blob b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBlob"); }
+    @Override public void updateBlob(int a, InputStream b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBlob"); }
+    @Override public void updateBlob(int a, InputStream b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateBlob"); }
+    @Override public void updateBoolean(String a, boolean b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBoolean"); }
+    @Override public void updateBoolean(int a, boolean b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBoolean"); }
+    @Override public void updateByte(String a, byte b) throws SQLException { throw new SQLFeatureNotSupportedException("updateByte"); }
+    @Override public void updateByte(int a, byte b) throws SQLException { throw new SQLFeatureNotSupportedException("updateByte"); }
+    @Override public void updateBytes(String a, byte[] b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBytes"); }
+    @Override public void updateBytes(int a, byte[] b) throws SQLException { throw new SQLFeatureNotSupportedException("updateBytes"); }
+    @Override public void updateCharacterStream(String a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateCharacterStream"); }
+    @Override public void updateCharacterStream(String a, Reader b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateCharacterStream"); }
+    @Override public void updateCharacterStream(String a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateCharacterStream"); }
+    @Override public void updateCharacterStream(int a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateCharacterStream"); }
+    @Override public void updateCharacterStream(int a, Reader b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateCharacterStream"); }
+    @Override public void updateCharacterStream(int a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateCharacterStream"); }
+    @Override public void updateClob(String a, Clob b) throws SQLException { throw new SQLFeatureNotSupportedException("updateClob"); }
+    @Override public void updateClob(String a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateClob"); }
+    @Override public void updateClob(String a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateClob"); }
+    @Override public void updateClob(int a, Clob b) throws SQLException { throw new SQLFeatureNotSupportedException("updateClob"); }
+    @Override public void updateClob(int a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateClob"); }
+    @Override public void updateClob(int a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateClob"); }
+    @Override public void updateDate(String a, Date b) throws SQLException { throw new SQLFeatureNotSupportedException("updateDate"); }
+    @Override public void updateDate(int a, Date b) throws SQLException { throw new SQLFeatureNotSupportedException("updateDate"); }
+    @Override public void updateDouble(String a, double b) throws SQLException { throw new SQLFeatureNotSupportedException("updateDouble"); }
+    @Override public void updateDouble(int a, double b) throws SQLException { throw new SQLFeatureNotSupportedException("updateDouble"); }
+    @Override public void updateFloat(String a, float b) throws SQLException { throw new SQLFeatureNotSupportedException("updateFloat"); }
+    @Override public void updateFloat(int a, float b) throws SQLException { throw new SQLFeatureNotSupportedException("updateFloat"); }
+    @Override public void updateInt(String a, int b) throws SQLException { throw new SQLFeatureNotSupportedException("updateInt"); }
+    @Override public void updateInt(int a, int b) throws SQLException { throw new SQLFeatureNotSupportedException("updateInt"); }
+    @Override public void updateLong(String a, long b) throws SQLException { throw new SQLFeatureNotSupportedException("updateLong"); }
+    @Override public void updateLong(int a, long b) throws SQLException { throw new SQLFeatureNotSupportedException("updateLong"); }
+    @Override public void updateNCharacterStream(String a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNCharacterStream"); }
+    @Override public void updateNCharacterStream(String a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateNCharacterStream"); }
+    @Override public void updateNCharacterStream(int a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNCharacterStream"); }
+    @Override public void updateNCharacterStream(int a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateNCharacterStream"); }
+    @Override public void updateNClob(String a, NClob b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNClob"); }
+    @Override public void updateNClob(String a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNClob"); }
+    @Override public void updateNClob(String a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateNClob"); }
+    @Override public void updateNClob(int a, NClob b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNClob"); }
+    @Override public void updateNClob(int a, Reader b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNClob"); }
+    @Override public void updateNClob(int a, Reader b, long c) throws SQLException { throw new SQLFeatureNotSupportedException("updateNClob"); }
+    @Override public void updateNString(String a, String b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNString"); }
+    @Override public void updateNString(int a, String b) throws SQLException { throw new SQLFeatureNotSupportedException("updateNString"); }
+    @Override public void updateNull(String a) throws SQLException { throw new SQLFeatureNotSupportedException("updateNull"); }
+    @Override public void updateNull(int a) throws SQLException { throw new SQLFeatureNotSupportedException("updateNull"); }
+    @Override public void updateObject(String a, Object b) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(String a, Object b, SQLType c) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(String a, Object b, SQLType c, int d) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(String a, Object b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(int a, Object b) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(int a, Object b, SQLType c) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(int a, Object b, SQLType c, int d) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateObject(int a, Object b, int c) throws SQLException { throw new SQLFeatureNotSupportedException("updateObject"); }
+    @Override public void updateRef(String a, Ref b) throws SQLException { throw new SQLFeatureNotSupportedException("updateRef"); }
+    @Override public void updateRef(int a, Ref b) throws SQLException { throw new SQLFeatureNotSupportedException("updateRef"); }
+    @Override public void updateRow() throws SQLException { throw new SQLFeatureNotSupportedException("updateRow"); }
+    @Override public void updateRowId(String a, RowId b) throws SQLException { throw new SQLFeatureNotSupportedException("updateRowId"); }
+    @Override public void updateRowId(int a, RowId b) throws SQLException { throw new SQLFeatureNotSupportedException("updateRowId"); }
+    @Override public void updateSQLXML(String a, SQLXML b) throws SQLException { throw new SQLFeatureNotSupportedException("updateSQLXML"); }
+    @Override public void updateSQLXML(int a, SQLXML b) throws SQLException { throw new SQLFeatureNotSupportedException("updateSQLXML"); }
+    @Override public void updateShort(String a, short b) throws SQLException { throw new SQLFeatureNotSupportedException("updateShort"); }
+    @Override public void updateShort(int a, short b) throws SQLException { throw new SQLFeatureNotSupportedException("updateShort"); }
+    @Override public void updateString(String a, String b) throws SQLException { throw new SQLFeatureNotSupportedException("updateString"); }
+    @Override public void updateString(int a, String b) throws SQLException { throw new SQLFeatureNotSupportedException("updateString"); }
+    @Override public void updateTime(String a, Time b) throws SQLException { throw new SQLFeatureNotSupportedException("updateTime"); }
+    @Override public void updateTime(int a, Time b) throws SQLException { throw new SQLFeatureNotSupportedException("updateTime"); }
+    @Override public void updateTimestamp(String a, Timestamp b) throws SQLException { throw new SQLFeatureNotSupportedException("updateTimestamp"); }
+    @Override public void updateTimestamp(int a, Timestamp b) throws SQLException { throw new SQLFeatureNotSupportedException("updateTimestamp"); }
+
+    /**
+     * The column names of the ResultSet.
+     */
+    private final class MetaData implements ResultSetMetaData {
+
+        @Override
+        public int getColumnCount() {
+            return labels.length;
+        }
+
+        @Override
+        public String getColumnLabel(int column) {
+            return labels[column - 1];
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return labels[column - 1];
+        }
+
+        // Everything below is unsupported
+        @Override public <T> T unwrap(Class<T> a) throws SQLException { throw new SQLFeatureNotSupportedException("unwrap"); }
+        @Override public String getCatalogName(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getCatalogName"); }
+        @Override public String getColumnClassName(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getColumnClassName"); }
+        @Override public String getColumnTypeName(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getColumnTypeName"); }
+        @Override public String getSchemaName(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getSchemaName"); }
+        @Override public String getTableName(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getTableName"); }
+        @Override public boolean isAutoIncrement(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isAutoIncrement"); }
+        @Override public boolean isCaseSensitive(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isCaseSensitive"); }
+        @Override public boolean isCurrency(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isCurrency"); }
+        @Override public boolean isDefinitelyWritable(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isDefinitelyWritable"); }
+        @Override public boolean isReadOnly(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isReadOnly"); }
+        @Override public boolean isSearchable(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isSearchable"); }
+        @Override public boolean isSigned(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isSigned"); }
+        @Override public boolean isWrapperFor(Class<?> a) throws SQLException { throw new SQLFeatureNotSupportedException("isWrapperFor"); }
+        @Override public boolean isWritable(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isWritable"); }
+        @Override public int getColumnDisplaySize(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getColumnDisplaySize"); }
+        @Override public int getColumnType(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getColumnType"); }
+        @Override public int getPrecision(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getPrecision"); }
+        @Override public int getScale(int a) throws SQLException { throw new SQLFeatureNotSupportedException("getScale"); }
+        @Override public int isNullable(int a) throws SQLException { throw new SQLFeatureNotSupportedException("isNullable"); }
+    }
+}
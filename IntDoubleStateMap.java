@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/**
+ * This class is an open addressing hash map from int keys, such as user IDs, to a fixed number of double values.
+ * Keys and values are kept in primitive arrays, so each entry costs a few bytes instead of a boxed key,
+ * a map entry and a value object. It is not thread safe; callers synchronize around it.
+ */
+
+public class IntDoubleStateMap {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final int valuesPerKey;
+    private int[] keys;
+    private double[] values;
+    private int size;
+
+/**
+     * Constructs an IntDoubleStateMap object.
+     *
+     * @param valuesPerKey The number of double values stored for each key.
+     * @param expectedKeys The number of keys the map is expected to hold.
+     */
+    public IntDoubleStateMap(int valuesPerKey, int expectedKeys) {
+        this.valuesPerKey = valuesPerKey;
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedKeys / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity * valuesPerKey];
+    }
+/**
+     * Gets the offset of the first value of a key in the value array, adding the key with all values set to 0 if absent.
+     * The values of the key are then found at {@code offset} to {@code offset + valuesPerKey - 1}.
+     *
+     * @param key The key to look up; Integer.MIN_VALUE is reserved.
+     * @return The offset of the first value of the key.
+     */
+    public int offsetOf(int key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved.");
+        }
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+        int slot = findSlot(keys, key);
+        int offset = slot * valuesPerKey;
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            Arrays.fill(values, offset, offset + valuesPerKey, 0);
+            size++;
+        }
+        return offset;
+    }
+/**
+     * Checks whether the map holds a key.
+     *
+     * @param key The key to look up.
+     * @return True if the key is present, false otherwise.
+     */
+    public boolean containsKey(int key) {
+        return key != EMPTY && keys[findSlot(keys, key)] == key;
+    }
+/**
+     * Gets one value of a key.
+     *
+     * @param key The key to look up.
+     * @param index The index of the value, from 0 to valuesPerKey - 1.
+     * @param defaultValue The value to return if the key is absent.
+     * @return The stored value, or the default value if the key is absent.
+     */
+    public double get(int key, int index, double defaultValue) {
+        if (key == EMPTY) {
+            return defaultValue;
+        }
+        int slot = findSlot(keys, key);
+        return keys[slot] == key ? values[slot * valuesPerKey + index] : defaultValue;
+    }
+/**
+     * Gets the array holding the values, to be read and written at the offsets returned by offsetOf.
+     * The array is replaced when the map grows, so it must be fetched again after each call to offsetOf.
+     *
+     * @return The value array.
+     */
+    public double[] values() {
+        return values;
+    }
+/**
+     * Removes a key and its values.
+     *
+     * @param key The key to remove.
+     * @return True if the key was present, false otherwise.
+     */
+    public boolean remove(int key) {
+        if (key == EMPTY) {
+            return false;
+        }
+        int slot = findSlot(keys, key);
+        if (keys[slot] != key) {
+            return false;
+        }
+        keys[slot] = EMPTY;
+        size--;
+        // Re-insert the rest of the probe chain so later lookups do not stop at the hole
+        int mask = keys.length - 1;
+        for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int moved = keys[next];
+            keys[next] = EMPTY;
+            int target = findSlot(keys, moved);
+            keys[target] = moved;
+            System.arraycopy(values, next * valuesPerKey, values, target * valuesPerKey, valuesPerKey);
+        }
+        return true;
+    }
+/**
+     * Gets the number of keys in the map.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        values = new double[keys.length * valuesPerKey];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                System.arraycopy(oldValues, i * valuesPerKey, values, slot * valuesPerKey, valuesPerKey);
+            }
+        }
+    }
+
+    private static int findSlot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
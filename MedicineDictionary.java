@@ -0,0 +1,212 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class caches the medicines dictionary table, which gives every distinct medicine name an integer ID so
+ * medicine_reminders stores an ID instead of repeating the name. Names are matched regardless of case and spacing.
+ * For autocomplete the normalized names are kept in a trie stored in parallel arrays, one slot per node with its
+ * character, first child, next sibling and the medicine ending there, so a prefix lookup walks the prefix and then
+ * lists the names below it in alphabetical order. The dictionary is loaded at startup and grows as new names are used.
+ */
+
+public class MedicineDictionary {
+
+    private static final int NONE = -1;
+    private static final MedicineDictionary INSTANCE = new MedicineDictionary();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+
+    private char[] labels = new char[64];
+    private int[] firstChild = new int[64];
+    private int[] nextSibling = new int[64];
+    private int[] medicineIds = new int[64];
+    private int nodeCount;
+
+    private MedicineDictionary() {
+        clearTrie();
+    }
+/**
+     * Gets the shared MedicineDictionary instance.
+     *
+     * @return The MedicineDictionary instance.
+     */
+    public static MedicineDictionary getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Loads every medicine from the database, replacing the cached ones.
+     */
+    public void load() {
+
+        String query = "SELECT medicine_id, name FROM public.\"medicines\"";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            synchronized (this) {
+                ids.clear();
+                names.clear();
+                clearTrie();
+                while (rs.next()) {
+                    add(rs.getInt("medicine_id"), rs.getString("name"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Normalizes a medicine name for lookups: trimmed, lower case and with single spaces.
+     *
+     * @param medicineName The medicine name as entered.
+     * @return The normalized name.
+     */
+    public static String normalize(String medicineName) {
+        return medicineName.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+/**
+     * Gets the ID of a medicine, adding the name to the dictionary if it is new.
+     * A new name is committed on its own connection, so a cached ID always refers to a stored medicine.
+     *
+     * @param medicineName The name of the medicine.
+     * @return The ID of the medicine.
+     * @throws SQLException If the name could not be added.
+     */
+    public int idFor(String medicineName) throws SQLException {
+        int id = idOf(medicineName);
+        if (id != NONE) {
+            return id;
+        }
+
+        String query = "INSERT INTO public.\"medicines\" (name) VALUES (?) " +
+                "ON CONFLICT ((lower(name::text))) DO UPDATE SET name = medicines.name RETURNING medicine_id, name";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setString(1, medicineName.trim().replaceAll("\\s+", " "));
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                id = rs.getInt("medicine_id");
+                synchronized (this) {
+                    if (!names.containsKey(id)) {
+                        add(id, rs.getString("name"));
+                    }
+                }
+                return id;
+            }
+        }
+    }
+/**
+     * Gets the ID of a known medicine.
+     *
+     * @param medicineName The name of the medicine, in any case or spacing.
+     * @return The ID of the medicine, or -1 if the name is not in the dictionary.
+     */
+    public synchronized int idOf(String medicineName) {
+        Integer id = ids.get(normalize(medicineName));
+        return id == null ? NONE : id;
+    }
+/**
+     * Gets the name of a medicine as it is shown to users.
+     *
+     * @param medicineId The ID of the medicine.
+     * @return The name of the medicine, or null if the ID is unknown.
+     */
+    public synchronized String nameOf(int medicineId) {
+        return names.get(medicineId);
+    }
+/**
+     * Gets the known medicine names starting with a prefix, in alphabetical order.
+     *
+     * @param prefix The typed prefix, in any case.
+     * @param limit The maximum number of names to return.
+     * @return A list of medicine names, empty if none match.
+     */
+    public synchronized List<String> complete(String prefix, int limit) {
+        List<String> completions = new ArrayList<>();
+        String key = normalize(prefix);
+        int node = 0;
+        for (int i = 0; i < key.length() && node != NONE; i++) {
+            node = child(node, key.charAt(i));
+        }
+        if (node != NONE) {
+            collect(node, limit, completions);
+        }
+        return completions;
+    }
+
+    private void collect(int node, int limit, List<String> completions) {
+        if (medicineIds[node] != NONE) {
+            completions.add(names.get(medicineIds[node]));
+        }
+        for (int child = firstChild[node]; child != NONE && completions.size() < limit; child = nextSibling[child]) {
+            collect(child, limit, completions);
+        }
+    }
+
+    private void add(int id, String name) {
+        String key = normalize(name);
+        ids.put(key, id);
+        names.put(id, name);
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int next = child(node, key.charAt(i));
+            node = next != NONE ? next : insertChild(node, key.charAt(i));
+        }
+        medicineIds[node] = id;
+    }
+
+    private int child(int node, char label) {
+        for (int child = firstChild[node]; child != NONE && labels[child] <= label; child = nextSibling[child]) {
+            if (labels[child] == label) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    // Keeps every sibling list sorted by character, so completions come out in alphabetical order
+    private int insertChild(int parent, char label) {
+        int node = newNode(label);
+        int previous = NONE;
+        int current = firstChild[parent];
+        while (current != NONE && labels[current] < label) {
+            previous = current;
+            current = nextSibling[current];
+        }
+        nextSibling[node] = current;
+        if (previous == NONE) {
+            firstChild[parent] = node;
+        } else {
+            nextSibling[previous] = node;
+        }
+        return node;
+    }
+
+    private int newNode(char label) {
+        if (nodeCount == labels.length) {
+            int capacity = labels.length * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            medicineIds = Arrays.copyOf(medicineIds, capacity);
+        }
+        int node = nodeCount++;
+        labels[node] = label;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        medicineIds[node] = NONE;
+        return node;
+    }
+
+    private void clearTrie() {
+        nodeCount = 0;
+        newNode('\0');
+    }
+}
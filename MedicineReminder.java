@@ -1,11 +1,21 @@
 import java.time.LocalDate;
+import java.util.Objects;
 
 /**
  * This class represents a medicine reminder for a user.
+ * The setters record which fields were changed, so MedicineReminderManager can update only those columns.
  */
 
 public class MedicineReminder {
 
+    public static final int FIELD_MEDICINE_NAME = 1;
+    public static final int FIELD_DOSAGE = 1 << 1;
+    public static final int FIELD_SCHEDULE = 1 << 2;
+    public static final int FIELD_START_DATE = 1 << 3;
+    public static final int FIELD_END_DATE = 1 << 4;
+
+    private static final int ALL_FIELDS = FIELD_END_DATE * 2 - 1;
+
     private int id;
     private int userId;
     private String medicineName;
@@ -13,6 +23,8 @@ public class MedicineReminder {
     private String schedule;
     private LocalDate startDate;
     private LocalDate endDate;
+    private int version;
+    private int dirtyFields = ALL_FIELDS;
   
 /**
      * Constructs a MedicineReminder object with the specified attributes.
@@ -82,7 +94,10 @@ public class MedicineReminder {
      * @param medicineName The name of the medicine to set.
      */
     public void setMedicineName(String medicineName){
-        this.medicineName = medicineName;
+        if (!Objects.equals(this.medicineName, medicineName)) {
+            this.medicineName = medicineName;
+            dirtyFields |= FIELD_MEDICINE_NAME;
+        }
     }
 /**
      * Gets the dosage of the medicine.
@@ -98,7 +113,10 @@ public class MedicineReminder {
      * @param dosage The dosage of the medicine to set.
      */
     public void setDosage(String dosage){
-        this.dosage = dosage;
+        if (!Objects.equals(this.dosage, dosage)) {
+            this.dosage = dosage;
+            dirtyFields |= FIELD_DOSAGE;
+        }
     }
 /**
      * Gets the schedule of the medicine reminder.
@@ -114,7 +132,10 @@ public class MedicineReminder {
      * @param schedule The schedule of the medicine reminder to set.
      */
     public void setSchedule(String schedule){
-        this.schedule = schedule;
+        if (!Objects.equals(this.schedule, schedule)) {
+            this.schedule = schedule;
+            dirtyFields |= FIELD_SCHEDULE;
+        }
     }
 /**
      * Gets the start date of the reminder.
@@ -130,7 +151,10 @@ public class MedicineReminder {
      * @param startDate The start date of the reminder to set.
      */
     public void setStartDate(LocalDate startDate){
-        this.startDate = startDate;
+        if (!Objects.equals(this.startDate, startDate)) {
+            this.startDate = startDate;
+            dirtyFields |= FIELD_START_DATE;
+        }
     }
  /**
      * Gets the end date of the reminder.
@@ -146,7 +170,41 @@ public class MedicineReminder {
      * @param endDate The end date of the reminder to set.
      */
     public void setEndDate(LocalDate endDate){
-        this.endDate = endDate;
+        if (!Objects.equals(this.endDate, endDate)) {
+            this.endDate = endDate;
+            dirtyFields |= FIELD_END_DATE;
+        }
+    }
+/**
+     * Gets the version of the reminder as it was loaded, which updates compare against to detect concurrent edits.
+     *
+     * @return The version of the reminder.
+     */
+    public int getVersion(){
+        return version;
+    }
+/**
+     * Sets the version of the reminder.
+     *
+     * @param version The version to set.
+     */
+    public void setVersion(int version){
+        this.version = version;
+    }
+/**
+     * Gets the fields changed through the setters since the reminder was loaded or last saved.
+     * A newly constructed reminder counts as changed in every field.
+     *
+     * @return A bit mask of the FIELD_ constants, 0 if nothing was changed.
+     */
+    public int getDirtyFields(){
+        return dirtyFields;
+    }
+/**
+     * Marks all fields as unchanged, after the reminder was saved.
+     */
+    public void clearDirtyFields(){
+        dirtyFields = 0;
     }
 /**
      * Returns a string representation of the MedicineReminder object.
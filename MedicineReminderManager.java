@@ -3,6 +3,8 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class manages medicine reminders, providing methods to add, retrieve, update, and delete reminders in the database.
@@ -10,6 +12,11 @@ import java.util.List;
 
 public class MedicineReminderManager {
 
+    private static final int ALL_UPDATABLE_FIELDS = MedicineReminder.FIELD_END_DATE * 2 - 1;
+
+    /** UPDATE statements by the bit mask of the columns they set; reusing the exact SQL text lets the driver reuse its server-side prepared statement. */
+    private static final Map<Integer, String> updateQueries = new ConcurrentHashMap<>();
+
     private List<MedicineReminder> reminders;
 /**
      * Constructs a MedicineReminderManager object with an empty list of reminders.
@@ -24,13 +31,13 @@ public class MedicineReminderManager {
      */
     public void addReminder(MedicineReminder reminder) {
 
-        String query = "INSERT INTO public.\"medicine_reminders\" (user_id, medicine_name, dosage, schedule, start_date, end_date)" + "VALUES (?, ?, ?, ?, ?, ?)";
+        String query = "INSERT INTO public.\"medicine_reminders\" (user_id, medicine_id, dosage, schedule, start_date, end_date)" + "VALUES (?, ?, ?, ?, ?, ?)";
     
             try (Connection connection = DatabaseConnection.getCon();
                  PreparedStatement preparedStatement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
     
                 preparedStatement.setInt(1, reminder.getUserId());
-                preparedStatement.setString(2, reminder.getMedicineName());
+                preparedStatement.setInt(2, MedicineDictionary.getInstance().idFor(reminder.getMedicineName()));
                 preparedStatement.setString(3, reminder.getDosage());
                 preparedStatement.setString(4, reminder.getSchedule());
                 preparedStatement.setDate(5, java.sql.Date.valueOf(reminder.getStartDate()));
@@ -39,6 +46,13 @@ public class MedicineReminderManager {
                    
                 int rowsAffected = preparedStatement.executeUpdate();
                 if (rowsAffected > 0) {
+                    try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            reminder.setId(rs.getInt(1));
+                        }
+                    }
+                    reminder.clearDirtyFields();
+                    ReminderIntervalIndex.getInstance().put(reminder);
                     System.out.println("Reminder added successfully.");
                     reminders.add(reminder);
                 } else {
@@ -58,24 +72,15 @@ public class MedicineReminderManager {
 
         List<MedicineReminder> reminders = new ArrayList<>(); 
 
-        String query = "SELECT * FROM public.\"medicine_reminders\" WHERE user_id = ?";
+        String query = "SELECT r.*, m.name AS medicine_name FROM public.\"medicine_reminders\" r " +
+                "JOIN public.\"medicines\" m ON m.medicine_id = r.medicine_id WHERE r.user_id = ?";
     
         try (Connection connection = DatabaseConnection.getCon();
             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, userId);
             try (ResultSet rs = statement.executeQuery()) {
-                while (rs.next()) {
-                    int id = rs.getInt("reminder_id");
-                    String medicineName = rs.getString("medicine_name");
-                    String dosage = rs.getString("dosage");
-                    String schedule = rs.getString("schedule");
-                    LocalDate startDate = rs.getDate("start_date").toLocalDate();
-                    LocalDate endDate = rs.getDate("end_date").toLocalDate();
-                  
-                MedicineReminder reminder = new MedicineReminder(id, userId, medicineName, dosage, schedule, startDate, endDate);
-                reminders.add(reminder);
+                reminders.addAll(RowMappers.MEDICINE_REMINDER.mapAll(rs));
             }
-        }
     } catch (SQLException e) {
         e.printStackTrace();
     }
@@ -117,6 +122,7 @@ public class MedicineReminderManager {
             
             int rowsAffected = preparedStatement.executeUpdate();
             if (rowsAffected > 0) {
+                ReminderIntervalIndex.getInstance().remove(reminderId);
                 System.out.println("Medicine Reminder with ID " + reminderId + " has been successfully deleted.");
             } else {
                 System.out.println("Opps! Something went wrong. Please try again.");
@@ -126,39 +132,107 @@ public class MedicineReminderManager {
         }
     }
  /**
-     * Updates a medicine reminder in the database.
+     * Updates a medicine reminder in the database if nobody else changed it since it was loaded.
+     * Only the columns changed through the setters since the reminder was loaded are written, and an unchanged
+     * reminder is not written at all. A reminder built with the constructor counts as changed in every column.
+     * The update only applies while the stored version still equals the version of the reminder, and on success
+     * the reminder takes the new version.
      *
      * @param reminder The MedicineReminder object containing the updated reminder information.
-     * @return A boolean indicating whether the update was successful.
+     * @return UPDATED if the reminder was updated, CONFLICT if it was changed concurrently, NOT_FOUND if it no longer exists,
+     *         or FAILED if the update could not be written.
      */       
-    public boolean updateMedicationReminder(MedicineReminder reminder) {
+    public UpdateResult updateMedicationReminder(MedicineReminder reminder) {
 
-        boolean bool = false;
-    
-        String query = "UPDATE public.\"medicine_reminders\" SET medicine_name = ?, dosage = ?, schedule = ?, start_date = ?, end_date = ? WHERE reminder_id = ?";
+        UpdateResult result = UpdateResult.NOT_FOUND;
+
+        int fields = reminder.getDirtyFields();
+        if (fields == 0) {
+            return UpdateResult.UPDATED;
+        }
+        String query = updateQuery(fields);
         
         try (Connection connection = DatabaseConnection.getCon();
              PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             
-            preparedStatement.setString(1, reminder.getMedicineName());
-            preparedStatement.setString(2, reminder.getDosage());
-            preparedStatement.setString(3, reminder.getSchedule());
-            preparedStatement.setDate(4, java.sql.Date.valueOf(reminder.getStartDate()));
-            preparedStatement.setDate(5, java.sql.Date.valueOf(reminder.getEndDate()));
-            preparedStatement.setInt(6, reminder.getId());
+            int index = 1;
+            for (int field = 1; field <= ALL_UPDATABLE_FIELDS; field <<= 1) {
+                if ((fields & field) != 0) {
+                    bindField(preparedStatement, index++, reminder, field);
+                }
+            }
+            preparedStatement.setInt(index++, reminder.getId());
+            preparedStatement.setInt(index, reminder.getVersion());
             
             int rowsUpdated = preparedStatement.executeUpdate();
             
             if (rowsUpdated > 0) {
-                bool = true;
+                reminder.setVersion(reminder.getVersion() + 1);
+                reminder.clearDirtyFields();
+                ReminderIntervalIndex.getInstance().put(reminder);
+                result = UpdateResult.UPDATED;
+            } else if (reminderExists(connection, reminder.getId())) {
+                result = UpdateResult.CONFLICT;
             }
            
         } catch (SQLException e) {
             e.printStackTrace();
+            result = UpdateResult.FAILED;
         }
-        return bool;
+        return result;
+    }
+
+    private boolean reminderExists(Connection connection, int reminderId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM public.\"medicine_reminders\" WHERE reminder_id = ?")) {
+            statement.setInt(1, reminderId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static String updateQuery(int fields) {
+        return updateQueries.computeIfAbsent(fields, f -> {
+            StringBuilder query = new StringBuilder("UPDATE public.\"medicine_reminders\" SET ");
+            for (int field = 1; field <= ALL_UPDATABLE_FIELDS; field <<= 1) {
+                if ((f & field) != 0) {
+                    query.append(columnOf(field)).append(" = ?, ");
+                }
+            }
+            return query.append("version = version + 1 WHERE reminder_id = ? AND version = ?").toString();
+        });
     }
-       
-}
 
-  
+    private static String columnOf(int field) {
+        switch (field) {
+            case MedicineReminder.FIELD_MEDICINE_NAME: return "medicine_id";
+            case MedicineReminder.FIELD_DOSAGE: return "dosage";
+            case MedicineReminder.FIELD_SCHEDULE: return "schedule";
+            case MedicineReminder.FIELD_START_DATE: return "start_date";
+            case MedicineReminder.FIELD_END_DATE: return "end_date";
+            default: throw new IllegalArgumentException("Unknown medicine reminder field: " + field);
+        }
+    }
+
+    private static void bindField(PreparedStatement statement, int index, MedicineReminder reminder, int field) throws SQLException {
+        switch (field) {
+            case MedicineReminder.FIELD_MEDICINE_NAME:
+                statement.setInt(index, MedicineDictionary.getInstance().idFor(reminder.getMedicineName()));
+                break;
+            case MedicineReminder.FIELD_DOSAGE:
+                statement.setString(index, reminder.getDosage());
+                break;
+            case MedicineReminder.FIELD_SCHEDULE:
+                statement.setString(index, reminder.getSchedule());
+                break;
+            case MedicineReminder.FIELD_START_DATE:
+                statement.setDate(index, java.sql.Date.valueOf(reminder.getStartDate()));
+                break;
+            case MedicineReminder.FIELD_END_DATE:
+                statement.setDate(index, java.sql.Date.valueOf(reminder.getEndDate()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown medicine reminder field: " + field);
+        }
+    }
+}
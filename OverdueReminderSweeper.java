@@ -0,0 +1,124 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class moves medicine reminders that ended more than a grace period ago to medicine_reminders_history.
+ * Each batch is a single statement that deletes up to BATCH_SIZE expired reminders and inserts the deleted rows
+ * into the history table from DELETE ... RETURNING, so a reminder is never lost or copied twice. Rows locked by a
+ * concurrent edit are skipped and picked up by the next run. The sweep runs at startup and then once a day; the
+ * grace period in days is read from the reminder.sweep.grace.days system property.
+ */
+
+public class OverdueReminderSweeper {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int GRACE_DAYS = Integer.getInteger("reminder.sweep.grace.days", 30);
+    private static final OverdueReminderSweeper INSTANCE = new OverdueReminderSweeper();
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong lastRunRows = new AtomicLong();
+    private final AtomicLong totalRows = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    private OverdueReminderSweeper() {
+    }
+/**
+     * Gets the shared OverdueReminderSweeper instance.
+     *
+     * @return The OverdueReminderSweeper instance.
+     */
+    public static OverdueReminderSweeper getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Starts sweeping in the background, once now and then once a day.
+     */
+    public synchronized void start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "overdue-reminder-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::sweep, 0, 1, TimeUnit.DAYS);
+        }
+    }
+/**
+     * Gets the number of days a reminder is kept after its end date before it is swept.
+     *
+     * @return The grace period in days.
+     */
+    public int getGraceDays() {
+        return GRACE_DAYS;
+    }
+/**
+     * Moves every reminder that ended before the grace period to the history table, in batches.
+     *
+     * @return The number of reminders moved by this run.
+     */
+    public long sweep() {
+
+        String query = "WITH swept AS (" +
+                "DELETE FROM public.\"medicine_reminders\" WHERE reminder_id IN " +
+                "(SELECT reminder_id FROM public.\"medicine_reminders\" WHERE end_date < ? " +
+                "ORDER BY end_date LIMIT " + BATCH_SIZE + " FOR UPDATE SKIP LOCKED) " +
+                "RETURNING reminder_id, user_id, medicine_id, dosage, schedule, start_date, end_date) " +
+                "INSERT INTO public.\"medicine_reminders_history\" " +
+                "(reminder_id, user_id, medicine_id, dosage, schedule, start_date, end_date) " +
+                "SELECT reminder_id, user_id, medicine_id, dosage, schedule, start_date, end_date FROM swept " +
+                "RETURNING reminder_id";
+
+        long swept = 0;
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setDate(1, java.sql.Date.valueOf(LocalDate.now().minusDays(GRACE_DAYS)));
+            int moved;
+            do {
+                moved = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        ReminderIntervalIndex.getInstance().remove(rs.getInt("reminder_id"));
+                        moved++;
+                    }
+                }
+                swept += moved;
+            } while (moved == BATCH_SIZE);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        runs.incrementAndGet();
+        lastRunRows.set(swept);
+        totalRows.addAndGet(swept);
+        return swept;
+    }
+/**
+     * Gets the number of sweeps run since startup.
+     *
+     * @return The number of runs.
+     */
+    public long getRuns() {
+        return runs.get();
+    }
+/**
+     * Gets the number of reminders moved by the most recent sweep.
+     *
+     * @return The number of reminders.
+     */
+    public long getLastRunRows() {
+        return lastRunRows.get();
+    }
+/**
+     * Gets the number of reminders moved by all sweeps since startup.
+     *
+     * @return The number of reminders.
+     */
+    public long getTotalRows() {
+        return totalRows.get();
+    }
+}
@@ -0,0 +1,651 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps the last WINDOW_DAYS days of health data of every patient with a doctor in a memory-mapped file,
+ * so the doctor portal can show panels and recent series without scanning health_data. The file holds a header and
+ * one fixed-size record per patient with a slot for each day of the window, and is updated in place as health data
+ * is written. Every record ends with a CRC32 of its bytes; a record that fails the check on startup is dropped and
+ * read again from the database. The file is mapped and served at startup, while a background catch-up pass re-reads
+ * the window from the database and rewrites the records of the patients whose rows changed while the application
+ * was not running. Both passes stream the rows ordered by patient into one reused window and write it straight into
+ * the patient's slot, so a pass holds one window on the heap rather than one per patient. The file is named by the
+ * panel.snapshot.file system property.
+ *
+ * File layout: a header (magic, format version, record size, slot count) followed by the
+ * records (user ID, first epoch day of the window, a bit mask of the days present, per day the ID, version, steps,
+ * heart rate, weight, height, water intake and hours of sleep, then the CRC32). A slot with user ID 0 is free.
+ */
+
+public class PanelSnapshot implements HealthDataListener {
+
+    private static final int MAGIC = 0x50534e31;
+    private static final int FORMAT_VERSION = 1;
+    private static final int WINDOW_DAYS = 32;
+    private static final int HEADER_BYTES = 64;
+    private static final int DAY_BYTES = 48;
+    private static final int DAYS_OFFSET = 12;
+    private static final int RECORD_BYTES = DAYS_OFFSET + WINDOW_DAYS * DAY_BYTES + 4;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int FLUSH_INTERVAL_MINUTES = 5;
+    private static final int CATCH_UP_FETCH_SIZE = 1000;
+    private static final PanelSnapshot INSTANCE = new PanelSnapshot(Paths.get(System.getProperty("panel.snapshot.file", "snapshot/panel_snapshot.dat")));
+
+    private final Path file;
+    private final Map<Integer, Integer> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Set<Integer> touched = new HashSet<>();
+    private final Window stored = new Window();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int passes;
+    private volatile boolean ready;
+    private ScheduledExecutorService worker;
+
+    private PanelSnapshot(Path file) {
+        this.file = file;
+    }
+/**
+     * Gets the shared PanelSnapshot instance, stored in the file named by the panel.snapshot.file system property.
+     *
+     * @return The PanelSnapshot instance.
+     */
+    public static PanelSnapshot getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Maps the snapshot file, creating it if it does not exist, and starts the catch-up pass and the periodic flush
+     * in the background. If the file cannot be mapped the snapshot stays unavailable and callers read the database.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        try {
+            open();
+            ready = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "panel-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.execute(this::catchUp);
+        worker.scheduleAtFixedRate(this::flush, FLUSH_INTERVAL_MINUTES, FLUSH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "panel-snapshot-flush"));
+    }
+/**
+     * Checks whether the snapshot file is mapped and can serve reads.
+     *
+     * @return true if the snapshot is available, false otherwise.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+/**
+     * Checks whether a patient has a record in the snapshot.
+     *
+     * @param userId The ID of the patient.
+     * @return true if the patient's window is stored, false otherwise.
+     */
+    public synchronized boolean contains(int userId) {
+        return ready && slots.containsKey(userId);
+    }
+/**
+     * Gets the stored health data of a patient from a date to the end of the window.
+     *
+     * @param userId The ID of the patient.
+     * @param startDate The first date to include.
+     * @return The HealthSeries of the patient, or null if the snapshot does not cover the patient from that date.
+     */
+    public HealthSeries getSeries(int userId, LocalDate startDate) {
+        return getSeries(userId, startDate.toEpochDay(), Long.MAX_VALUE);
+    }
+/**
+     * Gets the stored health data of a patient within a date range.
+     *
+     * @param userId The ID of the patient.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The HealthSeries of the patient, or null if the snapshot does not cover the patient over the range.
+     */
+    public HealthSeries getSeries(int userId, LocalDate startDate, LocalDate endDate) {
+        return getSeries(userId, startDate.toEpochDay(), endDate.toEpochDay());
+    }
+
+    private synchronized HealthSeries getSeries(int userId, long startDay, long endDay) {
+        Integer slot = ready ? slots.get(userId) : null;
+        if (slot == null) {
+            return null;
+        }
+        Window window = read(slot);
+        if (window == null || startDay < window.baseDay) {
+            return null;
+        }
+        HealthSeries.Builder builder = new HealthSeries.Builder(userId);
+        for (int day = 0; day < WINDOW_DAYS; day++) {
+            long epochDay = window.baseDay + day;
+            if ((window.mask & (1 << day)) != 0 && epochDay >= startDay && epochDay <= endDay) {
+                builder.add(window.get(day));
+            }
+        }
+        return builder.build();
+    }
+/**
+     * Reads the window of the patients that have no record yet from the database and stores it.
+     *
+     * @param userIds The IDs of the patients.
+     */
+    public void load(Collection<Integer> userIds) {
+        if (!ready) {
+            return;
+        }
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            passes++;
+            for (int userId : userIds) {
+                if (!slots.containsKey(userId)) {
+                    missing.add(userId);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            endPass();
+            return;
+        }
+
+        String query = "SELECT * FROM public.\"health_data\" WHERE user_id = ANY(?) AND date >= ? ORDER BY user_id, date";
+
+        int baseDay = windowStart();
+        Window window = new Window();
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setArray(1, con.createArrayOf("integer", missing.toArray()));
+            statement.setDate(2, java.sql.Date.valueOf(LocalDate.ofEpochDay(baseDay)));
+            try (ResultSet rs = statement.executeQuery()) {
+                RowMapper<HealthData> mapper = RowMappers.HEALTH_DATA.forResultSet(rs);
+                while (rs.next()) {
+                    HealthData healthData = mapper.mapRow(rs);
+                    if (healthData.getUserId() != window.userId) {
+                        storeMissing(window);
+                        window.reset(healthData.getUserId(), baseDay);
+                    }
+                    window.put(healthData);
+                }
+                storeMissing(window);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            endPass();
+            return;
+        }
+        // Patients without rows in the window get an empty record
+        synchronized (this) {
+            for (int userId : missing) {
+                window.reset(userId, baseDay);
+                storeMissing(window);
+            }
+            endPass();
+        }
+    }
+
+    private synchronized void storeMissing(Window window) {
+        if (window.userId != 0 && !slots.containsKey(window.userId) && !touched.contains(window.userId)) {
+            write(window);
+        }
+    }
+/**
+     * Re-reads the window of every patient with a doctor from the database and rewrites the records whose days
+     * differ in ID or version or whose window no longer covers the panel lookback, adding patients without a record and dropping records of patients no longer assigned.
+     * Patients whose health data is written while the pass runs keep the record the listener wrote.
+     *
+     * @return The number of records rewritten or dropped.
+     */
+    public int catchUp() {
+        if (!ready) {
+            return 0;
+        }
+
+        String query = "SELECT * FROM public.\"health_data\" hd WHERE hd.date >= ? " +
+                "AND hd.user_id IN (SELECT patient_id FROM public.\"doctor_patient\") ORDER BY hd.user_id, hd.date";
+
+        synchronized (this) {
+            passes++;
+        }
+        int baseDay = windowStart();
+        Window window = new Window();
+        BitSet seen = new BitSet();
+        int changed = 0;
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query)) {
+                statement.setFetchSize(CATCH_UP_FETCH_SIZE);
+                statement.setDate(1, java.sql.Date.valueOf(LocalDate.ofEpochDay(baseDay)));
+                try (ResultSet rs = statement.executeQuery()) {
+                    RowMapper<HealthData> mapper = RowMappers.HEALTH_DATA.forResultSet(rs);
+                    while (rs.next()) {
+                        HealthData healthData = mapper.mapRow(rs);
+                        if (healthData.getUserId() != window.userId) {
+                            changed += storeChanged(window, baseDay, seen);
+                            window.reset(healthData.getUserId(), baseDay);
+                        }
+                        window.put(healthData);
+                    }
+                    changed += storeChanged(window, baseDay, seen);
+                }
+                con.commit();
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            endPass();
+            return 0;
+        }
+
+        // Records of patients without rows in the window are emptied, or dropped if the patient is no longer assigned
+        synchronized (this) {
+            for (Map.Entry<Integer, Integer> entry : new ArrayList<>(slots.entrySet())) {
+                int userId = entry.getKey();
+                if (seen.get(entry.getValue()) || touched.contains(userId)) {
+                    continue;
+                }
+                if (DoctorPatientCache.getInstance().getDoctors(userId).isEmpty()) {
+                    clear(userId);
+                    changed++;
+                } else {
+                    window.reset(userId, baseDay);
+                    changed += storeChanged(window, baseDay, seen);
+                }
+            }
+            buffer.force();
+            endPass();
+        }
+        return changed;
+    }
+
+    // Writes the window into its slot unless the stored record holds the same days, marking the slot as seen by the pass
+    private synchronized int storeChanged(Window window, int baseDay, BitSet seen) {
+        if (window.userId == 0 || touched.contains(window.userId)) {
+            return 0;
+        }
+        Integer slot = slots.get(window.userId);
+        if (slot != null && read(slot, stored) && stored.baseDay <= baseDay && stored.sameDays(window)) {
+            seen.set(slot);
+            return 0;
+        }
+        seen.set(write(window));
+        return 1;
+    }
+/**
+     * Writes the mapped pages of the snapshot file to disk.
+     */
+    public synchronized void flush() {
+        if (ready) {
+            buffer.force();
+        }
+    }
+/**
+     * Stores a created or updated health data entry in the window of its patient, if the patient has a record.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    @Override
+    public synchronized void onHealthDataSaved(HealthData previous, HealthData current) {
+        Window window = windowOf(current.getUserId());
+        if (window == null) {
+            return;
+        }
+        if (previous != null) {
+            window.remove(previous);
+        }
+        window.put(current);
+        write(window);
+    }
+/**
+     * Removes a deleted health data entry from the window of its patient.
+     *
+     * @param previous The HealthData object as it was stored before the deletion.
+     */
+    @Override
+    public synchronized void onHealthDataDeleted(HealthData previous) {
+        Window window = windowOf(previous.getUserId());
+        if (window != null && window.remove(previous)) {
+            write(window);
+        }
+    }
+/**
+     * Drops the record of a purged user.
+     *
+     * @param userId The ID of the purged user.
+     */
+    @Override
+    public synchronized void onUserPurged(int userId) {
+        if (passes > 0) {
+            touched.add(userId);
+        }
+        if (ready) {
+            clear(userId);
+        }
+    }
+
+    // Users written while a pass reads the database are remembered, so the pass does not overwrite them with older rows
+    private synchronized void endPass() {
+        if (--passes == 0) {
+            touched.clear();
+        }
+    }
+
+    private Window windowOf(int userId) {
+        if (passes > 0) {
+            touched.add(userId);
+        }
+        Integer slot = ready ? slots.get(userId) : null;
+        if (slot == null) {
+            return null;
+        }
+        Window window = read(slot);
+        if (window == null) {
+            clear(userId);
+        }
+        return window;
+    }
+
+    // The window starts one day before the panel lookback and ends one day after today
+    private static int windowStart() {
+        return (int) LocalDate.now().toEpochDay() - (WINDOW_DAYS - 2);
+    }
+
+    private void open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size >= HEADER_BYTES) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            int slotCount = header.getInt(12);
+            if (header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION && header.getInt(8) == RECORD_BYTES
+                    && slotCount > 0 && size >= HEADER_BYTES + (long) slotCount * RECORD_BYTES) {
+                map(slotCount);
+                scan();
+                return;
+            }
+        }
+        channel.truncate(0);
+        map(INITIAL_SLOTS);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, RECORD_BYTES);
+        for (int slot = 0; slot < capacity; slot++) {
+            freeSlots.add(slot);
+        }
+        buffer.force();
+    }
+
+    private void map(int slotCount) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCount * RECORD_BYTES);
+        capacity = slotCount;
+        buffer.putInt(12, capacity);
+    }
+
+    private void scan() {
+        for (int slot = 0; slot < capacity; slot++) {
+            int userId = buffer.getInt(offset(slot));
+            if (userId == 0) {
+                freeSlots.add(slot);
+            } else if (!read(slot, stored) || slots.containsKey(userId)) {
+                buffer.putInt(offset(slot), 0);
+                freeSlots.add(slot);
+            } else {
+                slots.put(userId, slot);
+            }
+        }
+    }
+
+    private void grow() {
+        int oldCapacity = capacity;
+        try {
+            map(capacity * 2);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow the panel snapshot file", e);
+        }
+        for (int slot = oldCapacity; slot < capacity; slot++) {
+            freeSlots.add(slot);
+        }
+    }
+
+    // A mapping is limited to 2 GB, so record offsets always fit in an int
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    // Decodes the record into a new window, returning null if its CRC32 does not match
+    private Window read(int slot) {
+        Window window = new Window();
+        return read(slot, window) ? window : null;
+    }
+
+    // Decodes the record straight from the mapping into a window, returning false if its CRC32 does not match
+    private boolean read(int slot, Window window) {
+        int at = offset(slot);
+        if (checksum(at) != buffer.getInt(at + RECORD_BYTES - 4)) {
+            return false;
+        }
+        window.decode(buffer, at);
+        return true;
+    }
+
+    // Encodes the window straight into its slot, taking a free slot if the patient has none, and returns the slot
+    private int write(Window window) {
+        Integer slot = slots.get(window.userId);
+        if (slot == null) {
+            if (freeSlots.isEmpty()) {
+                grow();
+            }
+            slot = freeSlots.poll();
+            slots.put(window.userId, slot);
+        }
+        int at = offset(slot);
+        window.encode(buffer, at);
+        buffer.putInt(at + RECORD_BYTES - 4, checksum(at));
+        return slot;
+    }
+
+    private int checksum(int at) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(at);
+        record.limit(at + RECORD_BYTES - 4);
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private void clear(int userId) {
+        Integer slot = slots.remove(userId);
+        if (slot != null) {
+            buffer.putInt(offset(slot), 0);
+            freeSlots.add(slot);
+        }
+    }
+
+    /**
+     * The days of one patient's window, decoded from or encoded into a record.
+     */
+    private static final class Window {
+        private int userId;
+        private int baseDay;
+        private int mask;
+        private final int[] ids = new int[WINDOW_DAYS];
+        private final int[] versions = new int[WINDOW_DAYS];
+        private final int[] steps = new int[WINDOW_DAYS];
+        private final int[] heartRates = new int[WINDOW_DAYS];
+        private final double[] weights = new double[WINDOW_DAYS];
+        private final double[] heights = new double[WINDOW_DAYS];
+        private final double[] waterIntakes = new double[WINDOW_DAYS];
+        private final double[] hoursOfSleep = new double[WINDOW_DAYS];
+
+        // Empties the window for another patient; the day values are only read where the mask has a bit
+        private void reset(int userId, int baseDay) {
+            this.userId = userId;
+            this.baseDay = baseDay;
+            mask = 0;
+        }
+
+        private void decode(ByteBuffer data, int record) {
+            userId = data.getInt(record);
+            baseDay = data.getInt(record + 4);
+            mask = data.getInt(record + 8);
+            for (int day = 0; day < WINDOW_DAYS; day++) {
+                int at = record + DAYS_OFFSET + day * DAY_BYTES;
+                ids[day] = data.getInt(at);
+                versions[day] = data.getInt(at + 4);
+                steps[day] = data.getInt(at + 8);
+                heartRates[day] = data.getInt(at + 12);
+                weights[day] = data.getDouble(at + 16);
+                heights[day] = data.getDouble(at + 24);
+                waterIntakes[day] = data.getDouble(at + 32);
+                hoursOfSleep[day] = data.getDouble(at + 40);
+            }
+        }
+
+        // Writes every field but the CRC32, which covers the bytes as they are in the mapping
+        private void encode(ByteBuffer data, int record) {
+            data.putInt(record, userId);
+            data.putInt(record + 4, baseDay);
+            data.putInt(record + 8, mask);
+            for (int day = 0; day < WINDOW_DAYS; day++) {
+                int at = record + DAYS_OFFSET + day * DAY_BYTES;
+                data.putInt(at, ids[day]);
+                data.putInt(at + 4, versions[day]);
+                data.putInt(at + 8, steps[day]);
+                data.putInt(at + 12, heartRates[day]);
+                data.putDouble(at + 16, weights[day]);
+                data.putDouble(at + 24, heights[day]);
+                data.putDouble(at + 32, waterIntakes[day]);
+                data.putDouble(at + 40, hoursOfSleep[day]);
+            }
+        }
+
+        private HealthData get(int day) {
+            HealthData healthData = new HealthData(ids[day], userId, weights[day], heights[day], steps[day], heartRates[day],
+                    waterIntakes[day], hoursOfSleep[day], LocalDate.ofEpochDay(baseDay + day));
+            healthData.setVersion(versions[day]);
+            healthData.clearDirtyFields();
+            return healthData;
+        }
+
+        // Entries older than the window are ignored; newer ones move the window forward, dropping its oldest days
+        private void put(HealthData healthData) {
+            long epochDay = healthData.getDate().toEpochDay();
+            if (epochDay < baseDay) {
+                return;
+            }
+            if (epochDay >= baseDay + WINDOW_DAYS) {
+                shift((int) (epochDay - (baseDay + WINDOW_DAYS - 1)));
+            }
+            int day = (int) (epochDay - baseDay);
+            mask |= 1 << day;
+            ids[day] = healthData.getId();
+            versions[day] = healthData.getVersion();
+            steps[day] = healthData.getSteps();
+            heartRates[day] = healthData.getHeartRate();
+            weights[day] = healthData.getWeight();
+            heights[day] = healthData.getHeight();
+            waterIntakes[day] = healthData.getWaterIntake();
+            hoursOfSleep[day] = healthData.getHoursOfSleep();
+        }
+
+        private boolean remove(HealthData healthData) {
+            long epochDay = healthData.getDate().toEpochDay();
+            if (epochDay < baseDay || epochDay >= baseDay + WINDOW_DAYS) {
+                return false;
+            }
+            int day = (int) (epochDay - baseDay);
+            if ((mask & (1 << day)) == 0 || ids[day] != healthData.getId()) {
+                return false;
+            }
+            mask &= ~(1 << day);
+            return true;
+        }
+
+        private void shift(int days) {
+            baseDay += days;
+            if (days >= WINDOW_DAYS) {
+                mask = 0;
+                return;
+            }
+            mask >>>= days;
+            int kept = WINDOW_DAYS - days;
+            System.arraycopy(ids, days, ids, 0, kept);
+            System.arraycopy(versions, days, versions, 0, kept);
+            System.arraycopy(steps, days, steps, 0, kept);
+            System.arraycopy(heartRates, days, heartRates, 0, kept);
+            System.arraycopy(weights, days, weights, 0, kept);
+            System.arraycopy(heights, days, heights, 0, kept);
+            System.arraycopy(waterIntakes, days, waterIntakes, 0, kept);
+            System.arraycopy(hoursOfSleep, days, hoursOfSleep, 0, kept);
+        }
+
+        // Compares the entries present on each date by ID and version, regardless of where the windows start
+        private boolean sameDays(Window other) {
+            int start = Math.max(baseDay, other.baseDay);
+            int end = Math.min(baseDay, other.baseDay) + WINDOW_DAYS;
+            if (Integer.bitCount(maskFrom(start, end)) != Integer.bitCount(mask)
+                    || Integer.bitCount(other.maskFrom(start, end)) != Integer.bitCount(other.mask)) {
+                return false;
+            }
+            for (int epochDay = start; epochDay < end; epochDay++) {
+                int day = epochDay - baseDay;
+                int otherDay = epochDay - other.baseDay;
+                boolean present = (mask & (1 << day)) != 0;
+                if (present != ((other.mask & (1 << otherDay)) != 0)) {
+                    return false;
+                }
+                if (present && (ids[day] != other.ids[otherDay] || versions[day] != other.versions[otherDay])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int maskFrom(int startDay, int endDay) {
+            int bits = 0;
+            for (int epochDay = startDay; epochDay < endDay; epochDay++) {
+                int day = epochDay - baseDay;
+                if (day >= 0 && day < WINDOW_DAYS) {
+                    bits |= mask & (1 << day);
+                }
+            }
+            return bits;
+        }
+    }
+}
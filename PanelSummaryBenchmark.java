@@ -0,0 +1,54 @@
+import java.util.Arrays;
+
+/**
+ * This class measures how long DoctorPortalDao.getPanelSummary takes for one doctor, against the target of 200 ms
+ * for a panel of 5,000 patients. The set-based query is measured first; with the snapshot option the panel
+ * snapshot is started afterwards and the same rounds are repeated against it. Needs the database configured for
+ * DatabaseConnection and a doctor with patients and recent health data; nothing is written to the database.
+ */
+
+public class PanelSummaryBenchmark {
+
+    private static final long TARGET_MILLIS = 200;
+
+/**
+     * Runs the benchmark.
+     *
+     * @param args The ID of the doctor (default 1), the number of rounds (default 20) and optionally "snapshot".
+     */
+    public static void main(String[] args) {
+        int doctorId = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        boolean snapshot = args.length > 2 && args[2].equals("snapshot");
+
+        DoctorPortalDao dao = new DoctorPortalDao();
+        measure("set-based query", dao, doctorId, rounds);
+        if (snapshot) {
+            PanelSnapshot.getInstance().start();
+            if (!PanelSnapshot.getInstance().isReady()) {
+                System.out.println("Oops! The panel snapshot could not be mapped.");
+                System.exit(1);
+            }
+            measure("panel snapshot", dao, doctorId, rounds);
+        }
+    }
+
+    // The first call warms up the connection and the JIT and is not reported
+    private static void measure(String name, DoctorPortalDao dao, int doctorId, int rounds) {
+        int patients = dao.getPanelSummary(doctorId).size();
+        if (patients == 0) {
+            System.out.println("Oops! Doctor " + doctorId + " has no patients; is the database running?");
+            System.exit(1);
+        }
+        long[] millis = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            dao.getPanelSummary(doctorId);
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        long p95 = millis[Math.min(rounds - 1, (int) Math.ceil(rounds * 0.95) - 1)];
+        System.out.println(String.format("%s: %,d patients, %d round(s), median %d ms, p95 %d ms, max %d ms (target %d ms for 5,000 patients)",
+                name, patients, rounds, millis[rounds / 2], p95, millis[rounds - 1], TARGET_MILLIS));
+    }
+}
@@ -0,0 +1,171 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents one row of a doctor's panel dashboard: a patient with their latest vitals,
+ * their 7-day averages and the flags that currently need the doctor's attention.
+ */
+
+public class PatientPanelSummary {
+    private int patientId;
+    private String firstName;
+    private String lastName;
+    private HealthData latest;
+    private int recordsLast7Days;
+    private double averageSteps;
+    private double averageHeartRate;
+    private double averageWaterIntake;
+    private double averageHoursOfSleep;
+    private int recentAlerts;
+    private List<String> flags = new ArrayList<>();
+
+/**
+     * Constructs a PatientPanelSummary object with the specified attributes.
+     *
+     * @param patientId The ID of the patient.
+     * @param firstName The first name of the patient.
+     * @param lastName The last name of the patient.
+     * @param latest The latest health data entry of the patient, or null if there is none.
+     * @param recordsLast7Days The number of health data entries over the last 7 days.
+     * @param averageSteps The average number of steps over the last 7 days.
+     * @param averageHeartRate The average heart rate over the last 7 days.
+     * @param averageWaterIntake The average water intake over the last 7 days.
+     * @param averageHoursOfSleep The average hours of sleep over the last 7 days.
+     * @param recentAlerts The number of anomaly alerts raised over the last 7 days.
+     */
+    public PatientPanelSummary(int patientId, String firstName, String lastName, HealthData latest, int recordsLast7Days, double averageSteps, double averageHeartRate, double averageWaterIntake, double averageHoursOfSleep, int recentAlerts) {
+        this.patientId = patientId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.latest = latest;
+        this.recordsLast7Days = recordsLast7Days;
+        this.averageSteps = averageSteps;
+        this.averageHeartRate = averageHeartRate;
+        this.averageWaterIntake = averageWaterIntake;
+        this.averageHoursOfSleep = averageHoursOfSleep;
+        this.recentAlerts = recentAlerts;
+    }
+/**
+     * Gets the ID of the patient.
+     *
+     * @return The ID of the patient.
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+/**
+     * Gets the first name of the patient.
+     *
+     * @return The first name of the patient.
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+/**
+     * Gets the last name of the patient.
+     *
+     * @return The last name of the patient.
+     */
+    public String getLastName() {
+        return lastName;
+    }
+/**
+     * Gets the latest health data entry of the patient.
+     *
+     * @return The latest HealthData object, or null if the patient has no recent data.
+     */
+    public HealthData getLatest() {
+        return latest;
+    }
+/**
+     * Gets the number of health data entries over the last 7 days.
+     *
+     * @return The number of entries.
+     */
+    public int getRecordsLast7Days() {
+        return recordsLast7Days;
+    }
+/**
+     * Gets the average number of steps over the last 7 days.
+     *
+     * @return The average steps.
+     */
+    public double getAverageSteps() {
+        return averageSteps;
+    }
+/**
+     * Gets the average heart rate over the last 7 days.
+     *
+     * @return The average heart rate.
+     */
+    public double getAverageHeartRate() {
+        return averageHeartRate;
+    }
+/**
+     * Gets the average water intake over the last 7 days.
+     *
+     * @return The average water intake.
+     */
+    public double getAverageWaterIntake() {
+        return averageWaterIntake;
+    }
+/**
+     * Gets the average hours of sleep over the last 7 days.
+     *
+     * @return The average hours of sleep.
+     */
+    public double getAverageHoursOfSleep() {
+        return averageHoursOfSleep;
+    }
+/**
+     * Gets the number of anomaly alerts raised for the patient over the last 7 days.
+     *
+     * @return The number of alerts.
+     */
+    public int getRecentAlerts() {
+        return recentAlerts;
+    }
+/**
+     * Gets the flags that currently need the doctor's attention.
+     *
+     * @return A list of flag descriptions, empty if nothing is flagged.
+     */
+    public List<String> getFlags() {
+        return flags;
+    }
+/**
+     * Sets the flags that currently need the doctor's attention.
+     *
+     * @param flags The list of flag descriptions.
+     */
+    public void setFlags(List<String> flags) {
+        this.flags = flags;
+    }
+/**
+     * Gets the date of the latest health data entry.
+     *
+     * @return The date of the latest entry, or null if the patient has no recent data.
+     */
+    public LocalDate getLatestDate() {
+        return latest == null ? null : latest.getDate();
+    }
+/**
+     * Returns a string representation of the PatientPanelSummary object.
+     *
+     * @return A string containing the panel row attributes.
+     */
+    @Override
+    public String toString() {
+        if (latest == null) {
+            return ("Patient: " + firstName + " " + lastName + "\n" + "No recent health data.");
+        }
+        return ("Patient: " + firstName + " " + lastName + "\n" +
+                "Latest (" + latest.getDate() + "): Steps " + latest.getSteps() + ", Heart Rate " + latest.getHeartRate() +
+                ", Water " + latest.getWaterIntake() + ", Sleep " + latest.getHoursOfSleep() + ", Weight " + latest.getWeight() + "\n" +
+                "7-Day Average (" + recordsLast7Days + " records): Steps " + String.format("%.0f", averageSteps) +
+                ", Heart Rate " + String.format("%.1f", averageHeartRate) + ", Water " + String.format("%.1f", averageWaterIntake) +
+                ", Sleep " + String.format("%.1f", averageHoursOfSleep) + "\n" +
+                "Flags: " + (flags.isEmpty() ? "None" : String.join(", ", flags)));
+    }
+}
@@ -0,0 +1,79 @@
+import java.time.LocalDate;
+
+/**
+ * This class represents the composite risk score of a patient, as shown in a doctor's ranking of at-risk patients.
+ */
+
+public class PatientRisk {
+    private int patientId;
+    private String firstName;
+    private String lastName;
+    private double score;
+    private LocalDate date;
+
+/**
+     * Constructs a PatientRisk object with the specified attributes.
+     *
+     * @param patientId The ID of the patient.
+     * @param firstName The first name of the patient.
+     * @param lastName The last name of the patient.
+     * @param score The composite risk score of the patient, from 0 to 100.
+     * @param date The date of the latest health data entry included in the score.
+     */
+    public PatientRisk(int patientId, String firstName, String lastName, double score, LocalDate date) {
+        this.patientId = patientId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.score = score;
+        this.date = date;
+    }
+/**
+     * Gets the ID of the patient.
+     *
+     * @return The ID of the patient.
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+/**
+     * Gets the first name of the patient.
+     *
+     * @return The first name of the patient.
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+/**
+     * Gets the last name of the patient.
+     *
+     * @return The last name of the patient.
+     */
+    public String getLastName() {
+        return lastName;
+    }
+/**
+     * Gets the composite risk score of the patient.
+     *
+     * @return The risk score, from 0 to 100.
+     */
+    public double getScore() {
+        return score;
+    }
+/**
+     * Gets the date of the latest health data entry included in the score.
+     *
+     * @return The date of the score.
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+/**
+     * Returns a string representation of the PatientRisk object.
+     *
+     * @return A string containing the risk attributes.
+     */
+    @Override
+    public String toString() {
+        return (firstName + " " + lastName + " - Risk Score: " + String.format("%.1f", score) + " (as of " + date + ")");
+    }
+}
@@ -0,0 +1,341 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is an in-memory search index over each doctor's patients by first name, last name and email.
+ * A doctor's panel is loaded from the doctor_patient join on the first search and kept as an immutable snapshot:
+ * the name and email tokens of all patients sorted in one array, so a prefix is found by binary search. Terms that
+ * match no token by prefix fall back to fuzzy matching within one or two edits. Assignment changes and profile
+ * changes replace the snapshot of the doctors concerned, so searches never take a lock.
+ */
+
+public class PatientSearchIndex {
+
+    private static final int EXACT = 4;
+    private static final int PREFIX = 3;
+    private static final int FUZZY = 1;
+    private static final PatientSearchIndex INSTANCE = new PatientSearchIndex();
+
+    private final Map<Integer, Panel> panels = new ConcurrentHashMap<>();
+
+    private PatientSearchIndex() {
+    }
+/**
+     * Gets the shared PatientSearchIndex instance.
+     *
+     * @return The PatientSearchIndex instance.
+     */
+    public static PatientSearchIndex getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Searches a doctor's patients. Every word of the query must match the start of a first name, last name or email,
+     * or, for words of three letters or more, be within one edit of one (two for words of six letters or more). Exact matches rank above prefix matches,
+     * which rank above fuzzy matches.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param query The words to search for.
+     * @param limit The maximum number of patients to return.
+     * @return A list of UserSummary objects, best matches first.
+     */
+    public List<UserSummary> search(int doctorId, String query, int limit) {
+        return panelOf(doctorId).search(query, limit);
+    }
+/**
+     * Removes patients who were unassigned from a doctor, replacing the doctor's snapshot once for all of them.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param patientIds The IDs of the patients.
+     */
+    public void removePatients(int doctorId, Collection<Integer> patientIds) {
+        if (patientIds.isEmpty()) {
+            return;
+        }
+        Set<Integer> removed = new HashSet<>(patientIds);
+        panels.computeIfPresent(doctorId, (id, panel) -> panel.without(removed));
+    }
+/**
+     * Updates the name and email of a patient in every doctor's index.
+     *
+     * @param patient The UserSummary object of the patient as it is stored now.
+     */
+    public void updatePatient(UserSummary patient) {
+        for (int doctorId : panels.keySet()) {
+            panels.computeIfPresent(doctorId, (id, panel) -> panel.contains(patient.getId()) ? panel.without(Collections.singleton(patient.getId())).with(patient) : panel);
+        }
+    }
+/**
+     * Removes a deleted user from every doctor's index, and drops the index of the user if they are a doctor.
+     *
+     * @param userId The ID of the deleted user.
+     */
+    public void removeUser(int userId) {
+        panels.remove(userId);
+        for (int doctorId : panels.keySet()) {
+            panels.computeIfPresent(doctorId, (id, panel) -> panel.contains(userId) ? panel.without(Collections.singleton(userId)) : panel);
+        }
+    }
+/**
+     * Drops a doctor's index, so it is loaded again from the database on the next search.
+     *
+     * @param doctorId The ID of the doctor.
+     */
+    public void invalidate(int doctorId) {
+        panels.remove(doctorId);
+    }
+
+    private Panel panelOf(int doctorId) {
+        Panel panel = panels.get(doctorId);
+        if (panel == null) {
+            panel = load(doctorId);
+            Panel existing = panels.putIfAbsent(doctorId, panel);
+            if (existing != null) {
+                panel = existing;
+            }
+        }
+        return panel;
+    }
+
+    private static Panel load(int doctorId) {
+
+        String query = "SELECT u.user_id, u.first_name, u.last_name, u.email FROM public.\"doctor_patient\" dp " +
+                "JOIN public.\"users\" u ON u.user_id = dp.patient_id " +
+                "WHERE dp.doctor_id = ? AND u.deleted_at IS NULL";
+
+        List<UserSummary> patients = new ArrayList<>();
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, doctorId);
+            try (ResultSet rs = statement.executeQuery()) {
+                patients.addAll(RowMappers.USER_SUMMARY.mapAll(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Panel(patients.toArray(new UserSummary[0]));
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Levenshtein distance with transpositions between a and the first length characters of b,
+    // giving up as soon as every cell of a row exceeds the bound
+    private static int distance(String a, String b, int length, int bound) {
+        if (Math.abs(a.length() - length) > bound) {
+            return bound + 1;
+        }
+        int[] previous2 = new int[length + 1];
+        int[] previous = new int[length + 1];
+        int[] current = new int[length + 1];
+        for (int j = 0; j <= length; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= length; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[length];
+    }
+
+    /**
+     * One doctor's patients, never modified after construction. Every distinct token is stored once, in sorted order,
+     * with the patients it belongs to, and patients are ranked by last and first name once so results need no sorting.
+     */
+    private static final class Panel {
+        private final UserSummary[] patients;
+        private final int[] nameRanks;
+        private final String[] tokens;
+        private final int[][] owners;
+
+        private Panel(UserSummary[] patients) {
+            this.patients = patients;
+
+            Integer[] byName = new Integer[patients.length];
+            for (int i = 0; i < byName.length; i++) {
+                byName[i] = i;
+            }
+            Arrays.sort(byName, Comparator.comparing((Integer i) -> normalize(patients[i].getLastName()))
+                    .thenComparing(i -> normalize(patients[i].getFirstName())));
+            nameRanks = new int[patients.length];
+            for (int rank = 0; rank < byName.length; rank++) {
+                nameRanks[byName[rank]] = rank;
+            }
+
+            Map<String, List<Integer>> postings = new TreeMap<>();
+            for (int i = 0; i < patients.length; i++) {
+                String email = normalize(patients[i].getEmail());
+                int at = email.indexOf('@');
+                for (String token : new String[] {normalize(patients[i].getFirstName()), normalize(patients[i].getLastName()),
+                        email, at > 0 ? email.substring(0, at) : ""}) {
+                    if (!token.isEmpty()) {
+                        List<Integer> owner = postings.computeIfAbsent(token, k -> new ArrayList<>());
+                        if (owner.isEmpty() || owner.get(owner.size() - 1) != i) {
+                            owner.add(i);
+                        }
+                    }
+                }
+            }
+            tokens = postings.keySet().toArray(new String[0]);
+            owners = new int[tokens.length][];
+            int t = 0;
+            for (List<Integer> owner : postings.values()) {
+                owners[t] = new int[owner.size()];
+                for (int i = 0; i < owner.size(); i++) {
+                    owners[t][i] = owner.get(i);
+                }
+                t++;
+            }
+        }
+
+        private boolean contains(int patientId) {
+            for (UserSummary patient : patients) {
+                if (patient.getId() == patientId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Panel with(UserSummary patient) {
+            UserSummary[] added = Arrays.copyOf(patients, patients.length + 1);
+            added[patients.length] = patient;
+            return new Panel(added);
+        }
+
+        private Panel without(Set<Integer> patientIds) {
+            List<UserSummary> kept = new ArrayList<>();
+            for (UserSummary patient : patients) {
+                if (!patientIds.contains(patient.getId())) {
+                    kept.add(patient);
+                }
+            }
+            return new Panel(kept.toArray(new UserSummary[0]));
+        }
+
+        private List<UserSummary> search(String query, int limit) {
+            int[] scores = null;
+            for (String term : normalize(query).split("\\s+")) {
+                if (term.isEmpty()) {
+                    continue;
+                }
+                int[] termScores = score(term);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    for (int i = 0; i < scores.length; i++) {
+                        scores[i] = scores[i] == 0 || termScores[i] == 0 ? 0 : scores[i] + termScores[i];
+                    }
+                }
+            }
+            List<UserSummary> result = new ArrayList<>();
+            if (scores == null || limit <= 0) {
+                return result;
+            }
+
+            // Keeps the best matches in a min-heap of size limit, ordered by score and then by name
+            PriorityQueue<Long> best = new PriorityQueue<>();
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0) {
+                    best.add(((long) scores[i] << 32) | (Integer.MAX_VALUE - nameRanks[i]));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+            int[] order = new int[patients.length];
+            for (int i = 0; i < patients.length; i++) {
+                order[nameRanks[i]] = i;
+            }
+            while (!best.isEmpty()) {
+                result.add(patients[order[Integer.MAX_VALUE - (int) (long) best.poll()]]);
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        // The best score of one term against the tokens of every patient, 0 where it does not match
+        private int[] score(String term) {
+            int[] scores = new int[patients.length];
+            boolean found = false;
+            for (int t = lowerBound(term); t < tokens.length && tokens[t].startsWith(term); t++) {
+                int score = tokens[t].length() == term.length() ? EXACT : PREFIX;
+                for (int owner : owners[t]) {
+                    scores[owner] = Math.max(scores[owner], score);
+                }
+                found = true;
+            }
+            if (found || term.length() < 3) {
+                return scores;
+            }
+
+            // Compares the term with the start of each token; sorted tokens sharing that start reuse the previous result
+            int bound = term.length() >= 6 ? 2 : 1;
+            String previous = null;
+            int previousLength = -1;
+            boolean previousMatched = false;
+            for (int t = 0; t < tokens.length; t++) {
+                int length = Math.min(tokens[t].length(), term.length() + bound);
+                boolean matched;
+                if (previous != null && length == previousLength && tokens[t].regionMatches(0, previous, 0, length)) {
+                    matched = previousMatched;
+                } else {
+                    matched = distance(term, tokens[t], length, bound) <= bound
+                            || (length > term.length() && distance(term, tokens[t], term.length(), bound) <= bound);
+                }
+                if (matched) {
+                    for (int owner : owners[t]) {
+                        scores[owner] = Math.max(scores[owner], FUZZY);
+                    }
+                }
+                previous = tokens[t];
+                previousLength = length;
+                previousMatched = matched;
+            }
+            return scores;
+        }
+
+        private int lowerBound(String term) {
+            int low = 0;
+            int high = tokens.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (tokens[middle].compareTo(term) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
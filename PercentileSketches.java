@@ -0,0 +1,391 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * This class keeps population percentiles of steps, sleep and heart rate, for all users and for each doctor's panel.
+ * Every cohort and metric has a QuantileSketch that is updated on each HealthDataDao write, so a percentile
+ * lookup is a scan of a few hundred counters instead of a sort of health_data. The sketches are loaded from
+ * the percentile_sketches table at startup and the changed ones are written back periodically. A doctor's panel
+ * sketches are rebuilt when patients are assigned to or removed from the doctor, and all sketches are rebuilt once
+ * a day and after an account is purged, so values never stay in the cohort of a doctor the patient has left or
+ * outlive a deleted account. Writes made while a rebuild reads
+ * health_data are replayed onto the rebuilt sketches before they replace the old ones.
+ */
+
+public class PercentileSketches implements HealthDataListener {
+
+    public static final String STEPS = "steps";
+    public static final String HOURS_OF_SLEEP = "hours_of_sleep";
+    public static final String HEART_RATE = "heart_rate";
+    public static final String POPULATION = "population";
+
+    private static final String[] METRICS = {STEPS, HOURS_OF_SLEEP, HEART_RATE};
+    private static final long FLUSH_INTERVAL_MINUTES = 5;
+    private static final int REBUILD_FETCH_SIZE = 1000;
+    private static final PercentileSketches INSTANCE = new PercentileSketches();
+
+    private final Map<String, QuantileSketch> sketches = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final List<Delta> pending = new ArrayList<>();
+    private final Object rebuildLock = new Object();
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private boolean rebuilding;
+    private ScheduledExecutorService flusher;
+
+    private PercentileSketches() {
+    }
+/**
+     * Gets the shared PercentileSketches instance.
+     *
+     * @return The PercentileSketches instance.
+     */
+    public static PercentileSketches getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Gets the cohort name of a doctor's panel.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return The cohort name to use in lookups.
+     */
+    public static String doctorCohort(int doctorId) {
+        return "doctor:" + doctorId;
+    }
+/**
+     * Loads the stored sketches, building them from health_data if none were stored yet,
+     * and starts writing changed sketches back every few minutes and rebuilding them once a day.
+     */
+    public synchronized void start() {
+        if (!loadSketches()) {
+            rebuild();
+        }
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "percentile-sketch-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::flush, FLUSH_INTERVAL_MINUTES, FLUSH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+            flusher.scheduleAtFixedRate(this::rebuild, 1, 1, TimeUnit.DAYS);
+        }
+    }
+/**
+     * Gets the approximate value of a metric at a percentile within a cohort.
+     *
+     * @param cohort The cohort, either POPULATION or a name from doctorCohort.
+     * @param metric The name of the metric.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The approximate value, or NaN if the cohort has no data.
+     */
+    public double getPercentile(String cohort, String metric, double percentile) {
+        QuantileSketch sketch = sketches.get(key(cohort, metric));
+        return sketch == null ? Double.NaN : sketch.getQuantile(percentile / 100);
+    }
+/**
+     * Gets the percentile of a value of a metric within a cohort.
+     *
+     * @param cohort The cohort, either POPULATION or a name from doctorCohort.
+     * @param metric The name of the metric.
+     * @param value The value to rank.
+     * @return The percentage of values at or below the value, from 0 to 100, or NaN if the cohort has no data.
+     */
+    public double getPercentileRank(String cohort, String metric, double value) {
+        QuantileSketch sketch = sketches.get(key(cohort, metric));
+        return sketch == null ? Double.NaN : sketch.getRank(value) * 100;
+    }
+/**
+     * Moves the values of a created or updated health data entry into the sketches of the user's cohorts.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    @Override
+    public void onHealthDataSaved(HealthData previous, HealthData current) {
+        if (previous != null) {
+            apply(previous, false);
+        }
+        apply(current, true);
+    }
+/**
+     * Removes the values of a deleted health data entry from the sketches of the user's cohorts.
+     *
+     * @param previous The HealthData object as it was stored before the deletion.
+     */
+    @Override
+    public void onHealthDataDeleted(HealthData previous) {
+        apply(previous, false);
+    }
+/**
+     * Queues a rebuild of every sketch on the flusher thread, so the values of a purged user leave all cohorts.
+     * Purges that arrive before the queued rebuild has started share it.
+     *
+     * @param userId The ID of the purged user.
+     */
+    @Override
+    public void onUserPurged(int userId) {
+        if (!rebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable task = () -> {
+            rebuildQueued.set(false);
+            rebuild();
+        };
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flusher;
+        }
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private synchronized void apply(HealthData healthData, boolean add) {
+        List<String> cohorts = new ArrayList<>();
+        cohorts.add(POPULATION);
+        for (int doctorId : DoctorPatientCache.getInstance().getDoctors(healthData.getUserId())) {
+            cohorts.add(doctorCohort(doctorId));
+        }
+        for (String cohort : cohorts) {
+            for (String metric : METRICS) {
+                double value = valueOf(metric, healthData);
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                String key = key(cohort, metric);
+                QuantileSketch sketch = sketches.computeIfAbsent(key, k -> new QuantileSketch());
+                if (add) {
+                    sketch.add(value);
+                } else {
+                    sketch.remove(value);
+                }
+                dirty.add(key);
+                if (rebuilding) {
+                    pending.add(new Delta(key, value, add));
+                }
+            }
+        }
+    }
+/**
+     * Writes the sketches that changed since the last flush to the database.
+     */
+    public void flush() {
+
+        String query = "INSERT INTO public.\"percentile_sketches\" (cohort, metric, sketch, updated_at) VALUES (?, ?, ?, now()) " +
+                "ON CONFLICT (cohort, metric) DO UPDATE SET sketch = EXCLUDED.sketch, updated_at = EXCLUDED.updated_at";
+
+        List<String> keys = new ArrayList<>(dirty);
+        if (keys.isEmpty()) {
+            return;
+        }
+        dirty.removeAll(keys);
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            for (String key : keys) {
+                int separator = key.lastIndexOf('|');
+                statement.setString(1, key.substring(0, separator));
+                statement.setString(2, key.substring(separator + 1));
+                statement.setBytes(3, sketches.get(key).toBytes());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            dirty.addAll(keys);
+            e.printStackTrace();
+        }
+    }
+/**
+     * Rebuilds every sketch from the health_data table and stores the result.
+     */
+    public void rebuild() {
+
+        String query = "SELECT user_id, steps, hours_of_sleep, heart_rate FROM public.\"health_data\"";
+
+        rebuild(query, statement -> {
+        }, key -> true, userId -> DoctorPatientCache.getInstance().getDoctors(userId));
+    }
+/**
+     * Rebuilds the panel sketches of doctors whose patients changed from the health data of their current patients,
+     * and stores the result. Values of patients who left a panel are dropped with the old sketches.
+     *
+     * @param doctorIds The IDs of the doctors.
+     */
+    public void rebuildDoctorCohorts(Collection<Integer> doctorIds) {
+
+        String query = "SELECT dp.doctor_id, hd.steps, hd.hours_of_sleep, hd.heart_rate FROM public.\"doctor_patient\" dp " +
+                "JOIN public.\"health_data\" hd ON hd.user_id = dp.patient_id WHERE dp.doctor_id = ANY(?)";
+
+        if (doctorIds.isEmpty()) {
+            return;
+        }
+        Set<String> cohorts = new HashSet<>();
+        for (int doctorId : doctorIds) {
+            cohorts.add(doctorCohort(doctorId));
+        }
+        rebuild(query, statement -> statement.setArray(1, statement.getConnection().createArrayOf("integer", doctorIds.toArray())),
+                key -> cohorts.contains(key.substring(0, key.lastIndexOf('|'))), null);
+    }
+
+    // Reads the rows of the query into fresh sketches and swaps them in for the keys the filter accepts.
+    // Without a doctor lookup, rows carry a doctor_id column and are added to that doctor's cohort only.
+    // Column indexes are resolved once per scan and every row is read into the same buffer.
+    private void rebuild(String query, StatementSetter setter, Predicate<String> replaces, DoctorLookup doctors) {
+
+        Map<String, QuantileSketch> rebuilt = new HashMap<>();
+
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                rebuilding = true;
+                pending.clear();
+            }
+            try (Connection con = DatabaseConnection.getCon()) {
+                // Reads health_data through a cursor, so the whole table is never held in memory at once
+                con.setAutoCommit(false);
+                try (PreparedStatement statement = con.prepareStatement(query)) {
+                    statement.setFetchSize(REBUILD_FETCH_SIZE);
+                    setter.set(statement);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        RowMappers.MetricColumns columns = new RowMappers.MetricColumns(rs, doctors == null ? "doctor_id" : "user_id", METRICS);
+                        double[] values = new double[METRICS.length];
+                        List<String> cohorts = new ArrayList<>();
+                        while (rs.next()) {
+                            int id = columns.getId(rs);
+                            columns.read(rs, values);
+                            cohorts.clear();
+                            if (doctors == null) {
+                                cohorts.add(doctorCohort(id));
+                            } else {
+                                cohorts.add(POPULATION);
+                                for (int doctorId : doctors.doctorsOf(id)) {
+                                    cohorts.add(doctorCohort(doctorId));
+                                }
+                            }
+                            for (String cohort : cohorts) {
+                                for (int m = 0; m < METRICS.length; m++) {
+                                    double value = values[m];
+                                    if (!Double.isNaN(value)) {
+                                        rebuilt.computeIfAbsent(key(cohort, METRICS[m]), k -> new QuantileSketch()).add(value);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    con.commit();
+                } finally {
+                    con.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                synchronized (this) {
+                    rebuilding = false;
+                    pending.clear();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                for (Delta delta : pending) {
+                    if (replaces.test(delta.key)) {
+                        QuantileSketch sketch = rebuilt.computeIfAbsent(delta.key, k -> new QuantileSketch());
+                        if (delta.add) {
+                            sketch.add(delta.value);
+                        } else {
+                            sketch.remove(delta.value);
+                        }
+                    }
+                }
+                rebuilding = false;
+                pending.clear();
+                // Cohorts left without values are stored empty, so their old values are not loaded again
+                for (String key : sketches.keySet()) {
+                    if (replaces.test(key)) {
+                        rebuilt.putIfAbsent(key, new QuantileSketch());
+                    }
+                }
+                sketches.keySet().removeIf(replaces);
+                sketches.putAll(rebuilt);
+                dirty.addAll(rebuilt.keySet());
+            }
+        }
+        flush();
+    }
+
+    private boolean loadSketches() {
+
+        String query = "SELECT cohort, metric, sketch FROM public.\"percentile_sketches\"";
+
+        boolean found = false;
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    sketches.put(key(rs.getString("cohort"), rs.getString("metric")), QuantileSketch.fromBytes(rs.getBytes("sketch")));
+                    found = true;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return found;
+    }
+
+    private static String key(String cohort, String metric) {
+        return cohort + "|" + metric;
+    }
+
+    private static double valueOf(String metric, HealthData healthData) {
+        switch (metric) {
+            case STEPS:
+                return healthData.getSteps();
+            case HOURS_OF_SLEEP:
+                return healthData.getHoursOfSleep();
+            default:
+                // A heart rate that was not recorded is left out of the sketches
+                return healthData.getHeartRate() == 0 ? Double.NaN : healthData.getHeartRate();
+        }
+    }
+
+    /**
+     * Binds the parameters of a rebuild query.
+     */
+    private interface StatementSetter {
+        void set(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Finds the doctors whose cohorts the health_data rows of a user belong to.
+     */
+    private interface DoctorLookup {
+        Set<Integer> doctorsOf(int userId);
+    }
+
+    /**
+     * A value applied to a sketch while a rebuild was reading health_data.
+     */
+    private static final class Delta {
+        private final String key;
+        private final double value;
+        private final boolean add;
+
+        private Delta(String key, double value, boolean add) {
+            this.key = key;
+            this.value = value;
+            this.add = add;
+        }
+    }
+}
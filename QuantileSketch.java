@@ -0,0 +1,192 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is a mergeable quantile sketch with a relative error guarantee, in the style of DDSketch.
+ * Positive values are counted in logarithmic buckets whose width grows with the value, so every
+ * quantile is answered within 1% of the true value using a few hundred counters per metric.
+ * Because buckets are plain counts, sketches can be merged exactly and values can be removed again
+ * when a health data entry is updated or deleted.
+ */
+
+public class QuantileSketch {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE = 1e-6;
+
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long totalCount;
+
+/**
+     * Adds a value to the sketch.
+     *
+     * @param value The value to add; values below zero are counted as zero.
+     */
+    public synchronized void add(double value) {
+        if (value < MIN_INDEXABLE) {
+            zeroCount++;
+        } else {
+            int index = indexOf(value);
+            ensureIndex(index);
+            counts[index - offset]++;
+        }
+        totalCount++;
+    }
+/**
+     * Removes a value that was previously added to the sketch.
+     *
+     * @param value The value to remove.
+     */
+    public synchronized void remove(double value) {
+        if (value < MIN_INDEXABLE) {
+            if (zeroCount > 0) {
+                zeroCount--;
+                totalCount--;
+            }
+            return;
+        }
+        int index = indexOf(value) - offset;
+        if (index >= 0 && index < counts.length && counts[index] > 0) {
+            counts[index]--;
+            totalCount--;
+        }
+    }
+/**
+     * Adds all values of another sketch to this one.
+     *
+     * @param other The sketch to merge in.
+     */
+    public void merge(QuantileSketch other) {
+        long[] otherCounts;
+        int otherOffset;
+        long otherZeroCount;
+        long otherTotal;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherOffset = other.offset;
+            otherZeroCount = other.zeroCount;
+            otherTotal = other.totalCount;
+        }
+        synchronized (this) {
+            for (int i = 0; i < otherCounts.length; i++) {
+                if (otherCounts[i] > 0) {
+                    ensureIndex(otherOffset + i);
+                    counts[otherOffset + i - offset] += otherCounts[i];
+                }
+            }
+            zeroCount += otherZeroCount;
+            totalCount += otherTotal;
+        }
+    }
+/**
+     * Gets the number of values in the sketch.
+     *
+     * @return The number of values.
+     */
+    public synchronized long getCount() {
+        return totalCount;
+    }
+/**
+     * Gets the approximate value at a quantile.
+     *
+     * @param quantile The quantile, from 0 to 1; for example 0.5 for the median.
+     * @return The approximate value, or NaN if the sketch is empty.
+     */
+    public synchronized double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+        }
+        if (totalCount == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (totalCount - 1));
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+            }
+        }
+        return 2 * Math.pow(GAMMA, offset + counts.length - 1) / (GAMMA + 1);
+    }
+/**
+     * Gets the approximate fraction of values that are at or below a value, which answers "how do I compare?".
+     *
+     * @param value The value to rank.
+     * @return The fraction of values at or below the value, from 0 to 1, or NaN if the sketch is empty.
+     */
+    public synchronized double getRank(double value) {
+        if (totalCount == 0) {
+            return Double.NaN;
+        }
+        long seen = zeroCount;
+        if (value >= MIN_INDEXABLE) {
+            int last = Math.min(indexOf(value) - offset, counts.length - 1);
+            for (int i = 0; i <= last; i++) {
+                seen += counts[i];
+            }
+        }
+        return (double) seen / totalCount;
+    }
+/**
+     * Serializes the sketch so it can be stored in the database.
+     *
+     * @return The sketch as a byte array.
+     */
+    public synchronized byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 8 + 4 + counts.length * 8);
+        buffer.putInt(offset);
+        buffer.putLong(zeroCount);
+        buffer.putLong(totalCount);
+        buffer.putInt(counts.length);
+        for (long count : counts) {
+            buffer.putLong(count);
+        }
+        return buffer.array();
+    }
+/**
+     * Restores a sketch serialized with toBytes.
+     *
+     * @param bytes The serialized sketch.
+     * @return The QuantileSketch object.
+     */
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.offset = buffer.getInt();
+        sketch.zeroCount = buffer.getLong();
+        sketch.totalCount = buffer.getLong();
+        sketch.counts = new long[buffer.getInt()];
+        for (int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = buffer.getLong();
+        }
+        return sketch;
+    }
+
+    private static int indexOf(double value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    private void ensureIndex(int index) {
+        if (counts.length == 0) {
+            counts = new long[16];
+            offset = index - 8;
+        } else if (index < offset) {
+            int grow = Math.max(offset - index, counts.length / 2);
+            long[] grown = new long[counts.length + grow];
+            System.arraycopy(counts, 0, grown, grow, counts.length);
+            counts = grown;
+            offset -= grow;
+        } else if (index >= offset + counts.length) {
+            int grow = Math.max(index - offset - counts.length + 1, counts.length / 2);
+            counts = Arrays.copyOf(counts, counts.length + grow);
+        }
+    }
+}
@@ -18,6 +18,7 @@ public class RecommendationSystem {
     private static final int MIN_STEPS = 10000;
     private static final double MIN_WATER_INTAKE = 64.0;
     private static final double MIN_HOURS_SLEEP = 7.0;
+    private static final int HEART_RATE_RISK_SPAN = 20;
 /**
      * Generates recommendations based on the provided health data.
      *
@@ -29,7 +30,9 @@ public class RecommendationSystem {
 
        // Analyze Heart Rate
         int heartRate = healthData.getHeartRate();
-        if (heartRate < MIN_HEART_RATE) {
+        if (heartRate == 0) {
+            // No heart rate was recorded that day
+        } else if (heartRate < MIN_HEART_RATE) {
             recommendations.add("Your heart rate is lower than the recommended range. " +
                     "Consider increasing your physical activity to improve your cardiovascular health.");
         } else if (heartRate > MAX_HEART_RATE){
@@ -66,6 +69,103 @@ public class RecommendationSystem {
 
         return recommendations;
     }
+/**
+     * Generates recommendations from the trend of a user's recent health data rather than a single day, without storing them.
+     * A value is mentioned when it missed its recommended range on at least half of the days with data.
+     *
+     * @param series The HealthSeries of the user's recent health data.
+     * @param startDate The first date of the period to analyze.
+     * @param endDate The last date of the period to analyze.
+     * @return A list of recommendations, empty if the period has no data or no value missed its range that often.
+     */
+    public List<String> generateTrendRecommendations(HealthSeries series, LocalDate startDate, LocalDate endDate) {
+        List<String> recommendations = new ArrayList<>();
+
+        int days = series.count(startDate, endDate);
+        if (days == 0) {
+            return recommendations;
+        }
+
+        int lowSteps = series.countBelow(HealthSeries.STEPS, MIN_STEPS, startDate, endDate);
+        if (lowSteps * 2 >= days) {
+            recommendations.add("You were under 10,000 steps on " + lowSteps + " of your last " + days + " recorded days, averaging " +
+                    String.format("%.0f", series.mean(HealthSeries.STEPS, startDate, endDate)) + " steps. Try to make walking a daily habit.");
+        }
+        int lowSleep = series.countBelow(HealthSeries.HOURS_OF_SLEEP, MIN_HOURS_SLEEP, startDate, endDate);
+        if (lowSleep * 2 >= days) {
+            recommendations.add("You slept less than " + MIN_HOURS_SLEEP + " hours on " + lowSleep + " of your last " + days + " recorded days, averaging " +
+                    String.format("%.1f", series.mean(HealthSeries.HOURS_OF_SLEEP, startDate, endDate)) + " hours. Consider a regular bedtime.");
+        }
+        int lowWater = series.countBelow(HealthSeries.WATER_INTAKE, MIN_WATER_INTAKE, startDate, endDate);
+        if (lowWater * 2 >= days) {
+            recommendations.add("You drank less than 64 ounces of water on " + lowWater + " of your last " + days + " recorded days. " +
+                    "Keeping a bottle at hand can help.");
+        }
+        int highHeartRate = days - series.countBelow(HealthSeries.HEART_RATE, MAX_HEART_RATE + 1, startDate, endDate);
+        if (highHeartRate * 2 >= days) {
+            recommendations.add("Your heart rate was above " + MAX_HEART_RATE + " on " + highHeartRate + " of your last " + days + " recorded days. " +
+                    "Consider discussing this with your doctor.");
+        }
+        return recommendations;
+    }
+/**
+     * Gets short descriptions of the health values that are outside the recommended ranges, without storing anything.
+     * This is used where many patients are shown at once, such as the doctor's panel dashboard.
+     *
+     * @param healthData The HealthData object to check.
+     * @return A list of flag descriptions, empty if every value is within its recommended range.
+     */
+    public List<String> getActiveFlags(HealthData healthData) {
+        List<String> flags = new ArrayList<>();
+
+        if (healthData.getHeartRate() == 0) {
+            // No heart rate was recorded that day
+        } else if (healthData.getHeartRate() < MIN_HEART_RATE) {
+            flags.add("Low heart rate");
+        } else if (healthData.getHeartRate() > MAX_HEART_RATE) {
+            flags.add("High heart rate");
+        }
+        if (healthData.getSteps() < MIN_STEPS) {
+            flags.add("Low steps");
+        }
+        if (healthData.getWaterIntake() < MIN_WATER_INTAKE) {
+            flags.add("Low water intake");
+        }
+        if (healthData.getHoursOfSleep() < MIN_HOURS_SLEEP) {
+            flags.add("Low sleep");
+        }
+        return flags;
+    }
+/**
+     * Calculates how far a health data entry is from the recommended ranges, as a penalty from 0 to 100.
+     * Each value contributes the fraction by which it misses its threshold, weighted by how much it matters
+     * for the patient's risk: heart rate weighs the most, then steps and sleep, then water intake.
+     *
+     * @param healthData The HealthData object to score.
+     * @return The risk penalty of the entry, 0 when every value is within its recommended range.
+     */
+    public double calculateRiskPenalty(HealthData healthData) {
+
+        double heartRateDistance = 0;
+        if (healthData.getHeartRate() == 0) {
+            // A heart rate that was not recorded adds no penalty
+        } else if (healthData.getHeartRate() < MIN_HEART_RATE) {
+            heartRateDistance = MIN_HEART_RATE - healthData.getHeartRate();
+        } else if (healthData.getHeartRate() > MAX_HEART_RATE) {
+            heartRateDistance = healthData.getHeartRate() - MAX_HEART_RATE;
+        }
+
+        double penalty = 3 * Math.min(1.0, heartRateDistance / HEART_RATE_RISK_SPAN)
+                + 2 * deficit(healthData.getSteps(), MIN_STEPS)
+                + 2 * deficit(healthData.getHoursOfSleep(), MIN_HOURS_SLEEP)
+                + deficit(healthData.getWaterIntake(), MIN_WATER_INTAKE);
+
+        return penalty / 8 * 100;
+    }
+
+    private static double deficit(double value, double minimum) {
+        return value >= minimum ? 0 : Math.min(1.0, (minimum - value) / minimum);
+    }
 /**
      * Stores user recommendations in the database.
      *
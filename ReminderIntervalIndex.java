@@ -0,0 +1,336 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is an in-memory index of medicine reminders by the interval from their start date to their end date.
+ * Reminders are kept in a treap ordered by start date, where every node also stores the latest end date in its
+ * subtree, so "which reminders are active on a date" only descends into subtrees that can hold a match. A second
+ * sorted set ordered by end date answers "which reminders end in the next N days" as a range scan. It is rebuilt
+ * from the database at startup and kept in sync by the writes of MedicineReminderManager, DoctorPortalDao and
+ * OverdueReminderSweeper.
+ */
+
+public class ReminderIntervalIndex {
+
+    private static final ReminderIntervalIndex INSTANCE = new ReminderIntervalIndex();
+
+    private final Map<Integer, Node> nodes = new HashMap<>();
+    private final Map<Integer, List<Node>> byUser = new HashMap<>();
+    private final NavigableSet<Long> byEndDate = new TreeSet<>();
+    private final Random priorities = new Random();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+
+    private ReminderIntervalIndex() {
+    }
+/**
+     * Gets the shared ReminderIntervalIndex instance.
+     *
+     * @return The ReminderIntervalIndex instance.
+     */
+    public static ReminderIntervalIndex getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Rebuilds the whole index from the medicine_reminders table.
+     */
+    public void rebuild() {
+
+        String query = "SELECT r.*, m.name AS medicine_name FROM public.\"medicine_reminders\" r " +
+                "JOIN public.\"medicines\" m ON m.medicine_id = r.medicine_id";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            lock.writeLock().lock();
+            try {
+                nodes.clear();
+                byUser.clear();
+                byEndDate.clear();
+                root = null;
+                RowMapper<MedicineReminder> mapper = RowMappers.MEDICINE_REMINDER.forResultSet(rs);
+                while (rs.next()) {
+                    insert(mapper.mapRow(rs));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Adds a stored reminder to the index, or replaces the indexed copy after the reminder was updated.
+     *
+     * @param reminder The MedicineReminder object as it is stored now.
+     */
+    public void put(MedicineReminder reminder) {
+        lock.writeLock().lock();
+        try {
+            delete(reminder.getId());
+            insert(copyOf(reminder));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+/**
+     * Removes a deleted reminder from the index.
+     *
+     * @param reminderId The ID of the deleted reminder.
+     */
+    public void remove(int reminderId) {
+        lock.writeLock().lock();
+        try {
+            delete(reminderId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+/**
+     * Removes every reminder of a user from the index.
+     *
+     * @param userId The ID of the user.
+     */
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> reminderIds = new ArrayList<>();
+            for (Node node : byUser.getOrDefault(userId, new ArrayList<>())) {
+                reminderIds.add(node.reminder.getId());
+            }
+            for (int reminderId : reminderIds) {
+                delete(reminderId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+/**
+     * Gets the reminders of a user that overlap a period, for example the period of a new prescription.
+     *
+     * @param userId The ID of the user.
+     * @param start The first day of the period.
+     * @param end The last day of the period.
+     * @return A list of MedicineReminder objects active on at least one day of the period.
+     */
+    public List<MedicineReminder> getOverlapping(int userId, LocalDate start, LocalDate end) {
+        List<MedicineReminder> overlapping = new ArrayList<>();
+        long first = start.toEpochDay();
+        long last = end.toEpochDay();
+        lock.readLock().lock();
+        try {
+            for (Node node : byUser.getOrDefault(userId, new ArrayList<>())) {
+                if (node.start <= last && node.end >= first) {
+                    overlapping.add(copyOf(node.reminder));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return overlapping;
+    }
+/**
+     * Gets the reminders active on a date, that is, started on or before the date and ending on or after it.
+     *
+     * @param date The date to check.
+     * @return A list of MedicineReminder objects ordered by start date.
+     */
+    public List<MedicineReminder> getActiveOn(LocalDate date) {
+        List<MedicineReminder> active = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            collectActive(root, date.toEpochDay(), active);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return active;
+    }
+/**
+     * Gets the reminders ending within a number of days from a date, the date itself included.
+     *
+     * @param from The first date of the range.
+     * @param days The number of days in the range.
+     * @return A list of MedicineReminder objects ordered by end date.
+     */
+    public List<MedicineReminder> getEndingWithin(LocalDate from, int days) {
+        List<MedicineReminder> ending = new ArrayList<>();
+        long first = from.toEpochDay();
+        lock.readLock().lock();
+        try {
+            for (long key : byEndDate.subSet(first << 32, true, (first + days) << 32, false)) {
+                ending.add(copyOf(nodes.get((int) key).reminder));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ending;
+    }
+/**
+     * Gets the number of indexed reminders.
+     *
+     * @return The number of reminders.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Visits the subtrees whose latest end date reaches the date, and stops going right once start dates pass it
+    private static void collectActive(Node node, long day, List<MedicineReminder> active) {
+        while (node != null && node.maxEnd >= day) {
+            collectActive(node.left, day, active);
+            if (node.start > day) {
+                return;
+            }
+            if (node.end >= day) {
+                active.add(copyOf(node.reminder));
+            }
+            node = node.right;
+        }
+    }
+
+    private void insert(MedicineReminder reminder) {
+        Node node = new Node(reminder, priorities.nextInt());
+        nodes.put(reminder.getId(), node);
+        byUser.computeIfAbsent(reminder.getUserId(), k -> new ArrayList<>()).add(node);
+        byEndDate.add(endKey(node));
+        root = insert(root, node);
+    }
+
+    private void delete(int reminderId) {
+        Node node = nodes.remove(reminderId);
+        if (node != null) {
+            List<Node> userNodes = byUser.get(node.reminder.getUserId());
+            userNodes.remove(node);
+            if (userNodes.isEmpty()) {
+                byUser.remove(node.reminder.getUserId());
+            }
+            byEndDate.remove(endKey(node));
+            root = delete(root, node);
+        }
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) {
+            return node;
+        }
+        if (node.compareTo(root) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) {
+                root = rotateRight(root);
+            }
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) {
+                root = rotateLeft(root);
+            }
+        }
+        root.update();
+        return root;
+    }
+
+    private static Node delete(Node root, Node node) {
+        if (root == null) {
+            return null;
+        }
+        if (root == node) {
+            if (root.left == null) {
+                return root.right;
+            }
+            if (root.right == null) {
+                return root.left;
+            }
+            if (root.left.priority > root.right.priority) {
+                root = rotateRight(root);
+                root.right = delete(root.right, node);
+            } else {
+                root = rotateLeft(root);
+                root.left = delete(root.left, node);
+            }
+        } else if (node.compareTo(root) < 0) {
+            root.left = delete(root.left, node);
+        } else {
+            root.right = delete(root.right, node);
+        }
+        root.update();
+        return root;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    private static long endKey(Node node) {
+        return (node.end << 32) | (node.reminder.getId() & 0xFFFFFFFFL);
+    }
+
+    private static MedicineReminder copyOf(MedicineReminder reminder) {
+        MedicineReminder copy = new MedicineReminder(reminder.getId(), reminder.getUserId(), reminder.getMedicineName(), reminder.getDosage(),
+                reminder.getSchedule(), reminder.getStartDate(), reminder.getEndDate());
+        copy.setVersion(reminder.getVersion());
+        copy.clearDirtyFields();
+        return copy;
+    }
+
+    /** A treap node, ordered by start date and reminder ID, with the latest end date of its subtree. */
+    private static final class Node implements Comparable<Node> {
+        private final MedicineReminder reminder;
+        private final long start;
+        private final long end;
+        private final int priority;
+        private long maxEnd;
+        private Node left;
+        private Node right;
+
+        private Node(MedicineReminder reminder, int priority) {
+            this.reminder = reminder;
+            this.start = reminder.getStartDate().toEpochDay();
+            this.end = reminder.getEndDate().toEpochDay();
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+
+        private void update() {
+            maxEnd = end;
+            if (left != null && left.maxEnd > maxEnd) {
+                maxEnd = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > maxEnd) {
+                maxEnd = right.maxEnd;
+            }
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            int order = Long.compare(start, other.start);
+            return order != 0 ? order : Integer.compare(reminder.getId(), other.reminder.getId());
+        }
+    }
+}
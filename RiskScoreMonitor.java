@@ -0,0 +1,148 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * This class keeps the composite risk score of every patient up to date as health data arrives.
+ * The score blends the risk penalty of the latest entry, taken from the RecommendationSystem thresholds,
+ * with an exponentially weighted trend of past penalties, so a patient who keeps missing the targets ranks
+ * above one with a single bad day. Each write updates the patient's row in patient_risk_scores in place,
+ * keeping the trend as it was before the latest date so a correction of that date can be applied again,
+ * and deletions rescore the patient from their history. The indexed score column lets doctors rank their
+ * patients without rescanning health data.
+ */
+
+public class RiskScoreMonitor implements HealthDataListener {
+
+    private static final double TREND_ALPHA = 0.3;
+    private static final double LATEST_WEIGHT = 0.5;
+    // The trend a new penalty is blended with: the stored trend, or for a correction of the latest date the trend before it
+    private static final String BASE_TREND = "CASE WHEN EXCLUDED.date = patient_risk_scores.date " +
+            "THEN COALESCE(patient_risk_scores.previous_trend, EXCLUDED.latest_penalty) ELSE patient_risk_scores.trend END";
+    private static final RiskScoreMonitor INSTANCE = new RiskScoreMonitor();
+
+    private RecommendationSystem recommendationSystem = new RecommendationSystem();
+
+    private RiskScoreMonitor() {
+    }
+/**
+     * Gets the shared RiskScoreMonitor instance.
+     *
+     * @return The RiskScoreMonitor instance.
+     */
+    public static RiskScoreMonitor getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Folds a created or updated health data entry into the patient's risk score.
+     * A correction of the latest scored date replaces that day's penalty instead of folding it a second time,
+     * and an entry moved to another date is rescored from the patient's history. Other entries older than the
+     * latest one already scored are ignored, so editing history does not disturb the trend.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    @Override
+    public void onHealthDataSaved(HealthData previous, HealthData current) {
+        if (previous != null && !previous.getDate().equals(current.getDate())) {
+            recompute(current.getUserId());
+        } else {
+            updateScore(current.getUserId(), recommendationSystem.calculateRiskPenalty(current), current.getDate());
+        }
+    }
+/**
+     * Rescores a patient from their history after one of their entries was deleted.
+     *
+     * @param previous The HealthData object as it was stored before the deletion.
+     */
+    @Override
+    public void onHealthDataDeleted(HealthData previous) {
+        recompute(previous.getUserId());
+    }
+/**
+     * Folds a risk penalty into a patient's stored risk score. A penalty for the date already scored replaces
+     * that day's penalty, using the trend as it was before the day was folded in.
+     *
+     * @param userId The ID of the patient.
+     * @param penalty The risk penalty of the new health data entry.
+     * @param date The date of the new health data entry.
+     */
+    public void updateScore(int userId, double penalty, LocalDate date) {
+
+        String query = "INSERT INTO public.\"patient_risk_scores\" (user_id, score, latest_penalty, trend, previous_trend, date) VALUES (?, ?, ?, ?, NULL, ?) " +
+                "ON CONFLICT (user_id) DO UPDATE SET " +
+                "previous_trend = CASE WHEN EXCLUDED.date = patient_risk_scores.date THEN patient_risk_scores.previous_trend ELSE patient_risk_scores.trend END, " +
+                "trend = ? * EXCLUDED.latest_penalty + (1 - ?) * " + BASE_TREND + ", " +
+                "score = ? * EXCLUDED.latest_penalty + (1 - ?) * (? * EXCLUDED.latest_penalty + (1 - ?) * " + BASE_TREND + "), " +
+                "latest_penalty = EXCLUDED.latest_penalty, " +
+                "date = EXCLUDED.date " +
+                "WHERE EXCLUDED.date >= patient_risk_scores.date";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            statement.setDouble(2, penalty);
+            statement.setDouble(3, penalty);
+            statement.setDouble(4, penalty);
+            statement.setDate(5, java.sql.Date.valueOf(date));
+            statement.setDouble(6, TREND_ALPHA);
+            statement.setDouble(7, TREND_ALPHA);
+            statement.setDouble(8, LATEST_WEIGHT);
+            statement.setDouble(9, LATEST_WEIGHT);
+            statement.setDouble(10, TREND_ALPHA);
+            statement.setDouble(11, TREND_ALPHA);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+/**
+     * Recomputes a patient's risk score by folding their whole history in date order, and removes the score if no
+     * health data is left.
+     *
+     * @param userId The ID of the patient.
+     */
+    public void recompute(int userId) {
+
+        double trend = Double.NaN;
+        double previousTrend = Double.NaN;
+        double latestPenalty = 0;
+        LocalDate latestDate = null;
+        try (Stream<HealthData> history = new HealthDataDao().streamHealthDataByUserId(userId)) {
+            Iterator<HealthData> entries = history.iterator();
+            while (entries.hasNext()) {
+                HealthData healthData = entries.next();
+                latestPenalty = recommendationSystem.calculateRiskPenalty(healthData);
+                previousTrend = trend;
+                trend = Double.isNaN(trend) ? latestPenalty : TREND_ALPHA * latestPenalty + (1 - TREND_ALPHA) * trend;
+                latestDate = healthData.getDate();
+            }
+        }
+
+        String delete = "DELETE FROM public.\"patient_risk_scores\" WHERE user_id = ?";
+        String upsert = "INSERT INTO public.\"patient_risk_scores\" (user_id, score, latest_penalty, trend, previous_trend, date) VALUES (?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (user_id) DO UPDATE SET score = EXCLUDED.score, latest_penalty = EXCLUDED.latest_penalty, " +
+                "trend = EXCLUDED.trend, previous_trend = EXCLUDED.previous_trend, date = EXCLUDED.date";
+
+        boolean empty = latestDate == null;
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(empty ? delete : upsert)) {
+            statement.setInt(1, userId);
+            if (!empty) {
+                statement.setDouble(2, LATEST_WEIGHT * latestPenalty + (1 - LATEST_WEIGHT) * trend);
+                statement.setDouble(3, latestPenalty);
+                statement.setDouble(4, trend);
+                if (Double.isNaN(previousTrend)) {
+                    statement.setNull(5, Types.NUMERIC);
+                } else {
+                    statement.setDouble(5, previousTrend);
+                }
+                statement.setDate(6, java.sql.Date.valueOf(latestDate));
+            }
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import java.sql.*;
+
+/**
+ * This interface maps the current row of a ResultSet to an object. A RowMapper is created by a RowMapperFactory
+ * for one ResultSet and reads its columns by index, so it must not be used with another ResultSet.
+ *
+ * @param <T> The type of the mapped objects.
+ */
+
+@FunctionalInterface
+public interface RowMapper<T> {
+/**
+     * Maps the current row.
+     *
+     * @param rs The ResultSet positioned on a row.
+     * @return The mapped object.
+     * @throws SQLException If a column cannot be read.
+     */
+    T mapRow(ResultSet rs) throws SQLException;
+}
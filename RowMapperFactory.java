@@ -0,0 +1,48 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This interface creates RowMappers for a query result. The factory resolves the column indexes from the
+ * ResultSet metadata once, and the RowMapper it returns reads every row by index into primitives,
+ * instead of looking each column up by name on every row.
+ *
+ * @param <T> The type of the mapped objects.
+ */
+
+@FunctionalInterface
+public interface RowMapperFactory<T> {
+/**
+     * Creates a RowMapper for a ResultSet, resolving the column indexes it reads.
+     *
+     * @param rs The ResultSet to map.
+     * @return A RowMapper bound to the ResultSet.
+     * @throws SQLException If a required column is missing.
+     */
+    RowMapper<T> forResultSet(ResultSet rs) throws SQLException;
+/**
+     * Maps every remaining row of a ResultSet.
+     *
+     * @param rs The ResultSet to map.
+     * @return A list of the mapped objects, in row order.
+     * @throws SQLException If a row cannot be read.
+     */
+    default List<T> mapAll(ResultSet rs) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        RowMapper<T> mapper = forResultSet(rs);
+        while (rs.next()) {
+            rows.add(mapper.mapRow(rs));
+        }
+        return rows;
+    }
+/**
+     * Maps the next row of a ResultSet, if there is one.
+     *
+     * @param rs The ResultSet to map.
+     * @return The mapped object, or null if the ResultSet has no more rows.
+     * @throws SQLException If the row cannot be read.
+     */
+    default T mapFirst(ResultSet rs) throws SQLException {
+        return rs.next() ? forResultSet(rs).mapRow(rs) : null;
+    }
+}
@@ -0,0 +1,279 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.function.UnaryOperator;
+
+/**
+ * This class holds the RowMapperFactory of every type the DAOs load. Each factory resolves its column indexes once
+ * per ResultSet, and its RowMapper reads the columns by index straight into primitives and passes them to the
+ * constructor, so mapping a large scan allocates nothing per row besides the mapped object and its date.
+ * A query may select the columns in any order and may leave out the optional version column.
+ */
+
+public final class RowMappers {
+
+    /** Maps health_data rows, setting the version when it is selected, as clean objects. */
+    public static final RowMapperFactory<HealthData> HEALTH_DATA = rs -> {
+        int id = rs.findColumn("health_data_id");
+        int userId = rs.findColumn("user_id");
+        int weight = rs.findColumn("weight");
+        int height = rs.findColumn("height");
+        int steps = rs.findColumn("steps");
+        int heartRate = rs.findColumn("heart_rate");
+        int waterIntake = rs.findColumn("water_intake");
+        int hoursOfSleep = rs.findColumn("hours_of_sleep");
+        int date = rs.findColumn("date");
+        int version = optionalColumn(rs, "version");
+        return row -> {
+            HealthData healthData = new HealthData(row.getInt(id), row.getInt(userId), row.getDouble(weight), row.getDouble(height),
+                    row.getInt(steps), row.getInt(heartRate), row.getDouble(waterIntake), row.getDouble(hoursOfSleep), localDate(row, date));
+            if (version > 0) {
+                healthData.setVersion(row.getInt(version));
+            }
+            healthData.clearDirtyFields();
+            return healthData;
+        };
+    };
+
+    /** Maps medicine_reminders rows joined with the medicine name as medicine_name, as clean objects. */
+    public static final RowMapperFactory<MedicineReminder> MEDICINE_REMINDER = rs -> {
+        int id = rs.findColumn("reminder_id");
+        int userId = rs.findColumn("user_id");
+        int medicineName = rs.findColumn("medicine_name");
+        int dosage = rs.findColumn("dosage");
+        int schedule = rs.findColumn("schedule");
+        int startDate = rs.findColumn("start_date");
+        int endDate = rs.findColumn("end_date");
+        int version = optionalColumn(rs, "version");
+        return row -> {
+            MedicineReminder reminder = new MedicineReminder(row.getInt(id), row.getInt(userId), row.getString(medicineName), row.getString(dosage),
+                    row.getString(schedule), localDate(row, startDate), localDate(row, endDate));
+            if (version > 0) {
+                reminder.setVersion(row.getInt(version));
+            }
+            reminder.clearDirtyFields();
+            return reminder;
+        };
+    };
+
+    /** Maps anomaly_alerts rows. */
+    public static final RowMapperFactory<AnomalyAlert> ANOMALY_ALERT = rs -> {
+        int id = rs.findColumn("alert_id");
+        int userId = rs.findColumn("user_id");
+        int metric = rs.findColumn("metric");
+        int value = rs.findColumn("value");
+        int baseline = rs.findColumn("baseline");
+        int zScore = rs.findColumn("z_score");
+        int date = rs.findColumn("date");
+        return row -> new AnomalyAlert(row.getInt(id), row.getInt(userId), row.getString(metric), row.getDouble(value),
+                row.getDouble(baseline), row.getDouble(zScore), localDate(row, date));
+    };
+
+    /** Maps full users rows, password hash included; only for login and profile edits. */
+    public static final RowMapperFactory<User> USER = rs -> {
+        int id = rs.findColumn("user_id");
+        int firstName = rs.findColumn("first_name");
+        int lastName = rs.findColumn("last_name");
+        int email = rs.findColumn("email");
+        int password = rs.findColumn("password");
+        int isDoctor = rs.findColumn("is_doctor");
+        return row -> new User(row.getInt(id), row.getString(firstName), row.getString(lastName), row.getString(email),
+                row.getString(password), row.getBoolean(isDoctor));
+    };
+
+    /** Maps doctors rows joined with the full users row of the doctor. */
+    public static final RowMapperFactory<Doctor> DOCTOR = rs -> {
+        RowMapper<User> user = USER.forResultSet(rs);
+        int medicalLicenseNumber = rs.findColumn("medical_license_number");
+        int specialization = rs.findColumn("specialization");
+        return row -> {
+            User doctor = user.mapRow(row);
+            return new Doctor(doctor.getId(), doctor.getFirstName(), doctor.getLastName(), doctor.getEmail(), doctor.getPassword(),
+                    doctor.isDoctor(), row.getString(medicalLicenseNumber), row.getString(specialization));
+        };
+    };
+
+    /** Maps the user_id, first_name, last_name and email columns of users rows. */
+    public static final RowMapperFactory<UserSummary> USER_SUMMARY = rs -> {
+        int id = rs.findColumn("user_id");
+        int firstName = rs.findColumn("first_name");
+        int lastName = rs.findColumn("last_name");
+        int email = rs.findColumn("email");
+        return row -> new UserSummary(row.getInt(id), row.getString(firstName), row.getString(lastName), row.getString(email));
+    };
+
+    /** Maps patient_risk_scores rows joined with the patient's user_id, first_name and last_name. */
+    public static final RowMapperFactory<PatientRisk> PATIENT_RISK = rs -> {
+        int id = rs.findColumn("user_id");
+        int firstName = rs.findColumn("first_name");
+        int lastName = rs.findColumn("last_name");
+        int score = rs.findColumn("score");
+        int date = rs.findColumn("date");
+        return row -> new PatientRisk(row.getInt(id), row.getString(firstName), row.getString(lastName), row.getDouble(score), localDate(row, date));
+    };
+
+    /** Maps the rows of the doctor panel query; the latest health data is null where the patient has no recent entry. */
+    public static final RowMapperFactory<PatientPanelSummary> PATIENT_PANEL_SUMMARY = rs -> {
+        RowMapper<HealthData> latest = HEALTH_DATA.forResultSet(rs);
+        int latestDate = rs.findColumn("date");
+        int id = rs.findColumn("user_id");
+        int firstName = rs.findColumn("first_name");
+        int lastName = rs.findColumn("last_name");
+        int records = rs.findColumn("records_7d");
+        int steps = rs.findColumn("avg_steps_7d");
+        int heartRate = rs.findColumn("avg_heart_rate_7d");
+        int waterIntake = rs.findColumn("avg_water_intake_7d");
+        int hoursOfSleep = rs.findColumn("avg_hours_of_sleep_7d");
+        int alerts = rs.findColumn("alert_count");
+        return row -> new PatientPanelSummary(row.getInt(id), row.getString(firstName), row.getString(lastName),
+                row.getDate(latestDate) == null ? null : latest.mapRow(row), row.getInt(records), row.getDouble(steps),
+                row.getDouble(heartRate), row.getDouble(waterIntake), row.getDouble(hoursOfSleep), row.getInt(alerts));
+    };
+
+    private RowMappers() {
+    }
+/**
+     * Maps rollup rows with a period_start column to HealthDataSummary objects of one user.
+     *
+     * @param userId The ID of the user the rows belong to.
+     * @param periodEnd Gives the last date of the period starting on a date.
+     * @return The RowMapperFactory.
+     */
+    public static RowMapperFactory<HealthDataSummary> healthDataSummary(int userId, UnaryOperator<LocalDate> periodEnd) {
+        return rs -> {
+            int periodStart = rs.findColumn("period_start");
+            SummaryColumns columns = new SummaryColumns(rs);
+            return row -> {
+                LocalDate start = localDate(row, periodStart);
+                return columns.map(row, userId, start, periodEnd.apply(start));
+            };
+        };
+    }
+/**
+     * Maps a row of rollup totals to a HealthDataSummary covering a fixed date range.
+     *
+     * @param userId The ID of the user.
+     * @param startDate The first date of the range.
+     * @param endDate The last date of the range.
+     * @return The RowMapperFactory.
+     */
+    public static RowMapperFactory<HealthDataSummary> healthDataSummary(int userId, LocalDate startDate, LocalDate endDate) {
+        return rs -> {
+            SummaryColumns columns = new SummaryColumns(rs);
+            return row -> columns.map(row, userId, startDate, endDate);
+        };
+    }
+
+/**
+     * Appends health_data rows to a HealthSeries.Builder. The mapper reads every column by index straight into the
+     * builder's arrays and returns the builder, so reading a history allocates no HealthData objects.
+     *
+     * @param builder The Builder the rows are appended to, in the order they are mapped.
+     * @return The RowMapperFactory.
+     */
+    public static RowMapperFactory<HealthSeries.Builder> healthSeries(HealthSeries.Builder builder) {
+        return rs -> {
+            int id = rs.findColumn("health_data_id");
+            int date = rs.findColumn("date");
+            int steps = rs.findColumn("steps");
+            int heartRate = rs.findColumn("heart_rate");
+            int weight = rs.findColumn("weight");
+            int height = rs.findColumn("height");
+            int waterIntake = rs.findColumn("water_intake");
+            int hoursOfSleep = rs.findColumn("hours_of_sleep");
+            return row -> builder.add(row.getInt(id), (int) row.getDate(date).toLocalDate().toEpochDay(), row.getInt(steps),
+                    row.getInt(heartRate), row.getDouble(weight), row.getDouble(height), row.getDouble(waterIntake), row.getDouble(hoursOfSleep));
+        };
+    }
+
+    private static int optionalColumn(ResultSet rs, String label) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (metaData.getColumnLabel(i).equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static LocalDate localDate(ResultSet rs, int column) throws SQLException {
+        Date date = rs.getDate(column);
+        return date == null ? null : date.toLocalDate();
+    }
+
+    /**
+     * The column indexes of a scan over health metrics, such as the percentile sketch and cohort index rebuilds,
+     * resolved once per ResultSet. Rows are read by index into primitives and a buffer the caller reuses for every
+     * row, so a scan of the whole health_data table allocates nothing per row.
+     */
+    public static final class MetricColumns {
+        private final int id;
+        private final int[] metrics;
+
+/**
+         * Resolves the columns of a ResultSet.
+         *
+         * @param rs The ResultSet to read.
+         * @param idColumn The name of the column holding the user or doctor ID of each row.
+         * @param metrics The names of the metric columns, in the order read fills the buffer.
+         * @throws SQLException If a column is missing.
+         */
+        public MetricColumns(ResultSet rs, String idColumn, String... metrics) throws SQLException {
+            id = rs.findColumn(idColumn);
+            this.metrics = new int[metrics.length];
+            for (int i = 0; i < metrics.length; i++) {
+                this.metrics[i] = rs.findColumn(metrics[i]);
+            }
+        }
+/**
+         * Reads the ID of the current row.
+         *
+         * @param row The ResultSet positioned on a row.
+         * @return The user or doctor ID.
+         * @throws SQLException If the column cannot be read.
+         */
+        public int getId(ResultSet row) throws SQLException {
+            return row.getInt(id);
+        }
+/**
+         * Reads the metrics of the current row into a buffer.
+         *
+         * @param row The ResultSet positioned on a row.
+         * @param values The buffer, at least as long as the metric list; a NULL metric is stored as NaN.
+         * @throws SQLException If a column cannot be read.
+         */
+        public void read(ResultSet row, double[] values) throws SQLException {
+            for (int i = 0; i < metrics.length; i++) {
+                double value = row.getDouble(metrics[i]);
+                values[i] = row.wasNull() ? Double.NaN : value;
+            }
+        }
+    }
+
+    /** The column indexes of the rollup totals. */
+    private static final class SummaryColumns {
+        private final int recordCount;
+        private final int stepsTotal;
+        private final int heartRateTotal;
+        private final int heartRateCount;
+        private final int waterIntakeTotal;
+        private final int hoursOfSleepTotal;
+        private final int weightTotal;
+        private final int weightCount;
+
+        private SummaryColumns(ResultSet rs) throws SQLException {
+            recordCount = rs.findColumn("record_count");
+            stepsTotal = rs.findColumn("steps_total");
+            heartRateTotal = rs.findColumn("heart_rate_total");
+            heartRateCount = rs.findColumn("heart_rate_count");
+            waterIntakeTotal = rs.findColumn("water_intake_total");
+            hoursOfSleepTotal = rs.findColumn("hours_of_sleep_total");
+            weightTotal = rs.findColumn("weight_total");
+            weightCount = rs.findColumn("weight_count");
+        }
+
+        private HealthDataSummary map(ResultSet row, int userId, LocalDate startDate, LocalDate endDate) throws SQLException {
+            return new HealthDataSummary(userId, startDate, endDate, row.getInt(recordCount), row.getLong(stepsTotal), row.getLong(heartRateTotal),
+                    row.getInt(heartRateCount), row.getDouble(waterIntakeTotal), row.getDouble(hoursOfSleepTotal), row.getDouble(weightTotal), row.getInt(weightCount));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * This class compares mapping query rows by column name on every row, as the DAOs and the rebuild scans did before,
+ * with resolving the column indexes once per ResultSet. Both read the same InMemoryResultSet, which looks labels up
+ * the way the PostgreSQL driver does and allocates nothing itself, so the time and the bytes allocated per row are
+ * those of the mapping. Two scans are measured: health_data rows mapped to HealthData objects, and the metric scan
+ * of the percentile sketch rebuild, which reads into a reused buffer and should allocate nothing per row.
+ */
+
+public class RowMappingBenchmark {
+
+    private static final String[] HEALTH_DATA_COLUMNS = {"health_data_id", "user_id", "weight", "height", "steps", "heart_rate",
+            "water_intake", "hours_of_sleep", "date", "version"};
+    private static final String[] METRICS = {"steps", "hours_of_sleep", "heart_rate"};
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+/**
+     * Runs the benchmark.
+     *
+     * @param args Optional number of rows (default 1,000,000) and rounds (default 5).
+     * @throws SQLException If the ResultSet cannot be read.
+     */
+    public static void main(String[] args) throws SQLException {
+        int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Object[] columns = healthDataColumns(rowCount);
+        boolean[][] nulls = new boolean[HEALTH_DATA_COLUMNS.length][];
+        // About one row in five has no heart rate, as after a day logged without a wearable
+        nulls[5] = new boolean[rowCount];
+        Random random = new Random(7);
+        for (int i = 0; i < rowCount; i++) {
+            nulls[5][i] = random.nextInt(5) == 0;
+        }
+
+        System.out.println("Row mapping: " + rowCount + " rows, " + rounds + " round(s) after one warm-up round");
+
+        // The first round warms up the JIT and is not reported
+        for (int round = 0; round <= rounds; round++) {
+            String healthDataByName = measure(rowCount, () -> mapHealthDataByName(new InMemoryResultSet(HEALTH_DATA_COLUMNS, columns, nulls)));
+            String healthDataByIndex = measure(rowCount, () -> mapHealthDataByIndex(new InMemoryResultSet(HEALTH_DATA_COLUMNS, columns, nulls)));
+            String metricsByName = measure(rowCount, () -> scanMetricsByName(new InMemoryResultSet(HEALTH_DATA_COLUMNS, columns, nulls)));
+            String metricsByIndex = measure(rowCount, () -> scanMetricsByIndex(new InMemoryResultSet(HEALTH_DATA_COLUMNS, columns, nulls)));
+            if (round > 0) {
+                System.out.println("Round " + round + ":");
+                System.out.println("  HealthData by name   " + healthDataByName);
+                System.out.println("  HealthData by index  " + healthDataByIndex);
+                System.out.println("  metric scan by name  " + metricsByName);
+                System.out.println("  metric scan by index " + metricsByIndex);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private interface Scan {
+        long run() throws SQLException;
+    }
+
+    private static String measure(int rowCount, Scan scan) throws SQLException {
+        long thread = Thread.currentThread().getId();
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        sink += scan.run();
+        long nanos = System.nanoTime() - start;
+        allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+        return String.format("%6.1f ns/row, %6.1f bytes/row", (double) nanos / rowCount, (double) allocated / rowCount);
+    }
+
+    // The mapping HealthDataDao used before RowMappers: every column looked up by name on every row
+    private static long mapHealthDataByName(ResultSet rs) throws SQLException {
+        long count = 0;
+        while (rs.next()) {
+            HealthData healthData = new HealthData(rs.getInt("health_data_id"), rs.getInt("user_id"), rs.getDouble("weight"),
+                    rs.getDouble("height"), rs.getInt("steps"), rs.getInt("heart_rate"), rs.getDouble("water_intake"),
+                    rs.getDouble("hours_of_sleep"), rs.getDate("date").toLocalDate());
+            healthData.setVersion(rs.getInt("version"));
+            healthData.clearDirtyFields();
+            count += healthData.getSteps();
+        }
+        return count;
+    }
+
+    private static long mapHealthDataByIndex(ResultSet rs) throws SQLException {
+        long count = 0;
+        RowMapper<HealthData> mapper = RowMappers.HEALTH_DATA.forResultSet(rs);
+        while (rs.next()) {
+            count += mapper.mapRow(rs).getSteps();
+        }
+        return count;
+    }
+
+    // The loop PercentileSketches.rebuild used before RowMappers.MetricColumns
+    private static long scanMetricsByName(ResultSet rs) throws SQLException {
+        long count = 0;
+        while (rs.next()) {
+            count += rs.getInt("user_id");
+            for (String metric : METRICS) {
+                double value = rs.getDouble(metric);
+                if (!rs.wasNull()) {
+                    count += (long) value;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long scanMetricsByIndex(ResultSet rs) throws SQLException {
+        long count = 0;
+        RowMappers.MetricColumns columns = new RowMappers.MetricColumns(rs, "user_id", METRICS);
+        double[] values = new double[METRICS.length];
+        while (rs.next()) {
+            count += columns.getId(rs);
+            columns.read(rs, values);
+            for (double value : values) {
+                if (!Double.isNaN(value)) {
+                    count += (long) value;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static Object[] healthDataColumns(int rowCount) {
+        Random random = new Random(42);
+        Date[] days = new Date[365];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = Date.valueOf(LocalDate.of(2024, 1, 1).plusDays(i));
+        }
+        int[] ids = new int[rowCount];
+        int[] userIds = new int[rowCount];
+        double[] weights = new double[rowCount];
+        double[] heights = new double[rowCount];
+        int[] steps = new int[rowCount];
+        int[] heartRates = new int[rowCount];
+        double[] waterIntakes = new double[rowCount];
+        double[] hoursOfSleep = new double[rowCount];
+        Date[] dates = new Date[rowCount];
+        int[] versions = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            ids[i] = i + 1;
+            userIds[i] = 1 + random.nextInt(5000);
+            weights[i] = 60 + random.nextInt(40) + 0.5;
+            heights[i] = 150 + random.nextInt(50);
+            steps[i] = random.nextInt(15000);
+            heartRates[i] = 55 + random.nextInt(50);
+            waterIntakes[i] = random.nextInt(100);
+            hoursOfSleep[i] = 4 + random.nextInt(6) + 0.5;
+            dates[i] = days[i % days.length];
+            versions[i] = 1;
+        }
+        return new Object[] {ids, userIds, weights, heights, steps, heartRates, waterIntakes, hoursOfSleep, dates, versions};
+    }
+}
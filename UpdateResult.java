@@ -0,0 +1,21 @@
+/**
+ * This enum represents the outcome of a compare-and-set update of a versioned record.
+ */
+
+public enum UpdateResult {
+
+    /** The record was still at the expected version and has been updated. */
+    UPDATED,
+
+    /** The record was changed by someone else since it was loaded; it must be reloaded before editing again. */
+    CONFLICT,
+
+    /** The record no longer exists. */
+    NOT_FOUND,
+
+    /** The record has been archived and can no longer be changed. */
+    READ_ONLY,
+
+    /** The update could not be written, for example because the database could not be reached. */
+    FAILED
+}
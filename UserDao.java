@@ -56,32 +56,21 @@ public class UserDao {
      */
     public User getUserById(int id) { 
 
-        int user_id = 0;
-        String firstName = null;
-        String lastName = null;
-        String email = null;
-        String password = null;
-        boolean is_doctor = false;
-       
-        String query = "SELECT * FROM public.\"users\" WHERE user_id = ?";
+        String query = "SELECT * FROM public.\"users\" WHERE user_id = ? AND deleted_at IS NULL";
 
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
             statement.setInt(1, id);
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                user_id = rs.getInt("user_id");
-                firstName = rs.getString("first_name");
-                lastName = rs.getString("last_name");
-                email = rs.getString("email");
-                password = rs.getString("password");
-                is_doctor = rs.getBoolean("is_doctor");
+            try (ResultSet rs = statement.executeQuery()) {
+                User user = RowMappers.USER.mapFirst(rs);
+                if (user != null) {
+                    return user;
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return new User(user_id, firstName, lastName, email, password, is_doctor);
+        return new User(0, null, null, null, null, false);
     }
 
 /**
@@ -92,33 +81,63 @@ public class UserDao {
      */
     public User getUserByEmail(String email) { 
 
-        int user_id = 0;
-        String firstName = null;
-        String lastName = null;
-        String user_email = null;
-        String password = null;
-        boolean is_doctor = false;
+        String query = "SELECT * FROM public.\"users\" WHERE email = ? AND deleted_at IS NULL";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setString(1, email);
+            try (ResultSet rs = statement.executeQuery()) {
+                User user = RowMappers.USER.mapFirst(rs);
+                if (user != null) {
+                    return user;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new User(0, null, null, null, null, false);
+    }
+/**
+     * Retrieves the ID, name and email of a user, for display. Use getUserById where the full profile is needed.
+     *
+     * @param id The ID of the user to retrieve.
+     * @return The UserSummary object, or null if no user was found.
+     */
+    public UserSummary getUserSummaryById(int id) {
 
-  
-        String query = "SELECT * FROM public.\"users\" WHERE email = ?";
+        String query = "SELECT user_id, first_name, last_name, email FROM public.\"users\" WHERE user_id = ? AND deleted_at IS NULL";
 
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                return RowMappers.USER_SUMMARY.mapFirst(rs);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+/**
+     * Retrieves the ID, name and email of a user by email address, for display. Use getUserByEmail where the full profile is needed.
+     *
+     * @param email The email address of the user to retrieve.
+     * @return The UserSummary object, or null if no user was found.
+     */
+    public UserSummary getUserSummaryByEmail(String email) {
+
+        String query = "SELECT user_id, first_name, last_name, email FROM public.\"users\" WHERE email = ? AND deleted_at IS NULL";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
             statement.setString(1, email);
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                user_id = rs.getInt("user_id");
-                firstName = rs.getString("first_name");
-                lastName = rs.getString("last_name");
-                user_email = rs.getString("email");
-                password = rs.getString("password");
-                is_doctor = rs.getBoolean("is_doctor");
+            try (ResultSet rs = statement.executeQuery()) {
+                return RowMappers.USER_SUMMARY.mapFirst(rs);
             }
-        } catch (SQLException e){
+        } catch (SQLException e) {
             e.printStackTrace();
         }
-        return new User(user_id, firstName, lastName, user_email, password, is_doctor);
+        return null;
     }
 /**
      * Verifies the password for a given email address.
@@ -129,7 +148,7 @@ public class UserDao {
      */
     public boolean verifyPassword(String email, String password) {
 
-        String query = "SELECT password FROM public.\"users\" WHERE email = ?";
+        String query = "SELECT password FROM public.\"users\" WHERE email = ? AND deleted_at IS NULL";
         try (Connection con = DatabaseConnection.getCon();
             PreparedStatement statement = con.prepareStatement(query)) {
             statement.setString(1, email);
@@ -179,6 +198,7 @@ public class UserDao {
             statement.setInt(6, user.getId());
             int updatedRows = statement.executeUpdate();
             if (updatedRows != 0) {
+                PatientSearchIndex.getInstance().updatePatient(new UserSummary(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail()));
                 bool = true;
             }
         } catch (SQLException e) {
@@ -187,7 +207,8 @@ public class UserDao {
         return bool;
     }
 /**
-     * Deletes a user from the database based on the provided user ID.
+     * Deletes a user based on the provided user ID.
+     * The user is marked as deleted at once, so they can no longer log in, and their rows are purged in the background by AccountPurger.
      *
      * @param id The ID of the user to delete.
      * @return True if the user was successfully deleted, false otherwise.
@@ -196,19 +217,34 @@ public class UserDao {
         
         boolean bool = false;
 
-        String query = "DELETE FROM public.\"users\" WHERE user_id = ?";
+        String query = "UPDATE public.\"users\" SET deleted_at = now() WHERE user_id = ? AND deleted_at IS NULL";
+        String jobQuery = "INSERT INTO public.\"account_deletion_jobs\" (user_id) VALUES (?) ON CONFLICT (user_id) DO NOTHING";
 
-        try {
-            Connection con = DatabaseConnection.getCon();
-            PreparedStatement statement = con.prepareStatement(query);
-            statement.setInt(1, id);
-            int rowsUpdated = statement.executeUpdate();
-            if (rowsUpdated != 0){
-                bool = true;
+        try (Connection con = DatabaseConnection.getCon()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement statement = con.prepareStatement(query);
+                 PreparedStatement jobStatement = con.prepareStatement(jobQuery)) {
+                statement.setInt(1, id);
+                int rowsUpdated = statement.executeUpdate();
+                if (rowsUpdated != 0){
+                    jobStatement.setInt(1, id);
+                    jobStatement.executeUpdate();
+                    bool = true;
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        if (bool) {
+            PatientSearchIndex.getInstance().removeUser(id);
+            AccountPurger.getInstance().submit(id);
+        }
         return bool;
     }
 /**
@@ -0,0 +1,67 @@
+/**
+ * This class is a read-only projection of a user with only the ID, name and email, as shown in patient lists.
+ * It is loaded without the password hash and the other user columns; use User where a profile is edited.
+ */
+
+public class UserSummary {
+    private final int userId;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+
+/**
+     * Constructs a UserSummary object with the specified attributes.
+     *
+     * @param userId The ID of the user.
+     * @param firstName The first name of the user.
+     * @param lastName The last name of the user.
+     * @param email The email address of the user.
+     */
+    public UserSummary(int userId, String firstName, String lastName, String email) {
+        this.userId = userId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+    }
+/**
+     * Gets the ID of the user.
+     *
+     * @return The ID of the user.
+     */
+    public int getId() {
+        return userId;
+    }
+/**
+     * Gets the first name of the user.
+     *
+     * @return The first name of the user.
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+/**
+     * Gets the last name of the user.
+     *
+     * @return The last name of the user.
+     */
+    public String getLastName() {
+        return lastName;
+    }
+/**
+     * Gets the email address of the user.
+     *
+     * @return The email address of the user.
+     */
+    public String getEmail() {
+        return email;
+    }
+/**
+     * Returns a string representation of the UserSummary object.
+     *
+     * @return A string containing the name and email of the user.
+     */
+    @Override
+    public String toString() {
+        return (firstName + " " + lastName + " (" + email + ")");
+    }
+}
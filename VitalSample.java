@@ -0,0 +1,46 @@
+import java.time.Instant;
+
+/**
+ * This class represents one timestamped reading of a vital sign, such as a heart rate sample from a wearable.
+ */
+
+public class VitalSample {
+
+    private final Instant time;
+    private final double value;
+
+/**
+     * Constructs a VitalSample object.
+     *
+     * @param time The time the reading was taken.
+     * @param value The value of the reading.
+     */
+    public VitalSample(Instant time, double value) {
+        this.time = time;
+        this.value = value;
+    }
+/**
+     * Gets the time the reading was taken.
+     *
+     * @return The time of the reading.
+     */
+    public Instant getTime() {
+        return time;
+    }
+/**
+     * Gets the value of the reading.
+     *
+     * @return The value of the reading.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "VitalSample{" +
+                "time=" + time +
+                ", value=" + value +
+                '}';
+    }
+}
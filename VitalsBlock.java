@@ -0,0 +1,133 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is one compressed block of a vitals time series, encoded the way Gorilla encodes time series.
+ * Timestamps are stored as the difference between consecutive gaps (delta-of-delta), so samples arriving at a
+ * steady rate cost one bit each, and values are XOR-compressed against the previous value, so an unchanged
+ * reading also costs one bit. Samples can only be appended in time order.
+ */
+
+public class VitalsBlock {
+
+    private final BitOutput out = new BitOutput();
+    private final ColumnCodec.XorState values = new ColumnCodec.XorState();
+    private long firstTime;
+    private long lastTime;
+    private long previousDelta;
+    private int count;
+
+/**
+     * Appends a sample to the block.
+     *
+     * @param epochSecond The time of the sample in seconds since the epoch; must not be before the last sample.
+     * @param value The value of the sample.
+     */
+    public void append(long epochSecond, double value) {
+        if (count == 0) {
+            out.writeBits(epochSecond, 64);
+            firstTime = epochSecond;
+        } else {
+            if (epochSecond < lastTime) {
+                throw new IllegalArgumentException("Samples must be appended in time order.");
+            }
+            long delta = epochSecond - lastTime;
+            writeDeltaOfDelta(delta - previousDelta);
+            previousDelta = delta;
+        }
+        ColumnCodec.writeXorDouble(out, values, value);
+        lastTime = epochSecond;
+        count++;
+    }
+/**
+     * Gets the time of the first sample.
+     *
+     * @return The time of the first sample in seconds since the epoch.
+     */
+    public long getFirstTime() {
+        return firstTime;
+    }
+/**
+     * Gets the time of the last sample.
+     *
+     * @return The time of the last sample in seconds since the epoch.
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+/**
+     * Gets the number of samples in the block.
+     *
+     * @return The number of samples.
+     */
+    public int getCount() {
+        return count;
+    }
+/**
+     * Gets the encoded samples, as stored in the data column of vitals_blocks.
+     *
+     * @return The encoded block.
+     */
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+/**
+     * Decodes the samples of a block.
+     *
+     * @param data The encoded block.
+     * @param count The number of samples in the block.
+     * @return A list of VitalSample objects in time order.
+     */
+    public static List<VitalSample> decode(byte[] data, int count) {
+        List<VitalSample> samples = new ArrayList<>(count);
+        BitInput in = new BitInput(data);
+        ColumnCodec.XorState values = new ColumnCodec.XorState();
+        long time = 0;
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                time = in.readBits(64);
+            } else {
+                delta += readDeltaOfDelta(in);
+                time += delta;
+            }
+            samples.add(new VitalSample(Instant.ofEpochSecond(time), ColumnCodec.readXorDouble(in, values)));
+        }
+        return samples;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            out.writeBit(false);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            out.writeBits(0b10, 2);
+            out.writeBits(deltaOfDelta + 63, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            out.writeBits(0b110, 3);
+            out.writeBits(deltaOfDelta + 255, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(deltaOfDelta + 2047, 12);
+        } else {
+            out.writeBits(0b1111, 4);
+            out.writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        if (!in.readBit()) {
+            return in.readBits(7) - 63;
+        }
+        if (!in.readBit()) {
+            return in.readBits(9) - 255;
+        }
+        if (!in.readBit()) {
+            return in.readBits(12) - 2047;
+        }
+        return in.readBits(64);
+    }
+}
@@ -0,0 +1,86 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures how many vital sign samples per second the VitalsStore can ingest.
+ * Every simulated wearable sends one heart rate sample a minute for a day, and the users are spread over a number
+ * of threads, so blocks are appended, sealed and encoded the way they are in production. Only the in-memory path is
+ * measured: the sealer is not started, so no block is written to the database.
+ */
+
+public class VitalsIngestBenchmark {
+
+    private static final int SAMPLES_PER_DAY = 24 * 60;
+
+/**
+     * Runs the benchmark.
+     *
+     * @param args Optional number of users (default 2,000), threads (default the number of processors) and rounds (default 5).
+     * @throws Exception If a benchmark thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("Vitals ingest: " + users + " users x " + SAMPLES_PER_DAY + " samples a day, " + threads + " thread(s)");
+
+        // The first round warms up the JIT and is not reported
+        for (int round = 0; round <= rounds; round++) {
+            long start = System.nanoTime();
+            long stored = ingestDay(round, users, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (round > 0) {
+                System.out.println(String.format("Round %d: %,d samples in %.2f s, %,.0f samples/s", round, stored, seconds, stored / seconds));
+            }
+        }
+
+        VitalsBlock block = new VitalsBlock();
+        Random random = new Random(42);
+        long time = Instant.parse("2024-03-01T00:00:00Z").getEpochSecond();
+        for (int i = 0; i < 120; i++) {
+            block.append(time + i * 60L, 60 + random.nextInt(5));
+        }
+        System.out.println(String.format("Two-hour block of 120 samples: %d bytes, %.2f bytes/sample", block.toByteArray().length,
+                block.toByteArray().length / 120.0));
+    }
+
+    // Appends one day of minute samples per user; each round uses a later day so the series keep growing in time order
+    private static long ingestDay(int round, int users, int threads) throws Exception {
+        VitalsStore store = VitalsStore.getInstance();
+        long dayStart = Instant.parse("2024-03-01T00:00:00Z").getEpochSecond() + round * 86_400L;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            results.add(executor.submit(() -> {
+                Random random = new Random(first);
+                long stored = 0;
+                for (int userId = first + 1; userId <= users; userId += threads) {
+                    double heartRate = 60 + random.nextInt(20);
+                    for (int minute = 0; minute < SAMPLES_PER_DAY; minute++) {
+                        heartRate += random.nextInt(3) - 1;
+                        if (store.append(userId, VitalsStore.HEART_RATE, Instant.ofEpochSecond(dayStart + minute * 60L), heartRate)) {
+                            stored++;
+                        }
+                    }
+                }
+                return stored;
+            }));
+        }
+        long stored = 0;
+        for (Future<Long> result : results) {
+            stored += result.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return stored;
+    }
+}
@@ -0,0 +1,532 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class stores high-frequency vital sign samples, such as a heart rate reading every minute from a wearable.
+ * Samples are appended to an open VitalsBlock per user and vital that is kept in memory, and every block is sealed
+ * into the vitals_blocks table once its two-hour window has passed, so a day of minute samples is twelve small
+ * rows instead of 1,440. Once a day ends, its heart rate samples are averaged into the user's daily HealthData entry.
+ * Samples reach the store through importSamples, which reads the CSV export of a wearable, or append.
+ */
+
+public class VitalsStore implements HealthDataListener {
+
+    public static final String HEART_RATE = "heart_rate";
+
+    private static final long BLOCK_WINDOW_SECONDS = 2 * 60 * 60;
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+    private static final String INSERT_BLOCK = "INSERT INTO public.\"vitals_blocks\" (user_id, vital, start_time, end_time, sample_count, data) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final VitalsStore INSTANCE = new VitalsStore();
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Queue<SealedBlock> unsaved = new ConcurrentLinkedQueue<>();
+    // Held for writing while saved blocks move from unsaved to the table, so readers never see a block twice or not at all
+    private final ReadWriteLock saveLock = new ReentrantReadWriteLock();
+    private final HealthDataDao healthDataDao = new HealthDataDao();
+    // The first day whose heart rates have not been averaged into the daily entries yet
+    private LocalDate lastAggregatedDay = LocalDate.now();
+    private volatile boolean started;
+    private ScheduledExecutorService sealer;
+
+    private VitalsStore() {
+    }
+/**
+     * Gets the shared VitalsStore instance.
+     *
+     * @return The VitalsStore instance.
+     */
+    public static VitalsStore getInstance() {
+        return INSTANCE;
+    }
+/**
+     * Starts sealing finished blocks every minute in the background, and seals all open blocks when the application exits.
+     * Days that ended while the application was not running, from the day of the last stored block on, are averaged
+     * into the daily entries by the first pass, and from now on new series continue after their last stored sample.
+     */
+    public synchronized void start() {
+        if (sealer == null) {
+            lastAggregatedDay = firstUnaggregatedDay();
+            started = true;
+            sealer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "vitals-block-sealer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sealer.scheduleAtFixedRate(this::sealFinishedBlocks, 1, 1, TimeUnit.MINUTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "vitals-store-flush"));
+        }
+    }
+/**
+     * Appends a sample to the series of a user and vital.
+     *
+     * @param userId The ID of the user.
+     * @param vital The name of the vital, for example HEART_RATE.
+     * @param time The time the sample was taken.
+     * @param value The value of the sample.
+     * @return true if the sample was stored, false if it is not newer than the last stored sample of the series.
+     */
+    public boolean append(int userId, String vital, Instant time, double value) {
+        String key = key(userId, vital);
+        Series current = series.get(key);
+        if (current == null) {
+            Series created = new Series(userId, vital, started ? lastStoredTime(userId, vital) : Long.MIN_VALUE);
+            current = series.putIfAbsent(key, created);
+            if (current == null) {
+                current = created;
+            }
+        }
+        long epochSecond = time.getEpochSecond();
+        synchronized (current) {
+            if (epochSecond <= current.lastTime) {
+                return false;
+            }
+            if (current.block.getCount() > 0 && windowOf(epochSecond) != windowOf(current.block.getFirstTime())) {
+                seal(current);
+            }
+            current.block.append(epochSecond, value);
+            current.lastTime = epochSecond;
+        }
+        return true;
+    }
+/**
+     * Appends the samples of a wearable export file to the series of a user and vital.
+     * The file is a CSV file with a header line and one "time,value" line per sample, where time is an
+     * ISO-8601 instant such as 2024-03-01T08:15:00Z. Samples at or before the last stored sample of the series are
+     * skipped, also when that sample was stored before a restart, so importing the same file again stores nothing.
+     * Heart rate samples of days that have already ended are averaged into the daily HealthData entries straight away.
+     *
+     * @param userId The ID of the user.
+     * @param vital The name of the vital, for example HEART_RATE.
+     * @param file The path of the CSV file.
+     * @return The number of samples stored.
+     * @throws IOException If the file could not be read or a line could not be parsed.
+     */
+    public int importSamples(int userId, String vital, Path file) throws IOException {
+        int stored = 0;
+        SortedSet<LocalDate> endedDays = new TreeSet<>();
+        LocalDate today = LocalDate.now();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                try {
+                    Instant time = Instant.parse(fields[0].trim());
+                    if (append(userId, vital, time, Double.parseDouble(fields[1].trim()))) {
+                        stored++;
+                        LocalDate day = time.atZone(ZoneId.systemDefault()).toLocalDate();
+                        if (day.isBefore(today)) {
+                            endedDays.add(day);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Line " + lineNumber + " of " + file + " is not a valid sample: " + line, e);
+                }
+            }
+        }
+        if (HEART_RATE.equals(vital) && !endedDays.isEmpty()) {
+            flush();
+            for (LocalDate day : endedDays) {
+                applyDailyHeartRate(userId, day);
+            }
+        }
+        return stored;
+    }
+/**
+     * Gets the samples of a user and vital within a time range, from both sealed blocks and the open block.
+     *
+     * @param userId The ID of the user.
+     * @param vital The name of the vital.
+     * @param from The start of the range, inclusive.
+     * @param to The end of the range, inclusive.
+     * @return A list of VitalSample objects in time order.
+     */
+    public List<VitalSample> getSamples(int userId, String vital, Instant from, Instant to) {
+
+        List<VitalSample> samples = new ArrayList<>();
+
+        String query = "SELECT sample_count, data FROM public.\"vitals_blocks\" " +
+                "WHERE user_id = ? AND vital = ? AND end_time >= ? AND start_time <= ? ORDER BY start_time";
+
+        saveLock.readLock().lock();
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            statement.setString(2, vital);
+            statement.setTimestamp(3, Timestamp.from(from));
+            statement.setTimestamp(4, Timestamp.from(to));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    addInRange(samples, VitalsBlock.decode(rs.getBytes("data"), rs.getInt("sample_count")), from, to);
+                }
+            }
+
+            // The open block is read under the series lock together with unsaved, so a block sealed meanwhile is seen once
+            Series current = series.get(key(userId, vital));
+            if (current != null) {
+                synchronized (current) {
+                    addUnsaved(samples, userId, vital, from, to);
+                    addInRange(samples, VitalsBlock.decode(current.block.toByteArray(), current.block.getCount()), from, to);
+                }
+            } else {
+                addUnsaved(samples, userId, vital, from, to);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            saveLock.readLock().unlock();
+        }
+        samples.sort(Comparator.comparing(VitalSample::getTime));
+        return samples;
+    }
+/**
+     * Downsamples the samples of a user and vital within a time range to the average of each bucket.
+     *
+     * @param userId The ID of the user.
+     * @param vital The name of the vital.
+     * @param from The start of the range, inclusive.
+     * @param to The end of the range, inclusive.
+     * @param bucket The length of each bucket, for example one hour.
+     * @return A list of VitalSample objects, one per non-empty bucket, timed at the start of the bucket.
+     */
+    public List<VitalSample> downsample(int userId, String vital, Instant from, Instant to, Duration bucket) {
+        List<VitalSample> averages = new ArrayList<>();
+        long bucketSeconds = bucket.getSeconds();
+        long bucketStart = Long.MIN_VALUE;
+        double sum = 0;
+        int count = 0;
+        for (VitalSample sample : getSamples(userId, vital, from, to)) {
+            long start = from.getEpochSecond() + (sample.getTime().getEpochSecond() - from.getEpochSecond()) / bucketSeconds * bucketSeconds;
+            if (start != bucketStart && count > 0) {
+                averages.add(new VitalSample(Instant.ofEpochSecond(bucketStart), sum / count));
+                sum = 0;
+                count = 0;
+            }
+            bucketStart = start;
+            sum += sample.getValue();
+            count++;
+        }
+        if (count > 0) {
+            averages.add(new VitalSample(Instant.ofEpochSecond(bucketStart), sum / count));
+        }
+        return averages;
+    }
+/**
+     * Gets the average of a user's vital over one day.
+     *
+     * @param userId The ID of the user.
+     * @param vital The name of the vital.
+     * @param date The day.
+     * @return The average value, or NaN if there are no samples on that day.
+     */
+    public double getDailyAverage(int userId, String vital, LocalDate date) {
+        Instant from = date.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant to = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().minusSeconds(1);
+        double sum = 0;
+        int count = 0;
+        for (VitalSample sample : getSamples(userId, vital, from, to)) {
+            sum += sample.getValue();
+            count++;
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+/**
+     * Sets the heart rate of a user's HealthData entry for a day to the average of that day's heart rate samples,
+     * creating the entry when the day has only wearable data. The entry is saved through HealthDataDao, so the
+     * rollups and listeners see the new value, and applying the same day again changes nothing.
+     *
+     * @param userId The ID of the user.
+     * @param date The day.
+     * @return true if the heart rate was stored, false if there were no samples for that day or the write failed.
+     */
+    public boolean applyDailyHeartRate(int userId, LocalDate date) {
+        double average = getDailyAverage(userId, HEART_RATE, date);
+        if (Double.isNaN(average)) {
+            return false;
+        }
+        return healthDataDao.upsertHeartRate(userId, date, (int) Math.round(average));
+    }
+/**
+     * Seals every open block, including unfinished ones, and saves them to the database.
+     */
+    public void flush() {
+        for (Series current : series.values()) {
+            synchronized (current) {
+                if (current.block.getCount() > 0) {
+                    seal(current);
+                }
+            }
+        }
+        saveSealedBlocks();
+    }
+
+    private void sealFinishedBlocks() {
+        long currentWindow = windowOf(Instant.now().getEpochSecond());
+        for (Series current : series.values()) {
+            synchronized (current) {
+                if (current.block.getCount() > 0 && windowOf(current.block.getFirstTime()) < currentWindow) {
+                    seal(current);
+                }
+            }
+        }
+        saveSealedBlocks();
+
+        LocalDate today = LocalDate.now();
+        if (today.isAfter(lastAggregatedDay)) {
+            flush();
+            for (LocalDate day = lastAggregatedDay; day.isBefore(today); day = day.plusDays(1)) {
+                applyDailyHeartRates(day);
+            }
+            lastAggregatedDay = today;
+        }
+    }
+
+    // The day of the last stored heart rate block, or today if there is none; days before it were averaged when they ended
+    private LocalDate firstUnaggregatedDay() {
+
+        String query = "SELECT max(end_time) AS last_end FROM public.\"vitals_blocks\" WHERE vital = ?";
+
+        LocalDate today = LocalDate.now();
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setString(1, HEART_RATE);
+            try (ResultSet rs = statement.executeQuery()) {
+                Timestamp lastEnd = rs.next() ? rs.getTimestamp("last_end") : null;
+                if (lastEnd != null) {
+                    LocalDate day = lastEnd.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+                    return day.isBefore(today) ? day : today;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return today;
+    }
+
+    // The time of the last sample saved for a series, so samples that are already stored are not appended again
+    private long lastStoredTime(int userId, String vital) {
+
+        String query = "SELECT end_time FROM public.\"vitals_blocks\" WHERE user_id = ? AND vital = ? ORDER BY start_time DESC LIMIT 1";
+
+        long lastTime = Long.MIN_VALUE;
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setInt(1, userId);
+            statement.setString(2, vital);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    lastTime = rs.getTimestamp("end_time").toInstant().getEpochSecond();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        // Blocks sealed but not saved yet are newer than any stored one
+        for (SealedBlock block : unsaved) {
+            if (block.userId == userId && block.vital.equals(vital)) {
+                lastTime = Math.max(lastTime, block.lastTime);
+            }
+        }
+        return lastTime;
+    }
+
+    private void applyDailyHeartRates(LocalDate date) {
+
+        List<Integer> userIds = new ArrayList<>();
+
+        String query = "SELECT DISTINCT user_id FROM public.\"vitals_blocks\" WHERE vital = ? AND end_time >= ? AND start_time < ?";
+
+        try (Connection con = DatabaseConnection.getCon();
+             PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setString(1, HEART_RATE);
+            statement.setTimestamp(2, Timestamp.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+            statement.setTimestamp(3, Timestamp.from(date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    userIds.add(rs.getInt("user_id"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (int userId : userIds) {
+            applyDailyHeartRate(userId, date);
+        }
+    }
+
+    private void seal(Series current) {
+        VitalsBlock block = current.block;
+        unsaved.add(new SealedBlock(current.userId, current.vital, block.getFirstTime(), block.getLastTime(), block.getCount(), block.toByteArray()));
+        current.block = new VitalsBlock();
+    }
+
+    private synchronized void saveSealedBlocks() {
+
+        List<SealedBlock> blocks = new ArrayList<>(unsaved);
+        if (blocks.isEmpty()) {
+            return;
+        }
+
+        try (Connection con = DatabaseConnection.getCon()) {
+            saveLock.writeLock().lock();
+            try {
+                con.setAutoCommit(false);
+                try (PreparedStatement statement = con.prepareStatement(INSERT_BLOCK)) {
+                    for (SealedBlock block : blocks) {
+                        setBlock(statement, block);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    con.commit();
+                    unsaved.removeAll(blocks);
+                    return;
+                } catch (SQLException e) {
+                    con.rollback();
+                } finally {
+                    con.setAutoCommit(true);
+                }
+
+                // One bad block must not hold back the others, so after a failed batch every block is saved on its own
+                try (PreparedStatement statement = con.prepareStatement(INSERT_BLOCK)) {
+                    for (SealedBlock block : blocks) {
+                        try {
+                            setBlock(statement, block);
+                            statement.executeUpdate();
+                            unsaved.remove(block);
+                        } catch (SQLException e) {
+                            if (FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+                                // The user was purged after the block was sealed, so the block is dropped
+                                unsaved.remove(block);
+                            } else {
+                                e.printStackTrace();
+                            }
+                        }
+                    }
+                }
+            } finally {
+                saveLock.writeLock().unlock();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void setBlock(PreparedStatement statement, SealedBlock block) throws SQLException {
+        statement.setInt(1, block.userId);
+        statement.setString(2, block.vital);
+        statement.setTimestamp(3, Timestamp.from(Instant.ofEpochSecond(block.firstTime)));
+        statement.setTimestamp(4, Timestamp.from(Instant.ofEpochSecond(block.lastTime)));
+        statement.setInt(5, block.count);
+        statement.setBytes(6, block.data);
+    }
+/**
+     * Nothing to do, daily heart rates are written by the store itself.
+     *
+     * @param previous The HealthData object as it was stored before the write, or null if the entry was created.
+     * @param current The HealthData object as it is stored now.
+     */
+    @Override
+    public void onHealthDataSaved(HealthData previous, HealthData current) {
+    }
+/**
+     * Drops the open blocks and the unsaved sealed blocks of a purged user, whose rows can no longer be stored.
+     *
+     * @param userId The ID of the purged user.
+     */
+    @Override
+    public void onUserPurged(int userId) {
+        for (Series current : series.values()) {
+            if (current.userId == userId) {
+                synchronized (current) {
+                    series.remove(key(userId, current.vital), current);
+                    current.block = new VitalsBlock();
+                }
+            }
+        }
+        unsaved.removeIf(block -> block.userId == userId);
+    }
+
+    private void addUnsaved(List<VitalSample> samples, int userId, String vital, Instant from, Instant to) {
+        for (SealedBlock block : unsaved) {
+            if (block.userId == userId && block.vital.equals(vital)) {
+                addInRange(samples, VitalsBlock.decode(block.data, block.count), from, to);
+            }
+        }
+    }
+
+    private static void addInRange(List<VitalSample> samples, List<VitalSample> block, Instant from, Instant to) {
+        for (VitalSample sample : block) {
+            if (!sample.getTime().isBefore(from) && !sample.getTime().isAfter(to)) {
+                samples.add(sample);
+            }
+        }
+    }
+
+    private static long windowOf(long epochSecond) {
+        return Math.floorDiv(epochSecond, BLOCK_WINDOW_SECONDS);
+    }
+
+    private static String key(int userId, String vital) {
+        return userId + "|" + vital;
+    }
+
+    private static final class Series {
+        private final int userId;
+        private final String vital;
+        private VitalsBlock block = new VitalsBlock();
+        private long lastTime;
+
+        private Series(int userId, String vital, long lastTime) {
+            this.userId = userId;
+            this.vital = vital;
+            this.lastTime = lastTime;
+        }
+    }
+
+    private static final class SealedBlock {
+        private final int userId;
+        private final String vital;
+        private final long firstTime;
+        private final long lastTime;
+        private final int count;
+        private final byte[] data;
+
+        private SealedBlock(int userId, String vital, long firstTime, long lastTime, int count, byte[] data) {
+            this.userId = userId;
+            this.vital = vital;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.count = count;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+-- One row per requested account deletion. The row outlives the user, so there is no foreign key to users.
+-- step is the index of the table in AccountPurger's purge plan that is being emptied; it is committed together
+-- with every deleted batch, so a purge interrupted by a crash resumes where it stopped.
+CREATE TABLE IF NOT EXISTS public.account_deletion_jobs
+(
+    user_id integer NOT NULL,
+    requested_at timestamp without time zone NOT NULL DEFAULT now(),
+    step integer NOT NULL DEFAULT 0,
+    rows_deleted bigint NOT NULL DEFAULT 0,
+    finished_at timestamp without time zone,
+    CONSTRAINT account_deletion_jobs_pkey PRIMARY KEY (user_id)
+)
+
+ALTER TABLE IF EXISTS public.account_deletion_jobs
+    OWNER to postgres;
+
+CREATE INDEX IF NOT EXISTS account_deletion_jobs_unfinished_idx
+    ON public.account_deletion_jobs USING btree
+    (requested_at ASC NULLS LAST)
+    WHERE finished_at IS NULL;
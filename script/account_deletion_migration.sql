@@ -0,0 +1,4 @@
+-- Adds soft deletion to an existing users table; run account_deletion_jobs.sql as well.
+
+ALTER TABLE public.users
+    ADD COLUMN IF NOT EXISTS deleted_at timestamp without time zone;
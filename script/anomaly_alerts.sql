@@ -0,0 +1,23 @@
+CREATE TABLE IF NOT EXISTS public.anomaly_alerts
+(
+    alert_id integer NOT NULL DEFAULT nextval('anomaly_alerts_alert_id_seq'::regclass),
+    user_id integer NOT NULL,
+    metric character varying(50) COLLATE pg_catalog."default" NOT NULL,
+    value numeric NOT NULL,
+    baseline numeric NOT NULL,
+    z_score numeric NOT NULL,
+    date date NOT NULL,
+    CONSTRAINT anomaly_alerts_pkey PRIMARY KEY (alert_id),
+    CONSTRAINT "anomaly_alerts_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.anomaly_alerts
+    OWNER to postgres;
+
+CREATE INDEX IF NOT EXISTS anomaly_alerts_user_id_date_idx
+    ON public.anomaly_alerts USING btree
+    (user_id ASC NULLS LAST, date DESC NULLS LAST);
@@ -0,0 +1,38 @@
+-- Lets health_data record that a weight, height or heart rate was not taken on a day, instead of storing 0, and adds
+-- the state the daily aggregator merges readings into. Zeros written so far become NULL, and the rollups count the
+-- records with a heart rate and a weight separately from record_count. Run HealthDataRollupDao afterwards to
+-- rebuild the rollups, so the new counts leave out the zeros that became NULL.
+
+ALTER TABLE public.health_data
+    ALTER COLUMN weight DROP NOT NULL,
+    ALTER COLUMN height DROP NOT NULL,
+    ALTER COLUMN heart_rate DROP NOT NULL;
+
+UPDATE public.health_data SET weight = NULLIF(weight, 0), height = NULLIF(height, 0), heart_rate = NULLIF(heart_rate, 0)
+    WHERE weight = 0 OR height = 0 OR heart_rate = 0;
+
+ALTER TABLE public.health_data_weekly
+    ADD COLUMN IF NOT EXISTS heart_rate_count integer NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS weight_count integer NOT NULL DEFAULT 0;
+
+ALTER TABLE public.health_data_monthly
+    ADD COLUMN IF NOT EXISTS heart_rate_count integer NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS weight_count integer NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS public.health_data_readings
+(
+    user_id integer NOT NULL,
+    date date NOT NULL,
+    heart_rate_sum double precision NOT NULL,
+    heart_rate_count integer NOT NULL,
+    weight double precision NOT NULL,
+    weight_time bigint,
+    height double precision NOT NULL,
+    height_time bigint,
+    CONSTRAINT health_data_readings_pkey PRIMARY KEY (user_id, date),
+    CONSTRAINT "health_data_readings_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+);
@@ -15,4 +15,7 @@ CREATE TABLE IF NOT EXISTS public.doctor_patient
         NOT VALID
 )
 ALTER TABLE IF EXISTS public.doctor_patient
-    OWNER to postgres;
\ No newline at end of file
+    OWNER to postgres;
+CREATE INDEX IF NOT EXISTS doctor_patient_patient_id_idx
+    ON public.doctor_patient USING btree
+    (patient_id ASC NULLS LAST, doctor_id ASC NULLS LAST);
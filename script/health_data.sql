@@ -2,20 +2,38 @@ CREATE TABLE IF NOT EXISTS public.health_data
 (
     health_data_id integer NOT NULL DEFAULT nextval('health_data_id_seq'::regclass),
     user_id integer NOT NULL,
-    weight numeric NOT NULL,
-    height numeric NOT NULL,
+    weight numeric,
+    height numeric,
     steps integer NOT NULL,
-    heart_rate integer NOT NULL,
+    heart_rate integer,
     water_intake numeric NOT NULL,
     hours_of_sleep numeric NOT NULL,
     date date NOT NULL,
-    CONSTRAINT health_data_pkey PRIMARY KEY (health_data_id),
+    version integer NOT NULL DEFAULT 0,
+    CONSTRAINT health_data_pkey PRIMARY KEY (health_data_id, date),
+    CONSTRAINT health_data_user_id_date_key UNIQUE (user_id, date),
     CONSTRAINT "health_data_user_id_FK" FOREIGN KEY (user_id)
         REFERENCES public.users (user_id) MATCH SIMPLE
         ON UPDATE NO ACTION
         ON DELETE CASCADE
-        NOT VALID
-)
+) PARTITION BY RANGE (date);
 
 ALTER TABLE IF EXISTS public.health_data
-    OWNER to postgres;
\ No newline at end of file
+    OWNER to postgres;
+
+-- health_data_user_id_date_key also serves the (user_id, date) lookups; each monthly partition gets its own local index
+-- Creates the partition holding the month of the given date, named health_data_yYYYYmMM
+CREATE OR REPLACE FUNCTION public.create_health_data_partition(month date)
+    RETURNS void
+    LANGUAGE plpgsql
+AS $BODY$
+DECLARE
+    start_date date := date_trunc('month', month)::date;
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS public.%I PARTITION OF public.health_data FOR VALUES FROM (%L) TO (%L)',
+        'health_data_' || to_char(start_date, '"y"YYYY"m"MM'), start_date, (start_date + interval '1 month')::date);
+END;
+$BODY$;
+
+SELECT public.create_health_data_partition(month::date)
+    FROM generate_series(date_trunc('month', current_date), date_trunc('month', current_date) + interval '3 months', interval '1 month') AS month;
@@ -0,0 +1,29 @@
+-- Migrates an existing, unpartitioned public.health_data table to the monthly range-partitioned layout
+-- defined in health_data.sql. Run with psql from this directory: psql -f health_data_partitioning_migration.sql
+
+BEGIN;
+
+ALTER TABLE public.health_data RENAME TO health_data_unpartitioned;
+ALTER INDEX public.health_data_pkey RENAME TO health_data_unpartitioned_pkey;
+DROP INDEX IF EXISTS public.health_data_user_id_date_idx;
+
+\ir health_data.sql
+
+SELECT public.create_health_data_partition(month::date)
+    FROM generate_series(
+        date_trunc('month', COALESCE((SELECT min(date) FROM public.health_data_unpartitioned), current_date)),
+        date_trunc('month', GREATEST(COALESCE((SELECT max(date) FROM public.health_data_unpartitioned), current_date), current_date)),
+        interval '1 month') AS month;
+
+INSERT INTO public.health_data (health_data_id, user_id, weight, height, steps, heart_rate, water_intake, hours_of_sleep, date)
+    SELECT DISTINCT ON (user_id, date) health_data_id, user_id, weight, height, steps, heart_rate, water_intake, hours_of_sleep, date
+    FROM public.health_data_unpartitioned
+    ORDER BY user_id, date, health_data_id DESC;
+
+ALTER SEQUENCE public.health_data_id_seq OWNED BY public.health_data.health_data_id;
+
+DROP TABLE public.health_data_unpartitioned;
+
+COMMIT;
+
+ANALYZE public.health_data;
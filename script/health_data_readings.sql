@@ -0,0 +1,20 @@
+CREATE TABLE IF NOT EXISTS public.health_data_readings
+(
+    user_id integer NOT NULL,
+    date date NOT NULL,
+    heart_rate_sum double precision NOT NULL,
+    heart_rate_count integer NOT NULL,
+    weight double precision NOT NULL,
+    weight_time bigint,
+    height double precision NOT NULL,
+    height_time bigint,
+    CONSTRAINT health_data_readings_pkey PRIMARY KEY (user_id, date),
+    CONSTRAINT "health_data_readings_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.health_data_readings
+    OWNER to postgres;
@@ -0,0 +1,45 @@
+CREATE TABLE IF NOT EXISTS public.health_data_weekly
+(
+    user_id integer NOT NULL,
+    period_start date NOT NULL,
+    record_count integer NOT NULL,
+    steps_total bigint NOT NULL,
+    heart_rate_total bigint NOT NULL,
+    heart_rate_count integer NOT NULL DEFAULT 0,
+    water_intake_total numeric NOT NULL,
+    hours_of_sleep_total numeric NOT NULL,
+    weight_total numeric NOT NULL,
+    weight_count integer NOT NULL DEFAULT 0,
+    CONSTRAINT health_data_weekly_pkey PRIMARY KEY (user_id, period_start),
+    CONSTRAINT "health_data_weekly_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.health_data_weekly
+    OWNER to postgres;
+
+CREATE TABLE IF NOT EXISTS public.health_data_monthly
+(
+    user_id integer NOT NULL,
+    period_start date NOT NULL,
+    record_count integer NOT NULL,
+    steps_total bigint NOT NULL,
+    heart_rate_total bigint NOT NULL,
+    heart_rate_count integer NOT NULL DEFAULT 0,
+    water_intake_total numeric NOT NULL,
+    hours_of_sleep_total numeric NOT NULL,
+    weight_total numeric NOT NULL,
+    weight_count integer NOT NULL DEFAULT 0,
+    CONSTRAINT health_data_monthly_pkey PRIMARY KEY (user_id, period_start),
+    CONSTRAINT "health_data_monthly_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.health_data_monthly
+    OWNER to postgres;
@@ -0,0 +1,20 @@
+-- Adds the unique (user_id, date) constraint to an existing partitioned public.health_data table.
+-- Duplicate entries for a user and day are removed first, keeping the most recently created one.
+-- Rebuild the rollups afterwards with: java HealthDataRollupDao
+
+BEGIN;
+
+DELETE FROM public.health_data AS duplicate
+    USING public.health_data AS newer
+    WHERE duplicate.user_id = newer.user_id
+      AND duplicate.date = newer.date
+      AND duplicate.health_data_id < newer.health_data_id;
+
+DROP INDEX IF EXISTS public.health_data_user_id_date_idx;
+
+ALTER TABLE public.health_data
+    ADD CONSTRAINT health_data_user_id_date_key UNIQUE (user_id, date);
+
+COMMIT;
+
+ANALYZE public.health_data;
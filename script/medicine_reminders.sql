@@ -2,12 +2,17 @@ CREATE TABLE IF NOT EXISTS public.medicine_reminders
 (
     reminder_id integer NOT NULL DEFAULT nextval('medicine_reminders_reminder_id_seq'::regclass),
     user_id integer NOT NULL,
-    medicine_name character varying(100) COLLATE pg_catalog."default" NOT NULL,
+    medicine_id integer NOT NULL,
     dosage character varying(50) COLLATE pg_catalog."default" NOT NULL,
     schedule character varying(100) COLLATE pg_catalog."default" NOT NULL,
     start_date date NOT NULL,
     end_date date NOT NULL,
+    version integer NOT NULL DEFAULT 0,
     CONSTRAINT medicine_reminders_pkey PRIMARY KEY (reminder_id),
+    CONSTRAINT "medicine_reminders_medicine_id_FK" FOREIGN KEY (medicine_id)
+        REFERENCES public.medicines (medicine_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE NO ACTION,
     CONSTRAINT "medicine_reminders_user_id_FK" FOREIGN KEY (user_id)
         REFERENCES public.users (user_id) MATCH SIMPLE
         ON UPDATE NO ACTION
@@ -16,3 +21,11 @@ CREATE TABLE IF NOT EXISTS public.medicine_reminders
 )
 ALTER TABLE IF EXISTS public.medicine_reminders
     OWNER to postgres;
+
+CREATE INDEX IF NOT EXISTS medicine_reminders_end_date_idx
+    ON public.medicine_reminders USING btree
+    (end_date ASC NULLS LAST);
+
+CREATE INDEX IF NOT EXISTS medicine_reminders_medicine_id_idx
+    ON public.medicine_reminders USING btree
+    (medicine_id ASC NULLS LAST);
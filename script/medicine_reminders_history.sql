@@ -0,0 +1,29 @@
+-- Reminders past their end date, moved here by OverdueReminderSweeper. Rows keep their original reminder_id.
+CREATE TABLE IF NOT EXISTS public.medicine_reminders_history
+(
+    reminder_id integer NOT NULL,
+    user_id integer NOT NULL,
+    medicine_id integer NOT NULL,
+    dosage character varying(50) COLLATE pg_catalog."default" NOT NULL,
+    schedule character varying(100) COLLATE pg_catalog."default" NOT NULL,
+    start_date date NOT NULL,
+    end_date date NOT NULL,
+    swept_at timestamp without time zone NOT NULL DEFAULT now(),
+    CONSTRAINT medicine_reminders_history_pkey PRIMARY KEY (reminder_id),
+    CONSTRAINT "medicine_reminders_history_medicine_id_FK" FOREIGN KEY (medicine_id)
+        REFERENCES public.medicines (medicine_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE NO ACTION,
+    CONSTRAINT "medicine_reminders_history_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.medicine_reminders_history
+    OWNER to postgres;
+
+CREATE INDEX IF NOT EXISTS medicine_reminders_history_user_id_idx
+    ON public.medicine_reminders_history USING btree
+    (user_id ASC NULLS LAST);
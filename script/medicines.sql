@@ -0,0 +1,15 @@
+-- The dictionary of medicine names referenced by medicine_reminders and medicine_reminders_history.
+-- Names are unique regardless of case; the first spelling entered is the one shown.
+CREATE TABLE IF NOT EXISTS public.medicines
+(
+    medicine_id integer NOT NULL DEFAULT nextval('medicines_medicine_id_seq'::regclass),
+    name character varying(100) COLLATE pg_catalog."default" NOT NULL,
+    CONSTRAINT medicines_pkey PRIMARY KEY (medicine_id)
+)
+
+ALTER TABLE IF EXISTS public.medicines
+    OWNER to postgres;
+
+CREATE UNIQUE INDEX IF NOT EXISTS medicines_lower_name_key
+    ON public.medicines USING btree
+    (lower(name::text) COLLATE pg_catalog."default" ASC NULLS LAST);
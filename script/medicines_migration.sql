@@ -0,0 +1,68 @@
+-- Moves the free-text medicine names of existing medicine_reminders and medicine_reminders_history tables
+-- into the medicines dictionary and replaces the medicine_name columns with medicine_id references.
+-- Names that differ only in case or spacing become one medicine.
+
+CREATE SEQUENCE IF NOT EXISTS public.medicines_medicine_id_seq;
+
+CREATE TABLE IF NOT EXISTS public.medicines
+(
+    medicine_id integer NOT NULL DEFAULT nextval('medicines_medicine_id_seq'::regclass),
+    name character varying(100) COLLATE pg_catalog."default" NOT NULL,
+    CONSTRAINT medicines_pkey PRIMARY KEY (medicine_id)
+);
+
+ALTER SEQUENCE public.medicines_medicine_id_seq OWNED BY public.medicines.medicine_id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS medicines_lower_name_key
+    ON public.medicines USING btree
+    (lower(name::text) COLLATE pg_catalog."default" ASC NULLS LAST);
+
+BEGIN;
+
+INSERT INTO public.medicines (name)
+    SELECT DISTINCT ON (lower(name)) name
+    FROM (
+        SELECT regexp_replace(trim(medicine_name), '\s+', ' ', 'g') AS name FROM public.medicine_reminders
+        UNION ALL
+        SELECT regexp_replace(trim(medicine_name), '\s+', ' ', 'g') AS name FROM public.medicine_reminders_history
+    ) AS names
+    ORDER BY lower(name), name
+    ON CONFLICT ((lower(name::text))) DO NOTHING;
+
+ALTER TABLE public.medicine_reminders
+    ADD COLUMN IF NOT EXISTS medicine_id integer;
+
+UPDATE public.medicine_reminders AS r
+    SET medicine_id = m.medicine_id
+    FROM public.medicines AS m
+    WHERE lower(m.name) = lower(regexp_replace(trim(r.medicine_name), '\s+', ' ', 'g'));
+
+ALTER TABLE public.medicine_reminders
+    ALTER COLUMN medicine_id SET NOT NULL,
+    DROP COLUMN medicine_name,
+    ADD CONSTRAINT "medicine_reminders_medicine_id_FK" FOREIGN KEY (medicine_id)
+        REFERENCES public.medicines (medicine_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE NO ACTION;
+
+ALTER TABLE public.medicine_reminders_history
+    ADD COLUMN IF NOT EXISTS medicine_id integer;
+
+UPDATE public.medicine_reminders_history AS r
+    SET medicine_id = m.medicine_id
+    FROM public.medicines AS m
+    WHERE lower(m.name) = lower(regexp_replace(trim(r.medicine_name), '\s+', ' ', 'g'));
+
+ALTER TABLE public.medicine_reminders_history
+    ALTER COLUMN medicine_id SET NOT NULL,
+    DROP COLUMN medicine_name,
+    ADD CONSTRAINT "medicine_reminders_history_medicine_id_FK" FOREIGN KEY (medicine_id)
+        REFERENCES public.medicines (medicine_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE NO ACTION;
+
+CREATE INDEX IF NOT EXISTS medicine_reminders_medicine_id_idx
+    ON public.medicine_reminders USING btree
+    (medicine_id ASC NULLS LAST);
+
+COMMIT;
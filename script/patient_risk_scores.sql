@@ -0,0 +1,22 @@
+CREATE TABLE IF NOT EXISTS public.patient_risk_scores
+(
+    user_id integer NOT NULL,
+    score numeric NOT NULL,
+    latest_penalty numeric NOT NULL,
+    trend numeric NOT NULL,
+    previous_trend numeric,
+    date date NOT NULL,
+    CONSTRAINT patient_risk_scores_pkey PRIMARY KEY (user_id),
+    CONSTRAINT "patient_risk_scores_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.patient_risk_scores
+    OWNER to postgres;
+
+CREATE INDEX IF NOT EXISTS patient_risk_scores_score_idx
+    ON public.patient_risk_scores USING btree
+    (score DESC NULLS LAST);
@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS public.percentile_sketches
+(
+    cohort character varying(50) COLLATE pg_catalog."default" NOT NULL,
+    metric character varying(50) COLLATE pg_catalog."default" NOT NULL,
+    sketch bytea NOT NULL,
+    updated_at timestamp without time zone NOT NULL DEFAULT now(),
+    CONSTRAINT percentile_sketches_pkey PRIMARY KEY (cohort, metric)
+)
+
+ALTER TABLE IF EXISTS public.percentile_sketches
+    OWNER to postgres;
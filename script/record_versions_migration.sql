@@ -0,0 +1,8 @@
+-- Adds the version columns used for optimistic concurrency to existing health_data and medicine_reminders tables.
+-- Every successful update increments the version; an update that names an outdated version changes nothing.
+
+ALTER TABLE public.health_data
+    ADD COLUMN IF NOT EXISTS version integer NOT NULL DEFAULT 0;
+
+ALTER TABLE public.medicine_reminders
+    ADD COLUMN IF NOT EXISTS version integer NOT NULL DEFAULT 0;
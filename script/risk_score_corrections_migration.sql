@@ -0,0 +1,7 @@
+-- Adds the trend before the latest scored date to existing patient_risk_scores tables, so a correction of that
+-- date replaces its penalty instead of folding it in again. Existing scores start from their current trend.
+
+ALTER TABLE public.patient_risk_scores
+    ADD COLUMN IF NOT EXISTS previous_trend numeric;
+
+UPDATE public.patient_risk_scores SET previous_trend = trend WHERE previous_trend IS NULL;
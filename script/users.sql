@@ -6,6 +6,7 @@ CREATE TABLE IF NOT EXISTS public.users
     email character varying(100) COLLATE pg_catalog."default" NOT NULL,
     password character varying(255) COLLATE pg_catalog."default" NOT NULL,
     is_doctor boolean NOT NULL,
+    deleted_at timestamp without time zone,
     CONSTRAINT users_pkey PRIMARY KEY (user_id),
     CONSTRAINT users_email_uniq UNIQUE (email)
 )
@@ -0,0 +1,23 @@
+CREATE TABLE IF NOT EXISTS public.vitals_blocks
+(
+    vitals_block_id integer NOT NULL DEFAULT nextval('vitals_blocks_vitals_block_id_seq'::regclass),
+    user_id integer NOT NULL,
+    vital character varying(50) COLLATE pg_catalog."default" NOT NULL,
+    start_time timestamp without time zone NOT NULL,
+    end_time timestamp without time zone NOT NULL,
+    sample_count integer NOT NULL,
+    data bytea NOT NULL,
+    CONSTRAINT vitals_blocks_pkey PRIMARY KEY (vitals_block_id),
+    CONSTRAINT "vitals_blocks_user_id_FK" FOREIGN KEY (user_id)
+        REFERENCES public.users (user_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+        NOT VALID
+)
+
+ALTER TABLE IF EXISTS public.vitals_blocks
+    OWNER to postgres;
+
+CREATE INDEX IF NOT EXISTS vitals_blocks_user_id_vital_start_time_idx
+    ON public.vitals_blocks USING btree
+    (user_id ASC NULLS LAST, vital ASC NULLS LAST, start_time ASC NULLS LAST);
@@ -0,0 +1,143 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that compare-and-set updates lose no writes when 64 writers edit the same records at once, and reports the
+ * throughput. Every writer repeatedly loads a health data entry, adds one step and saves it, reloading and retrying
+ * when the update reports a conflict; the same is done with the dosage of a medicine reminder. Without lost updates
+ * the final value equals the number of increments. Needs the database configured for DatabaseConnection and an
+ * existing user; the records it creates are deleted afterwards. Exits with status 1 on a failure.
+ */
+
+public class ConcurrentUpdateStressTest {
+
+    private static final int WRITERS = 64;
+
+    private static int failures;
+
+/**
+     * Runs the checks.
+     *
+     * @param args Optional ID of an existing user (default 1) and number of increments per writer (default 50).
+     * @throws Exception If a writer thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int userId = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int increments = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        HealthDataDao healthDataDao = new HealthDataDao();
+        LocalDate today = LocalDate.now();
+        HealthData entry = new HealthData(0, userId, 0, 0, 0, 0, 0, 0, today);
+        int entryId = healthDataDao.createHealthData(entry);
+        if (entryId == 0) {
+            System.out.println("Oops! Could not create the health data entry; is the database running and does user " + userId + " exist?");
+            System.exit(1);
+        }
+
+        MedicineReminderManager reminderManager = new MedicineReminderManager();
+        MedicineReminder reminder = new MedicineReminder(0, userId, "Stress Test Placebo", "0", "Daily", today, today.plusDays(1));
+        reminderManager.addReminder(reminder);
+        int reminderId = reminder.getId();
+
+        try {
+            run("health data steps", increments, () -> {
+                HealthData stored = healthDataDao.getHealthDataById(entryId, today);
+                stored.setSteps(stored.getSteps() + 1);
+                return healthDataDao.updateHealthData(stored);
+            });
+            check("health data steps", (long) WRITERS * increments, healthDataDao.getHealthDataById(entryId, today).getSteps());
+
+            if (reminderId == 0) {
+                fail("reminder", "a created reminder", "none");
+            } else {
+                run("reminder dosage", increments, () -> {
+                    MedicineReminder stored = findReminder(reminderManager, userId, reminderId);
+                    stored.setDosage(String.valueOf(Integer.parseInt(stored.getDosage()) + 1));
+                    return reminderManager.updateMedicationReminder(stored);
+                });
+                check("reminder dosage", (long) WRITERS * increments, Long.parseLong(findReminder(reminderManager, userId, reminderId).getDosage()));
+            }
+        } finally {
+            healthDataDao.deleteHealthData(entryId, today);
+            if (reminderId != 0) {
+                reminderManager.deleteMedicineReminder(reminderId);
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    private interface Increment {
+        UpdateResult apply();
+    }
+
+    // Starts all writers together; each retries its increment on CONFLICT until it is UPDATED
+    private static void run(String name, int increments, Increment increment) throws Exception {
+        AtomicLong conflicts = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int failed = 0;
+                for (int i = 0; i < increments; i++) {
+                    UpdateResult result;
+                    while ((result = increment.apply()) == UpdateResult.CONFLICT) {
+                        conflicts.incrementAndGet();
+                    }
+                    if (result != UpdateResult.UPDATED) {
+                        failed++;
+                    }
+                }
+                return failed;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        int failed = 0;
+        for (Future<Integer> result : results) {
+            failed += result.get();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        long updates = (long) WRITERS * increments;
+        System.out.println(String.format("%s: %,d updates by %d writers in %.2f s, %,.0f updates/s, %,d conflicts retried",
+                name, updates, WRITERS, seconds, updates / seconds, conflicts.get()));
+        check(name + " updates that were neither UPDATED nor CONFLICT", 0, failed);
+    }
+
+    private static MedicineReminder findReminder(MedicineReminderManager manager, int userId, int reminderId) {
+        for (MedicineReminder reminder : manager.getAllReminders(userId)) {
+            if (reminder.getId() == reminderId) {
+                return reminder;
+            }
+        }
+        throw new IllegalStateException("Reminder " + reminderId + " disappeared during the test");
+    }
+
+    private static void check(String name, long expected, long actual) {
+        if (expected != actual) {
+            fail(name, String.valueOf(expected), String.valueOf(actual));
+        }
+    }
+
+    private static void fail(String name, String expected, String actual) {
+        failures++;
+        System.out.println("FAILED: " + name + ": expected " + expected + " but was " + actual);
+    }
+}
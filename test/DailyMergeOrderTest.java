@@ -0,0 +1,123 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that merging partial daily readings gives the same health_data entry whatever the order in which the readings
+ * arrive and however they are grouped into flushes. Each flush is merged the way HealthDataDao.mergeDailyHealthData
+ * merges it: the readings are folded into the stored readings of the day, and the partial entry built from the result
+ * is merged into the stored entry. Runs without a database; exits with status 1 on a failure.
+ */
+
+public class DailyMergeOrderTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+    private static final long MORNING = 1709280000L;
+
+    private static int failures;
+
+/**
+     * Runs the checks.
+     *
+     * @param args Command-line arguments (not used).
+     */
+    public static void main(String[] args) {
+        List<DailyReadings> readings = Arrays.asList(
+                new DailyReadings(7, DAY, 3000, 16, 0, 0, 0, 0, DailyReadings.NO_TIME, 0, DailyReadings.NO_TIME),
+                new DailyReadings(7, DAY, 0, 0, 7.5, 62 + 64, 2, 81.5, MORNING + 600, 0, DailyReadings.NO_TIME),
+                new DailyReadings(7, DAY, 4500, 8.5, 0, 90, 1, 0, DailyReadings.NO_TIME, 180, MORNING),
+                new DailyReadings(7, DAY, 1200, 0, 0.5, 71 + 73 + 77, 3, 80.0, MORNING + 3600, 0, DailyReadings.NO_TIME));
+
+        HealthData manual = new HealthData(42, 7, 83.0, 179, 500, 70, 8, 0, DAY);
+
+        for (HealthData stored : Arrays.asList(null, manual)) {
+            HealthData expected = null;
+            for (List<DailyReadings> order : permutations(readings)) {
+                HealthData oneByOne = stored;
+                DailyReadings state = null;
+                for (DailyReadings reading : order) {
+                    state = hasVitals(reading) ? (state == null ? reading : reading.merge(state)) : state;
+                    oneByOne = merge(oneByOne, HealthDataDao.toPartial(reading, hasVitals(reading) ? state : reading));
+                }
+                expected = expected == null ? oneByOne : expected;
+                check("one flush per reading" + (stored == null ? "" : ", over a manual entry"), expected, oneByOne);
+
+                // The same readings folded by the aggregator before a single flush
+                DailyReadings folded = order.get(0);
+                for (DailyReadings reading : order.subList(1, order.size())) {
+                    folded = folded.merge(reading);
+                }
+                check("single flush" + (stored == null ? "" : ", over a manual entry"), expected, merge(stored, HealthDataDao.toPartial(folded, folded)));
+            }
+            if (stored == null) {
+                check("heart rate is the average of all six readings", 73, expected.getHeartRate());
+                check("weight is the latest measurement", 80.0, expected.getWeight());
+                check("steps are summed", 8700, expected.getSteps());
+            }
+        }
+
+        DailyReadings stepsOnly = readings.get(0);
+        HealthData created = HealthDataDao.toPartial(stepsOnly, stepsOnly);
+        check("a day without heart rate readings has no heart rate", 0, created.getHeartRate());
+        check("a day without weight readings has no weight", 0.0, created.getWeight());
+        HealthData kept = HealthDataDao.mergeDaily(manual, created);
+        check("merging without heart rate readings keeps the stored heart rate", 70, kept.getHeartRate());
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    private static boolean hasVitals(DailyReadings reading) {
+        return reading.getHeartRateCount() > 0 || reading.getWeightTime() != DailyReadings.NO_TIME || reading.getHeightTime() != DailyReadings.NO_TIME;
+    }
+
+    private static HealthData merge(HealthData stored, HealthData partial) {
+        return stored == null ? partial : HealthDataDao.mergeDaily(stored, partial);
+    }
+
+    private static List<List<DailyReadings>> permutations(List<DailyReadings> items) {
+        List<List<DailyReadings>> result = new ArrayList<>();
+        if (items.size() <= 1) {
+            result.add(new ArrayList<>(items));
+            return result;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            List<DailyReadings> rest = new ArrayList<>(items);
+            DailyReadings first = rest.remove(i);
+            for (List<DailyReadings> tail : permutations(rest)) {
+                tail.add(0, first);
+                result.add(tail);
+            }
+        }
+        return result;
+    }
+
+    private static void check(String name, HealthData expected, HealthData actual) {
+        boolean same = expected.getWeight() == actual.getWeight() && expected.getHeight() == actual.getHeight()
+                && expected.getSteps() == actual.getSteps() && expected.getHeartRate() == actual.getHeartRate()
+                && expected.getWaterIntake() == actual.getWaterIntake() && expected.getHoursOfSleep() == actual.getHoursOfSleep();
+        if (!same) {
+            fail(name, describe(expected), describe(actual));
+        }
+    }
+
+    private static void check(String name, double expected, double actual) {
+        if (expected != actual) {
+            fail(name, String.valueOf(expected), String.valueOf(actual));
+        }
+    }
+
+    private static void fail(String name, String expected, String actual) {
+        failures++;
+        System.out.println("FAILED: " + name + ": expected " + expected + " but was " + actual);
+    }
+
+    private static String describe(HealthData healthData) {
+        return "weight " + healthData.getWeight() + ", height " + healthData.getHeight() + ", steps " + healthData.getSteps()
+                + ", heart rate " + healthData.getHeartRate() + ", water " + healthData.getWaterIntake() + ", sleep " + healthData.getHoursOfSleep();
+    }
+}